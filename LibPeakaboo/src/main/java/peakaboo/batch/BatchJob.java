@@ -0,0 +1,206 @@
+package peakaboo.batch;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+import java.util.stream.Stream;
+
+import cyclops.Coord;
+import cyclops.ReadOnlySpectrum;
+import peakaboo.calibration.CalibrationProfile;
+import peakaboo.common.PeakabooLog;
+import peakaboo.controller.plotter.PlotController;
+import peakaboo.controller.settings.SavedSession;
+import peakaboo.datasink.plugin.DataSinkPlugin;
+import peakaboo.datasource.model.DataSource;
+import peakaboo.datasource.model.components.datasize.DataSize;
+import peakaboo.datasource.model.components.scandata.SimpleScanData;
+import peakaboo.datasource.plugin.DataSourceLookup;
+import peakaboo.datasource.plugin.DataSourcePlugin;
+import peakaboo.datasource.plugin.DataSourcePluginManager;
+import peakaboo.mapping.Mapping;
+import peakaboo.mapping.results.MapResult;
+import peakaboo.mapping.results.MapResultSet;
+import plural.executor.DummyExecutor;
+
+/**
+ * A BatchJob loads a single data set without any user interface, applies a
+ * {@link SavedSession} to it, maps it, and writes each map to its own CSV
+ * file in an output directory. The raw data can also be exported through a
+ * {@link DataSinkPlugin}. Everything runs on the calling thread, except for
+ * mapping, which runs in parallel on the ForkJoinPool the job is running in,
+ * and storing loaded scans, which is limited to the job's number of threads.
+ *
+ * @author NAS
+ *
+ */
+public class BatchJob implements Callable<Boolean> {
+
+	private String name;
+	private List<Path> paths;
+	private String session;
+	private Path output;
+	private DataSinkPlugin sink;
+	private int threads;
+
+	/**
+	 * @param name the name of the directory in the output directory to write this job's results to
+	 * @param paths the files making up the data set
+	 * @param session the saved session to apply to the data set, as yaml
+	 * @param output the directory to write results to
+	 * @param sink the {@link DataSinkPlugin} to export the raw data with, or null
+	 * @param threads the number of threads this job may use while loading the data set
+	 */
+	public BatchJob(String name, List<Path> paths, String session, Path output, DataSinkPlugin sink, int threads) {
+		this.name = name;
+		this.paths = new ArrayList<>(paths);
+		this.session = session;
+		this.output = output;
+		this.sink = sink;
+		this.threads = threads;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Runs this job, returning true if it succeeded. Problems are logged.
+	 */
+	@Override
+	public Boolean call() {
+		Path configDir = null;
+		try {
+			long t1 = System.currentTimeMillis();
+			PeakabooLog.get().log(Level.INFO, "Starting batch job " + name);
+
+			//each job gets its own settings, so that jobs can't interfere with each other
+			configDir = Files.createTempDirectory("peakaboo-batch");
+			PlotController controller = new PlotController(configDir.toFile());
+
+			DataSource source = read();
+			if (source == null) return false;
+			controller.data().setDataSource(source, new DummyExecutor(), () -> false);
+			if (!controller.data().hasDataSet()) {
+				PeakabooLog.get().log(Level.WARNING, "Did not find any data for batch job " + name);
+				return false;
+			}
+
+			//apply the session after loading the data set, since loading resets things like the calibration.
+			//each job reads its own copy, since the controller takes ownership of parts of it
+			SavedSession saved = SavedSession.deserialize(session);
+			//discarded scans are specific to the data set the session was saved with
+			if (saved.data != null && !saved.data.filesAsDataPaths().equals(paths)) {
+				saved.data.discards.clear();
+			}
+			controller.loadSessionSettings(saved, true);
+			controller.data().setDataPaths(paths);
+
+			MapResultSet maps = Mapping.map(
+					controller.data().getDataSet(),
+					controller.filtering().getActiveFilters(),
+					null,
+					controller.fitting().getFittingSelections(),
+					controller.fitting().getCurveFitter(),
+					controller.fitting().getFittingSolver()
+				);
+
+			Path directory = output.resolve(name);
+			Files.createDirectories(directory);
+			writeMaps(maps, source, controller.calibration().getCalibrationProfile(), directory);
+			if (sink != null) {
+				sink.write(source, directory.resolve(name + "." + sink.getFormatExtension()));
+			}
+
+			long t2 = System.currentTimeMillis();
+			PeakabooLog.get().log(Level.INFO, "Finished batch job " + name + " in " + ((t2-t1)/1000) + " seconds");
+			return true;
+
+		} catch (Exception e) {
+			PeakabooLog.get().log(Level.SEVERE, "Batch job " + name + " failed", e);
+			return false;
+		} finally {
+			delete(configDir);
+		}
+	}
+
+	private DataSource read() throws Exception {
+		List<DataSourcePlugin> candidates =  DataSourcePluginManager.SYSTEM.getPlugins().newInstances();
+		List<DataSource> formats = DataSourceLookup.findDataSourcesForFiles(paths, candidates);
+		if (formats.size() == 0) {
+			PeakabooLog.get().log(Level.WARNING, "Could not determine the data format for batch job " + name);
+			return null;
+		}
+
+		DataSource source = formats.get(0);
+		if (formats.size() > 1) {
+			PeakabooLog.get().log(Level.INFO, "Batch job " + name + " matches several data formats, using " + source.getFileFormat().getFormatName());
+		}
+		if (source.getParameters(paths).isPresent()) {
+			PeakabooLog.get().log(Level.INFO, "Batch job " + name + " is using the default options for " + source.getFileFormat().getFormatName());
+		}
+
+		//keep the loader from using more threads than this job is allowed
+		SimpleScanData.setLoaderThreads(threads);
+		try {
+			source.read(paths);
+		} finally {
+			SimpleScanData.setLoaderThreads(0);
+		}
+		if (source.getScanData() == null || source.getScanData().scanCount() == 0) {
+			PeakabooLog.get().log(Level.WARNING, "Did not find any data for batch job " + name);
+			return null;
+		}
+		return source;
+	}
+
+	/**
+	 * Writes each map to a CSV file named after its transition series, with
+	 * one row of the file per row of the map.
+	 */
+	private static void writeMaps(MapResultSet maps, DataSource source, CalibrationProfile profile, Path directory) throws IOException {
+
+		int size = maps.size();
+		int width = size;
+		if (source.getDataSize().isPresent()) {
+			DataSize dataSize = source.getDataSize().get();
+			Coord<Integer> dimensions = dataSize.getDataDimensions();
+			if (dimensions.x * dimensions.y == size) {
+				width = dimensions.x;
+			}
+		}
+
+		for (MapResult map : maps) {
+			ReadOnlySpectrum data = map.getData(profile);
+			Path file = directory.resolve(map.transitionSeries.toString() + ".csv");
+			try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+				for (int i = 0; i < data.size(); i++) {
+					if (i > 0) {
+						writer.write(i % width == 0 ? "\n" : ", ");
+					}
+					writer.write(Float.toString(data.get(i)));
+				}
+				writer.write("\n");
+			}
+		}
+
+	}
+
+	private static void delete(Path directory) {
+		if (directory == null) return;
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		} catch (IOException e) {
+			PeakabooLog.get().log(Level.WARNING, "Could not delete temporary directory " + directory, e);
+		}
+	}
+
+}
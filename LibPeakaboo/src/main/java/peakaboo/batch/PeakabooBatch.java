@@ -0,0 +1,262 @@
+package peakaboo.batch;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import cyclops.util.StringInput;
+import net.sciencestudio.bolt.plugin.core.AlphaNumericComparitor;
+import net.sciencestudio.bolt.plugin.core.BoltPluginPrototype;
+import peakaboo.calibration.CalibrationPluginManager;
+import peakaboo.common.Env;
+import peakaboo.common.PeakabooLog;
+import peakaboo.common.Version;
+import peakaboo.controller.settings.SavedSession;
+import peakaboo.curvefit.peak.table.PeakTable;
+import peakaboo.datasink.plugin.DataSinkPlugin;
+import peakaboo.datasink.plugin.DataSinkPluginManager;
+import peakaboo.datasource.plugin.DataSourcePluginManager;
+import peakaboo.filter.model.FilterPluginManager;
+
+/**
+ * Command line entry point for mapping data sets without a display, such as on
+ * a compute cluster. Each data set given on the command line is loaded, has a
+ * saved session applied to it, and is mapped by a {@link BatchJob}. Several
+ * jobs can run at once, each limited to its own number of threads, and the
+ * number of jobs running at once can also be limited by how much memory each
+ * one is expected to need.
+ *
+ * @author NAS
+ *
+ */
+public class PeakabooBatch {
+
+	private static final String USAGE =
+			"Usage: PeakabooBatch --session <file.peakaboo> --output <directory> [options] [dataset...]\n" +
+			"\n" +
+			"Each dataset is a file, or a directory containing the files of one data set.\n" +
+			"If no datasets are given, the data set saved in the session is used.\n" +
+			"\n" +
+			"Options:\n" +
+			"  --jobs <n>        the number of data sets to process at once (default 1)\n" +
+			"  --threads <n>     the number of threads each job may use (default all cores / jobs)\n" +
+			"  --memory <MB>     the memory each job is expected to need, limiting how many run at once\n" +
+			"  --sink <name>     also export the raw data with the named Data Sink plugin\n" +
+			"  --plugins <dir>   the directory to load plugins from (default <output>/Plugins)\n";
+
+	private Path session;
+	private Path output;
+	private Path plugins;
+	private String sinkName;
+	private int jobs = 1;
+	private int threads = 0;
+	private long memory = 0;
+	private List<Path> datasets = new ArrayList<>();
+
+
+	public static void main(String[] args) {
+		PeakabooBatch batch = new PeakabooBatch();
+		try {
+			batch.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println();
+			System.err.println(USAGE);
+			System.exit(2);
+		}
+
+		int failed;
+		try {
+			failed = batch.run();
+		} catch (Exception e) {
+			PeakabooLog.get().log(Level.SEVERE, "Batch processing failed", e);
+			failed = 1;
+		}
+		System.exit(failed == 0 ? 0 : 1);
+	}
+
+
+	private void parse(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (!arg.startsWith("--")) {
+				datasets.add(Paths.get(arg));
+				continue;
+			}
+			if (arg.equals("--help")) {
+				throw new IllegalArgumentException("Peakaboo " + Version.longVersionNo);
+			}
+			if (i + 1 >= args.length) {
+				throw new IllegalArgumentException("Missing value for " + arg);
+			}
+			String value = args[++i];
+			switch (arg) {
+			case "--session": session = Paths.get(value); break;
+			case "--output": output = Paths.get(value); break;
+			case "--plugins": plugins = Paths.get(value); break;
+			case "--sink": sinkName = value; break;
+			case "--jobs": jobs = positive(arg, value); break;
+			case "--threads": threads = positive(arg, value); break;
+			case "--memory": memory = positive(arg, value); break;
+			default: throw new IllegalArgumentException("Unknown option " + arg);
+			}
+		}
+
+		if (session == null) throw new IllegalArgumentException("No session given");
+		if (output == null) throw new IllegalArgumentException("No output directory given");
+		if (plugins == null) plugins = output.resolve("Plugins");
+		if (threads == 0) threads = Math.max(1, Runtime.getRuntime().availableProcessors() / jobs);
+	}
+
+	private static int positive(String arg, String value) {
+		try {
+			int number = Integer.parseInt(value);
+			if (number > 0) return number;
+		} catch (NumberFormatException e) {
+			//fall through to the error below
+		}
+		throw new IllegalArgumentException(arg + " must be a positive number");
+	}
+
+
+	/**
+	 * Runs all of the jobs, returning the number which failed
+	 */
+	private int run() throws IOException, InterruptedException {
+
+		Files.createDirectories(output);
+		PeakabooLog.init(output.resolve("Logging").toFile());
+		PeakabooLog.get().log(Level.INFO, "Starting " + Version.longVersionNo + " - " + Version.buildDate + " in batch mode");
+
+		//warm up the peak table, which is lazy
+		PeakTable.SYSTEM.getAll();
+
+		FilterPluginManager.init(plugins.resolve("Filter").toFile());
+		DataSourcePluginManager.init(plugins.resolve("DataSource").toFile());
+		DataSinkPluginManager.init(plugins.resolve("DataSink").toFile());
+		CalibrationPluginManager.init(plugins.resolve("CalibrationReference").toFile());
+
+		String sessionYaml = StringInput.contents(session.toFile());
+		List<BatchJob> batch = createJobs(sessionYaml);
+		if (batch.isEmpty()) {
+			PeakabooLog.get().log(Level.WARNING, "No data sets to process");
+			return 0;
+		}
+
+		//don't start more jobs at once than there is memory for
+		int concurrent = Math.min(jobs, batch.size());
+		if (memory > 0) {
+			long fits = Math.max(1, Env.maxHeap() / memory);
+			if (fits < concurrent) {
+				PeakabooLog.get().log(Level.INFO, "Only " + fits + " jobs fit in " + Env.maxHeap() + "MB of memory");
+				concurrent = (int) fits;
+			}
+		}
+		PeakabooLog.get().log(Level.INFO, "Processing " + batch.size() + " data sets, " + concurrent + " at a time with " + threads + " threads each");
+
+		//each job runs in its own ForkJoinPool, so that the parallel streams it
+		//uses are limited to that job's threads
+		ExecutorService scheduler = Executors.newFixedThreadPool(concurrent);
+		List<Future<Boolean>> results = new ArrayList<>();
+		for (BatchJob job : batch) {
+			results.add(scheduler.submit(() -> {
+				ForkJoinPool pool = new ForkJoinPool(threads);
+				try {
+					return pool.submit(job).get();
+				} finally {
+					pool.shutdown();
+				}
+			}));
+		}
+		scheduler.shutdown();
+
+		int failed = 0;
+		for (int i = 0; i < batch.size(); i++) {
+			boolean succeeded;
+			try {
+				succeeded = results.get(i).get();
+			} catch (ExecutionException e) {
+				PeakabooLog.get().log(Level.SEVERE, "Batch job " + batch.get(i).getName() + " failed", e.getCause());
+				succeeded = false;
+			}
+			if (!succeeded) failed++;
+		}
+
+		PeakabooLog.get().log(failed == 0 ? Level.INFO : Level.WARNING, "Finished " + batch.size() + " data sets, " + failed + " failed");
+		return failed;
+
+	}
+
+	private List<BatchJob> createJobs(String sessionYaml) throws IOException {
+
+		BoltPluginPrototype<? extends DataSinkPlugin> sink = null;
+		if (sinkName != null) {
+			for (BoltPluginPrototype<? extends DataSinkPlugin> plugin : DataSinkPluginManager.SYSTEM.getPlugins().getAll()) {
+				if (plugin.getName().equalsIgnoreCase(sinkName)) {
+					sink = plugin;
+				}
+			}
+			if (sink == null) {
+				throw new IllegalArgumentException("No Data Sink plugin named " + sinkName);
+			}
+		}
+
+		List<List<Path>> dataPaths = new ArrayList<>();
+		if (datasets.isEmpty()) {
+			SavedSession saved = SavedSession.deserialize(sessionYaml);
+			if (saved.data != null && !saved.data.filesAsDataPaths().isEmpty()) {
+				dataPaths.add(saved.data.filesAsDataPaths());
+			}
+		} else {
+			for (Path dataset : datasets) {
+				dataPaths.add(files(dataset));
+			}
+		}
+
+		List<BatchJob> batch = new ArrayList<>();
+		Set<String> names = new HashSet<>();
+		for (List<Path> paths : dataPaths) {
+			if (paths.isEmpty()) continue;
+			String name = paths.size() == 1 ? paths.get(0).getFileName().toString() : paths.get(0).getParent().getFileName().toString();
+			//two data sets with the same name shouldn't write to the same directory
+			String unique = name;
+			for (int i = 2; !names.add(unique); i++) {
+				unique = name + "-" + i;
+			}
+			batch.add(new BatchJob(unique, paths, sessionYaml, output, sink == null ? null : sink.create(), threads));
+		}
+		return batch;
+
+	}
+
+	//a directory is treated as one data set made up of all of the files in it
+	private static List<Path> files(Path dataset) throws IOException {
+		if (!Files.isDirectory(dataset)) {
+			List<Path> paths = new ArrayList<>();
+			paths.add(dataset);
+			return paths;
+		}
+		Comparator<String> comparitor = new AlphaNumericComparitor();
+		try (Stream<Path> files = Files.list(dataset)) {
+			return files
+					.filter(Files::isRegularFile)
+					.sorted((a, b) -> comparitor.compare(a.toString(), b.toString()))
+					.collect(Collectors.toList());
+		}
+	}
+
+}
@@ -10,6 +10,8 @@ import net.sciencestudio.scratch.encoders.serializers.Serializers;
 public class PeakabooConfiguration {
 
 	public static boolean diskstore = true;
+	//data files at least this many bytes are stored in a memory-mapped file by data sources which support it
+	public static long mappedstoreSize = 1L << 30;
 	public static ScratchEncoder<Spectrum> spectrumEncoder = new CompoundEncoder<>(Serializers.fstUnsafe(ISpectrum.class), Compressors.lz4fast());
 
 	
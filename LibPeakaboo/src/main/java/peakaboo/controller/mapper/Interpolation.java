@@ -1,7 +1,7 @@
 package peakaboo.controller.mapper;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.BitSet;
+import java.util.Collection;
 
 import cyclops.GridPerspective;
 import cyclops.ISpectrum;
@@ -81,70 +81,131 @@ public class Interpolation {
 	 * @param list the {@link Spectrum} of data
 	 * @param badPoints the list of indices of bad points
 	 */
-	public static void interpolateBadPoints(GridPerspective<Float> grid, Spectrum list, List<Integer> badPoints)
+	public static void interpolateBadPoints(GridPerspective<Float> grid, Spectrum list, Collection<Integer> badPoints)
 	{
+		BitSet mask = new BitSet();
+		for (int i : badPoints) {
+			mask.set(i);
+		}
+		interpolateBadPoints(grid, list, mask);
+	}
+	
+	/**
+	 * Given a set of data, a definition of its 2D dimensions, and a mask of bad indices, interpolate the data
+	 * to replace the bad indices with approximations based off of neighbouring values. In place.
+	 * <br/><br/>
+	 * Bad points are filled in breadth-first, working inwards from the good points. Each bad point 
+	 * becomes the average of its neighbours which were good or already filled in before the current 
+	 * round, so every point is visited a bounded number of times. Bad points with no good points 
+	 * anywhere around them are set to 0. Bad points outside of the grid are ignored.
+	 * @param grid the {@link GridPerspective} defining the dimensions for the data
+	 * @param list the {@link Spectrum} of data
+	 * @param badPoints the indices of bad points, which is not modified
+	 */
+	public static void interpolateBadPoints(GridPerspective<Float> grid, Spectrum list, BitSet badPoints)
+	{
+		int size = Math.min(grid.width * grid.height, list.size());
+		if (badPoints.nextSetBit(0) < 0 || badPoints.nextSetBit(0) >= size) return;
+		
+		BitSet bad = badPoints.get(0, size);
+		float[] data = list.backingArray();
+		
+		//the first round is every bad point next to a good one
+		int[] round = new int[bad.cardinality()];
+		int roundSize = 0;
+		for (int i = bad.nextSetBit(0); i >= 0; i = bad.nextSetBit(i+1)) {
+			if (hasGoodNeighbour(grid, bad, i)) {
+				round[roundSize++] = i;
+			}
+		}
 		
-		Pair<Integer, Integer> coords;
-		int x, y;
-		float newval;
-		List<Integer> newBadPoints = new ArrayList<Integer>();
-		boolean repeat = false;
-		
-		for (int i : badPoints){
-		
-			coords = grid.getXYFromIndex(i);
-			x = coords.first;
-			y = coords.second;
+		int[] next = new int[round.length];
+		float[] values = new float[round.length];
+		BitSet queued = new BitSet(size);
+		while (roundSize > 0) {
+			
+			//calculate the whole round before marking any of it good
+			for (int j = 0; j < roundSize; j++) {
+				values[j] = averageGoodNeighbours(grid, data, bad, round[j]);
+			}
+			for (int j = 0; j < roundSize; j++) {
+				data[round[j]] = values[j];
+				bad.clear(round[j]);
+			}
 			
-			newval = interpolateBadPoint(grid, list, badPoints, x, y);
-			if (newval == -1) 
-			{
-				repeat = true;
-				newBadPoints.add(i);
+			//the next round is every bad point next to one filled in this round
+			int nextSize = 0;
+			queued.clear();
+			for (int j = 0; j < roundSize; j++) {
+				int i = round[j];
+				int x = i % grid.width;
+				int y = i / grid.width;
+				if (x >= 1)					nextSize = enqueue(i-1, bad, queued, next, nextSize);
+				if (y >= 1)					nextSize = enqueue(i-grid.width, bad, queued, next, nextSize);
+				if (x <= grid.width - 2)	nextSize = enqueue(i+1, bad, queued, next, nextSize);
+				if (y <= grid.height - 2)	nextSize = enqueue(i+grid.width, bad, queued, next, nextSize);
 			}
-			list.set(i, newval);
+			
+			int[] swap = round;
+			round = next;
+			next = swap;
+			roundSize = nextSize;
 			
 		}
 		
-		if (repeat) interpolateBadPoints(grid, list, newBadPoints);
-		
+		//anything left has no good points to interpolate from
+		for (int i = bad.nextSetBit(0); i >= 0; i = bad.nextSetBit(i+1)) {
+			data[i] = 0f;
+		}
 		
 	}
 	
+	private static int enqueue(int index, BitSet bad, BitSet queued, int[] queue, int queueSize) {
+		if (!bad.get(index) || queued.get(index)) return queueSize;
+		queued.set(index);
+		queue[queueSize] = index;
+		return queueSize + 1;
+	}
+	
+	private static boolean hasGoodNeighbour(GridPerspective<Float> grid, BitSet bad, int i) {
+		int x = i % grid.width;
+		int y = i / grid.width;
+		return 	(x >= 1 && !bad.get(i-1)) ||
+				(y >= 1 && !bad.get(i-grid.width)) ||
+				(x <= grid.width - 2 && !bad.get(i+1)) ||
+				(y <= grid.height - 2 && !bad.get(i+grid.width));
+	}
 	
 	/**
-	 * interpolate a single bad point
+	 * interpolate a single bad point from the average of its good neighbours
 	 * @param grid dimensions of data
-	 * @param list Spectrum containing data
-	 * @param badPoints list of bad points
-	 * @param x x coordinate value to replace with interpolation
-	 * @param y y coordinate value to replace with interpolation
+	 * @param data the data
+	 * @param bad mask of bad points
+	 * @param i index of the point to replace with interpolation
 	 * @return a new value for the given point
 	 */
-	private static float interpolateBadPoint(GridPerspective<Float> grid, Spectrum list, List<Integer> badPoints, int x, int y)
+	private static float averageGoodNeighbours(GridPerspective<Float> grid, float[] data, BitSet bad, int i)
 	{
+		int x = i % grid.width;
+		int y = i / grid.width;
 		
 		float total = 0;
 		int count = 0;
 		
-		if (x >= 1 && !badPoints.contains(grid.getIndexFromXY(x-1, y)))
-			{ total += grid.get(list, x-1, y); count += 1; }
+		if (x >= 1 && !bad.get(i-1))
+			{ total += data[i-1]; count += 1; }
 		
-		if (y >= 1 && !badPoints.contains(grid.getIndexFromXY(x, y-1))) 
-			{ total += grid.get(list, x, y-1); count += 1; }
+		if (y >= 1 && !bad.get(i-grid.width)) 
+			{ total += data[i-grid.width]; count += 1; }
 		
 		
-		if (x <= grid.width - 2 && !badPoints.contains(grid.getIndexFromXY(x+1, y))) 
-			{ total += grid.get(list, x+1, y); count += 1; }
+		if (x <= grid.width - 2 && !bad.get(i+1)) 
+			{ total += data[i+1]; count += 1; }
 		
-		if (y <= grid.height- 2 && !badPoints.contains(grid.getIndexFromXY(x, y+1))) 
-			{ total += grid.get(list, x, y+1); count += 1; }
-				
-		if (count > 0)
-			return total / count;
-		else
-			return -1;
+		if (y <= grid.height- 2 && !bad.get(i+grid.width)) 
+			{ total += data[i+grid.width]; count += 1; }
 		
+		return total / count;
 	}
 	
 }
@@ -2,8 +2,6 @@ package peakaboo.controller.mapper;
 
 
 
-import java.util.List;
-
 import cyclops.Coord;
 import eventful.EventfulType;
 import peakaboo.controller.mapper.data.MapSetController;
@@ -18,6 +16,7 @@ import peakaboo.datasource.model.internal.SelectionDataSource;
 import peakaboo.display.map.MapRenderData;
 import peakaboo.display.map.MapRenderSettings;
 import peakaboo.display.map.MapScaleMode;
+import peakaboo.mapping.selection.Selection;
 
 
 public class MappingController extends EventfulType<String>
@@ -73,7 +72,7 @@ public class MappingController extends EventfulType<String>
 		return plotcontroller.data().getDataSourceForSubset(getSettings().getView().getDataWidth(), getSettings().getView().getDataHeight(), cstart, cend);
 	}
 
-	public SelectionDataSource getDataSourceForSubset(List<Integer> points)
+	public SelectionDataSource getDataSourceForSubset(Selection points)
 	{
 		return plotcontroller.data().getDataSourceForSubset(points);
 	}
@@ -169,7 +168,7 @@ public class MappingController extends EventfulType<String>
 			data.ratioData = this.getSettings().getMapFittings().getRatioMapData();
 			break;
 		}
-		data.maxIntensity = this.getSettings().getMapFittings().sumAllTransitionSeriesMaps().max();
+		data.maxIntensity = this.getSettings().getMapFittings().getMaxIntensity();
 		
 		return data;
 		
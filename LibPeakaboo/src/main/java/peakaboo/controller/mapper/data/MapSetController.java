@@ -3,16 +3,19 @@ package peakaboo.controller.mapper.data;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Stream;
 
 import cyclops.Bounds;
 import cyclops.Coord;
-import cyclops.ISpectrum;
 import cyclops.Pair;
 import cyclops.SISize;
 import cyclops.Spectrum;
 import eventful.EventfulType;
 import peakaboo.calibration.CalibrationProfile;
 import peakaboo.controller.mapper.MappingController.UpdateType;
+import peakaboo.filter.kernels.RealFFT;
 import peakaboo.mapping.results.MapResultSet;
 import plural.streams.StreamExecutor;
 
@@ -94,45 +97,135 @@ public class MapSetController extends EventfulType<String>
 	public StreamExecutor<Coord<Integer>> guessDataDimensions() {
 		//We don't need the real calibration profile just to guess the dimensions
 		Spectrum all = mapModel.mapResults.sumAllTransitionSeriesMaps(new CalibrationProfile());
-
+		float[] map = all.backingArrayCopy();
 		
-		//find the highest average edge delta
-		int min = (int) Math.max(Math.sqrt(all.size()) / 15, 2); //don't consider dimensions that are too small
-		List<Integer> widths = new ArrayList<>();
-		for (int x = min; x <= all.size() / min; x++) {
-			widths.add(x);
-		}
+		List<Integer> widths = candidateWidths(map, MAX_WORK);
 		
 		StreamExecutor<Coord<Integer>> executor = new StreamExecutor<>("Evaluating Sizes");
-		executor.setTask(widths, stream -> {
+		executor.setTask(widths, stream -> bestDimensions(map, stream));
+		
+		return executor;
+
+		
+	}
+	
+	/**
+	 * Scores the map at each of the given widths, returning the dimensions with 
+	 * the best score, or null if there are no widths
+	 */
+	static Coord<Integer> bestDimensions(float[] map, Stream<Integer> widths) {
+		
+		//find the lowest average edge delta
+		Optional<Pair<Coord<Integer>, Float>> best = widths.map(x -> {
 			
-			Optional<Pair<Coord<Integer>, Float>> best = stream.map(x -> {
-				
-				float delta;
-				int y;
-				if (all.size() % x == 0) {
-					y = all.size() / x;
-					delta = getDimensionScore(all, x, y);
-				} else {
-					y = (int)Math.ceil(all.size() / (float)x);
-					delta = getDimensionScore(all, x, y); //include the last incomplete row
-				}
-				
-				return new Pair<>(new Coord<>(x, y), delta);
-				
-			}).min((a, b) -> a.second.compareTo(b.second));
+			//include the last incomplete row
+			int y = (map.length + x - 1) / x;
+			float delta = getDimensionScore(map, x, y);
 			
+			return new Pair<>(new Coord<>(x, y), delta);
 			
-			if (best.isPresent()) {
-				return best.get().first;
-			} else {
-				return null;
-			}
+		}).min((a, b) -> {
+			//prefer narrower widths on a tie, regardless of the order they were scored in
+			int compare = a.second.compareTo(b.second);
+			return compare != 0 ? compare : a.first.x.compareTo(b.first.x);
 		});
 		
-		return executor;
-
 		
+		if (best.isPresent()) {
+			return best.get().first;
+		} else {
+			return null;
+		}
+	}
+	
+	
+	//scoring one width takes time proportional to the map's size, so every width 
+	//is only scored when the map is small enough to do it with this much work
+	static final long MAX_WORK = 1L << 25;
+	
+	//the fewest widths to score when there are too many to score them all
+	private static final int MIN_CANDIDATES = 64;
+	
+	/**
+	 * Returns the widths worth scoring. If scoring every width would take more 
+	 * than the given amount of work, only the widths near the strongest peaks in 
+	 * the map's autocorrelation are returned. Rows of the correct width line up 
+	 * with the rows above them, which gives a peak at that width. The 
+	 * autocorrelation at every width is calculated all at once with an FFT.
+	 */
+	static List<Integer> candidateWidths(float[] map, long maxWork) {
+		//don't consider dimensions that are too small
+		int min = (int) Math.max(Math.sqrt(map.length) / 15, 2);
+		int max = map.length / min;
+		
+		List<Integer> widths = new ArrayList<>();
+		long count = Math.max(MIN_CANDIDATES, maxWork / Math.max(1, map.length));
+		if (max - min + 1 <= count) {
+			for (int x = min; x <= max; x++) {
+				widths.add(x);
+			}
+			return widths;
+		}
+		
+		//the neighbours of the strongest lags are usually strong too, so only
+		//the local maxima are ranked
+		double[] correlation = autocorrelation(map);
+		List<Integer> peaks = new ArrayList<>();
+		for (int x = min; x <= max; x++) {
+			if (correlation[x] >= correlation[x-1] && (x+1 == correlation.length || correlation[x] > correlation[x+1])) {
+				peaks.add(x);
+			}
+		}
+		peaks.sort((a, b) -> Double.compare(correlation[b], correlation[a]));
+		
+		//score each peak along with the widths on either side of it
+		Set<Integer> chosen = new TreeSet<>();
+		for (int peak : peaks) {
+			if (chosen.size() + 3 > count) break;
+			for (int x = Math.max(min, peak - 1); x <= Math.min(max, peak + 1); x++) {
+				chosen.add(x);
+			}
+		}
+		widths.addAll(chosen);
+		return widths;
+	}
+	
+	/**
+	 * Calculates the autocorrelation of the map at every lag, normalized by the
+	 * number of points which overlap at that lag
+	 */
+	private static double[] autocorrelation(float[] map) {
+		int n = map.length;
+		int size = 2;
+		while (size < n * 2) size <<= 1;
+		
+		double mean = 0;
+		for (float value : map) {
+			mean += value;
+		}
+		mean /= n;
+		
+		//pad to twice the length so that the correlation doesn't wrap around
+		double[] data = new double[size];
+		for (int i = 0; i < n; i++) {
+			data[i] = map[i] - mean;
+		}
+		
+		RealFFT fft = RealFFT.forSize(size);
+		double[] re = new double[fft.frequencies()];
+		double[] im = new double[fft.frequencies()];
+		fft.forward(data, re, im);
+		for (int i = 0; i < re.length; i++) {
+			re[i] = re[i] * re[i] + im[i] * im[i];
+			im[i] = 0;
+		}
+		fft.inverse(re, im, data);
+		
+		double[] correlation = new double[n];
+		for (int lag = 0; lag < n; lag++) {
+			correlation[lag] = data[lag] / (n - lag);
+		}
+		return correlation;
 	}
 	
 	
@@ -140,55 +233,62 @@ public class MapSetController extends EventfulType<String>
 	//left-hand edge of a map between the end of one row and the start of the 
 	//next. Higher values should indicate the dimensions are correct and the 
 	//two sets of points are not next to each other.
-	private float getDimensionScore(Spectrum map, int width, int height) {
-		return map2dDelta(map2dDelta(map, width, height), width, height).sum();
+	private static float getDimensionScore(float[] map, int width, int height) {
+		float[] deltas = new float[map.length];
+		float[] deltas2 = new float[map.length];
+		map2dDelta(map, deltas, width, height);
+		map2dDelta(deltas, deltas2, width, height);
+		
+		float sum = 0;
+		for (float delta : deltas2) {
+			sum += delta;
+		}
+		return sum;
 	}
 	
-	private Spectrum map2dDelta(Spectrum map, int width, int height) {
-		Spectrum deltas = new ISpectrum(map.size());
+	//writes the average delta between each point and its neighbours into deltas
+	private static void map2dDelta(float[] map, float[] deltas, int width, int height) {
 		float delta = 0;
 		float value = 0;
 		int count = 0;
 		int dind;
 		for (int x = 0; x < width; x++) {
 			for (int y = 0; y < height; y++) {
-				if (y*width+x >= map.size()) break;
-				value = map.get(y*width+x);
+				if (y*width+x >= map.length) break;
+				value = map[y*width+x];
 				count = 0;
 				delta = 0;
 				
 				dind = y*width+(x-1);
 				if (x > 0) {
-					delta += Math.abs(value - map.get(dind));
+					delta += Math.abs(value - map[dind]);
 					count++;
 				}
 				
 				dind = (y-1)*width+x;
 				if (y > 0) {
-					delta += Math.abs(value - map.get(dind));
+					delta += Math.abs(value - map[dind]);
 					count++;
 				}
 
 				dind = y*width+(x+1);
-				if (x < width-1 && dind < map.size()) {
-					delta += Math.abs(value - map.get(dind));
+				if (x < width-1 && dind < map.length) {
+					delta += Math.abs(value - map[dind]);
 					count++;
 				}
 				
 				dind = (y+1)*width+x;
-				if (y < height-1 && dind < map.size()) {
-					delta += Math.abs(value - map.get(dind));
+				if (y < height-1 && dind < map.length) {
+					delta += Math.abs(value - map[dind]);
 					count++;
 				}
 				
 				delta /= (float)count;
-				deltas.set(y*width+x, delta);
+				deltas[y*width+x] = delta;
 
 			}
 		}
 		
-		return deltas;
-		
 	}
 	
 	
@@ -1,15 +1,10 @@
 package peakaboo.controller.mapper.settings;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-
 import cyclops.Coord;
-import cyclops.GridPerspective;
-import cyclops.Range;
 import eventful.EventfulType;
 import peakaboo.controller.mapper.MappingController;
 import peakaboo.controller.mapper.MappingController.UpdateType;
+import peakaboo.mapping.selection.Selection;
 
 /**
  * Represents a box-style selection over an area
@@ -81,34 +76,20 @@ public class AreaSelection extends EventfulType<String> {
 
 	
 	/**
-	 * generate a list of indexes in the map which are selected
+	 * generate the selection of indexes in the map which are selected
 	 */
-	public List<Integer> getPoints() {
+	public Selection getPoints() {
 		trimSelectionToBounds();
-		List<Integer> indexes = new ArrayList<>();
 		
 		if (getStart() == null || getEnd() == null) {
-			return Collections.emptyList();
+			return Selection.NONE;
 		}
 		
-		final int xstart = getStart().x;
-		final int ystart = getStart().y;
-		
-		final int xend = getEnd().x;
-		final int yend = getEnd().y;
-
-		final GridPerspective<Float> grid = new GridPerspective<Float>(
+		return Selection.rectangle(
 				map.getSettings().getView().getDataWidth(), 
-				map.getSettings().getView().getDataHeight(), 
-				0f);
-		
-		for (int x : new Range(xstart, xend)) {
-			for (int y : new Range(ystart, yend)){
-				indexes.add( grid.getIndexFromXY(x, y) );
-			}
-		}
-		
-		return indexes;
+				getStart().x, getStart().y, 
+				getEnd().x, getEnd().y
+			);
 	}
 	
 	
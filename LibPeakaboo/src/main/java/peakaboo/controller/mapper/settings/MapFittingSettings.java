@@ -21,6 +21,7 @@ import cyclops.Ratios;
 import cyclops.SigDigits;
 import cyclops.Spectrum;
 import cyclops.SpectrumCalculations;
+import eventful.EventfulCache;
 import eventful.EventfulType;
 import peakaboo.calibration.CalibrationProfile;
 import peakaboo.controller.mapper.Interpolation;
@@ -51,6 +52,23 @@ public class MapFittingSettings extends EventfulType<String> {
 	private boolean logView;
 	
 	
+	/*
+	 * Map data is calculated in stages (sum -> bad point fix -> interpolation ->
+	 * scale), and each stage is cached until one of the settings it depends on
+	 * changes, so that redrawing an unchanged map doesn't calculate it again.
+	 * Invalidating a stage also invalidates the stages downstream of it. Cached
+	 * spectra are shared, and must not be modified.
+	 */
+	private EventfulCache<Spectrum> compositeSum, compositeFixed, compositeInterpolated;
+	private EventfulCache<Map<OverlayColour, OverlayChannel>> overlaySums, overlayInterpolated, overlayScaled;
+	private EventfulCache<Pair<Spectrum, Spectrum>> ratioSums, ratioValues, ratioInterpolated;
+	private EventfulCache<Spectrum> ratioFixed;
+	private EventfulCache<Float> maxIntensity;
+	
+	//the view settings the cached stages were calculated with
+	private int cachedWidth = -1, cachedHeight = -1, cachedInterpolation = -1;
+	
+	
 	public MapFittingSettings(MappingController map){
 		this.map = map;
 		
@@ -67,6 +85,77 @@ public class MapFittingSettings extends EventfulType<String> {
 			visibility.put(ts, true);
 		}
 		
+		
+		compositeSum = new EventfulCache<>(this::sumVisibleTransitionSeriesMaps);
+		compositeFixed = new EventfulCache<>(() -> fixBadPoints(compositeSum.getValue()));
+		compositeFixed.addUpstreamDependency(compositeSum);
+		compositeInterpolated = new EventfulCache<>(() -> interpolate(compositeFixed.getValue()));
+		compositeInterpolated.addUpstreamDependency(compositeFixed);
+		
+		overlaySums = new EventfulCache<>(this::sumOverlayColours);
+		overlayInterpolated = new EventfulCache<>(() -> {
+			Map<OverlayColour, OverlayChannel> interpolated = new HashMap<>();
+			for (Map.Entry<OverlayColour, OverlayChannel> entry : overlaySums.getValue().entrySet()) {
+				OverlayChannel channel = entry.getValue();
+				interpolated.put(entry.getKey(), new OverlayChannel(channel.data == null ? null : interpolate(channel.data), channel.elements));
+			}
+			return interpolated;
+		});
+		overlayInterpolated.addUpstreamDependency(overlaySums);
+		overlayScaled = new EventfulCache<>(() -> {
+			if (this.mapScaleMode != MapScaleMode.RELATIVE) {
+				return overlayInterpolated.getValue();
+			}
+			Map<OverlayColour, OverlayChannel> scaled = new HashMap<>();
+			for (Map.Entry<OverlayColour, OverlayChannel> entry : overlayInterpolated.getValue().entrySet()) {
+				OverlayChannel channel = entry.getValue();
+				scaled.put(entry.getKey(), new OverlayChannel(channel.data == null ? null : normalized(channel.data), channel.elements));
+			}
+			return scaled;
+		});
+		overlayScaled.addUpstreamDependency(overlayInterpolated);
+		
+		ratioSums = new EventfulCache<>(() -> new Pair<>(
+				sumGivenTransitionSeriesMaps(getTransitionSeriesForRatioSide(1)), 
+				sumGivenTransitionSeriesMaps(getTransitionSeriesForRatioSide(2))
+			));
+		ratioFixed = new EventfulCache<>(this::calculateRatios);
+		ratioFixed.addUpstreamDependency(ratioSums);
+		ratioValues = new EventfulCache<>(() -> invalidRatios(new ISpectrum(ratioFixed.getValue())));
+		ratioValues.addUpstreamDependency(ratioFixed);
+		ratioInterpolated = new EventfulCache<>(() -> invalidRatios(interpolate(ratioFixed.getValue())));
+		ratioInterpolated.addUpstreamDependency(ratioFixed);
+		
+		maxIntensity = new EventfulCache<>(() -> sumAllTransitionSeriesMaps().max());
+		
+		//new map data or calibration means starting over
+		map.mapsController.addListener(type -> invalidateSums());
+		
+	}
+	
+	private void invalidateSums() {
+		compositeSum.invalidate();
+		overlaySums.invalidate();
+		ratioSums.invalidate();
+		maxIntensity.invalidate();
+	}
+	
+	//invalidates the stages which depend on the map's dimensions or interpolation if they've changed
+	private synchronized void checkView() {
+		MapViewSettings view = map.getSettings().getView();
+		if (view.getDataWidth() != cachedWidth || view.getDataHeight() != cachedHeight) {
+			cachedWidth = view.getDataWidth();
+			cachedHeight = view.getDataHeight();
+			compositeFixed.invalidate();
+			overlayInterpolated.invalidate();
+			ratioFixed.invalidate();
+		}
+		if (view.getInterpolation() != cachedInterpolation) {
+			cachedInterpolation = view.getInterpolation();
+			compositeInterpolated.invalidate();
+			overlayInterpolated.invalidate();
+			ratioInterpolated.invalidate();
+		}
 	}
 	
 	
@@ -80,6 +169,8 @@ public class MapFittingSettings extends EventfulType<String> {
 	public void setMapScaleMode(MapScaleMode mode)
 	{
 		this.mapScaleMode = mode;
+		overlayScaled.invalidate();
+		ratioFixed.invalidate();
 		updateListeners(UpdateType.UI_OPTIONS.toString());
 	}
 
@@ -125,200 +216,96 @@ public class MapFittingSettings extends EventfulType<String> {
 		return getCompositeMapData(Optional.empty());
 	}
 	
-	public Spectrum getCompositeMapData(Optional<ITransitionSeries> fitting)
+	/**
+	 * Returns the composite map of the given {@link ITransitionSeries}, or of
+	 * all visible ones if none is given, with bad points fixed and
+	 * interpolated. The composite of all visible ones is cached, and must not be
+	 * modified.
+	 */
+	public synchronized Spectrum getCompositeMapData(Optional<ITransitionSeries> fitting)
 	{
 		
-		Spectrum data;
+		Spectrum data, interpolated;
 		if (fitting.isPresent()) {
-			data = getMapForTransitionSeries(fitting.get());
+			data = fixBadPoints(getMapForTransitionSeries(fitting.get()));
+			interpolated = interpolate(data);
 		} else {
-			data = sumVisibleTransitionSeriesMaps();
+			checkView();
+			data = compositeFixed.getValue();
+			interpolated = compositeInterpolated.getValue();
 		}
 		
-		GridPerspective<Float>	grid	= new GridPerspective<Float>(
-				map.getSettings().getView().getDataWidth(),
-				map.getSettings().getView().getDataHeight(),
-				0.0f);
-		
-		// fix bad points on the map
-		Interpolation.interpolateBadPoints(grid, data, map.mapsController.getBadPoints());
-		
-		// interpolation of data
-		Pair<GridPerspective<Float>, Spectrum> interpolationResult = interpolate(data, grid, map.getSettings().getView().getInterpolation());
-
-		
-		//map.mapsController.interpolatedSize.x = interpolationResult.first.width;
-		//mapModel.interpolatedSize.y = interpolationResult.first.height;
-		
-		//data = mapdata;
 		putValueFunctionForComposite(data);
-		return interpolationResult.second;
-		
+		return interpolated;
 		
 	}
 	
 	
 
-	public Map<OverlayColour, OverlayChannel> getOverlayMapData()
+	/**
+	 * Returns the interpolated, and possibly scaled, overlay maps for each
+	 * colour. This is cached, and must not be modified.
+	 */
+	public synchronized Map<OverlayColour, OverlayChannel> getOverlayMapData()
 	{
+		checkView();
 		
-		GridPerspective<Float>	grid	= new GridPerspective<Float>(
-				map.getSettings().getView().getDataWidth(),
-				map.getSettings().getView().getDataHeight(),
-				0.0f);
-		
-		
-		List<Pair<ITransitionSeries, Spectrum>> dataset = getVisibleTransitionSeries().stream()
-				.map(ts -> new Pair<>(ts, getMapForTransitionSeries(ts)))
-				.collect(toList());
-				
-
-		Spectrum redSpectrum = null, greenSpectrum = null, blueSpectrum = null, yellowSpectrum = null;
-		Map<OverlayColour, Spectrum> uninterpolatedColours = new HashMap<OverlayColour, Spectrum>();
-		
-		//get the TSs for this colour, and get their combined spectrum
-		List<Spectrum> redSpectrums = dataset.stream()
-				.filter(e -> (this.overlayColour.get(e.first) == OverlayColour.RED))
-				.map(e -> e.second)
-				.collect(toList());
-
-		List<ITransitionSeries> redTS = dataset.stream()
-				.filter(e -> (this.overlayColour.get(e.first) == OverlayColour.RED))
-				.map(e -> e.first)
-				.collect(toList());
-		
-		if (redSpectrums != null && redSpectrums.size() > 0) {
-			redSpectrum = redSpectrums.stream().reduce((a, b) -> SpectrumCalculations.addLists(a, b)).get();
-			
-			uninterpolatedColours.put(OverlayColour.RED, redSpectrum);
-			Pair<GridPerspective<Float>, Spectrum> interpolationResult = interpolate(redSpectrum, grid, map.getSettings().getView().getInterpolation());
-			redSpectrum = interpolationResult.second;
-			//mapModel.interpolatedSize.x = interpolationResult.first.width;
-			//mapModel.interpolatedSize.y = interpolationResult.first.height;
-			
-			
-		} else {
-			redSpectrum = null;
-		}
-			
-		
-		//get the TSs for this colour, and get their combined spectrum
-		List<Spectrum> greenSpectrums = dataset.stream()
-				.filter(e -> (this.overlayColour.get(e.first) == OverlayColour.GREEN))
-				.map(e -> e.second)
-				.collect(toList());
-		
-		List<ITransitionSeries> greendTS = dataset.stream()
-				.filter(e -> (this.overlayColour.get(e.first) == OverlayColour.GREEN))
-				.map(e -> e.first)
-				.collect(toList());
-		
-		if (greenSpectrums != null && greenSpectrums.size() > 0){
-			greenSpectrum = greenSpectrums.stream().reduce((a, b) -> SpectrumCalculations.addLists(a, b)).get();
-			
-			uninterpolatedColours.put(OverlayColour.GREEN, greenSpectrum);
-			Pair<GridPerspective<Float>, Spectrum> interpolationResult = interpolate(greenSpectrum, grid, map.getSettings().getView().getInterpolation());
-			greenSpectrum = interpolationResult.second;
-			//mapModel.interpolatedSize.x = interpolationResult.first.width;
-			//mapModel.interpolatedSize.y = interpolationResult.first.height;
-			
-		} else {
-			greenSpectrum = null;
-		}
-
-
-			
-		//get the TSs for this colour, and get their combined spectrum
-		List<Spectrum> blueSpectrums = dataset.stream()
-				.filter(e -> this.overlayColour.get(e.first) == OverlayColour.BLUE)
-				.map(e -> e.second)
-				.collect(toList());
-		
-		List<ITransitionSeries> blueTS = dataset.stream()
-				.filter(e -> (this.overlayColour.get(e.first) == OverlayColour.BLUE))
-				.map(e -> e.first)
-				.collect(toList());
-		
-		if (blueSpectrums != null && blueSpectrums.size() > 0) {
-			blueSpectrum = blueSpectrums.stream().reduce((a, b) -> SpectrumCalculations.addLists(a, b)).get();
-			
-			uninterpolatedColours.put(OverlayColour.BLUE, blueSpectrum);
-			Pair<GridPerspective<Float>, Spectrum> interpolationResult = interpolate(blueSpectrum, grid, map.getSettings().getView().getInterpolation());
-			blueSpectrum = interpolationResult.second;
-			//mapModel.interpolatedSize.x = interpolationResult.first.width;
-			//mapModel.interpolatedSize.y = interpolationResult.first.height;
-					
-		} else {
-			blueSpectrum = null;
+		Map<OverlayColour, Spectrum> uninterpolatedColours = new HashMap<>();
+		for (Map.Entry<OverlayColour, OverlayChannel> entry : overlaySums.getValue().entrySet()) {
+			if (entry.getValue().data != null) {
+				uninterpolatedColours.put(entry.getKey(), entry.getValue().data);
+			}
 		}
+		putValueFunctionForOverlay(uninterpolatedColours);
 		
+		return overlayScaled.getValue();
+	}
+	
+	//get the TSs for each colour, and their combined spectrum
+	private Map<OverlayColour, OverlayChannel> sumOverlayColours() {
 		
-		
-		
-		//get the TSs for this colour, and get their combined spectrum
-		List<Spectrum> yellowSpectrums = dataset.stream()
-				.filter(e -> this.overlayColour.get(e.first) == OverlayColour.YELLOW)
-				.map(e -> e.second)
-				.collect(toList());
-		
-		List<ITransitionSeries> yellowTS = dataset.stream()
-				.filter(e -> (this.overlayColour.get(e.first) == OverlayColour.YELLOW))
-				.map(e -> e.first)
-				.collect(toList());
-		
-		if (yellowSpectrums != null && yellowSpectrums.size() > 0) {
-			yellowSpectrum = yellowSpectrums.stream().reduce((a, b) -> SpectrumCalculations.addLists(a, b)).get();
+		List<ITransitionSeries> visible = getVisibleTransitionSeries();
+		Map<OverlayColour, OverlayChannel> colours = new HashMap<>();
+		for (OverlayColour colour : OverlayColour.values()) {
+			List<ITransitionSeries> tss = visible.stream()
+					.filter(ts -> this.overlayColour.get(ts) == colour)
+					.collect(toList());
 			
-			uninterpolatedColours.put(OverlayColour.YELLOW, yellowSpectrum);
-			Pair<GridPerspective<Float>, Spectrum> interpolationResult = interpolate(yellowSpectrum, grid, map.getSettings().getView().getInterpolation());
-			yellowSpectrum = interpolationResult.second;
-			//mapModel.interpolatedSize.x = interpolationResult.first.width;
-			//mapModel.interpolatedSize.y = interpolationResult.first.height;
-					
-		} else {
-			yellowSpectrum = null;
-		}
+			Spectrum sum = tss.stream()
+					.map(this::getMapForTransitionSeries)
+					.reduce((a, b) -> SpectrumCalculations.addLists(a, b))
+					.orElse(null);
 			
-		
-		
-		if (this.mapScaleMode == MapScaleMode.RELATIVE)
-		{
-			if (redSpectrum != null ) SpectrumCalculations.normalize_inplace(redSpectrum);
-			if (greenSpectrum != null ) SpectrumCalculations.normalize_inplace(greenSpectrum);
-			if (blueSpectrum != null ) SpectrumCalculations.normalize_inplace(blueSpectrum);
-			if (yellowSpectrum != null ) SpectrumCalculations.normalize_inplace(yellowSpectrum);
+			colours.put(colour, new OverlayChannel(sum, tss));
 		}
-		
-		Map<OverlayColour, OverlayChannel> colours = new HashMap<>();
-		
-		colours.put(OverlayColour.RED, new OverlayChannel(redSpectrum, redTS));
-		colours.put(OverlayColour.GREEN, new OverlayChannel(greenSpectrum, greendTS));
-		colours.put(OverlayColour.BLUE, new OverlayChannel(blueSpectrum, blueTS));
-		colours.put(OverlayColour.YELLOW, new OverlayChannel(yellowSpectrum, yellowTS));
-		
-		putValueFunctionForOverlay(uninterpolatedColours);
 		return colours;
 		
 	}
 	
 	
 
-	public Pair<Spectrum, Spectrum> getRatioMapData()
+	/**
+	 * Returns the interpolated ratio map, along with a map marking its invalid
+	 * points. This is cached, and must not be modified.
+	 */
+	public synchronized Pair<Spectrum, Spectrum> getRatioMapData()
 	{
-
-		// get transition series on ratio side 1
-		List<ITransitionSeries> side1 = getTransitionSeriesForRatioSide(1);
-		// get transition series on ratio side 2
-		List<ITransitionSeries> side2 = getTransitionSeriesForRatioSide(2);
+		checkView();
+		putValueFunctionForRatio(ratioValues.getValue());
+		return ratioInterpolated.getValue();
+	}
+	
+	//calculates the log ratios of the two sides, with NaN for invalid points, and fixes bad points
+	private Spectrum calculateRatios() {
 		
 		// sum all of the maps for the given transition series for each side
-		Spectrum side1Data = sumGivenTransitionSeriesMaps(side1);
-		Spectrum side2Data = sumGivenTransitionSeriesMaps(side2);
+		Spectrum side1Data = ratioSums.getValue().first;
+		Spectrum side2Data = ratioSums.getValue().second;
 		
 		if (this.mapScaleMode == MapScaleMode.RELATIVE)
 		{
-			SpectrumCalculations.normalize_inplace(side1Data);
-			SpectrumCalculations.normalize_inplace(side2Data);
+			side1Data = normalized(side1Data);
+			side2Data = normalized(side2Data);
 		}
 				
 		Spectrum ratioData = new ISpectrum(side1Data.size());
@@ -350,49 +337,23 @@ public class MapFittingSettings extends EventfulType<String> {
 			ratioData.set(i, value);
 		}
 		
-		
-		GridPerspective<Float>	grid	= new GridPerspective<Float>(
-				map.getSettings().getView().getDataWidth(),
-				map.getSettings().getView().getDataHeight(),
-				0.0f);
-		
 		// fix bad points on the map
-		Interpolation.interpolateBadPoints(grid, ratioData, map.mapsController.getBadPoints());
+		return fixBadPoints(ratioData);
 		
+	}
 	
-		Spectrum mapdata;
-		
-		Pair<GridPerspective<Float>, Spectrum> interpolationResult = interpolate(ratioData, grid, map.getSettings().getView().getInterpolation());
-		mapdata = interpolationResult.second;
-		//mapModel.interpolatedSize.x = interpolationResult.first.width;
-		//mapModel.interpolatedSize.y = interpolationResult.first.height;
-		
-		Spectrum invalidPoints = new ISpectrum(ratioData.size(), 0f);
-		for (int i = 0; i < ratioData.size(); i++)
+	//replaces NaN values with 0, returning the data and a map of where the NaN values were
+	private static Pair<Spectrum, Spectrum> invalidRatios(Spectrum data) {
+		Spectrum invalidPoints = new ISpectrum(data.size(), 0f);
+		for (int i = 0; i < data.size(); i++)
 		{
-			if (  Float.isNaN(ratioData.get(i))  )
+			if (  Float.isNaN(data.get(i))  )
 			{
 				invalidPoints.set(i, 1f);
-				ratioData.set(i, 0f);
+				data.set(i, 0f);
 			}
 		}
-		
-		Spectrum invalidPointsInterpolated = new ISpectrum(mapdata.size(), 0f);
-		for (int i = 0; i < mapdata.size(); i++)
-		{
-			if (  Float.isNaN(mapdata.get(i))  )
-			{
-				invalidPointsInterpolated.set(i, 1f);
-				mapdata.set(i, 0f);
-			}
-		}
-				
-		putValueFunctionForRatio(new Pair<Spectrum, Spectrum>(ratioData, invalidPoints));
-		
-		
-		return new Pair<Spectrum, Spectrum>(mapdata, invalidPointsInterpolated);
-
-		
+		return new Pair<Spectrum, Spectrum>(data, invalidPoints);
 	}
 	
 	
@@ -454,6 +415,32 @@ public class MapFittingSettings extends EventfulType<String> {
 	
 
 	
+	private GridPerspective<Float> getGrid() {
+		return new GridPerspective<Float>(
+				map.getSettings().getView().getDataWidth(),
+				map.getSettings().getView().getDataHeight(),
+				0.0f);
+	}
+	
+	//returns a copy of the data with the bad points on the map fixed
+	private Spectrum fixBadPoints(Spectrum data) {
+		Spectrum fixed = new ISpectrum(data);
+		Interpolation.interpolateBadPoints(getGrid(), fixed, map.mapsController.getBadPoints());
+		return fixed;
+	}
+	
+	//returns a normalized copy of the data
+	private static Spectrum normalized(Spectrum data) {
+		Spectrum normalized = new ISpectrum(data);
+		SpectrumCalculations.normalize_inplace(normalized);
+		return normalized;
+	}
+	
+	//returns an interpolated copy of the data
+	private Spectrum interpolate(Spectrum data) {
+		return interpolate(data, getGrid(), map.getSettings().getView().getInterpolation()).second;
+	}
+	
 	private Pair<GridPerspective<Float>, Spectrum> interpolate(Spectrum data, GridPerspective<Float> grid, int passes)
 	{
 		
@@ -624,6 +611,13 @@ public class MapFittingSettings extends EventfulType<String> {
 	{		
 		return map.mapsController.getMapResultSet().sumGivenTransitionSeriesMaps(this.visibility.keySet(), getCalibrationProfile());
 	}
+	
+	/**
+	 * Returns the highest intensity in the sum of all maps
+	 */
+	public float getMaxIntensity() {
+		return maxIntensity.getValue();
+	}
 
 
 
@@ -649,6 +643,7 @@ public class MapFittingSettings extends EventfulType<String> {
 	public void setOverlayColour(ITransitionSeries ts, OverlayColour c)
 	{
 		this.overlayColour.put(ts, c);
+		overlaySums.invalidate();
 		updateListeners(UpdateType.DATA_OPTIONS.toString());
 	}
 	
@@ -669,6 +664,7 @@ public class MapFittingSettings extends EventfulType<String> {
 	public void setRatioSide(ITransitionSeries ts, int side)
 	{
 		this.ratioSide.put(ts, side);
+		ratioSums.invalidate();
 		updateListeners(UpdateType.DATA_OPTIONS.toString());
 	}
 	
@@ -684,6 +680,9 @@ public class MapFittingSettings extends EventfulType<String> {
 	public synchronized void setTransitionSeriesVisibility(ITransitionSeries ts, boolean visible)
 	{
 		this.visibility.put(ts, visible);
+		compositeSum.invalidate();
+		overlaySums.invalidate();
+		ratioSums.invalidate();
 		updateListeners(UpdateType.DATA_OPTIONS.toString());
 	}
 
@@ -1,19 +1,17 @@
 package peakaboo.controller.mapper.settings;
 
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.BitSet;
 
 import cyclops.Coord;
 import cyclops.GridPerspective;
+import cyclops.ISpectrum;
 import cyclops.Pair;
-import cyclops.Range;
 import cyclops.Spectrum;
 import eventful.EventfulType;
 import peakaboo.controller.mapper.MappingController;
 import peakaboo.controller.mapper.MappingController.UpdateType;
 import peakaboo.display.map.modes.MapDisplayMode;
+import peakaboo.mapping.selection.Selection;
 
 /**
  * Represents a selection of points, which may not be contiguous 
@@ -23,7 +21,7 @@ import peakaboo.display.map.modes.MapDisplayMode;
 
 public class PointsSelection extends EventfulType<String>{
 
-	private List<Integer> indexes = new ArrayList<>();
+	private Selection indexes = Selection.NONE;
 	private MappingController map;
 	
 	
@@ -39,18 +37,18 @@ public class PointsSelection extends EventfulType<String>{
 	}
 	
 	public boolean hasSelection() {
-		return indexes.size() > 0 && !isInterpolated();
+		return !indexes.isEmpty() && !isInterpolated();
 	}
 	
 	public void clearSelection() {
-		setPoints(new ArrayList<>());
+		setPoints(Selection.NONE);
 	}
 	
-	public List<Integer> getPoints() {
+	public Selection getPoints() {
 		return indexes;
 	}
 
-	public void setPoints(List<Integer> indexes) {
+	public void setPoints(Selection indexes) {
 		this.indexes = indexes;
 		updateListeners(UpdateType.POINT_SELECTION.toString());
 	}
@@ -80,7 +78,7 @@ public class PointsSelection extends EventfulType<String>{
 				
 		MapDisplayMode displayMode = map.getSettings().getMapFittings().getMapDisplayMode();
 		Spectrum data = null;
-		List<Integer> invalid = new ArrayList<>();
+		BitSet invalid = new BitSet();
 		
 		if (displayMode == MapDisplayMode.COMPOSITE) {
 			data = map.getSettings().getMapFittings().getCompositeMapData();
@@ -90,7 +88,7 @@ public class PointsSelection extends EventfulType<String>{
 			Spectrum invalidMap = ratiodata.second;
 			for (int i = 0; i < invalidMap.size(); i++) {
 				if (invalidMap.get(i) > 0f) {
-					invalid.add(i);
+					invalid.set(i);
 				}
 			}
 		}
@@ -104,6 +102,8 @@ public class PointsSelection extends EventfulType<String>{
 		//If we're selecting on a ratio map, and the selected point is 1:10 instead of 10:1,
 		//it will be represented as a negative number. We flip it here for convenience
 		if (displayMode == MapDisplayMode.RATIO && value < 0f) {
+			//the map data is shared with the map view, so flip a copy
+			data = new ISpectrum(data);
 			for (int i = 0; i < data.size(); i++) {
 				data.set(i, -data.get(i));
 			}
@@ -111,46 +111,48 @@ public class PointsSelection extends EventfulType<String>{
 		}
 		
 		
-		List<Integer> points = new ArrayList<>();
+		BitSet points = new BitSet();
 		if (! contiguous) {
 			//All points, even those not touching
-			for (int y : new Range(0, h-1)) {
-				for (int x : new Range(0, w-1)) {
+			for (int y = 0; y < h; y++) {
+				for (int x = 0; x < w; x++) {
 					float other = grid.get(data, x, y);
 					// match +/- threshold percent
 					float otherMin = other / threshold;
 					float otherMax = other * threshold;
 					if (value >= otherMin && value <= otherMax) {
-						points.add(grid.getIndexFromXY(x, y));
+						points.set(grid.getIndexFromXY(x, y));
 					}
 				}
 			}
 		} else {
-			Set<Integer> pointSet = new HashSet<>();
+			//flood fill outwards from the clicked point, visiting each point once
+			int[] queue = new int[w * h];
+			int queued = 0;
 			int point = grid.getIndexFromXY(clickedAt.x, clickedAt.y);
-			points.add(point);
-			pointSet.add(point);
+			queue[queued++] = point;
+			points.set(point);
 			int cursor = 0;
-			while (cursor < points.size()) {
-				point = points.get(cursor);
+			while (cursor < queued) {
+				point = queue[cursor];
 				int x, y;
 				
 				int[] neighbours = new int[] {grid.north(point), grid.south(point), grid.east(point), grid.west(point)};
 				for (int neighbour : neighbours) {
 					//out-of-bounds, re-tread checks
 					if (neighbour == -1) continue;
-					if (pointSet.contains(neighbour)) continue;
+					if (points.get(neighbour)) continue;
 					
-					x = grid.getXYFromIndex(neighbour).first;
-					y = grid.getXYFromIndex(neighbour).second;
+					x = neighbour % w;
+					y = neighbour / w;
 					
 					float other = grid.get(data, x, y);
 					// match * or / threshold percent (eg threshold=1.2 so (other/1.2, other*1.2) 
 					float otherMin = other / threshold;
 					float otherMax = other * threshold;
 					if (value >= otherMin && value <= otherMax) {
-						points.add(neighbour);
-						pointSet.add(neighbour);
+						queue[queued++] = neighbour;
+						points.set(neighbour);
 					}
 				}
 
@@ -160,8 +162,9 @@ public class PointsSelection extends EventfulType<String>{
 			
 		}
 		
+		Selection selection = Selection.of(points);
 		for (int i = 0; i < padding; i++) {
-			points = padSelection(points);
+			selection = selection.dilate(w, h);
 		}
 		
 		
@@ -169,49 +172,17 @@ public class PointsSelection extends EventfulType<String>{
 		if (modify && getPoints().contains(clickedAtIndex))	{
 			//if we're in modify selection mode, and the user clicked on an already 
 			//selected point, then we remove these points from the previous selection
-			List<Integer> merged = new ArrayList<>(getPoints());
-			merged.removeAll(points);
-			setPoints(merged);
+			setPoints(getPoints().difference(selection));
 		} else if (modify) {
 			//if we're in modify selection mode and the user clicked on a point not
 			//already selected, then we add these points to the previous selection
-			//use a set to ensure uniqueness
-			Set<Integer> merged = new HashSet<>(getPoints());
-			merged.addAll(points);
-			setPoints(new ArrayList<>(merged));
+			setPoints(getPoints().union(selection));
 		} else {
 			//we're not in modify mode, so we just set the selection to the current value
-			setPoints(points);	
+			setPoints(selection);	
 		}
 		
 		
 	}
 	
-	private List<Integer> padSelection(List<Integer> points) {
-		Set<Integer> pointSet = new HashSet<>();
-		pointSet.addAll(points);
-	
-		int w = map.getSettings().getView().getDataWidth();
-		int h = map.getSettings().getView().getDataHeight();
-		GridPerspective<Float> grid = new GridPerspective<Float>(w, h, null);
-		
-		//visit all existing points
-		for (Integer point : points) {
-			
-			int[] neighbours = new int[] {grid.north(point), grid.south(point), grid.east(point), grid.west(point)};
-			for (int neighbour : neighbours) {
-				//out-of-bounds, re-tread checks
-				if (neighbour == -1) continue;
-				if (pointSet.contains(neighbour)) continue;
-
-				pointSet.add(neighbour);
-				
-			}
-		}
-		
-		return new ArrayList<>(pointSet);
-		
-		
-	}
-	
 }
@@ -2,6 +2,7 @@ package peakaboo.controller.plotter;
 
 import java.io.File;
 import java.util.Map;
+import java.util.Optional;
 
 import cyclops.ReadOnlySpectrum;
 import eventful.EventfulType;
@@ -13,8 +14,10 @@ import peakaboo.controller.plotter.undo.UndoController;
 import peakaboo.controller.plotter.view.ChannelCompositeMode;
 import peakaboo.controller.plotter.view.ViewController;
 import peakaboo.controller.settings.SavedSession;
+import peakaboo.dataset.DataSet;
 import peakaboo.display.plot.PlotData;
 import peakaboo.filter.model.Filter;
+import peakaboo.mapping.StreamingMapper;
 import peakaboo.mapping.results.MapResultSet;
 import plural.streams.StreamExecutor;
 
@@ -38,6 +41,10 @@ public class PlotController extends EventfulType<String>
 	private CalibrationController			calibrationController;
 
 	private File configDir;
+	
+	//maps made while the current data set was loading, and the data set they were made for
+	private StreamingMapper streamedMapper;
+	private DataSet streamedDataSet;
 
 	public static enum UpdateType
 	{
@@ -204,6 +211,7 @@ public class PlotController extends EventfulType<String>
 	public StreamExecutor<MapResultSet> getMapTask() {
 		return dataController.getMapTask(
 				filteringController.getActiveFilters(), 
+				filteringController.getFilteredScanCache(), 
 				fittingController.getFittingSelections(), 
 				fittingController.getCurveFitter(), 
 				fittingController.getFittingSolver()
@@ -211,6 +219,55 @@ public class PlotController extends EventfulType<String>
 	}
 	
 	
+	/**
+	 * Returns a new {@link StreamingMapper} which will build maps based on the 
+	 * user's current selections as scans are given to it.
+	 * @param refreshInterval the minimum time in milliseconds between updates from the mapper
+	 */
+	public StreamingMapper getStreamingMapper(long refreshInterval) {
+		return new StreamingMapper(
+				filteringController.getActiveFilters(), 
+				fittingController.getFittingSelections(), 
+				fittingController.getCurveFitter(), 
+				fittingController.getFittingSolver(),
+				refreshInterval
+			);
+	}
+	
+	/**
+	 * Keeps the maps made by the given {@link StreamingMapper} while the current 
+	 * data set was loading, so that they can be shown without mapping the data 
+	 * set again. Passing null discards any kept maps.
+	 */
+	public synchronized void setStreamedMaps(StreamingMapper mapper) {
+		streamedMapper = mapper;
+		streamedDataSet = mapper == null ? null : dataController.getDataSet();
+	}
+	
+	/**
+	 * Returns the maps made while the current data set was loading, if they are 
+	 * the same as the maps {@link #getMapTask()} would make now. Loading a data 
+	 * set recalibrates the fittings for it, so these maps are discarded if the 
+	 * energy calibration, channel count, or anything else they were made with 
+	 * has changed.
+	 */
+	public synchronized Optional<MapResultSet> getStreamedMaps() {
+		if (streamedMapper == null) return Optional.empty();
+		
+		boolean current = streamedDataSet == dataController.getDataSet() && streamedMapper.matches(
+				filteringController.getActiveFilters(), 
+				fittingController.getFittingSelections(), 
+				fittingController.getCurveFitter(), 
+				fittingController.getFittingSolver()
+			);
+		if (!current) {
+			setStreamedMaps(null);
+			return Optional.empty();
+		}
+		return streamedMapper.getResult();
+	}
+	
+	
 	public DataController data()
 	{
 		return dataController;
@@ -25,8 +25,11 @@ import peakaboo.datasource.model.DataSource;
 import peakaboo.datasource.model.internal.CroppedDataSource;
 import peakaboo.datasource.model.internal.SelectionDataSource;
 import peakaboo.filter.model.FilterSet;
+import peakaboo.filter.model.FilteredScanCache;
 import peakaboo.mapping.Mapping;
+import peakaboo.mapping.StreamingMapper;
 import peakaboo.mapping.results.MapResultSet;
+import peakaboo.mapping.selection.Selection;
 import plural.executor.DummyExecutor;
 import plural.executor.ExecutorSet;
 import plural.streams.StreamExecutor;
@@ -65,11 +68,20 @@ public class DataController extends Eventful
 	
 
 	public ExecutorSet<DatasetReadResult> TASK_readFileListAsDataset(final List<Path> paths, DataSource dsp, Consumer<DatasetReadResult> onResult)
+	{
+		return TASK_readFileListAsDataset(paths, dsp, onResult, null);
+	}
+	
+	/**
+	 * Reads the given files as a {@link DataSet}. If a {@link StreamingMapper} is 
+	 * given, it will be sent the scans as they are loaded.
+	 */
+	public ExecutorSet<DatasetReadResult> TASK_readFileListAsDataset(final List<Path> paths, DataSource dsp, Consumer<DatasetReadResult> onResult, StreamingMapper mapper)
 	{
 
 		//final LocalDataSetProvider dataset = new LocalDataSetProvider();
 		final StandardDataSet dataset = new StandardDataSet();
-		final ExecutorSet<DatasetReadResult> readTasks = dataset.TASK_readFileListAsDataset(paths, dsp);
+		final ExecutorSet<DatasetReadResult> readTasks = dataset.TASK_readFileListAsDataset(paths, dsp, mapper);
 
 
 		
@@ -121,12 +133,12 @@ public class DataController extends Eventful
 
 	public CroppedDataSource getDataSourceForSubset(int x, int y, Coord<Integer> cstart, Coord<Integer> cend)
 	{
-		return new CroppedDataSource(dataModel.getDataSource(), x, y, cstart, cend);
+		return new CroppedDataSource(dataModel.getDataSource(), dataModel.getAnalysis(), x, y, cstart, cend);
 	}
 
-	public SelectionDataSource getDataSourceForSubset(List<Integer> points)
+	public SelectionDataSource getDataSourceForSubset(Selection points)
 	{
-		return new SelectionDataSource(dataModel.getDataSource(), points);
+		return new SelectionDataSource(dataModel.getDataSource(), dataModel.getAnalysis(), points);
 	}
 	
 
@@ -185,6 +197,11 @@ public class DataController extends Eventful
 		return Mapping.mapTask(dataModel, filters, fittings, fitter, solver);
 	}
 	
+	public StreamExecutor<MapResultSet> getMapTask(FilterSet filters, FilteredScanCache filteredScans, FittingSet fittings, CurveFitter fitter, FittingSolver solver)
+	{
+		return Mapping.mapTask(dataModel, filters, filteredScans, fittings, fitter, solver);
+	}
+	
 	
 
 	
@@ -22,6 +22,7 @@ import peakaboo.datasource.model.DataSource;
 import peakaboo.datasource.plugin.DataSourceLookup;
 import peakaboo.datasource.plugin.DataSourcePlugin;
 import peakaboo.datasource.plugin.DataSourcePluginManager;
+import peakaboo.mapping.StreamingMapper;
 import plural.executor.ExecutorSet;
 
 
@@ -29,12 +30,18 @@ import plural.executor.ExecutorSet;
 
 public abstract class DataLoader {
 
+	//the minimum time in milliseconds between updates to maps built while loading
+	private static final long STREAMING_REFRESH_INTERVAL = 1000;
+	
 	private PlotController controller;
 	private List<Path> paths;
 
 	//if we're loading a session, we need to do some extra work after loading the dataset
 	private Runnable sessionCallback = () -> {}; 
 	
+	//a session's fittings are only applied after loading, so the scans can't be mapped while they load
+	private boolean streaming = true;
+	
 	public DataLoader(PlotController controller, List<Path> paths) {
 		this.controller = controller;
 		this.paths = paths;
@@ -45,6 +52,17 @@ public abstract class DataLoader {
 		if (paths != null)
 		{
 			
+			//if there's anything to map, map the scans with the current fittings as they 
+			//load. The fittings are only recalibrated for the new data set once it has 
+			//loaded, so the maps are only used if they're still current when the user 
+			//asks for them. Without a calibration to start from, there's no point trying
+			boolean mappable = streaming 
+					&& !controller.fitting().getVisibleTransitionSeries().isEmpty() 
+					&& !controller.fitting().getEnergyCalibration().isZero()
+					&& controller.fitting().getEnergyCalibration().getDataWidth() > 0;
+			StreamingMapper mapper = mappable ? controller.getStreamingMapper(STREAMING_REFRESH_INTERVAL) : null;
+			controller.setStreamedMaps(null);
+			
 			ExecutorSet<DatasetReadResult> reading = controller.data().TASK_readFileListAsDataset(paths, dsp, result -> {
 					
 				if (result == null || result.status == ReadStatus.FAILED)
@@ -63,11 +81,12 @@ public abstract class DataLoader {
 					onFail(paths, message);
 					
 				} else {
+					controller.setStreamedMaps(mapper);
 					sessionCallback.run();
 					onSuccess(paths);
 				}						
 							
-			});
+			}, mapper);
 
 			onLoading(reading);
 			reading.startWorking();
@@ -151,6 +170,7 @@ public abstract class DataLoader {
 						//this needs to be done this way b/c loading a new dataset wipes out
 						//things like calibration info
 						this.paths = sessionPaths;
+						streaming = false;
 						sessionCallback = () -> {
 							controller.loadSessionSettings(session, true);	
 							warnVersion.run();
@@ -180,6 +200,7 @@ public abstract class DataLoader {
 	}
 
 	public abstract void onLoading(ExecutorSet<DatasetReadResult> job);
+	
 	public abstract void onSuccess(List<Path> paths);
 	public abstract void onFail(List<Path> paths, String message);
 	public abstract void onParameters(Group parameters, Consumer<Boolean> finished);
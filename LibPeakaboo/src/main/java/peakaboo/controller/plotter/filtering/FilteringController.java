@@ -8,8 +8,10 @@ import eventful.Eventful;
 import eventful.EventfulCache;
 import peakaboo.common.PeakabooLog;
 import peakaboo.controller.plotter.PlotController;
+import peakaboo.controller.plotter.view.ChannelCompositeMode;
 import peakaboo.filter.model.Filter;
 import peakaboo.filter.model.FilterSet;
+import peakaboo.filter.model.FilteredScanCache;
 
 
 public class FilteringController extends Eventful
@@ -27,6 +29,15 @@ public class FilteringController extends Eventful
 			if (plot.currentScan() == null) {
 				return null;
 			}
+			//single scans are shared with the map view through the filtered scan cache
+			if (plot.view().getChannelCompositeMode() == ChannelCompositeMode.NONE) {
+				return filteringModel.filteredScans.get(
+						plot.data().getDataSet().getScanData(), 
+						plot.view().getScanNumber(), 
+						filteringModel.filters.compile(), 
+						true
+					);
+			}
 			return filteringModel.filters.applyFilters(plot.currentScan(), true);
 		});
 		
@@ -144,6 +155,13 @@ public class FilteringController extends Eventful
 		return filteringModel.filteredPlot;
 	}
 	
+	/**
+	 * Returns the cache of filtered scans shared by the plot and map views
+	 */
+	public FilteredScanCache getFilteredScanCache() {
+		return filteringModel.filteredScans;
+	}
+	
 	public Map<Filter, ReadOnlySpectrum> getFilterDeltas() {
 		return filteringModel.filterDeltas.getValue();
 	}
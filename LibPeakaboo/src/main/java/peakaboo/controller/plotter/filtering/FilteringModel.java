@@ -5,12 +5,14 @@ import java.util.Map;
 import cyclops.ReadOnlySpectrum;
 import eventful.EventfulCache;
 import peakaboo.filter.model.Filter;
+import peakaboo.filter.model.FilteredScanCache;
 import peakaboo.filter.model.FilterSet;
 
 public class FilteringModel {
 
 	// Data related to applying filters. Filters manipulate the dataset
 	FilterSet filters = new FilterSet();
+	FilteredScanCache filteredScans = new FilteredScanCache();
 	
 	EventfulCache<ReadOnlySpectrum> filteredPlot;
 	EventfulCache<Map<Filter, ReadOnlySpectrum>> filterDeltas;
@@ -1,38 +1,214 @@
 package peakaboo.controller.plotter.fitting;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
-import cyclops.Pair;
 import cyclops.Range;
 import cyclops.ReadOnlySpectrum;
 import cyclops.Spectrum;
 import peakaboo.curvefit.curve.fitting.EnergyCalibration;
 import peakaboo.curvefit.curve.fitting.FittingResultSet;
 import peakaboo.curvefit.curve.fitting.FittingSet;
+import peakaboo.curvefit.curve.fitting.fitter.CurveFitter;
+import peakaboo.curvefit.curve.fitting.solver.FittingSolver;
 import peakaboo.curvefit.peak.search.scoring.FastSignalMatchScorer;
-import peakaboo.curvefit.peak.search.scoring.FittingScorer;
 import peakaboo.curvefit.peak.transition.ITransitionSeries;
+import peakaboo.curvefit.peak.transition.Transition;
 import plural.streams.StreamExecutor;
 import plural.streams.StreamExecutorSet;
 
 public class AutoEnergyCalibration {
 
+	//number of max energy values in each block handed to a worker by the rough search
+	private static final int ROUGH_BLOCK_SIZE = 32;
 
-	private static List<EnergyCalibration> allEnergies(int dataWidth) {
-		List<EnergyCalibration> energies = new ArrayList<>();
-		for (float max = 0.25f; max <= 100f; max += 0.05f) {
+	//the smallest step the fine tuning search will take, in keV
+	private static final float FINE_STEP = 0.005f;
+
+
+	/**
+	 * The grid of calibrations considered by the rough search. Calibrations
+	 * are identified by an index into maxima and an index into minima, some
+	 * combinations of which are not valid.
+	 */
+	static class CalibrationGrid {
+		float[] minima;
+		float[] maxima;
+		int dataWidth;
+
+		CalibrationGrid(int dataWidth) {
+			this.dataWidth = dataWidth;
+
+			List<Float> maxes = new ArrayList<>();
+			for (float max = 0.25f; max <= 100f; max += 0.05f) {
+				maxes.add(max);
+			}
+			List<Float> mins = new ArrayList<>();
 			for (float min = -0.25f; min < 0.25f; min += 0.05) {
-				if (min >= max-1f) continue;
-				energies.add(new EnergyCalibration(min, max, dataWidth));
+				mins.add(min);
+			}
+
+			maxima = toArray(maxes);
+			minima = toArray(mins);
+		}
+
+		private static float[] toArray(List<Float> values) {
+			float[] array = new float[values.size()];
+			for (int i = 0; i < array.length; i++) {
+				array[i] = values.get(i);
+			}
+			return array;
+		}
+
+		int blockCount() {
+			return (maxima.length + ROUGH_BLOCK_SIZE - 1) / ROUGH_BLOCK_SIZE;
+		}
+
+		boolean isValid(int maxIndex, int minIndex) {
+			return minima[minIndex] < maxima[maxIndex]-1f;
+		}
+
+		EnergyCalibration get(int maxIndex, int minIndex) {
+			return new EnergyCalibration(minima[minIndex], maxima[maxIndex], dataWidth);
+		}
+
+	}
+
+
+	/**
+	 * Scores calibrations the same way {@link FastSignalMatchScorer} does,
+	 * summed over all of the transition series, but converts energies to
+	 * channels directly from the min and max energy rather than building an
+	 * {@link EnergyCalibration} for each candidate. It can also give an upper
+	 * bound on the score of every calibration in a block of the grid, so that
+	 * blocks which can't contain a good calibration can be skipped.
+	 */
+	static class SignalMatch {
+
+		private float[] data;
+		private int dataWidth;
+
+		//the energies of all transitions, grouped by transition series
+		private float[][] energies;
+
+		//sparse table for looking up the largest value in a range of channels,
+		//maxima[k][i] is the largest value of data[i .. i + 2^k - 1]
+		private float[][] maxima;
+
+		SignalMatch(ReadOnlySpectrum spectrum, List<ITransitionSeries> tsList, int dataWidth) {
+			this.dataWidth = dataWidth;
+
+			data = new float[spectrum.size()];
+			for (int i = 0; i < data.length; i++) {
+				data[i] = spectrum.get(i);
+			}
+
+			List<ITransitionSeries> visible = new ArrayList<>(new LinkedHashSet<>(tsList)).stream()
+					.filter(ITransitionSeries::isVisible)
+					.collect(Collectors.toList());
+			energies = new float[visible.size()][];
+			for (int i = 0; i < energies.length; i++) {
+				List<Transition> transitions = visible.get(i).getAllTransitions();
+				energies[i] = new float[transitions.size()];
+				for (int j = 0; j < energies[i].length; j++) {
+					energies[i][j] = transitions.get(j).energyValue;
+				}
+			}
+
+			int levels = 1;
+			while ((1 << levels) <= data.length) { levels++; }
+			maxima = new float[levels][];
+			maxima[0] = data.clone();
+			for (int k = 1; k < levels; k++) {
+				int width = 1 << (k-1);
+				maxima[k] = new float[data.length - (1 << k) + 1];
+				for (int i = 0; i < maxima[k].length; i++) {
+					maxima[k][i] = Math.max(maxima[k-1][i], maxima[k-1][i + width]);
+				}
+			}
+		}
+
+		//same arithmetic as EnergyCalibration.fractionalChannelFromEnergy
+		private float channel(float energy, float min, float max) {
+			float energyPerChannel = (max - min) / (float)dataWidth;
+			return (energy - min) / energyPerChannel;
+		}
+
+		private float rangeMax(int start, int end) {
+			int k = 31 - Integer.numberOfLeadingZeros(end - start + 1);
+			return Math.max(maxima[k][start], maxima[k][end - (1 << k) + 1]);
+		}
+
+		float score(float min, float max) {
+			float score = 0;
+			for (float[] series : energies) {
+				float height = 0;
+				for (float energy : series) {
+					int channel = Math.round(channel(energy, min, max));
+					if (channel >= data.length) continue;
+					if (channel < 0) continue;
+					height += data[channel];
+				}
+				score += Math.sqrt(height);
 			}
+			return score;
 		}
-		return energies;
+
+		/**
+		 * Returns a value at least as large as the score of any calibration
+		 * with a min energy in [minLo, minHi] and a max energy in [maxLo, maxHi]
+		 */
+		float bound(float minLo, float minHi, float maxLo, float maxHi) {
+			if (maxLo <= minHi) {
+				//the channel for an energy isn't monotonic over this block
+				return Float.POSITIVE_INFINITY;
+			}
+			float bound = 0;
+			for (float[] series : energies) {
+				float height = 0;
+				for (float energy : series) {
+					//for a fixed energy, the channel is monotonic in both the min
+					//and max energy, so its extremes are at the corners of the block
+					float c1 = channel(energy, minLo, maxLo);
+					float c2 = channel(energy, minLo, maxHi);
+					float c3 = channel(energy, minHi, maxLo);
+					float c4 = channel(energy, minHi, maxHi);
+					//widened by a channel to allow for rounding
+					int start = Math.round(Math.min(Math.min(c1, c2), Math.min(c3, c4))) - 1;
+					int end = Math.round(Math.max(Math.max(c1, c2), Math.max(c3, c4))) + 1;
+					start = Math.max(start, 0);
+					end = Math.min(end, data.length-1);
+					if (start > end) continue;
+					height += Math.max(rangeMax(start, end), 0f);
+				}
+				bound += Math.sqrt(height);
+			}
+			return bound;
+		}
+
 	}
-	
+
+
+	private static class Candidate {
+		int maxIndex, minIndex;
+		float score;
+
+		Candidate(int maxIndex, int minIndex, float score) {
+			this.maxIndex = maxIndex;
+			this.minIndex = minIndex;
+			this.score = score;
+		}
+	}
+
+
 	private static FittingSet fitModel(List<ITransitionSeries> tsList, int dataWidth) {
 		FittingSet fits = new FittingSet();
 		EnergyCalibration old = fits.getFittingParameters().getCalibration();
@@ -40,92 +216,157 @@ public class AutoEnergyCalibration {
 		for (ITransitionSeries ts : tsList) {
 			fits.addTransitionSeries(ts);
 		}
+		//every calibration tried is different, so caching the curves would 
+		//only evict the ones being plotted
+		fits.setCurveCaching(false);
 		return fits;
 	}
-	
+
 
 	/**
-	 * Accepts a spectrum, a list of transition series, and a data width, 
-	 * and uses the transition series to quickly find any potential good 
-	 * energy calibration values. 
+	 * Accepts a spectrum, a list of transition series, and a data width,
+	 * and uses the transition series to quickly find any potential good
+	 * energy calibration values.
+	 * <br/><br/>
+	 * Every calibration whose fast score is at least half of the best fast
+	 * score is returned, best first. Rather than scoring every calibration in
+	 * the grid, blocks of the grid are repeatedly split in two, and any block
+	 * whose upper bound falls below half of the best score seen so far is
+	 * discarded. Since the best score seen so far never exceeds the overall
+	 * best score, the result is the same as scoring every calibration, no
+	 * matter what order the blocks are searched in.
 	 */
-	private static StreamExecutor<List<EnergyCalibration>> roughOptions(List<EnergyCalibration> energies, ReadOnlySpectrum spectrum, List<ITransitionSeries> tsList, int dataWidth) {
-		
-		
-		
-		//SCORE THE ENERGY PAIRS AND CREATE AN INDEX -> SCORE MAP
-		StreamExecutor<List<EnergyCalibration>> scorer = new StreamExecutor<>("Searching for Calibrations", energies.size() / 100);
-		
-		scorer.setTask(new Range(0, energies.size()-1), stream -> {
+	private static StreamExecutor<List<EnergyCalibration>> roughOptions(ReadOnlySpectrum spectrum, List<ITransitionSeries> tsList, int dataWidth) {
 
-			//build a new model for experimenting with
-			FittingSet fits = fitModel(tsList, dataWidth);
-					
-			//Score each energy value using our observed stream
-			List<Pair<Integer, Float>> scores = stream.map(index -> {
-				
-				EnergyCalibration calibration = energies.get(index);
-				
-				float score = scoreFitFast(fits, spectrum, calibration);
-				return new Pair<>(index, score);
-				
-			}).collect(Collectors.toList());
-			
-			
-			//Sort the scores
-			scores.sort((s1, s2) -> s1.second.compareTo(s2.second));
-			Collections.reverse(scores);
-			
-			
-			
-			//Take energy pairs based on scored index until we've taken some % or the score has dropped below some % of the best score
-			List<EnergyCalibration> filteredScores = new ArrayList<>();
-			float bestScore = scores.get(0).second;
-			
-			for (Pair<Integer, Float> score : scores) {
-				if (score.second < bestScore * 0.5f) break;
-				filteredScores.add(energies.get(score.first));
-			}
-						
-			return filteredScores;
+		CalibrationGrid grid = new CalibrationGrid(dataWidth);
 
+		StreamExecutor<List<EnergyCalibration>> scorer = new StreamExecutor<>("Searching for Calibrations", 1);
+		scorer.setTask(new Range(0, grid.blockCount()-1), stream -> {
+			SignalMatch match = new SignalMatch(spectrum, tsList, dataWidth);
+			return roughSearch(stream, grid, match);
 		});
 
-		
+
 		return scorer;
-		
+
 	}
-	
-	
+
+	/**
+	 * Searches the given blocks of the grid, returning every calibration whose 
+	 * score is at least half of the best score, best first.
+	 */
+	static List<EnergyCalibration> roughSearch(Stream<Integer> blocks, CalibrationGrid grid, SignalMatch match) {
+
+		//best score seen so far by any worker, stored as float bits
+		AtomicInteger best = new AtomicInteger(Float.floatToIntBits(0f));
+
+		List<Candidate> candidates = blocks.parallel().map(block -> {
+			int start = block * ROUGH_BLOCK_SIZE;
+			int end = Math.min(start + ROUGH_BLOCK_SIZE, grid.maxima.length) - 1;
+			return searchBlock(grid, match, best, start, end);
+		}).flatMap(List::stream).collect(Collectors.toList());
+
+
+		//Keep the calibrations scoring at least half as well as the best one
+		float bestScore = Float.intBitsToFloat(best.get());
+		candidates = candidates.stream().filter(c -> c.score >= bestScore * 0.5f).collect(Collectors.toList());
+
+		//Sort the scores from best to worst, breaking ties by grid position
+		//so that the order is reproducible
+		candidates.sort((c1, c2) -> {
+			int order = Float.compare(c2.score, c1.score);
+			if (order != 0) return order;
+			order = Integer.compare(c2.maxIndex, c1.maxIndex);
+			if (order != 0) return order;
+			return Integer.compare(c2.minIndex, c1.minIndex);
+		});
+
+		return candidates.stream().map(c -> grid.get(c.maxIndex, c.minIndex)).collect(Collectors.toList());
+
+	}
+
+	/**
+	 * Searches all calibrations with a max energy index between start and end
+	 * inclusive, returning those whose score is at least half of the best score
+	 * seen so far.
+	 */
+	private static List<Candidate> searchBlock(CalibrationGrid grid, SignalMatch match, AtomicInteger best, int start, int end) {
+		List<Candidate> candidates = new ArrayList<>();
+
+		//blocks are {maxStart, maxEnd, minStart, minEnd}
+		Deque<int[]> blocks = new ArrayDeque<>();
+		blocks.push(new int[] {start, end, 0, grid.minima.length-1});
+
+		while (!blocks.isEmpty()) {
+			int[] block = blocks.pop();
+			int maxStart = block[0], maxEnd = block[1], minStart = block[2], minEnd = block[3];
+			float threshold = Float.intBitsToFloat(best.get()) * 0.5f;
+
+			if (maxStart == maxEnd && minStart == minEnd) {
+				if (!grid.isValid(maxStart, minStart)) continue;
+				float score = match.score(grid.minima[minStart], grid.maxima[maxStart]);
+				if (score < threshold) continue;
+				candidates.add(new Candidate(maxStart, minStart, score));
+				raise(best, score);
+				continue;
+			}
+
+			float bound = match.bound(grid.minima[minStart], grid.minima[minEnd], grid.maxima[maxStart], grid.maxima[maxEnd]);
+			if (bound < threshold) continue;
+
+			//split the block along its longer side
+			if (maxEnd - maxStart >= minEnd - minStart) {
+				int mid = (maxStart + maxEnd) / 2;
+				blocks.push(new int[] {maxStart, mid, minStart, minEnd});
+				blocks.push(new int[] {mid+1, maxEnd, minStart, minEnd});
+			} else {
+				int mid = (minStart + minEnd) / 2;
+				blocks.push(new int[] {maxStart, maxEnd, minStart, mid});
+				blocks.push(new int[] {maxStart, maxEnd, mid+1, minEnd});
+			}
+		}
+
+		return candidates;
+	}
+
+	private static void raise(AtomicInteger best, float score) {
+		int current;
+		do {
+			current = best.get();
+			if (Float.intBitsToFloat(current) >= score) return;
+		} while (!best.compareAndSet(current, Float.floatToIntBits(score)));
+	}
+
+
 	/**
 	 * Uses a slower algorithm to choose the best calibration from the rough options
 	 */
 	private static StreamExecutor<EnergyCalibration> chooseFromRoughOptions(
-			Supplier<List<EnergyCalibration>> energies, 
-			ReadOnlySpectrum spectrum, 
+			Supplier<List<EnergyCalibration>> energies,
+			ReadOnlySpectrum spectrum,
 			List<ITransitionSeries> tsList,
 			FittingController controller,
 			int dataWidth
 		) {
-		
+
 		StreamExecutor<EnergyCalibration> scorer = new StreamExecutor<>("Evaluating Candidates", 5);
 		scorer.setTask(energies, stream -> {
-			
+
 			//build a new model for experimenting with
 			ThreadLocal<FittingSet> fits = ThreadLocal.withInitial(() -> fitModel(tsList, dataWidth));
-			
+
 			//Score each energy value using our observed stream
 			List<Float> scores = stream.map(calibration -> {
-				
+
 				FittingResultSet results;
 				fits.get().getFittingParameters().setCalibration(calibration);
 				results = controller.getFittingSolver().solve(spectrum, fits.get(), controller.getCurveFitter());
 				return scoreFitGood(results, spectrum);
-				
+
 			}).collect(Collectors.toList());
-			
-			
-			
+
+
+
 			//Find the best score
 			float bestScore = 0;
 			int bestIndex = 0;
@@ -138,31 +379,18 @@ public class AutoEnergyCalibration {
 			}
 
 			EnergyCalibration best = energies.get().get(bestIndex);
-			return fineTune(best, spectrum, tsList, controller, 0.1f);
-			
+			return fineTune(best, bestScore, spectrum, tsList, controller.getFittingSolver(), controller.getCurveFitter(), 0.1f);
+
 		});
-		
-		
-		
-		
+
+
+
+
 		return scorer;
-		
-	}
-	
-	
-	private static float scoreFitFast(FittingSet fits, ReadOnlySpectrum spectrum, EnergyCalibration calibration) {
-		float score = 0;
-
-		FittingScorer scorer = new FastSignalMatchScorer(spectrum, calibration);		
-		for (ITransitionSeries ts : fits.getVisibleTransitionSeries()) {
-			if (ts.isVisible()) {
-				score += Math.sqrt(scorer.score(ts));
-			}
-		}
-		
-		return score;
+
 	}
-	
+
+
 	public static float scoreFitGood(FittingResultSet results, ReadOnlySpectrum spectrum) {
 		float score = 0f;
 
@@ -173,75 +401,109 @@ public class AutoEnergyCalibration {
 		for (int i = 0; i < spectrum.size(); i++) {
 			if (spectrum.get(i) <= 1f) { continue; }
 			percent = fit.get(i) / spectrum.get(i);
-			
+
 			//Signal beyond a certain percent is as good as a perfect fit.
 			percent = (float) Math.min(percent*1.1, 1);
 			//square root because middling fit should not be rewarded too much
 			score += Math.sqrt(percent);
 		}
-		
-			
-		
+
+
+
 		return score;
 	}
-	
-	
-	private static EnergyCalibration fineTune(
-			EnergyCalibration calibration, 
-			ReadOnlySpectrum spectrum, 
-			List<ITransitionSeries> tsList, 
-			FittingController controller,
+
+
+	/**
+	 * Refines the given calibration with a pattern search: the eight
+	 * neighbouring calibrations one step away are scored in parallel, and the
+	 * search moves to the best of them if it improves on the current one. When
+	 * none of them do, the step is halved, until it is smaller than
+	 * {@link #FINE_STEP}. The search never moves more than window keV away
+	 * from the starting calibration's min or max energy.
+	 */
+	static EnergyCalibration fineTune(
+			EnergyCalibration calibration,
+			float score,
+			ReadOnlySpectrum spectrum,
+			List<ITransitionSeries> tsList,
+			FittingSolver solver,
+			CurveFitter fitter,
 			float window
 		) {
-		
-		//build a new model for experimenting with
-		FittingSet fits = fitModel(tsList, calibration.getDataWidth());
-		
-		//Find the best score, and its energy
-		float bestScore = 0f;
-		float bestMin = calibration.getMinEnergy();
-		float bestMax = calibration.getMaxEnergy();
-		
-		float lomin = calibration.getMinEnergy() - window;
-		float himin = calibration.getMinEnergy() + window;
-		float lomax = calibration.getMaxEnergy() - window;
-		float himax = calibration.getMaxEnergy() + window;
-
-		
-		for (float min = lomin; min <= himin; min += 0.01f) {
-			for (float max = lomax; max <= himax; max += 0.01f) {
-				if (max <= min) continue;
-				
-				fits.getFittingParameters().setCalibration(min, max, calibration.getDataWidth());
-				FittingResultSet results = controller.getFittingSolver().solve(spectrum, fits, controller.getCurveFitter());
-				
-				float score = scoreFitGood(results, spectrum);
-				
-				if (score > bestScore) {
-					bestScore = score;
-					bestMin = min;
-					bestMax = max;
+
+		int dataWidth = calibration.getDataWidth();
+
+		//build new models for experimenting with
+		ThreadLocal<FittingSet> fits = ThreadLocal.withInitial(() -> fitModel(tsList, dataWidth));
+
+		float startMin = calibration.getMinEnergy();
+		float startMax = calibration.getMaxEnergy();
+
+		float bestScore = score;
+		float bestMin = startMin;
+		float bestMax = startMax;
+
+		float step = window / 2f;
+		while (step >= FINE_STEP) {
+
+			List<float[]> neighbours = new ArrayList<>();
+			for (int dmin = -1; dmin <= 1; dmin++) {
+				for (int dmax = -1; dmax <= 1; dmax++) {
+					if (dmin == 0 && dmax == 0) continue;
+					float min = bestMin + dmin * step;
+					float max = bestMax + dmax * step;
+					if (max <= min) continue;
+					if (Math.abs(min - startMin) > window || Math.abs(max - startMax) > window) continue;
+					neighbours.add(new float[] {min, max});
 				}
 			}
+
+			float[] scores = new float[neighbours.size()];
+			IntStream.range(0, neighbours.size()).parallel().forEach(i -> {
+				float[] neighbour = neighbours.get(i);
+				FittingSet model = fits.get();
+				model.getFittingParameters().setCalibration(neighbour[0], neighbour[1], dataWidth);
+				FittingResultSet results = solver.solve(spectrum, model, fitter);
+				scores[i] = scoreFitGood(results, spectrum);
+			});
+
+			//pick the best neighbour, preferring earlier ones on ties so that
+			//the result doesn't depend on thread scheduling
+			int bestNeighbour = -1;
+			for (int i = 0; i < scores.length; i++) {
+				if (scores[i] > bestScore) {
+					bestScore = scores[i];
+					bestNeighbour = i;
+				}
+			}
+
+			if (bestNeighbour == -1) {
+				step /= 2f;
+			} else {
+				bestMin = neighbours.get(bestNeighbour)[0];
+				bestMax = neighbours.get(bestNeighbour)[1];
+			}
+
 		}
-		
-		return new EnergyCalibration(bestMin, bestMax, calibration.getDataWidth());
+
+		return new EnergyCalibration(bestMin, bestMax, dataWidth);
 	}
-	
-	
+
+
 	public static StreamExecutorSet<EnergyCalibration> propose(
-			ReadOnlySpectrum spectrum, 
-			List<ITransitionSeries> tsList, 
-			FittingController controller, 
+			ReadOnlySpectrum spectrum,
+			List<ITransitionSeries> tsList,
+			FittingController controller,
 			int dataWidth
 		) {
-		
-		StreamExecutor<List<EnergyCalibration>> rough = roughOptions(allEnergies(dataWidth), spectrum, tsList, dataWidth);
+
+		StreamExecutor<List<EnergyCalibration>> rough = roughOptions(spectrum, tsList, dataWidth);
 		StreamExecutor<EnergyCalibration> quality = chooseFromRoughOptions(() -> rough.getResult().get(), spectrum, tsList, controller, dataWidth);
 		rough.then(quality);
-		
+
 		return new StreamExecutorSet<>(rough, quality);
-		
+
 	}
-	
+
 }
@@ -19,6 +19,7 @@ import peakaboo.curvefit.curve.fitting.EnergyCalibration;
 import peakaboo.curvefit.curve.fitting.FittingResult;
 import peakaboo.curvefit.curve.fitting.FittingResultSet;
 import peakaboo.curvefit.curve.fitting.FittingSet;
+import peakaboo.curvefit.curve.fitting.FittingWorkspace;
 import peakaboo.curvefit.curve.fitting.fitter.CurveFitter;
 import peakaboo.curvefit.curve.fitting.solver.FittingSolver;
 import peakaboo.curvefit.peak.escape.EscapePeakType;
@@ -36,6 +37,9 @@ public class FittingController extends EventfulType<Boolean>
 	FittingModel fittingModel;
 	PlotController plot;
 	
+	private FittingWorkspace selectionWorkspace = new FittingWorkspace();
+	private FittingWorkspace proposalWorkspace = new FittingWorkspace();
+	
 	
 	public FittingController(PlotController plotController)
 	{
@@ -48,14 +52,14 @@ public class FittingController extends EventfulType<Boolean>
 			if (data == null) {
 				return null;
 			}
-			return getFittingSolver().solve(data, fittingModel.selections, getCurveFitter());
+			return getFittingSolver().solve(data, fittingModel.selections, getCurveFitter(), selectionWorkspace).getResultSet();
 		});
 		
 		fittingModel.proposalResults = new EventfulCache<>(() -> {
 			if (plot.currentScan() == null) {
 				return null;
 			}
-			return getFittingSolver().solve(getFittingSelectionResults().getResidual(), fittingModel.proposals, getCurveFitter());
+			return getFittingSolver().solve(getFittingSelectionResults().getResidual(), fittingModel.proposals, getCurveFitter(), proposalWorkspace).getResultSet();
 		});
 		
 		fittingModel.selectionResults.addUpstreamDependency(plot.filtering().getFilteredPlotCache());
@@ -3,7 +3,11 @@ package peakaboo.curvefit.curve.fitting;
 
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
 
 import cyclops.ISpectrum;
 import cyclops.Range;
@@ -44,6 +48,14 @@ public class Curve implements Comparable<Curve>
 	//This is the curve created by applying a FittingFunction to the TransitionSeries 
 	Spectrum						normalizedCurve;	
 
+	//Channels where the normalized curve falls below this value on the outside 
+	//of the curve are treated as zero, so that the curve has a compact support
+	private static final float		SUPPORT_CUTOFF = 1e-4f;
+	//The first channel of the support window, and the values of the normalized 
+	//curve from that channel onwards. All channels outside of the window are zero.
+	private int						supportStart;
+	private float[]					support;
+
 	
 	
 	//How broad an area around each transition to consider important
@@ -52,10 +64,15 @@ public class Curve implements Comparable<Curve>
 	
 	//Areas (in channels) where the curve is strong enough that we need to consider it.
 	private RangeSet				intenseRanges;
+	//The same channels as intenseRanges, without duplicates, for use in tight loops
+	private int[]					intenseChannels;
 	
 	//how large a footprint this curve has, used in scoring fittings
 	private int						baseSize;
 	
+	//whether this curve's shape is shared through the CurveCache
+	private boolean					cached;
+	
 
 	/**
 	 * Create a new Curve.
@@ -64,13 +81,30 @@ public class Curve implements Comparable<Curve>
 	 * @param parameters the fitting parameters to use to model this curve
 	 */
 	public Curve(ITransitionSeries ts, FittingParameters parameters)
+	{
+		this(ts, parameters, true);
+	}
+	
+	/**
+	 * Create a new Curve.
+	 * 
+	 * @param ts the TransitionSeries to fit
+	 * @param parameters the fitting parameters to use to model this curve
+	 * @param cached if this curve's shape should be taken from and stored in the 
+	 * {@link CurveCache}. Curves which are unlikely to be built again shouldn't 
+	 * be cached, so that they don't evict the shapes of other curves.
+	 */
+	public Curve(ITransitionSeries ts, FittingParameters parameters, boolean cached)
 	{
 
 		this.parameters = parameters;
+		this.cached = cached;
 		rangeMultiplier = DEFAULT_RANGE_MULT;
 		
 		//constraintMask = DataTypeFactory.<Boolean> listInit(dataWidth);
 		intenseRanges = new RangeSet();
+		intenseChannels = new int[0];
+		support = new float[0];
 		
 		if (ts != null) setTransitionSeries(ts);
 		
@@ -79,8 +113,13 @@ public class Curve implements Comparable<Curve>
 	public void setTransitionSeries(ITransitionSeries ts)
 	{
 		this.transitionSeries = ts;
-		calculateConstraintMask();
-		calcUnscaledFit(ts.getShell() != TransitionShell.COMPOSITE);
+		Supplier<Shape> generator = () -> {
+			calculateConstraintMask();
+			calcUnscaledFit(ts.getShell() != TransitionShell.COMPOSITE);
+			return new Shape(this);
+		};
+		Shape shape = cached ? CurveCache.get(ts, parameters, generator) : generator.get();
+		shape.applyTo(this);
 		
 	}
 	
@@ -101,7 +140,7 @@ public class Curve implements Comparable<Curve>
 	 */
 	public Spectrum scale(float scale)
 	{
-		return SpectrumCalculations.multiplyBy(normalizedCurve, scale);
+		return scaleInto(scale, new ISpectrum(normalizedCurve.size()));
 	}
 	
 	/**
@@ -114,7 +153,61 @@ public class Curve implements Comparable<Curve>
 	 * @return a scaled fit
 	 */
 	public Spectrum scaleInto(float scale, Spectrum target) {
-		return SpectrumCalculations.multiplyBy_target(normalizedCurve, target, scale);
+		float[] array = target.backingArray();
+		int end = supportStart + support.length;
+		Arrays.fill(array, 0, supportStart, 0f);
+		for (int i = supportStart; i < end; i++) {
+			array[i] = support[i - supportStart] * scale;
+		}
+		Arrays.fill(array, end, array.length, 0f);
+		return target;
+	}
+	
+	/**
+	 * Adds a scaled fit based on the given scale value to the target Spectrum.
+	 * Only the channels in this Curve's support window are visited.
+	 * 
+	 * @param scale
+	 *            amount to scale the fitting by
+	 * @param target
+	 *            target Spectrum to add the scaled fit to
+	 * @return the target Spectrum
+	 */
+	public Spectrum scaleOnto(float scale, Spectrum target) {
+		float[] array = target.backingArray();
+		for (int i = 0; i < support.length; i++) {
+			array[supportStart + i] += support[i] * scale;
+		}
+		return target;
+	}
+	
+	/**
+	 * Returns the first channel of this Curve's support window. All channels
+	 * outside of the window have a value of zero.
+	 */
+	public int getSupportStart() {
+		return supportStart;
+	}
+	
+	/**
+	 * Returns the values of this Curve's support window, starting from
+	 * {@link #getSupportStart()}. The returned array is shared and must not be
+	 * modified.
+	 */
+	public float[] getSupport() {
+		return support;
+	}
+	
+	/**
+	 * Returns the normalized value of this Curve at the given channel, or zero
+	 * if the channel is outside of the support window.
+	 */
+	public float getValue(int channel) {
+		int offset = channel - supportStart;
+		if (offset < 0 || offset >= support.length) {
+			return 0f;
+		}
+		return support[offset];
 	}
 
 
@@ -158,6 +251,15 @@ public class Curve implements Comparable<Curve>
 		return intenseRanges;
 	}
 	
+	/**
+	 * Returns the channels for which this Curve is intense or significant, in
+	 * the same order as {@link #getIntenseRanges()} but without duplicates. The
+	 * returned array is shared and must not be modified.
+	 */
+	public int[] getIntenseChannels() {
+		return intenseChannels;
+	}
+	
 	
 
 	/**
@@ -167,7 +269,8 @@ public class Curve implements Comparable<Curve>
 	{
 
 		
-		intenseRanges.clear();
+		//a new RangeSet, since the old one may be shared through the CurveCache
+		intenseRanges = new RangeSet();
 
 		float range;
 		float mean;
@@ -200,6 +303,12 @@ public class Curve implements Comparable<Curve>
 			
 		}
 		
+		Set<Integer> channels = new LinkedHashSet<>();
+		for (int channel : intenseRanges) {
+			channels.add(channel);
+		}
+		intenseChannels = channels.stream().mapToInt(Integer::intValue).toArray();
+		
 		
 
 	}
@@ -258,11 +367,71 @@ public class Curve implements Comparable<Curve>
 		{
 			normalizedCurve = SpectrumCalculations.divideBy(fit, normalizationScale);
 		}
+		
+		calcSupport();
 
 
 	}
 
 	
+	//trims the insignificant tails from the normalized curve, and records the
+	//remaining window so that scaling the curve only has to visit those channels
+	private void calcSupport() {
+		
+		float[] values = normalizedCurve.backingArray();
+		int first = 0;
+		int last = values.length - 1;
+		while (first <= last && Math.abs(values[first]) < SUPPORT_CUTOFF) {
+			first++;
+		}
+		while (last >= first && Math.abs(values[last]) < SUPPORT_CUTOFF) {
+			last--;
+		}
+		
+		//zero the tails so that the dense and sparse forms of the curve agree
+		Arrays.fill(values, 0, first, 0f);
+		Arrays.fill(values, last+1, values.length, 0f);
+		
+		supportStart = Math.min(first, values.length);
+		support = Arrays.copyOfRange(values, supportStart, last+1);
+		
+	}
+	
+	/**
+	 * Everything about a Curve which is derived from its {@link ITransitionSeries} 
+	 * and {@link FittingParameters}. Shapes are shared between Curves through the 
+	 * {@link CurveCache}, so they are never modified once created.
+	 */
+	static class Shape {
+		private final float normalizationScale;
+		private final Spectrum normalizedCurve;
+		private final int supportStart;
+		private final float[] support;
+		private final RangeSet intenseRanges;
+		private final int[] intenseChannels;
+		private final int baseSize;
+		
+		Shape(Curve curve) {
+			normalizationScale = curve.normalizationScale;
+			normalizedCurve = curve.normalizedCurve;
+			supportStart = curve.supportStart;
+			support = curve.support;
+			intenseRanges = curve.intenseRanges;
+			intenseChannels = curve.intenseChannels;
+			baseSize = curve.baseSize;
+		}
+		
+		void applyTo(Curve curve) {
+			curve.normalizationScale = normalizationScale;
+			curve.normalizedCurve = normalizedCurve;
+			curve.supportStart = supportStart;
+			curve.support = support;
+			curve.intenseRanges = intenseRanges;
+			curve.intenseChannels = intenseChannels;
+			curve.baseSize = baseSize;
+		}
+	}
+	
 	public String toString()
 	{
 		return "[" + transitionSeries + "] x " + normalizationScale;
@@ -0,0 +1,140 @@
+package peakaboo.curvefit.curve.fitting;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import peakaboo.curvefit.peak.escape.EscapePeakType;
+import peakaboo.curvefit.peak.fitting.FittingFunction;
+import peakaboo.curvefit.peak.transition.ITransitionSeries;
+
+/**
+ * CurveCache holds the normalized shapes of recently generated {@link Curve}s,
+ * so that rebuilding the curves for a {@link FittingSet} after its
+ * {@link FittingParameters} change back to an earlier state (or building
+ * another FittingSet with the same parameters) doesn't have to evaluate every
+ * {@link FittingFunction} over every channel again. Shapes are keyed by
+ * everything which goes into generating them: the {@link ITransitionSeries},
+ * the {@link EnergyCalibration}, the FWHM base, the {@link EscapePeakType} and
+ * the {@link FittingFunction} class. The cache is shared by all Curves, and
+ * the least recently used shapes are evicted once it is full.
+ * 
+ * @author NAS
+ *
+ */
+public class CurveCache {
+
+	private static final int CAPACITY = 500;
+	
+	private static final Map<Key, Curve.Shape> shapes = new LinkedHashMap<Key, Curve.Shape>(CAPACITY, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, Curve.Shape> eldest) {
+			return size() > CAPACITY;
+		}
+	};
+	
+	private static final AtomicLong hits = new AtomicLong();
+	private static final AtomicLong misses = new AtomicLong();
+	
+	private CurveCache() {}
+	
+	/**
+	 * Returns the cached shape for the given transition series and parameters,
+	 * or generates, caches and returns it if there isn't one.
+	 */
+	static Curve.Shape get(ITransitionSeries ts, FittingParameters parameters, Supplier<Curve.Shape> generator) {
+		Key key = new Key(ts, parameters);
+		
+		Curve.Shape shape;
+		synchronized (shapes) {
+			shape = shapes.get(key);
+		}
+		if (shape != null) {
+			hits.incrementAndGet();
+			return shape;
+		}
+		
+		//generate outside of the lock so that other threads aren't held up,
+		//at worst two threads generate the same shape
+		misses.incrementAndGet();
+		shape = generator.get();
+		synchronized (shapes) {
+			shapes.put(key, shape);
+		}
+		return shape;
+	}
+	
+	/**
+	 * Returns the number of times a Curve's shape was found in the cache
+	 */
+	public static long getHits() {
+		return hits.get();
+	}
+	
+	/**
+	 * Returns the number of times a Curve's shape had to be generated
+	 */
+	public static long getMisses() {
+		return misses.get();
+	}
+	
+	/**
+	 * Returns the number of shapes currently cached
+	 */
+	public static int size() {
+		synchronized (shapes) {
+			return shapes.size();
+		}
+	}
+	
+	/**
+	 * Removes all cached shapes and resets the hit and miss counters
+	 */
+	public static void clear() {
+		synchronized (shapes) {
+			shapes.clear();
+		}
+		hits.set(0);
+		misses.set(0);
+	}
+	
+	
+	private static class Key {
+		
+		private final ITransitionSeries ts;
+		private final EnergyCalibration calibration;
+		private final float fwhmBase;
+		private final EscapePeakType escapeType;
+		private final Class<? extends FittingFunction> function;
+		private final int hash;
+		
+		Key(ITransitionSeries ts, FittingParameters parameters) {
+			this.ts = ts;
+			this.calibration = parameters.getCalibration();
+			this.fwhmBase = parameters.getFWHMBase();
+			this.escapeType = parameters.getEscapeType();
+			this.function = parameters.getFittingFunction();
+			this.hash = Objects.hash(ts, calibration, fwhmBase, escapeType, function);
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) return false;
+			Key other = (Key) o;
+			return Float.compare(fwhmBase, other.fwhmBase) == 0
+					&& escapeType == other.escapeType
+					&& function == other.function
+					&& calibration.equals(other.calibration)
+					&& ts.equals(other.ts);
+		}
+		
+	}
+	
+}
@@ -1,5 +1,7 @@
 package peakaboo.curvefit.curve.fitting;
 
+import java.util.Objects;
+
 /**
  * Represents the energy calibration and data size for data. This is 
  * useful for converting between energy values and channel values. It
@@ -91,6 +93,20 @@ public class EnergyCalibration {
 		return energyPerChannel;
 	}
 	
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof EnergyCalibration)) return false;
+		EnergyCalibration other = (EnergyCalibration) o;
+		return Float.compare(minEnergy, other.minEnergy) == 0 
+				&& Float.compare(maxEnergy, other.maxEnergy) == 0 
+				&& dataWidth == other.dataWidth;
+	}
+	
+	@Override
+	public int hashCode() {
+		return Objects.hash(minEnergy, maxEnergy, dataWidth);
+	}
+	
 	@Override
 	public String toString() {
 		return "EnergyCalibration(" + minEnergy + ", " + maxEnergy + ")";
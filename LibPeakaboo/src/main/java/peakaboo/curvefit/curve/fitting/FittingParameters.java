@@ -8,6 +8,9 @@ import peakaboo.curvefit.peak.fitting.FittingContext;
 import peakaboo.curvefit.peak.fitting.FittingFunction;
 import peakaboo.curvefit.peak.fitting.functions.PseudoVoigtFittingFunction;
 import peakaboo.curvefit.peak.table.Element;
+import peakaboo.curvefit.peak.table.PeakTable;
+import peakaboo.curvefit.peak.table.TransitionIndex;
+import peakaboo.curvefit.peak.transition.ITransitionSeries;
 import peakaboo.curvefit.peak.transition.Transition;
 import peakaboo.curvefit.peak.transition.TransitionShell;
 
@@ -20,6 +23,9 @@ public class FittingParameters {
 	private EscapePeakType		escapeType = EscapePeakType.NONE;
 	private Class<? extends FittingFunction> fittingFunction = PseudoVoigtFittingFunction.class;
 	
+	//built on demand, and discarded whenever the line widths or escape peaks change
+	private TransitionIndex		transitionIndex;
+	
 	private FittingParameters() {}
 	
 	FittingParameters(FittingSet fits) {
@@ -67,6 +73,10 @@ public class FittingParameters {
 		
 	}
 	
+	private synchronized void clearTransitionIndex() {
+		transitionIndex = null;
+	}
+	
 	private void invalidate() {
 		if (fits != null) {
 			this.fits.invalidateCurves();
@@ -102,12 +112,25 @@ public class FittingParameters {
 		
 	}
 
+	/**
+	 * Returns a {@link TransitionIndex} over every {@link ITransitionSeries} in
+	 * the {@link PeakTable}, built with these parameters. The index is built the
+	 * first time it is needed after any change to the FWHM or escape type.
+	 */
+	public synchronized TransitionIndex getTransitionIndex() {
+		if (transitionIndex == null) {
+			transitionIndex = new TransitionIndex(PeakTable.SYSTEM.getAll(), this);
+		}
+		return transitionIndex;
+	}
+	
 	public float getFWHMBase() {
 		return fwhmBase;
 	}
 	
 	public void setFWMHBase(float base) {
 		this.fwhmBase = base;
+		clearTransitionIndex();
 		invalidate();
 	}
 
@@ -131,6 +154,7 @@ public class FittingParameters {
 
 	public void setEscapeType(EscapePeakType escape) {
 		this.escapeType = escape;
+		clearTransitionIndex();
 		invalidate();
 	}
 	
@@ -0,0 +1,113 @@
+package peakaboo.curvefit.curve.fitting;
+
+import java.util.List;
+import java.util.function.Function;
+
+import cyclops.ReadOnlySpectrum;
+import peakaboo.curvefit.curve.fitting.solver.FittingSolver;
+import peakaboo.curvefit.peak.transition.ITransitionSeries;
+
+/**
+ * 
+ * This class stores a lightweight result of fitting a {@link FittingSet} to a
+ * spectrum. It records only the scale factor and the sum of the scaled curve
+ * for each {@link Curve}. The full {@link FittingResultSet}, containing the
+ * fitted spectra, the total fit and the residual, is only built when
+ * {@link #getResultSet()} is first called.
+ * <br/><br/>
+ * The data which was fitted is referenced rather than copied, and should not
+ * be modified while this result is in use.
+ * 
+ * @author NAS
+ *
+ */
+public class FittingScales {
+
+	private ReadOnlySpectrum data;
+	private List<Curve> curves;
+	private float[] scales;
+	private float[] sums;
+	private FittingParameters parameters;
+	
+	private Function<FittingScales, FittingResultSet> expander;
+	private FittingResultSet resultSet;
+	
+	/**
+	 * Create a new FittingScales result
+	 * @param data the data which was fitted
+	 * @param curves the {@link Curve}s which were fitted, in the order of the given scales and sums
+	 * @param scales the scale factor for each {@link Curve}
+	 * @param sums the sum of each scaled {@link Curve}
+	 * @param parameters the {@link FittingParameters} used for fitting
+	 * @param expander a function, usually provided by the {@link FittingSolver}, which builds the full {@link FittingResultSet}
+	 */
+	public FittingScales(
+			ReadOnlySpectrum data, 
+			List<Curve> curves, 
+			float[] scales, 
+			float[] sums, 
+			FittingParameters parameters, 
+			Function<FittingScales, FittingResultSet> expander
+		) {
+		this.data = data;
+		this.curves = curves;
+		this.scales = scales;
+		this.sums = sums;
+		this.parameters = parameters;
+		this.expander = expander;
+	}
+	
+	public ReadOnlySpectrum getData() {
+		return data;
+	}
+	
+	public List<Curve> getCurves() {
+		return curves;
+	}
+	
+	public Curve getCurve(int index) {
+		return curves.get(index);
+	}
+	
+	public ITransitionSeries getTransitionSeries(int index) {
+		return curves.get(index).getTransitionSeries();
+	}
+	
+	/**
+	 * Gets the amount the {@link Curve} at the given index was scaled by
+	 */
+	public float getScale(int index) {
+		return scales[index];
+	}
+	
+	/**
+	 * Gets the sum of all channels of the scaled {@link Curve} at the given index
+	 */
+	public float getSum(int index) {
+		return sums[index];
+	}
+	
+	public FittingParameters getParameters() {
+		return parameters;
+	}
+	
+	public int size() {
+		return curves.size();
+	}
+	
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+	
+	/**
+	 * Returns the full {@link FittingResultSet} for this fitting, building it if
+	 * it has not already been built.
+	 */
+	public synchronized FittingResultSet getResultSet() {
+		if (resultSet == null) {
+			resultSet = expander.apply(this);
+		}
+		return resultSet;
+	}
+	
+}
@@ -3,6 +3,7 @@ package peakaboo.curvefit.curve.fitting;
 
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -18,10 +19,13 @@ import peakaboo.curvefit.peak.transition.ITransitionSeries;
 public class FittingSet
 {
 
-	private EventfulCache<List<Curve>>		curves;
+	private EventfulCache<CurveSet>			curves;
 	private List<ITransitionSeries>			fitTransitionSeries;
 	
 	private FittingParameters				parameters;
+	
+	//whether curves share their shapes through the CurveCache
+	private boolean							cacheCurves = true;
 
 	
 	public FittingSet() {
@@ -49,12 +53,39 @@ public class FittingSet
 	}
 
 
+	/**
+	 * Sets whether this FittingSet's {@link Curve}s share their shapes through 
+	 * the {@link CurveCache}. A FittingSet which is used to try out many 
+	 * different {@link FittingParameters} should not, so that it doesn't evict 
+	 * the shapes of the curves that are actually being used.
+	 */
+	public synchronized void setCurveCaching(boolean cacheCurves) {
+		this.cacheCurves = cacheCurves;
+		invalidateCurves();
+	}
+
 	public List<Curve> getCurves() {
-		return curves.getValue();
+		return curves.getValue().all;
 	}
 	
+	/**
+	 * Returns the visible curves. The list is shared by every caller until the 
+	 * curves are next regenerated, and can't be modified.
+	 */
 	public List<Curve> getVisibleCurves() {
-		return getCurves().stream().filter(c -> c.getTransitionSeries().isVisible()).collect(Collectors.toList());
+		return curves.getValue().visible;
+	}
+	
+	/**
+	 * Returns a copy of the {@link FittingParameters} which the current curves 
+	 * were generated with. Like {@link FittingParameters#copy()}, the copy is 
+	 * detached from this FittingSet, but it is shared by every caller until 
+	 * the curves are next regenerated, so that results fitted against the same 
+	 * curves (eg every pixel of a map) don't each need their own copy. It 
+	 * should not be modified.
+	 */
+	public FittingParameters getCurveParameters() {
+		return curves.getValue().parameters;
 	}
 	
 	public synchronized void addTransitionSeries(ITransitionSeries ts)
@@ -76,12 +107,27 @@ public class FittingSet
 	}
 
 	
-	private synchronized List<Curve> generateCurves() {
+	private synchronized CurveSet generateCurves() {
 		List<Curve> curvelist = new ArrayList<Curve>();
 		for (ITransitionSeries ts : fitTransitionSeries) {
-			curvelist.add(new Curve(ts, parameters));
+			curvelist.add(new Curve(ts, parameters, cacheCurves));
+		}
+		return new CurveSet(curvelist, parameters.copy());
+	}
+	
+	/**
+	 * One generation of curves, along with what is derived from them
+	 */
+	private static class CurveSet {
+		final List<Curve> all;
+		final List<Curve> visible;
+		final FittingParameters parameters;
+		
+		CurveSet(List<Curve> all, FittingParameters parameters) {
+			this.all = all;
+			this.visible = Collections.unmodifiableList(all.stream().filter(c -> c.getTransitionSeries().isVisible()).collect(Collectors.toList()));
+			this.parameters = parameters;
 		}
-		return curvelist;
 	}
 
 
@@ -0,0 +1,109 @@
+package peakaboo.curvefit.curve.fitting;
+
+import java.util.List;
+
+import cyclops.ISpectrum;
+import cyclops.Spectrum;
+import peakaboo.curvefit.curve.fitting.solver.FittingSolver;
+
+/**
+ * A FittingWorkspace holds the temporary {@link Spectrum} buffers which a
+ * {@link FittingSolver} needs while fitting a single spectrum. Reusing one
+ * workspace across many calls to
+ * {@link FittingSolver#solve(cyclops.ReadOnlySpectrum, FittingSet, peakaboo.curvefit.curve.fitting.fitter.CurveFitter, FittingWorkspace)}
+ * avoids allocating new buffers for every spectrum fitted.
+ * <br/><br/>
+ * A FittingWorkspace is not thread-safe. Each thread fitting spectra should
+ * have its own workspace.
+ * 
+ * @author NAS
+ *
+ */
+public class FittingWorkspace {
+
+	private int size = -1;
+	
+	private Spectrum scratch;
+	private Spectrum total;
+	private Spectrum residual;
+	
+	private double[] previousSolution;
+	
+	//whatever a solver derived from a set of curves, and the curves it was derived from
+	private List<Curve> stateCurves;
+	private Object curveState;
+	
+	
+	/**
+	 * Ensures that the buffers in this workspace are of the given size,
+	 * reallocating them only if the size has changed.
+	 */
+	public void ensureSize(int size) {
+		if (this.size == size) {
+			return;
+		}
+		this.size = size;
+		scratch = new ISpectrum(size);
+		total = new ISpectrum(size);
+		residual = new ISpectrum(size);
+	}
+	
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * A buffer for holding intermediate values such as a single scaled curve
+	 */
+	public Spectrum getScratch() {
+		return scratch;
+	}
+
+	/**
+	 * A buffer for accumulating the total fit
+	 */
+	public Spectrum getTotal() {
+		return total;
+	}
+
+	/**
+	 * A buffer for holding the signal remaining after fitting
+	 */
+	public Spectrum getResidual() {
+		return residual;
+	}
+	
+	/**
+	 * The solution found for the last spectrum fitted with this workspace, if
+	 * the solver recorded one. Solvers may use this as a starting point, since
+	 * neighbouring spectra in a map tend to have similar fits.
+	 */
+	public double[] getPreviousSolution() {
+		return previousSolution;
+	}
+	
+	public void setPreviousSolution(double[] previousSolution) {
+		this.previousSolution = previousSolution;
+	}
+	
+	/**
+	 * Returns what the solver stored with {@link #setCurveState(List, Object)} 
+	 * for the given curves, or null if the curves are not the ones it was 
+	 * stored for. Curves are compared by identity, so a solver can store 
+	 * anything it derives only from the curves (eg which channels they cover) 
+	 * here, and rebuild it only when the {@link FittingSet}'s curves are 
+	 * regenerated rather than for every spectrum fitted.
+	 */
+	public Object getCurveState(List<Curve> curves) {
+		if (curves != stateCurves) {
+			return null;
+		}
+		return curveState;
+	}
+	
+	public void setCurveState(List<Curve> curves, Object curveState) {
+		this.stateCurves = curves;
+		this.curveState = curveState;
+	}
+	
+}
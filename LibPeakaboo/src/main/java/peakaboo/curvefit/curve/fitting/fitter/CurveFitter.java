@@ -19,7 +19,19 @@ import peakaboo.curvefit.curve.fitting.solver.GreedyFittingSolver;
  */
 public interface CurveFitter {
 
-	FittingResult fit(ReadOnlySpectrum data, Curve curve);
+	/**
+	 * Fits the given {@link Curve} to the data, returning the scaled curve in a {@link FittingResult}
+	 */
+	default FittingResult fit(ReadOnlySpectrum data, Curve curve) {
+		float scale = findScale(data, curve);
+		return new FittingResult(curve.scale(scale), curve, scale);
+	}
+	
+	/**
+	 * Determines how much the given {@link Curve} should be scaled by to fit the
+	 * data, without building the scaled curve.
+	 */
+	float findScale(ReadOnlySpectrum data, Curve curve);
 	
 	String name(); 
 		
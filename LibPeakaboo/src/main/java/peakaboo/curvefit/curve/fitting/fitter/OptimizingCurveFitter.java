@@ -1,7 +1,5 @@
 package peakaboo.curvefit.curve.fitting.fitter;
 
-import java.util.LinkedHashSet;
-import java.util.Set;
 
 import org.apache.commons.math3.analysis.UnivariateFunction;
 import org.apache.commons.math3.optim.MaxEval;
@@ -13,49 +11,33 @@ import org.apache.commons.math3.optim.univariate.UnivariateObjectiveFunction;
 import org.apache.commons.math3.optim.univariate.UnivariateOptimizer;
 import org.apache.commons.math3.optim.univariate.UnivariatePointValuePair;
 
-import cyclops.ISpectrum;
 import cyclops.ReadOnlySpectrum;
-import cyclops.Spectrum;
-import cyclops.SpectrumCalculations;
 import peakaboo.curvefit.curve.fitting.Curve;
-import peakaboo.curvefit.curve.fitting.FittingResult;
 
 public class OptimizingCurveFitter implements CurveFitter {
 
 	protected float overfitPenalty = 5f;
 	
 	@Override
-	public FittingResult fit(ReadOnlySpectrum data, Curve curve) {
-		float scale = this.findScale(data, curve);
-		ReadOnlySpectrum scaledData = curve.scale(scale);
-		FittingResult result = new FittingResult(scaledData, curve, scale);
-		return result;
-	}
-	
-	
-	
-	private float findScale(ReadOnlySpectrum data, Curve curve) {
+	public float findScale(ReadOnlySpectrum data, Curve curve) {
 
-		Set<Integer> intenseChannels = new LinkedHashSet<>();
-		for (int channel : curve.getIntenseRanges()) {
-			intenseChannels.add(channel);
+		int[] intenseChannels = curve.getIntenseChannels();
+		float[] curveValues = new float[intenseChannels.length];
+		for (int i = 0; i < intenseChannels.length; i++) {
+			curveValues[i] = curve.get().get(intenseChannels[i]);
 		}
 		
-		
+		//only the intense channels contribute to the score, so we 
+		//calculate the residual for those channels directly
 		UnivariateFunction score = new UnivariateFunction() {
 			
-			Spectrum scaled = new ISpectrum(data.size());
-			Spectrum residual = new ISpectrum(data.size());
-			
 			@Override
 			public double value(double scale) {
-				curve.scaleInto((float) scale, scaled);
-				residual.copy(data);
-				SpectrumCalculations.subtractLists_inplace(residual, scaled);
+				float fscale = (float) scale;
 				
 				float score = 0;
-				for (int i : intenseChannels) {
-					float value = residual.get(i);
+				for (int i = 0; i < intenseChannels.length; i++) {
+					float value = data.get(intenseChannels[i]) - curveValues[i] * fscale;
 					if (value < 0) {
 						value *= overfitPenalty;
 					}
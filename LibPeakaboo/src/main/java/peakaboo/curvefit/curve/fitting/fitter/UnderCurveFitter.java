@@ -2,7 +2,6 @@ package peakaboo.curvefit.curve.fitting.fitter;
 
 import cyclops.ReadOnlySpectrum;
 import peakaboo.curvefit.curve.fitting.Curve;
-import peakaboo.curvefit.curve.fitting.FittingResult;
 
 public class UnderCurveFitter implements CurveFitter {
 
@@ -21,11 +20,9 @@ public class UnderCurveFitter implements CurveFitter {
 	/**
 	 * Fits this curve against spectrum data
 	 */
-	public FittingResult fit(ReadOnlySpectrum data, Curve curve) {
-		float scale = this.getRatioForCurveUnderData(data, curve);
-		ReadOnlySpectrum scaledData = curve.scale(scale);
-		FittingResult result = new FittingResult(scaledData, curve, scale);
-		return result;
+	@Override
+	public float findScale(ReadOnlySpectrum data, Curve curve) {
+		return this.getRatioForCurveUnderData(data, curve);
 	}
 	
 
@@ -4,7 +4,9 @@ import cyclops.ReadOnlySpectrum;
 import cyclops.Spectrum;
 import peakaboo.curvefit.curve.fitting.Curve;
 import peakaboo.curvefit.curve.fitting.FittingResultSet;
+import peakaboo.curvefit.curve.fitting.FittingScales;
 import peakaboo.curvefit.curve.fitting.FittingSet;
+import peakaboo.curvefit.curve.fitting.FittingWorkspace;
 import peakaboo.curvefit.curve.fitting.fitter.CurveFitter;
 
 /**
@@ -16,6 +18,20 @@ public interface FittingSolver {
 
 	String name();
 	
-	FittingResultSet solve(ReadOnlySpectrum data, FittingSet fittings, CurveFitter fitter);
+	/**
+	 * Fits the given {@link FittingSet} to the data, returning a full {@link FittingResultSet}
+	 */
+	default FittingResultSet solve(ReadOnlySpectrum data, FittingSet fittings, CurveFitter fitter) {
+		return solve(data, fittings, fitter, new FittingWorkspace()).getResultSet();
+	}
+	
+	/**
+	 * Fits the given {@link FittingSet} to the data, using the given
+	 * {@link FittingWorkspace} for any temporary buffers. The returned
+	 * {@link FittingScales} contains only the scale and sum of each fitted
+	 * {@link Curve}, and will build the fitted spectra only if asked to. This
+	 * is intended for fitting many spectra in a row, such as when mapping.
+	 */
+	FittingScales solve(ReadOnlySpectrum data, FittingSet fittings, CurveFitter fitter, FittingWorkspace workspace);
 	
 }
@@ -8,10 +8,11 @@ import cyclops.ReadOnlySpectrum;
 import cyclops.Spectrum;
 import cyclops.SpectrumCalculations;
 import peakaboo.curvefit.curve.fitting.Curve;
-import peakaboo.curvefit.curve.fitting.FittingParameters;
 import peakaboo.curvefit.curve.fitting.FittingResult;
 import peakaboo.curvefit.curve.fitting.FittingResultSet;
+import peakaboo.curvefit.curve.fitting.FittingScales;
 import peakaboo.curvefit.curve.fitting.FittingSet;
+import peakaboo.curvefit.curve.fitting.FittingWorkspace;
 import peakaboo.curvefit.curve.fitting.fitter.CurveFitter;
 
 public class GreedyFittingSolver implements FittingSolver {
@@ -30,28 +31,57 @@ public class GreedyFittingSolver implements FittingSolver {
 	 * Fit this FittingSet against spectrum data
 	 */
 	@Override
-	public FittingResultSet solve(ReadOnlySpectrum data, FittingSet fittings, CurveFitter fitter) {
+	public FittingScales solve(ReadOnlySpectrum data, FittingSet fittings, CurveFitter fitter, FittingWorkspace workspace) {
 
+		List<Curve> curves = fittings.getVisibleCurves();
+		float[] scales = new float[curves.size()];
+		float[] sums = new float[curves.size()];
 		
+		workspace.ensureSize(data.size());
+		Spectrum remaining = workspace.getResidual();
+		Spectrum scaled = workspace.getScratch();
+		remaining.copy(data);
+		float[] remainingArray = remaining.backingArray();
+		float[] scaledArray = scaled.backingArray();
+		
+		// calculate the curves
+		for (int i = 0; i < curves.size(); i++) {
+			Curve curve = curves.get(i);
+			
+			float scale = fitter.findScale(remaining, curve);
+			curve.scaleInto(scale, scaled);
+			scales[i] = scale;
+			sums[i] = scaled.sum();
+			
+			//subtract the fit from the remaining signal, without going below zero
+			for (int channel = 0; channel < remainingArray.length; channel++) {
+				remainingArray[channel] = Math.max(remainingArray[channel] - scaledArray[channel], 0.0f);
+			}
+		}
+
+		return new FittingScales(data, curves, scales, sums, fittings.getCurveParameters(), this::expand);
+		
+	}
+	
+	/**
+	 * Builds the full {@link FittingResultSet} from the curve scales found in {@link #solve}
+	 */
+	private FittingResultSet expand(FittingScales scales) {
+		
+		ReadOnlySpectrum data = scales.getData();
 		Spectrum resultTotalFit = new ISpectrum(data.size());
 		List<FittingResult> resultFits = new ArrayList<>();
-		FittingParameters resultParameters = FittingParameters.copy(fittings.getFittingParameters());
 		
-		// calculate the curves
-		for (Curve curve : fittings.getCurves()) {
-			if (!curve.getTransitionSeries().isVisible()) { continue; }
-						
-			FittingResult result = fitter.fit(data, curve);
+		for (int i = 0; i < scales.size(); i++) {
+			Curve curve = scales.getCurve(i);
+			FittingResult result = new FittingResult(curve.scale(scales.getScale(i)), curve, scales.getScale(i));
 			data = SpectrumCalculations.subtractLists(data, result.getFit(), 0.0f);
 			
-			//should this be done through a method addFit?
 			resultFits.add(result);
 			SpectrumCalculations.addLists_inplace(resultTotalFit, result.getFit());
 		}
-
 		
-		FittingResultSet results = new FittingResultSet(resultTotalFit, data, resultFits, resultParameters);
-		return results;
+		return new FittingResultSet(resultTotalFit, data, resultFits, scales.getParameters());
 		
 	}
 	
@@ -0,0 +1,385 @@
+package peakaboo.curvefit.curve.fitting.solver;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+import cyclops.ISpectrum;
+import cyclops.ReadOnlySpectrum;
+import cyclops.Spectrum;
+import cyclops.SpectrumCalculations;
+import peakaboo.curvefit.curve.fitting.Curve;
+import peakaboo.curvefit.curve.fitting.FittingResult;
+import peakaboo.curvefit.curve.fitting.FittingResultSet;
+import peakaboo.curvefit.curve.fitting.FittingScales;
+import peakaboo.curvefit.curve.fitting.FittingSet;
+import peakaboo.curvefit.curve.fitting.FittingWorkspace;
+import peakaboo.curvefit.curve.fitting.fitter.CurveFitter;
+
+/**
+ * Fits all visible {@link Curve}s simultaneously by non-negative linear least
+ * squares. Because the curves in a {@link FittingSet} don't change from one
+ * spectrum to the next, the overlap (Gram) matrix of the curves is built and
+ * factorized only once for each revision of the FittingSet's curves. Fitting a
+ * spectrum then only requires projecting the data onto each curve's support
+ * and solving a small dense system. If the unconstrained solution contains
+ * negative scales, an active-set (Lawson-Hanson) search is performed, starting
+ * from the set of curves which were in use for the previous spectrum fitted
+ * with the same {@link FittingWorkspace}.
+ * <br/><br/>
+ * This solver does not use the {@link CurveFitter}.
+ *
+ * @author NAS
+ *
+ */
+public class LeastSquaresFittingSolver implements FittingSolver {
+
+	private static final double TOLERANCE = 1e-10;
+	private static final int MAX_ITERATIONS = 500;
+	private static final int MAX_MODELS = 4;
+
+	/**
+	 * Recently used models, most recent first. Several FittingSets (eg the
+	 * plot's selections and proposals) commonly share one solver, so more
+	 * than one model is kept to avoid rebuilding them on alternating calls.
+	 */
+	private final LinkedList<Model> models = new LinkedList<>();
+
+	@Override
+	public String name() {
+		return "Least-Squares";
+	}
+
+	@Override
+	public String toString() {
+		return name();
+	}
+
+	@Override
+	public FittingScales solve(ReadOnlySpectrum data, FittingSet fittings, CurveFitter fitter, FittingWorkspace workspace) {
+
+		Model model = getModel(fittings);
+		List<Curve> curves = model.curves;
+		int size = curves.size();
+
+		//project the data onto each curve
+		double[] projections = new double[size];
+		for (int i = 0; i < size; i++) {
+			Curve curve = curves.get(i);
+			float[] support = curve.getSupport();
+			int start = curve.getSupportStart();
+			double sum = 0;
+			for (int j = 0; j < support.length; j++) {
+				sum += support[j] * data.get(start + j);
+			}
+			projections[i] = sum;
+		}
+
+		double[] solution = model.solve(projections, workspace.getPreviousSolution());
+		workspace.setPreviousSolution(solution);
+
+		workspace.ensureSize(data.size());
+		float[] scales = new float[size];
+		float[] sums = new float[size];
+		for (int i = 0; i < size; i++) {
+			scales[i] = (float) solution[i];
+			curves.get(i).scaleInto(scales[i], workspace.getScratch());
+			sums[i] = workspace.getScratch().sum();
+		}
+
+		return new FittingScales(data, curves, scales, sums, fittings.getCurveParameters(), this::expand);
+
+	}
+
+	/**
+	 * Builds the full {@link FittingResultSet} from the curve scales found in {@link #solve}
+	 */
+	private FittingResultSet expand(FittingScales scales) {
+		List<FittingResult> fits = new ArrayList<>();
+		Spectrum total = new ISpectrum(scales.getData().size());
+		for (int i = 0; i < scales.size(); i++) {
+			Curve curve = scales.getCurve(i);
+			float scale = scales.getScale(i);
+			Spectrum scaled = curve.scale(scale);
+			fits.add(new FittingResult(scaled, curve, scale));
+			SpectrumCalculations.addLists_inplace(total, scaled);
+		}
+		Spectrum residual = SpectrumCalculations.subtractLists(scales.getData(), total);
+
+		return new FittingResultSet(total, residual, fits, scales.getParameters());
+	}
+
+	/**
+	 * Returns the {@link Model} for the FittingSet's current curves, building
+	 * a new one if the curves have been regenerated since the last call.
+	 */
+	private Model getModel(FittingSet fittings) {
+		List<Curve> allCurves = fittings.getCurves();
+		synchronized (models) {
+			Iterator<Model> iterator = models.iterator();
+			while (iterator.hasNext()) {
+				Model model = iterator.next();
+				if (model.source == allCurves) {
+					iterator.remove();
+					models.addFirst(model);
+					return model;
+				}
+			}
+		}
+
+		//build outside of the lock so that other FittingSets aren't held up
+		Model model = new Model(allCurves, fittings.getVisibleCurves());
+		synchronized (models) {
+			models.addFirst(model);
+			while (models.size() > MAX_MODELS) {
+				models.removeLast();
+			}
+		}
+		return model;
+	}
+
+
+	/**
+	 * The Gram matrix and its Cholesky factorization for one revision of a
+	 * {@link FittingSet}'s curves
+	 */
+	private static class Model {
+
+		List<Curve> source;
+		List<Curve> curves;
+		double[][] gram;
+		double[][] factor;
+
+		Model(List<Curve> source, List<Curve> curves) {
+			this.source = source;
+			this.curves = curves;
+			int size = curves.size();
+
+			gram = new double[size][size];
+			double maxDiagonal = 0;
+			for (int i = 0; i < size; i++) {
+				for (int j = i; j < size; j++) {
+					gram[i][j] = overlap(curves.get(i), curves.get(j));
+					gram[j][i] = gram[i][j];
+				}
+				maxDiagonal = Math.max(maxDiagonal, gram[i][i]);
+			}
+
+			//a tiny ridge keeps the factorization stable when two curves are nearly identical
+			double ridge = maxDiagonal * 1e-9;
+			for (int i = 0; i < size; i++) {
+				gram[i][i] += ridge;
+			}
+
+			int[] all = new int[size];
+			for (int i = 0; i < size; i++) { all[i] = i; }
+			factor = cholesky(gram, all, size);
+		}
+
+		private static double overlap(Curve a, Curve b) {
+			int start = Math.max(a.getSupportStart(), b.getSupportStart());
+			int end = Math.min(a.getSupportStart() + a.getSupport().length, b.getSupportStart() + b.getSupport().length);
+			float[] as = a.getSupport();
+			float[] bs = b.getSupport();
+			double sum = 0;
+			for (int channel = start; channel < end; channel++) {
+				sum += as[channel - a.getSupportStart()] * bs[channel - b.getSupportStart()];
+			}
+			return sum;
+		}
+
+		/**
+		 * Solves the non-negative least squares problem for the given projections
+		 * of the data onto the curves.
+		 * @param projections the projections of the data onto each curve
+		 * @param previous the solution for the previous spectrum, or null
+		 */
+		double[] solve(double[] projections, double[] previous) {
+			int size = curves.size();
+
+			//The unconstrained solution is usually non-negative, and can use the precomputed factorization
+			double[] x = new double[size];
+			if (factor != null) {
+				substitute(factor, projections, null, size, x);
+				if (isNonNegative(x, size)) {
+					return x;
+				}
+			}
+
+			//Otherwise, perform an active-set search, starting with the curves used last time
+			boolean[] passive = new boolean[size];
+			if (previous != null && previous.length == size) {
+				for (int i = 0; i < size; i++) {
+					passive[i] = previous[i] > 0;
+				}
+			}
+
+			x = new double[size];
+			double[] z = new double[size];
+			if (solvePassive(passive, projections, z) && allPositive(z, passive)) {
+				System.arraycopy(z, 0, x, 0, size);
+			} else {
+				passive = new boolean[size];
+			}
+
+			double[] gradient = new double[size];
+			for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+
+				//find the most promising curve not yet in use
+				gradient(projections, x, gradient);
+				int best = -1;
+				double bestGradient = TOLERANCE;
+				for (int i = 0; i < size; i++) {
+					if (!passive[i] && gradient[i] > bestGradient) {
+						best = i;
+						bestGradient = gradient[i];
+					}
+				}
+				if (best == -1) {
+					break;
+				}
+				passive[best] = true;
+
+				//solve for the curves in use, backing off towards the previous
+				//solution whenever a scale would become negative
+				while (true) {
+					if (!solvePassive(passive, projections, z)) {
+						passive[best] = false;
+						return x;
+					}
+					if (allPositive(z, passive)) {
+						System.arraycopy(z, 0, x, 0, size);
+						break;
+					}
+					double alpha = 1;
+					int blocking = -1;
+					for (int i = 0; i < size; i++) {
+						//coefficients already at 0 give no step, and would divide 0 by 0
+						if (passive[i] && z[i] <= 0 && x[i] - z[i] > 0) {
+							double step = x[i] / (x[i] - z[i]);
+							if (step < alpha || blocking == -1) {
+								alpha = Math.min(alpha, step);
+								blocking = i;
+							}
+						}
+					}
+					for (int i = 0; i < size; i++) {
+						if (!passive[i]) continue;
+						x[i] += alpha * (z[i] - x[i]);
+						if (x[i] <= TOLERANCE || i == blocking) {
+							x[i] = 0;
+							passive[i] = false;
+						}
+					}
+				}
+
+			}
+
+			return x;
+		}
+
+		private void gradient(double[] projections, double[] x, double[] gradient) {
+			int size = x.length;
+			for (int i = 0; i < size; i++) {
+				double value = projections[i];
+				for (int j = 0; j < size; j++) {
+					value -= gram[i][j] * x[j];
+				}
+				gradient[i] = value;
+			}
+		}
+
+		/**
+		 * Solves the least squares problem for only the passive curves, storing
+		 * the result in z. Returns false if the subproblem could not be factorized.
+		 */
+		private boolean solvePassive(boolean[] passive, double[] projections, double[] z) {
+			int size = passive.length;
+			int[] indices = new int[size];
+			int count = 0;
+			for (int i = 0; i < size; i++) {
+				z[i] = 0;
+				if (passive[i]) {
+					indices[count++] = i;
+				}
+			}
+			if (count == 0) {
+				return true;
+			}
+			double[][] subfactor = cholesky(gram, indices, count);
+			if (subfactor == null) {
+				return false;
+			}
+			double[] subsolution = new double[count];
+			substitute(subfactor, projections, indices, count, subsolution);
+			for (int i = 0; i < count; i++) {
+				z[indices[i]] = subsolution[i];
+			}
+			return true;
+		}
+
+		private static boolean isNonNegative(double[] x, int size) {
+			for (int i = 0; i < size; i++) {
+				if (x[i] < 0) return false;
+			}
+			return true;
+		}
+
+		private static boolean allPositive(double[] z, boolean[] passive) {
+			for (int i = 0; i < z.length; i++) {
+				if (passive[i] && z[i] <= 0) return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Computes the lower-triangular Cholesky factor of the submatrix of m
+		 * given by the first count indices, or null if it is not positive definite
+		 */
+		private static double[][] cholesky(double[][] m, int[] indices, int count) {
+			double[][] l = new double[count][count];
+			for (int i = 0; i < count; i++) {
+				for (int j = 0; j <= i; j++) {
+					double sum = m[indices[i]][indices[j]];
+					for (int k = 0; k < j; k++) {
+						sum -= l[i][k] * l[j][k];
+					}
+					if (i == j) {
+						if (sum <= 0) {
+							return null;
+						}
+						l[i][i] = Math.sqrt(sum);
+					} else {
+						l[i][j] = sum / l[j][j];
+					}
+				}
+			}
+			return l;
+		}
+
+		/**
+		 * Solves (L L^T) x = b by forward and back substitution. If indices is
+		 * not null, b is read through it.
+		 */
+		private static void substitute(double[][] l, double[] b, int[] indices, int count, double[] x) {
+			double[] y = new double[count];
+			for (int i = 0; i < count; i++) {
+				double sum = indices == null ? b[i] : b[indices[i]];
+				for (int k = 0; k < i; k++) {
+					sum -= l[i][k] * y[k];
+				}
+				y[i] = sum / l[i][i];
+			}
+			for (int i = count - 1; i >= 0; i--) {
+				double sum = y[i];
+				for (int k = i + 1; k < count; k++) {
+					sum -= l[k][i] * x[k];
+				}
+				x[i] = sum / l[i][i];
+			}
+		}
+
+	}
+
+}
@@ -6,7 +6,6 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
-import java.util.Set;
 
 import org.apache.commons.math3.analysis.MultivariateFunction;
 import org.apache.commons.math3.optim.PointValuePair;
@@ -14,8 +13,9 @@ import org.apache.commons.math3.optim.PointValuePair;
 import cyclops.ReadOnlySpectrum;
 import cyclops.util.ListOps;
 import peakaboo.curvefit.curve.fitting.Curve;
-import peakaboo.curvefit.curve.fitting.FittingResultSet;
+import peakaboo.curvefit.curve.fitting.FittingScales;
 import peakaboo.curvefit.curve.fitting.FittingSet;
+import peakaboo.curvefit.curve.fitting.FittingWorkspace;
 import peakaboo.curvefit.curve.fitting.fitter.CurveFitter;
 
 public class MultisamplingOptimizingFittingSolver extends OptimizingFittingSolver {
@@ -32,7 +32,7 @@ public class MultisamplingOptimizingFittingSolver extends OptimizingFittingSolve
 
 	
 	@Override
-	public FittingResultSet solve(ReadOnlySpectrum data, FittingSet fittings, CurveFitter fitter) {
+	public FittingScales solve(ReadOnlySpectrum data, FittingSet fittings, CurveFitter fitter, FittingWorkspace workspace) {
 		long t1 = System.currentTimeMillis();
 		
 		int size = fittings.getVisibleCurves().size();
@@ -44,7 +44,7 @@ public class MultisamplingOptimizingFittingSolver extends OptimizingFittingSolve
 		sortCurves(curves);
 		
 		
-		Set<Integer> intenseChannels = getIntenseChannels(curves);
+		int[] intenseChannels = getIntenseChannels(curves);
 		
 		List<Curve> perm = new ArrayList<>(curves);
 		int counter = 0;
@@ -54,8 +54,8 @@ public class MultisamplingOptimizingFittingSolver extends OptimizingFittingSolve
 			
 			
 			double[] guess = getInitialGuess(size, perm, fitter, data);
-			EvaluationContext context = new EvaluationContext(data, fittings, perm);
-			MultivariateFunction cost = getCostFunction(context, intenseChannels);
+			EvaluationContext context = new EvaluationContext(data, fittings, perm, intenseChannels, workspace);
+			MultivariateFunction cost = getCostFunction(context);
 			PointValuePair result = optimizeCostFunction(cost, guess, 0.02d);
 			double[] permScalings = result.getPoint();
 			
@@ -77,7 +77,7 @@ public class MultisamplingOptimizingFittingSolver extends OptimizingFittingSolve
 			scalings[i] /= counter;
 		}
 
-		EvaluationContext context = new EvaluationContext(data, fittings, curves);
+		EvaluationContext context = new EvaluationContext(data, fittings, curves, intenseChannels, workspace);
 		
 		long t2 = System.currentTimeMillis();
 		System.out.println(t2 - t1);
@@ -1,10 +1,10 @@
 package peakaboo.curvefit.curve.fitting.solver;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
-import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Set;
 
 import org.apache.commons.math3.analysis.MultivariateFunction;
 import org.apache.commons.math3.optim.InitialGuess;
@@ -24,10 +24,11 @@ import cyclops.ReadOnlySpectrum;
 import cyclops.Spectrum;
 import cyclops.SpectrumCalculations;
 import peakaboo.curvefit.curve.fitting.Curve;
-import peakaboo.curvefit.curve.fitting.FittingParameters;
 import peakaboo.curvefit.curve.fitting.FittingResult;
 import peakaboo.curvefit.curve.fitting.FittingResultSet;
+import peakaboo.curvefit.curve.fitting.FittingScales;
 import peakaboo.curvefit.curve.fitting.FittingSet;
+import peakaboo.curvefit.curve.fitting.FittingWorkspace;
 import peakaboo.curvefit.curve.fitting.fitter.CurveFitter;
 import peakaboo.curvefit.peak.table.Element;
 import peakaboo.curvefit.peak.transition.TransitionShell;
@@ -45,17 +46,16 @@ public class OptimizingFittingSolver implements FittingSolver {
 	}
 
 	@Override
-	public FittingResultSet solve(ReadOnlySpectrum data, FittingSet fittings, CurveFitter fitter) {
-		int size = fittings.getVisibleCurves().size();
+	public FittingScales solve(ReadOnlySpectrum data, FittingSet fittings, CurveFitter fitter, FittingWorkspace workspace) {
+		SparseCurves sparse = getSparseCurves(fittings, workspace);
+		List<Curve> curves = sparse.curves;
+		int size = curves.size();
 		if (size == 0) {
 			return getEmptyResult(data, fittings);
 		}
 		
-		List<Curve> curves = new ArrayList<>(fittings.getVisibleCurves());
-		sortCurves(curves);
-		Set<Integer> intenseChannels = getIntenseChannels(curves);
-		EvaluationContext context = new EvaluationContext(data, fittings, curves);
-		MultivariateFunction cost = getCostFunction(context, intenseChannels);
+		EvaluationContext context = new EvaluationContext(data, fittings, sparse, workspace);
+		MultivariateFunction cost = getCostFunction(context);
 		double[] guess = getInitialGuess(size, curves, fitter, data);
 				
 			
@@ -68,12 +68,14 @@ public class OptimizingFittingSolver implements FittingSolver {
 		
 	}
 	
-	protected FittingResultSet getEmptyResult(ReadOnlySpectrum data, FittingSet fittings) {
-		return new FittingResultSet(
-				new ISpectrum(data.size()), 
-				new ISpectrum(data), 
+	protected FittingScales getEmptyResult(ReadOnlySpectrum data, FittingSet fittings) {
+		return new FittingScales(
+				data, 
 				Collections.emptyList(), 
-				FittingParameters.copy(fittings.getFittingParameters().copy())
+				new float[0], 
+				new float[0], 
+				fittings.getCurveParameters(), 
+				this::expand
 			);
 	}
 	
@@ -112,11 +114,10 @@ public class OptimizingFittingSolver implements FittingSolver {
 		double[] guess = new double[size];
 		for (int i = 0; i < size; i++) {
 			Curve curve = curves.get(i);
-			FittingResult guessFittingResult = fitter.fit(data, curve);
 			
 			//there will usually be some overlap between elements, so
 			//we use 80% of the independently fitted guess.
-			guess[i] = guessFittingResult.getCurveScale() * 0.80f;
+			guess[i] = fitter.findScale(data, curve) * 0.80f;
 			
 			//guesses shouldn't be zero
 			if (guess[i] == 0) {
@@ -126,17 +127,48 @@ public class OptimizingFittingSolver implements FittingSolver {
 		return guess;
 	}
 	
-	protected Set<Integer> getIntenseChannels(List<Curve> curves) {
-		Set<Integer> intenseChannels = new LinkedHashSet<>();
+	/**
+	 * Returns the sorted visible curves and their {@link SparseCurves} view, 
+	 * reusing the ones stored in the workspace if the curves haven't changed.
+	 */
+	protected SparseCurves getSparseCurves(FittingSet fittings, FittingWorkspace workspace) {
+		List<Curve> visible = fittings.getVisibleCurves();
+		Object state = workspace.getCurveState(visible);
+		if (state instanceof SparseCurves) {
+			return (SparseCurves) state;
+		}
+		
+		List<Curve> curves = new ArrayList<>(visible);
+		sortCurves(curves);
+		SparseCurves sparse = new SparseCurves(curves, getIntenseChannels(curves));
+		workspace.setCurveState(visible, sparse);
+		return sparse;
+	}
+	
+	/**
+	 * Returns every channel which is intense for any of the curves, in the order 
+	 * they are first found
+	 */
+	protected int[] getIntenseChannels(List<Curve> curves) {
+		int count = 0;
+		for (Curve curve : curves) {
+			count += curve.getIntenseChannels().length;
+		}
+		
+		int[] intenseChannels = new int[count];
+		BitSet seen = new BitSet();
+		count = 0;
 		for (Curve curve : curves) {
-			for (int channel : curve.getIntenseRanges()) {
-				intenseChannels.add(channel);
+			for (int channel : curve.getIntenseChannels()) {
+				if (seen.get(channel)) continue;
+				seen.set(channel);
+				intenseChannels[count++] = channel;
 			}
 		}
-		return intenseChannels;
+		return Arrays.copyOf(intenseChannels, count);
 	}
 	
-	protected MultivariateFunction getCostFunction(EvaluationContext context, Set<Integer> intenseChannels) {
+	protected MultivariateFunction getCostFunction(EvaluationContext context) {
 		return new MultivariateFunction() {
 			
 			@Override
@@ -151,7 +183,7 @@ public class OptimizingFittingSolver implements FittingSolver {
 				}
 
 				test(point, context);
-				float score = score(point, intenseChannels, context.residual);
+				float score = score(point, context);
 				if (containsNegatives > 0) {
 					return score * (1f+containsNegatives);
 				}
@@ -177,24 +209,27 @@ public class OptimizingFittingSolver implements FittingSolver {
 		});
 	}
 
+	//Calculates the total fit for the intense channels only. Each curve 
+	//only visits the intense channels which fall within its support.
 	private void test(double[] point, EvaluationContext context) {
-		int index = 0;
-		context.scratch.zero();
-		context.total.zero();
-		for (Curve curve : context.curves) {
-			float scale = (float) point[index++];
-			curve.scaleInto(scale, context.scratch);
-			SpectrumCalculations.addLists_inplace(context.total, context.scratch);
+		float[] total = context.intenseTotal;
+		Arrays.fill(total, 0f);
+		for (int c = 0; c < context.curves.size(); c++) {
+			float scale = (float) point[c];
+			int[] positions = context.curvePositions[c];
+			float[] values = context.curveValues[c];
+			for (int j = 0; j < positions.length; j++) {
+				total[positions[j]] += values[j] * scale;
+			}
 		}
-		SpectrumCalculations.subtractLists_target(context.data, context.total, context.residual);
-
 	}
 	
-	private float score(double[] point, Set<Integer> intenseChannels, Spectrum residual) {
-		float[] ra = residual.backingArray();
+	private float score(double[] point, EvaluationContext context) {
+		float[] data = context.intenseData;
+		float[] total = context.intenseTotal;
 		float score = 0;
-		for (int i : intenseChannels) {
-			float channelValue = ra[i];
+		for (int i = 0; i < data.length; i++) {
+			float channelValue = data[i] - total[i];
 			
 			//Negative values mean that we've fit more signal than exists
 			//We penalize this to prevent making up data where none exists.
@@ -212,19 +247,78 @@ public class OptimizingFittingSolver implements FittingSolver {
 		return score;
 	}
 	
-	protected FittingResultSet evaluate(double[] point, EvaluationContext context) {
-		int index = 0;
+	protected FittingScales evaluate(double[] point, EvaluationContext context) {
+		int size = context.curves.size();
+		float[] scales = new float[size];
+		float[] sums = new float[size];
+		for (int i = 0; i < size; i++) {
+			scales[i] = (float) point[i];
+			context.curves.get(i).scaleInto(scales[i], context.scratch);
+			sums[i] = context.scratch.sum();
+		}
+		return new FittingScales(context.data, context.curves, scales, sums, context.fittings.getCurveParameters(), this::expand);
+	}
+	
+	/**
+	 * Builds the full {@link FittingResultSet} from the curve scales found in {@link #solve}
+	 */
+	protected FittingResultSet expand(FittingScales scales) {
 		List<FittingResult> fits = new ArrayList<>();
-		Spectrum total = new ISpectrum(context.data.size());
-		for (Curve curve : context.curves) {
-			float scale = (float) point[index++];
+		Spectrum total = new ISpectrum(scales.getData().size());
+		for (int i = 0; i < scales.size(); i++) {
+			Curve curve = scales.getCurve(i);
+			float scale = scales.getScale(i);
 			Spectrum scaled = curve.scale(scale);
 			fits.add(new FittingResult(scaled, curve, scale));
 			SpectrumCalculations.addLists_inplace(total, scaled);
 		}
-		Spectrum residual = SpectrumCalculations.subtractLists(context.data, total);
+		Spectrum residual = SpectrumCalculations.subtractLists(scales.getData(), total);
 		
-		return new FittingResultSet(total, residual, fits, context.fittings.getFittingParameters().copy());
+		return new FittingResultSet(total, residual, fits, scales.getParameters());
+	}
+	
+	/**
+	 * A sparse view of a set of curves, covering only their intense channels. 
+	 * It depends only on the curves, so it is kept in the {@link FittingWorkspace} 
+	 * and reused for every spectrum fitted against the same curves.
+	 */
+	protected static class SparseCurves {
+		public List<Curve> curves;
+		
+		//For each curve, the positions (in intenseChannels) where the
+		//curve is non-zero and the curve's values at those positions
+		public int[] intenseChannels;
+		public int[][] curvePositions;
+		public float[][] curveValues;
+		
+		//buffers for the data and the total fit at the intense channels
+		public float[] intenseData;
+		public float[] intenseTotal;
+		
+		public SparseCurves(List<Curve> curves, int[] intenseChannels) {
+			this.curves = curves;
+			this.intenseChannels = intenseChannels;
+			this.intenseData = new float[intenseChannels.length];
+			this.intenseTotal = new float[intenseChannels.length];
+			
+			this.curvePositions = new int[curves.size()][];
+			this.curveValues = new float[curves.size()][];
+			int[] positions = new int[intenseChannels.length];
+			float[] values = new float[intenseChannels.length];
+			for (int c = 0; c < curves.size(); c++) {
+				Curve curve = curves.get(c);
+				int count = 0;
+				for (int i = 0; i < intenseChannels.length; i++) {
+					float value = curve.getValue(intenseChannels[i]);
+					if (value == 0f) continue;
+					positions[count] = i;
+					values[count] = value;
+					count++;
+				}
+				curvePositions[c] = Arrays.copyOf(positions, count);
+				curveValues[c] = Arrays.copyOf(values, count);
+			}
+		}
 	}
 	
 	protected class EvaluationContext {
@@ -234,13 +328,36 @@ public class OptimizingFittingSolver implements FittingSolver {
 		public Spectrum scratch;
 		public Spectrum total;
 		public Spectrum residual;
-		public EvaluationContext(ReadOnlySpectrum data, FittingSet fittings, List<Curve> curves) {
+		
+		//Sparse view of the problem, covering only the intense channels.
+		//See SparseCurves
+		public int[] intenseChannels;
+		public float[] intenseData;
+		public float[] intenseTotal;
+		public int[][] curvePositions;
+		public float[][] curveValues;
+		
+		public EvaluationContext(ReadOnlySpectrum data, FittingSet fittings, List<Curve> curves, int[] intenseChannels, FittingWorkspace workspace) {
+			this(data, fittings, new SparseCurves(curves, intenseChannels), workspace);
+		}
+		
+		public EvaluationContext(ReadOnlySpectrum data, FittingSet fittings, SparseCurves sparse, FittingWorkspace workspace) {
 			this.data = data;
 			this.fittings = fittings;
-			this.curves = curves;
-			this.scratch = new ISpectrum(data.size());
-			this.total = new ISpectrum(data.size());
-			this.residual = new ISpectrum(data.size());
+			this.curves = sparse.curves;
+			workspace.ensureSize(data.size());
+			this.scratch = workspace.getScratch();
+			this.total = workspace.getTotal();
+			this.residual = workspace.getResidual();
+			
+			this.intenseChannels = sparse.intenseChannels;
+			this.intenseData = sparse.intenseData;
+			this.intenseTotal = sparse.intenseTotal;
+			this.curvePositions = sparse.curvePositions;
+			this.curveValues = sparse.curveValues;
+			for (int i = 0; i < intenseChannels.length; i++) {
+				intenseData[i] = data.get(intenseChannels[i]);
+			}
 		}
 	}
 	
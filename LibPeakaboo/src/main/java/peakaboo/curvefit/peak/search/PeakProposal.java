@@ -3,7 +3,9 @@ package peakaboo.curvefit.peak.search;
 
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 
@@ -21,10 +23,12 @@ import peakaboo.curvefit.peak.search.scoring.CompoundFittingScorer;
 import peakaboo.curvefit.peak.search.scoring.CurveFittingScorer;
 import peakaboo.curvefit.peak.search.scoring.EnergyProximityScorer;
 import peakaboo.curvefit.peak.search.scoring.FastFittingScorer;
+import peakaboo.curvefit.peak.search.scoring.FittingScorer;
 import peakaboo.curvefit.peak.search.scoring.NoComplexPileupScorer;
 import peakaboo.curvefit.peak.search.scoring.PileupSourceScorer;
 import peakaboo.curvefit.peak.search.searcher.PeakSearcher;
 import peakaboo.curvefit.peak.table.PeakTable;
+import peakaboo.curvefit.peak.table.TransitionIndex;
 import peakaboo.curvefit.peak.transition.ITransitionSeries;
 import peakaboo.curvefit.peak.transition.Transition;
 import plural.executor.DummyExecutor;
@@ -40,6 +44,8 @@ import plural.executor.ExecutorSet;
 public class PeakProposal
 {
 
+	//EnergyProximityScorer gives no score to transitions this many channels or more from the peak
+	private static final int PROXIMITY_CHANNELS = 10;
 
 	
 	public static ExecutorSet<List<ITransitionSeries>> search(
@@ -75,8 +81,9 @@ public class PeakProposal
 				List<Integer> peaks = searcher.search(data);
 				
 				//remove any peaks within the FWHM of an existing Transitions in fits
+				TransitionIndex fitsIndex = new TransitionIndex(fits.getFittedTransitionSeries(), fits.getFittingParameters());
 				for (int peak : new ArrayList<>(peaks)) {
-					if (peakOverlap(fits.getFittedTransitionSeries(), peak, fits.getFittingParameters())) {
+					if (peakOverlap(fitsIndex, peak, fits.getFittingParameters())) {
 						peaks.remove(new Integer(peak));
 					}
 				}
@@ -97,6 +104,11 @@ public class PeakProposal
 				secondStage.setWorkUnits(peaks.size());
 				
 								
+				//The residual after fitting the existing fits never changes during
+				//the search, and the baseline only changes when we accept a proposal
+				ReadOnlySpectrum fitsResidual = solver.solve(data, fits, fitter).getResidual();
+				Baseline baseline = null;
+				
 				/*
 				 * Go peak by peak from strongest to weakest.
 				 * Take the best guess for that peak.
@@ -104,6 +116,7 @@ public class PeakProposal
 				 * Remove those other peaks from future consideration 
 				 */
 				List<ITransitionSeries> newFits = new ArrayList<>();
+				TransitionIndex newFitsIndex = new TransitionIndex(newFits, fits.getFittingParameters());
 				for (int channel : peaks) {
 					
 					//no fitting below 1keV
@@ -111,14 +124,17 @@ public class PeakProposal
 						continue;
 					}
 					
-					List<Pair<ITransitionSeries, Float>> guesses = fromChannel(data, fits, proposals, fitter, solver, channel, null, 5);
+					if (baseline == null) {
+						baseline = new Baseline(data, fitsResidual, fits, proposals, fitter, solver, null);
+					}
+					List<Pair<ITransitionSeries, Float>> guesses = fromChannel(baseline, data, fits.getFittingParameters(), channel, 5);
 					
 					PeakabooLog.get().log(Level.FINE, "Examining Channel " + channel);
 					
 					
 					//if this list of guesses contains a TransitionSeries we've already proposed
 					//we assume that this peak is also caused by that TransitionSeries and skip it
-					if (peakOverlap(newFits, channel, fits.getFittingParameters())) {
+					if (peakOverlap(newFitsIndex, channel, fits.getFittingParameters())) {
 						PeakabooLog.get().log(Level.FINE, "Guesses contains previously proposed TransitionSeries, skipping");
 						continue;
 					}
@@ -129,6 +145,9 @@ public class PeakProposal
 					}
 					
 
+					if (guesses.isEmpty()) {
+						continue;
+					}
 					ITransitionSeries guess = guesses.get(0).first;
 					float guessScore = guesses.get(0).second;
 					if (firstGuessScore == 0) {
@@ -142,7 +161,9 @@ public class PeakProposal
 					//If the existing fits doesn't contain this, add it
 					if (!fits.getFittedTransitionSeries().contains(guess)) {
 						newFits.add(guess);
+						newFitsIndex = new TransitionIndex(newFits, fits.getFittingParameters());
 						proposals.addTransitionSeries(guess);
+						baseline = null;
 						PeakabooLog.get().log(Level.FINE, "Channel " + channel + " guess: " + guess);
 					}
 				
@@ -168,17 +189,17 @@ public class PeakProposal
 	}
 	
 
-	//given the energy level of a peak and a list of existing new fits, check to 
+	//given the energy level of a peak and an index of existing new fits, check to 
 	//see if the given peak can be explained by an existing fit
-	private static boolean peakOverlap(List<ITransitionSeries> newfits, int channel, FittingParameters parameters) {
+	private static boolean peakOverlap(TransitionIndex newfits, int channel, FittingParameters parameters) {
 		float energy = parameters.getCalibration().energyFromChannel(channel);
-		for (ITransitionSeries ts : newfits) {
-			for (Transition t : ts) {
-				if (transitionOverlap(t, energy, 0.1f, parameters)) return true;
-			}
-			for (Transition t : ts.escape(parameters.getEscapeType())) {
-				if (transitionOverlap(t, energy, 0.1f * EscapePeak.intensity(ts.getElement()), parameters)) return true;
+		//the index finds lines within a FWHM, which includes every line within the HWHM 
+		for (TransitionIndex.Line line : newfits.lines(energy)) {
+			float cutoff = 0.1f;
+			if (line.isEscape()) {
+				cutoff *= EscapePeak.intensity(line.getTransitionSeries().getElement());
 			}
+			if (transitionOverlap(line.getTransition(), energy, cutoff, parameters)) return true;
 		}
 		return false;
 	}
@@ -225,95 +246,61 @@ public class PeakProposal
 		 * 4. We remove all TSs which are already fitted or proposed.
 		 * 5. We add currentTS to the list, since the last step will have removed it
 		 * 6. We unique the list, don't want duplicates showing up
-		 * 7. We sort by proximity, and take the top 15
-		 * 8. We sort by a more detailed scoring function which involves fitting each TS and seeing how well it fits
-		 * 9. We return the top 5 from the list in the last step
+		 *    (steps 1-6 only depend on the fits and proposals, so the search reuses them between channels)
+		 * 7. We drop any TSs with no transitions near the channel's energy, and score the rest in parallel
+		 * 8. We sort by proximity, and take the top 15
+		 * 9. We sort by a more detailed scoring function which involves fitting each TS and seeing how well it fits
+		 * 10. We return the top 5 from the list in the last step
 		 * 
 		 */
 	
-		EnergyCalibration calibration = fits.getFittingParameters().getCalibration();
-		
-		//remove the current transitionseries from the list of proposed trantision series so we can re-suggest it.
-		//otherwise, the copy getting fitted eats all the signal from the one we would suggest during scoring
-		boolean currentTSisUsed = currentTS != null && proposed.getFittedTransitionSeries().contains(currentTS);
-		if (currentTSisUsed) proposed.remove(currentTS);
-		
-		//recalculate
-		FittingResultSet fitResults = solver.solve(data, fits, fitter);
-		FittingResultSet proposedResults = solver.solve(fitResults.getResidual(), proposed, fitter);
-		
-		
-		final ReadOnlySpectrum residualSpectrum = proposedResults.getResidual();
-		
-		if (currentTSisUsed) proposed.addTransitionSeries(currentTS);
-		
-
-		final float energy = calibration.energyFromChannel(channel);	
-		
-
-		//get a list of all transition series to start with
-		List<ITransitionSeries> tss = new ArrayList<>(PeakTable.SYSTEM.getAll());
-
-		
-		//add in any 2x summations from the list of previously fitted AND proposed peaks.
-		//we exclude any that the caller requests so that if a UI component is *replacing* a TS with
-		//these suggestions, it doesn't get summations for the now-removed TS
-		List<ITransitionSeries> summationCandidates = fits.getFittedTransitionSeries();
-		summationCandidates.addAll(proposed.getFittedTransitionSeries());
-		if (currentTSisUsed) summationCandidates.remove(currentTS);
-		
-		for (ITransitionSeries ts1 : summationCandidates)
-		{
-			for (ITransitionSeries ts2 : summationCandidates)
-			{
-				tss.add(ts1.summation(ts2));
-			}
-		}
-		
-
-		//remove the transition series we have already fit, including any summations
-		tss.removeAll(fits.getFittedTransitionSeries());
-		tss.removeAll(proposed.getFittedTransitionSeries());
-		
-		
-		//We then re-add the TS passed to us so that we can still suggest the 
-		//TS that is currently selected, if it fits
-		if (currentTSisUsed) {
-			tss.add(currentTS);
-		}
-		
+		ReadOnlySpectrum fitsResidual = solver.solve(data, fits, fitter).getResidual();
+		Baseline baseline = new Baseline(data, fitsResidual, fits, proposed, fitter, solver, currentTS);
+		return fromChannel(baseline, data, fits.getFittingParameters(), channel, guessCount);
+	}
+	
+	private static List<Pair<ITransitionSeries, Float>> fromChannel(
+			Baseline baseline,
+			final ReadOnlySpectrum data, 
+			FittingParameters parameters,
+			final int channel,
+			int guessCount
+		) {
 		
-		//remove any duplicates we might have created while adding the summations
-		tss = new ArrayList<>(new HashSet<>(tss));
+		final float energy = parameters.getCalibration().energyFromChannel(channel);
 		
-	
+		//only transition series with a transition near this energy can get a 
+		//non-zero proximity score, and the compound score is a product
+		List<ITransitionSeries> tss = baseline.near(energy, parameters.getCalibration().energyPerChannel() * PROXIMITY_CHANNELS);
 		
 		CompoundFittingScorer fastCompoundScorer = new CompoundFittingScorer();
-		fastCompoundScorer.add(new EnergyProximityScorer(energy, fits.getFittingParameters()), 10f);
-		fastCompoundScorer.add(new FastFittingScorer(energy, residualSpectrum, fits.getFittingParameters()), 10f);
-		fastCompoundScorer.add(new NoComplexPileupScorer(), 2f);
-		fastCompoundScorer.add(new PileupSourceScorer(data, calibration), 1f);
+		fastCompoundScorer.add(new EnergyProximityScorer(energy, parameters), 10f);
+		fastCompoundScorer.add(new FastFittingScorer(energy, baseline.residual, parameters), 10f);
+		fastCompoundScorer.add(baseline.complexityScorer, 2f);
+		fastCompoundScorer.add(baseline.pileupScorer, 1f);
 
 		
 		//Good scorer also adds a very slow curve fitting scorer to make sure that we actually evaluate the curve at some point
 		CompoundFittingScorer goodCompoundScorer = new CompoundFittingScorer();	
 		goodCompoundScorer.add(fastCompoundScorer, 23f);
-		goodCompoundScorer.add(new CurveFittingScorer(residualSpectrum, fits.getFittingParameters(), fitter), 10f);
+		goodCompoundScorer.add(baseline.curveScorer, 10f);
 
 		
 		
-		//now sort by score
-		List<Pair<ITransitionSeries, Float>> scoredGuesses = tss.stream()
+		//now sort by score, scoring in parallel. The candidates are in a fixed 
+		//order and sorting is stable, so the results don't depend on scheduling
+		List<Pair<ITransitionSeries, Float>> fastGuesses = tss.parallelStream()
 			//fast scorer to shrink downthe list
 			.map(ts -> new Pair<>(ts, fastCompoundScorer.score(ts)))
 			.sorted((p1, p2) -> p2.second.compareTo(p1.second))
 			.limit(guessCount)
+			.collect(Collectors.toList());
+		
+		List<Pair<ITransitionSeries, Float>> scoredGuesses = fastGuesses.parallelStream()
 			.map(p -> p.first)
-			
 			//good scorer to put them in the best order
 			.map(ts -> new Pair<>(ts, goodCompoundScorer.score(ts)))
 			.sorted((p1, p2) -> p2.second.compareTo(p1.second))
-			//.map(p -> p.first)
 			
 			.collect(Collectors.toList());
 
@@ -321,6 +308,114 @@ public class PeakProposal
 		//take the best in sorted order based on score
 		return scoredGuesses;
 	}
+	
+	
+	/**
+	 * Everything about a search which depends on the fittings and proposals, but 
+	 * not on the channel being examined. This includes the residual signal after 
+	 * fitting both, and the list of candidate transition series with their 
+	 * summations. It only has to be rebuilt when the proposals change.
+	 */
+	private static class Baseline {
+		
+		ReadOnlySpectrum residual;
+		
+		//candidates from the peak table are looked up in the parameters' shared index, 
+		//any others (like summations) are looked up in an index of their own
+		Set<ITransitionSeries> candidates;
+		TransitionIndex tableIndex;
+		TransitionIndex extraIndex;
+		
+		//scorers which don't depend on the channel being examined
+		FittingScorer curveScorer;
+		FittingScorer pileupScorer;
+		FittingScorer complexityScorer = new NoComplexPileupScorer();
+		
+		Baseline(
+				ReadOnlySpectrum data,
+				ReadOnlySpectrum fitsResidual,
+				FittingSet fits,
+				FittingSet proposed,
+				CurveFitter fitter,
+				FittingSolver solver,
+				ITransitionSeries currentTS
+			) {
+			
+			//Steps 1-6 of the method described in fromChannel
+			
+			//remove the current transitionseries from the list of proposed trantision series so we can re-suggest it.
+			//otherwise, the copy getting fitted eats all the signal from the one we would suggest during scoring
+			boolean currentTSisUsed = currentTS != null && proposed.getFittedTransitionSeries().contains(currentTS);
+			if (currentTSisUsed) proposed.remove(currentTS);
+			
+			//recalculate
+			FittingResultSet proposedResults = solver.solve(fitsResidual, proposed, fitter);
+			residual = proposedResults.getResidual();
+			
+			if (currentTSisUsed) proposed.addTransitionSeries(currentTS);
+			
+			
+			//get a list of all transition series to start with, without duplicates
+			Set<ITransitionSeries> tss = new LinkedHashSet<>(PeakTable.SYSTEM.getAll());
+	
+			
+			//add in any 2x summations from the list of previously fitted AND proposed peaks.
+			//we exclude any that the caller requests so that if a UI component is *replacing* a TS with
+			//these suggestions, it doesn't get summations for the now-removed TS
+			List<ITransitionSeries> summationCandidates = fits.getFittedTransitionSeries();
+			summationCandidates.addAll(proposed.getFittedTransitionSeries());
+			if (currentTSisUsed) summationCandidates.remove(currentTS);
+			
+			for (ITransitionSeries ts1 : summationCandidates)
+			{
+				for (ITransitionSeries ts2 : summationCandidates)
+				{
+					tss.add(ts1.summation(ts2));
+				}
+			}
+			
+	
+			//remove the transition series we have already fit, including any summations
+			tss.removeAll(fits.getFittedTransitionSeries());
+			tss.removeAll(proposed.getFittedTransitionSeries());
+			
+			
+			//We then re-add the TS passed to us so that we can still suggest the 
+			//TS that is currently selected, if it fits
+			if (currentTSisUsed) {
+				tss.add(currentTS);
+			}
+			
+			candidates = tss;
+			tableIndex = fits.getFittingParameters().getTransitionIndex();
+			Set<ITransitionSeries> table = new HashSet<>(tableIndex.getTransitionSeries());
+			extraIndex = new TransitionIndex(
+					tss.stream().filter(ts -> !table.contains(ts)).collect(Collectors.toList()), 
+					fits.getFittingParameters()
+				);
+			
+			curveScorer = new CurveFittingScorer(residual, fits.getFittingParameters(), fitter);
+			pileupScorer = new PileupSourceScorer(data, fits.getFittingParameters().getCalibration());
+			
+		}
+		
+		/**
+		 * Returns the candidates with a transition within the given distance of 
+		 * the given energy, along with some which are a little further away. 
+		 * The candidates are always returned in the same order.
+		 */
+		List<ITransitionSeries> near(float energy, float distance) {
+			List<ITransitionSeries> near = new ArrayList<>();
+			for (ITransitionSeries ts : tableIndex.near(energy - distance, energy + distance)) {
+				if (candidates.contains(ts)) {
+					near.add(ts);
+				}
+			}
+			near.addAll(extraIndex.near(energy - distance, energy + distance));
+			return near;
+		}
+		
+	}
 
 
 	
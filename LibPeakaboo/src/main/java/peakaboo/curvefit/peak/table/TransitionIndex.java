@@ -0,0 +1,184 @@
+package peakaboo.curvefit.peak.table;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import peakaboo.curvefit.curve.fitting.FittingParameters;
+import peakaboo.curvefit.peak.transition.ITransitionSeries;
+import peakaboo.curvefit.peak.transition.Transition;
+
+/**
+ * An immutable index over the {@link Transition}s of a collection of
+ * {@link ITransitionSeries}, including their escape peaks, which can quickly
+ * answer questions like "which transition series have a line within one
+ * FWHM of this energy". Each line is stored as the interval of energies
+ * within one FWHM of it, as given by the {@link FittingParameters} used to
+ * build the index, so an index must be rebuilt when those parameters change.
+ * <br/><br/>
+ * Lines are kept sorted by the start of their intervals, and treated as an
+ * implicit balanced binary tree in which every subtree also knows the largest
+ * end of any interval in it. Looking up an energy takes O(log n + k) time for
+ * k matching lines.
+ *
+ * @author NAS
+ *
+ */
+public class TransitionIndex {
+
+	/**
+	 * A single line in a {@link TransitionIndex}
+	 */
+	public static class Line {
+
+		private final ITransitionSeries series;
+		private final Transition transition;
+		private final boolean escape;
+		private final float start, end;
+		private final int seriesIndex;
+
+		private Line(ITransitionSeries series, int seriesIndex, Transition transition, boolean escape, float fwhm) {
+			this.series = series;
+			this.seriesIndex = seriesIndex;
+			this.transition = transition;
+			this.escape = escape;
+			this.start = transition.energyValue - fwhm;
+			this.end = transition.energyValue + fwhm;
+		}
+
+		public ITransitionSeries getTransitionSeries() {
+			return series;
+		}
+
+		public Transition getTransition() {
+			return transition;
+		}
+
+		/**
+		 * Returns true if this line is an escape peak of its transition series
+		 */
+		public boolean isEscape() {
+			return escape;
+		}
+
+	}
+
+	private final List<ITransitionSeries> series;
+
+	//sorted by start of interval
+	private final Line[] lines;
+	private final float[] starts;
+	//largest end of any interval in the subtree rooted at each index
+	private final float[] maxEnds;
+
+
+	/**
+	 * Builds an index over all of the lines in the given transition series,
+	 * using the given parameters to determine their widths and escape peaks.
+	 */
+	public TransitionIndex(Collection<? extends ITransitionSeries> tss, FittingParameters parameters) {
+		series = Collections.unmodifiableList(new ArrayList<>(tss));
+
+		List<Line> lineList = new ArrayList<>();
+		for (int i = 0; i < series.size(); i++) {
+			ITransitionSeries ts = series.get(i);
+			for (Transition t : ts.getAllTransitions()) {
+				lineList.add(new Line(ts, i, t, false, parameters.getFWHM(t)));
+			}
+			for (Transition t : ts.escape(parameters.getEscapeType())) {
+				lineList.add(new Line(ts, i, t, true, parameters.getFWHM(t)));
+			}
+		}
+		lineList.sort((a, b) -> Float.compare(a.start, b.start));
+
+		lines = lineList.toArray(new Line[lineList.size()]);
+		starts = new float[lines.length];
+		for (int i = 0; i < lines.length; i++) {
+			starts[i] = lines[i].start;
+		}
+		maxEnds = new float[lines.length];
+		buildMaxEnds(0, lines.length);
+	}
+
+	private float buildMaxEnds(int lo, int hi) {
+		if (lo >= hi) return Float.NEGATIVE_INFINITY;
+		int mid = (lo + hi) >>> 1;
+		float max = lines[mid].end;
+		max = Math.max(max, buildMaxEnds(lo, mid));
+		max = Math.max(max, buildMaxEnds(mid+1, hi));
+		maxEnds[mid] = max;
+		return max;
+	}
+
+
+	/**
+	 * Returns the transition series this index was built from
+	 */
+	public List<ITransitionSeries> getTransitionSeries() {
+		return series;
+	}
+
+
+	/**
+	 * Returns all lines within one FWHM of the given energy
+	 */
+	public List<Line> lines(float energy) {
+		return lines(energy, energy);
+	}
+
+	/**
+	 * Returns all lines whose FWHM interval overlaps the range of energies from
+	 * low to high inclusive
+	 */
+	public List<Line> lines(float low, float high) {
+		List<Line> found = new ArrayList<>();
+		collect(0, lines.length, low, high, found);
+		return found;
+	}
+
+	/**
+	 * Returns the transition series with a line within one FWHM of the given
+	 * energy, in the order they were given when building this index
+	 */
+	public List<ITransitionSeries> near(float energy) {
+		return near(energy, energy);
+	}
+
+	/**
+	 * Returns the transition series with a line whose FWHM interval overlaps the
+	 * range of energies from low to high inclusive, in the order they were given
+	 * when building this index
+	 */
+	public List<ITransitionSeries> near(float low, float high) {
+		BitSet found = new BitSet(series.size());
+		for (Line line : lines(low, high)) {
+			found.set(line.seriesIndex);
+		}
+		List<ITransitionSeries> near = new ArrayList<>(found.cardinality());
+		for (int i = found.nextSetBit(0); i >= 0; i = found.nextSetBit(i+1)) {
+			near.add(series.get(i));
+		}
+		return near;
+	}
+
+	private void collect(int lo, int hi, float low, float high, List<Line> found) {
+		if (lo >= hi) return;
+		int mid = (lo + hi) >>> 1;
+
+		//nothing in this subtree reaches the range
+		if (maxEnds[mid] < low) return;
+
+		collect(lo, mid, low, high, found);
+
+		//everything from here on starts after the range
+		if (starts[mid] > high) return;
+
+		if (lines[mid].end >= low) {
+			found.add(lines[mid]);
+		}
+		collect(mid+1, hi, low, high, found);
+	}
+
+}
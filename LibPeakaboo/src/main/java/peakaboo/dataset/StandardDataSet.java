@@ -3,12 +3,16 @@ package peakaboo.dataset;
 
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 import java.util.logging.Level;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import cyclops.Coord;
 import cyclops.ReadOnlySpectrum;
@@ -24,7 +28,10 @@ import peakaboo.datasource.model.components.interaction.CallbackInteraction;
 import peakaboo.datasource.model.components.metadata.Metadata;
 import peakaboo.datasource.model.components.physicalsize.PhysicalSize;
 import peakaboo.datasource.model.components.scandata.DummyScanData;
+import peakaboo.datasource.model.components.scandata.ObservableScanData;
 import peakaboo.datasource.model.components.scandata.ScanData;
+import peakaboo.datasource.model.internal.SubsetDataSource;
+import peakaboo.mapping.StreamingMapper;
 import plural.executor.DummyExecutor;
 import plural.executor.ExecutorSet;
 
@@ -43,7 +50,6 @@ import plural.executor.ExecutorSet;
 public class StandardDataSet implements DataSet
 {
 
-
 	protected DataSource			dataSource;
 
 	//Data sources are not guaranteed to be fast at retrieving 
@@ -52,6 +58,9 @@ public class StandardDataSet implements DataSet
 	protected List<Coord<Number>>	realCoords;
 	protected Analysis				analysis;
 	
+	//passes scans to a StreamingMapper while they are loading
+	private BiConsumer<Integer, ReadOnlySpectrum> streamingListener;
+	
 
 	public StandardDataSet()
 	{
@@ -80,6 +89,18 @@ public class StandardDataSet implements DataSet
 	 * @return {@link ExecutorSet} which, when completed, returns a Boolean indicating success
 	 */
 	public ExecutorSet<DatasetReadResult> TASK_readFileListAsDataset(final List<Path> paths, final DataSource dataSource)
+	{
+		return TASK_readFileListAsDataset(paths, dataSource, null);
+	}
+	
+	/**
+	 * Reads the list of filenames as a {@link DataSource}, while also building maps 
+	 * with the given {@link StreamingMapper} as the scans are loaded.
+	 * @param paths the files to read as a {@link DataSource}
+	 * @param mapper the {@link StreamingMapper} to give scans to as they are loaded, or null
+	 * @return {@link ExecutorSet} which, when completed, returns a Boolean indicating success
+	 */
+	public ExecutorSet<DatasetReadResult> TASK_readFileListAsDataset(final List<Path> paths, final DataSource dataSource, final StreamingMapper mapper)
 	{
 
 		// sort the filenames alphanumerically. Files like "point2" should appear before "point10"
@@ -121,6 +142,8 @@ public class StandardDataSet implements DataSet
 						reading.setWorkUnits(count);
 						opening.advanceState();
 						reading.advanceState();
+						//the data source's scans should exist now, so we can start mapping them as they load
+						startStreaming(dataSource, mapper);
 					};
 					
 					//anon function to call to check if the user has requested the operation be aborted
@@ -135,17 +158,21 @@ public class StandardDataSet implements DataSet
 
 					dataSource.setInteraction(new CallbackInteraction(gotScanCount, readScans, isAborted));
 					dataSource.read(paths);	
-	
-					
+					stopStreaming(dataSource);
 					
-	
 					
 					if (isAborted.get())
 					{
+						if (mapper != null) mapper.abort();
 						aborted();
 						return new DatasetReadResult(ReadStatus.CANCELLED);
 					}
 					
+					//map any scans the streaming mapper didn't see while loading
+					if (mapper != null && dataSource.getScanData() != null) {
+						mapper.finish(dataSource.getScanData());
+					}
+					
 					
 					scanCount = dataSource.getScanData().scanCount();
 					if (scanCount == 0) return new DatasetReadResult(ReadStatus.FAILED, "Did not find any data in file(s)");
@@ -178,9 +205,11 @@ public class StandardDataSet implements DataSet
 					
 					
 				} catch (InterruptedException e) {
+					if (mapper != null) mapper.abort();
 					Thread.currentThread().interrupt();
 					return new DatasetReadResult(e);
 				} catch (Throwable e) {
+					if (mapper != null) mapper.abort();
 					return new DatasetReadResult(e);
 				}
 				
@@ -201,51 +230,101 @@ public class StandardDataSet implements DataSet
 
 	
 	
+	private synchronized void startStreaming(DataSource ds, StreamingMapper mapper) {
+		if (mapper == null || streamingListener != null) return;
+		ScanData scans = ds.getScanData();
+		if (!(scans instanceof ObservableScanData)) return;
+		streamingListener = mapper::accept;
+		((ObservableScanData) scans).addSubmitListener(streamingListener);
+	}
+	
+	private synchronized void stopStreaming(DataSource ds) {
+		if (streamingListener == null) return;
+		ScanData scans = ds.getScanData();
+		if (scans instanceof ObservableScanData) {
+			((ObservableScanData) scans).removeSubmitListener(streamingListener);
+		}
+		streamingListener = null;
+	}
+	
 	private void readDataSource(DataSource ds, DummyExecutor applying, Supplier<Boolean> isAborted)
 	{
 		
 		if (ds == null || ds.getScanData().scanCount() == 0) return;
 
+		ScanData scans = ds.getScanData();
+		int scanCount = scans.scanCount();
+		Optional<PhysicalSize> physicalSize = ds.getPhysicalSize();
 		
 		//if this data source has dimensions, make space to store them all in a list
-		if (ds.getPhysicalSize().isPresent())
+		List<Coord<Number>> coords = null;
+		if (physicalSize.isPresent())
 		{
-			realCoords = new ArrayList<Coord<Number>>();
+			coords = new ArrayList<>(Collections.nCopies(scanCount, null));
 		}
+		List<Coord<Number>> readCoords = coords;
 
 		
-		//go over each scan, calculating the average, max10th and max value
-		ReadOnlySpectrum current;
-		int updateInterval = Math.min(Math.max(ds.getScanData().scanCount()/100, 20), 1000);
-		int gcInterval = 5000;
+		//a subset of another data set derives its analysis from that data set's 
+		//analysis, without reading any spectra
+		Optional<DataSourceAnalysis> originalAnalysis = originalAnalysis(ds);
 		
-		analysis = new DataSourceAnalysis(this, ds);
-		for (int i = 0; i < ds.getScanData().scanCount(); i++)
-		{
-			current = ds.getScanData().get(i);
-			analysis.process(i, current);
-
-			//read the real coordinates for this scan
-			if (ds.getPhysicalSize().isPresent()) {
-				realCoords.add(ds.getPhysicalSize().get().getPhysicalCoordinatesAtIndex(i));
-			}
-
-			if (i % updateInterval == 0) {
-				if (applying != null) applying.workUnitCompleted(updateInterval);
-				if (isAborted != null && isAborted.get()) return;
+		//go over each scan, calculating the average, max10th and max value. Scans are
+		//processed in fixed-size chunks in parallel, each chunk with its own partial
+		//analysis. The partials are merged in chunk order afterwards, so the result
+		//doesn't depend on how the chunks were scheduled.
+		DataSourceAnalysis dsAnalysis = originalAnalysis.isPresent() 
+				? originalAnalysis.get().subset((SubsetDataSource) ds) 
+				: new DataSourceAnalysis(this, ds);
+		boolean derived = originalAnalysis.isPresent();
+		int chunkCount = (scanCount + DataSourceAnalysis.CHUNK_SIZE - 1) / DataSourceAnalysis.CHUNK_SIZE;
+		List<DataSourceAnalysis> partials = IntStream.range(0, chunkCount).parallel().mapToObj(chunk -> {
+			
+			DataSourceAnalysis partial = dsAnalysis.partial();
+			if (isAborted != null && isAborted.get()) return partial;
+			
+			int start = chunk * DataSourceAnalysis.CHUNK_SIZE;
+			int end = Math.min(start + DataSourceAnalysis.CHUNK_SIZE, scanCount);
+			for (int i = start; i < end; i++) {
+				if (!derived) {
+					partial.process(i, scans.get(i));
+				}
+				
+				//read the real coordinates for this scan
+				if (readCoords != null) {
+					readCoords.set(i, physicalSize.get().getPhysicalCoordinatesAtIndex(i));
+				}
 			}
-			if (i % gcInterval == 0) {
-				System.gc();
+			
+			if (applying != null) {
+				synchronized (applying) {
+					applying.workUnitCompleted(end - start);
+				}
 			}
+			return partial;
 			
+		}).collect(Collectors.toList());
+		
+		if (isAborted != null && isAborted.get()) return;
+		
+		for (DataSourceAnalysis partial : partials) {
+			dsAnalysis.merge(partial);
 		}
 		
-		System.gc();
+		this.analysis = dsAnalysis;
+		this.realCoords = coords;
 		this.dataSource = ds;
 		
 
 	}
 	
+	private static Optional<DataSourceAnalysis> originalAnalysis(DataSource ds) {
+		if (!(ds instanceof SubsetDataSource)) return Optional.empty();
+		Optional<Analysis> analysis = ((SubsetDataSource) ds).getOriginalAnalysis();
+		if (!analysis.isPresent() || !(analysis.get() instanceof DataSourceAnalysis)) return Optional.empty();
+		return Optional.of((DataSourceAnalysis) analysis.get());
+	}
+	
 
 	@Override
 	public Optional<Metadata> getMetadata() {
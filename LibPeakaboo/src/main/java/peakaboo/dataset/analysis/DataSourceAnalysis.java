@@ -1,14 +1,28 @@
 package peakaboo.dataset.analysis;
 
+import java.util.BitSet;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
 import cyclops.ISpectrum;
 import cyclops.ReadOnlySpectrum;
 import cyclops.Spectrum;
 import cyclops.SpectrumCalculations;
 import peakaboo.dataset.DataSet;
 import peakaboo.datasource.model.DataSource;
+import peakaboo.datasource.model.components.scandata.ScanData;
+import peakaboo.datasource.model.internal.SubsetDataSource;
 
 public class DataSourceAnalysis implements Analysis {
 
+	/**
+	 * The number of scans processed together by each partial analysis. Partials 
+	 * should be merged in the order of their chunks, so that the sums don't 
+	 * depend on how the chunks were scheduled.
+	 */
+	public static final int CHUNK_SIZE = 256;
+	
 	private DataSource dataSource;
 	
 	
@@ -18,11 +32,27 @@ public class DataSourceAnalysis implements Analysis {
 	protected Spectrum				maximumSpectrum;
 	protected float					maxValue;
 	
+	//the scans which are present. Partial analyses each track their own, which 
+	//are combined when they're merged
+	protected BitSet				present;
+	//the maximum value of each scan. This is shared between partial analyses, 
+	//which each write different scans, and lets a subset find its maximum 
+	//intensity without reading any spectra
+	protected float[]				scanMaximums;
+	//a subset's average and maximum plots are only calculated when first asked for
+	private boolean					deferred = false;
+	
 	
 	public DataSourceAnalysis(DataSet dataSet, DataSource dataSource) {
 		this.dataSource = dataSource;
 		
-		int nonNullScanIndex = firstNonNullScanIndex(0);
+		int nonNullScanIndex = -1;
+		for (int i = 0; i < dataSource.getScanData().scanCount(); i++) {
+			if (dataSource.getScanData().get(i) != null) {
+				nonNullScanIndex = i;
+				break;
+			}
+		}
 		if (nonNullScanIndex == -1) {
 			throw new RuntimeException("Cannot find non-null scan");
 		}
@@ -34,9 +64,22 @@ public class DataSourceAnalysis implements Analysis {
 		summedScanCount = 0;
 		maximumSpectrum = new ISpectrum(channelCount);
 		maxValue = 0;
+		present = new BitSet(dataSource.getScanData().scanCount());
+		scanMaximums = new float[dataSource.getScanData().scanCount()];
 		
 	}
 	
+	private DataSourceAnalysis(DataSource dataSource, int channelCount, BitSet present, float[] scanMaximums) {
+		this.dataSource = dataSource;
+		this.channelCount = channelCount;
+		summedSpectrum = new ISpectrum(channelCount);
+		summedScanCount = 0;
+		maximumSpectrum = new ISpectrum(channelCount);
+		maxValue = 0;
+		this.present = present;
+		this.scanMaximums = scanMaximums;
+	}
+	
 	
 	@Override
 	public void process(int index, ReadOnlySpectrum spectrum) {
@@ -44,7 +87,92 @@ public class DataSourceAnalysis implements Analysis {
 		SpectrumCalculations.addLists_inplace(summedSpectrum, spectrum);
 		summedScanCount++;
 		SpectrumCalculations.maxLists_inplace(maximumSpectrum, spectrum);
-		maxValue = Math.max(maxValue, spectrum.max());
+		present.set(index);
+		float max = spectrum.max();
+		scanMaximums[index] = max;
+		maxValue = Math.max(maxValue, max);
+	}
+	
+	/**
+	 * Creates a new, empty DataSourceAnalysis for the same DataSource. Scans 
+	 * can be processed by several partial analyses on different threads, 
+	 * and then combined with {@link #merge(DataSourceAnalysis)}.
+	 */
+	public DataSourceAnalysis partial() {
+		return new DataSourceAnalysis(dataSource, channelCount, new BitSet(present.size()), scanMaximums);
+	}
+	
+	/**
+	 * Creates a DataSourceAnalysis for a subset of this analysis' DataSource 
+	 * without reading any spectra. The subset's channel count, which of its 
+	 * scans are present, and its maximum intensity are taken from this analysis.
+	 * The subset's average and maximum plots depend on all of its spectra, so 
+	 * they are only calculated the first time they are asked for. The subset's 
+	 * scans must not be given to {@link #process(int, ReadOnlySpectrum)}.
+	 */
+	public DataSourceAnalysis subset(SubsetDataSource subset) {
+		int scanCount = subset.getScanData().scanCount();
+		BitSet subsetPresent = new BitSet(scanCount);
+		float[] subsetMaximums = new float[scanCount];
+		float subsetMax = 0;
+		for (int i = 0; i < scanCount; i++) {
+			int original = subset.getOriginalIndex(i);
+			if (hasScan(original)) {
+				subsetPresent.set(i);
+				subsetMaximums[i] = scanMaximums[original];
+				subsetMax = Math.max(subsetMax, subsetMaximums[i]);
+			}
+		}
+		DataSourceAnalysis analysis = new DataSourceAnalysis(subset, channelCount, subsetPresent, subsetMaximums);
+		if (analysis.firstNonNullScanIndex() == -1) {
+			throw new RuntimeException("Cannot find non-null scan");
+		}
+		analysis.maxValue = subsetMax;
+		analysis.deferred = true;
+		return analysis;
+	}
+	
+	/**
+	 * Calculates the average and maximum plots of a subset from its spectra, 
+	 * if they haven't been calculated yet
+	 */
+	private synchronized void calculatePlots() {
+		if (!deferred) return;
+		
+		ScanData scans = dataSource.getScanData();
+		int scanCount = Math.min(scans.scanCount(), scanMaximums.length);
+		int chunkCount = (scanCount + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		List<DataSourceAnalysis> partials = IntStream.range(0, chunkCount).parallel().mapToObj(chunk -> {
+			DataSourceAnalysis partial = partial();
+			int end = Math.min((chunk + 1) * CHUNK_SIZE, scanCount);
+			for (int i = present.nextSetBit(chunk * CHUNK_SIZE); i != -1 && i < end; i = present.nextSetBit(i+1)) {
+				partial.process(i, scans.get(i));
+			}
+			return partial;
+		}).collect(Collectors.toList());
+		
+		for (DataSourceAnalysis partial : partials) {
+			merge(partial);
+		}
+		deferred = false;
+	}
+	
+	/**
+	 * Reports if the scan at the given index has been processed and was not missing
+	 */
+	public boolean hasScan(int index) {
+		return index >= 0 && present.get(index);
+	}
+	
+	/**
+	 * Adds the scans processed by another DataSourceAnalysis to this one.
+	 */
+	public void merge(DataSourceAnalysis other) {
+		SpectrumCalculations.addLists_inplace(summedSpectrum, other.summedSpectrum);
+		summedScanCount += other.summedScanCount;
+		SpectrumCalculations.maxLists_inplace(maximumSpectrum, other.maximumSpectrum);
+		maxValue = Math.max(maxValue, other.maxValue);
+		present.or(other.present);
 	}
 	
 	
@@ -57,42 +185,26 @@ public class DataSourceAnalysis implements Analysis {
 	@Override
 	public int firstNonNullScanIndex(int start)
 	{
-		for (int i = start; i < dataSource.getScanData().scanCount(); i++)
-		{
-			if (dataSource.getScanData().get(i) != null)
-			{
-				return i;
-			}
-		}
-		
-		return -1;
+		return present.nextSetBit(Math.max(start, 0));
 	}
 	
 	@Override
 	public int lastNonNullScanIndex()
 	{
-		return lastNonNullScanIndex(dataSource.getScanData().scanCount()-1);
+		return present.length()-1;
 	}
 	
 	@Override
 	public int lastNonNullScanIndex(int upto)
 	{
-		upto = Math.min(upto, dataSource.getScanData().scanCount()-1);
-		
-		for (int i = upto; i >= 0; i--)
-		{
-			if (dataSource.getScanData().get(i) != null)
-			{
-				return i;
-			}
-		}
-		
-		return -1;
+		if (upto < 0) return -1;
+		return present.previousSetBit(upto);
 	}
 	
 	@Override
 	public Spectrum maximumPlot()
 	{
+		calculatePlots();
 		return new ISpectrum(maximumSpectrum);
 	}
 
@@ -110,6 +222,7 @@ public class DataSourceAnalysis implements Analysis {
 	@Override
 	public Spectrum averagePlot()
 	{
+		calculatePlots();
 		return SpectrumCalculations.divideBy(summedSpectrum, summedScanCount);
 	}
 
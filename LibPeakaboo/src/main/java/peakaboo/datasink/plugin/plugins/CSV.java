@@ -1,18 +1,29 @@
 package peakaboo.datasink.plugin.plugins;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.stream.Collectors;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.GZIPOutputStream;
 
 import cyclops.ReadOnlySpectrum;
 import peakaboo.datasink.plugin.JavaDataSinkPlugin;
 import peakaboo.datasource.model.DataSource;
+import peakaboo.datasource.model.components.scandata.ScanData;
 
 public class CSV implements JavaDataSinkPlugin {
 
+	private static final int BUFFER_SIZE = 1 << 16;
+	//the number of spectra to format at once
+	private static final int CHUNK_SIZE = 64;
+	private static final int NEGATIVE_ZERO = Float.floatToRawIntBits(-0f);
+
 	@Override
 	public boolean pluginEnabled() {
 		return true;
@@ -40,13 +51,98 @@ public class CSV implements JavaDataSinkPlugin {
 	
 	@Override
 	public void write(DataSource source, Path destination) throws IOException {
-		Writer writer = new OutputStreamWriter(Files.newOutputStream(destination));
-		for (ReadOnlySpectrum s : source.getScanData()) {
-			String spectrum = s.stream().map(f -> Float.toString(f)).collect(Collectors.joining(", "));
-			writer.write(spectrum);
-			writer.write("\n");
+		ScanData scans = source.getScanData();
+		int count = scans.scanCount();
+
+		OutputStream stream = new BufferedOutputStream(Files.newOutputStream(destination), BUFFER_SIZE);
+		if (destination.getFileName().toString().toLowerCase().endsWith(".gz")) {
+			stream = new GZIPOutputStream(stream, BUFFER_SIZE);
+		}
+
+		//chunks of spectra are formatted in parallel, but are written in order
+		int maxPending = Math.max(2, ForkJoinPool.getCommonPoolParallelism() * 2);
+		Deque<ForkJoinTask<Chunk>> pending = new ArrayDeque<>();
+		try (OutputStream out = stream) {
+			for (int start = 0; start < count; start += CHUNK_SIZE) {
+				int first = start;
+				int last = Math.min(count, start + CHUNK_SIZE);
+				pending.add(ForkJoinTask.adapt(() -> format(scans, first, last)).fork());
+				while (pending.size() >= maxPending) {
+					pending.poll().join().writeTo(out);
+				}
+			}
+			while (!pending.isEmpty()) {
+				pending.poll().join().writeTo(out);
+			}
+		} finally {
+			for (ForkJoinTask<?> task : pending) {
+				task.cancel(false);
+			}
+		}
+	}
+
+	private static Chunk format(ScanData scans, int first, int last) {
+		Chunk chunk = new Chunk();
+		for (int i = first; i < last; i++) {
+			ReadOnlySpectrum spectrum = scans.get(i);
+			for (int j = 0; j < spectrum.size(); j++) {
+				if (j > 0) chunk.append(", ");
+				chunk.append(spectrum.get(j));
+			}
+			chunk.append("\n");
+		}
+		return chunk;
+	}
+
+	/**
+	 * A growable buffer of ASCII text
+	 */
+	private static class Chunk {
+		private byte[] bytes = new byte[1 << 16];
+		private int length = 0;
+
+		private void ensure(int extra) {
+			if (length + extra > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+			}
+		}
+
+		void append(String text) {
+			ensure(text.length());
+			for (int i = 0; i < text.length(); i++) {
+				bytes[length++] = (byte) text.charAt(i);
+			}
+		}
+
+		/**
+		 * Appends the value as {@link Float#toString(float)} would. Whole numbers,
+		 * like the counts in most spectra, are written directly.
+		 */
+		void append(float value) {
+			if (value == (int) value && Math.abs(value) < 1e7f && Float.floatToRawIntBits(value) != NEGATIVE_ZERO) {
+				int whole = (int) value;
+				ensure(12);
+				if (whole < 0) {
+					bytes[length++] = '-';
+					whole = -whole;
+				}
+				int digits = 1;
+				for (int n = whole; n >= 10; n /= 10) digits++;
+				for (int i = length + digits - 1; i >= length; i--) {
+					bytes[i] = (byte) ('0' + whole % 10);
+					whole /= 10;
+				}
+				length += digits;
+				bytes[length++] = '.';
+				bytes[length++] = '0';
+			} else {
+				append(Float.toString(value));
+			}
+		}
+
+		void writeTo(OutputStream out) throws IOException {
+			out.write(bytes, 0, length);
 		}
-		writer.close();		
 	}
 
 	@Override
@@ -61,7 +157,7 @@ public class CSV implements JavaDataSinkPlugin {
 
 	@Override
 	public String getFormatDescription() {
-		return "Comma Separated Value file with one spectrum per line";
+		return "Comma Separated Value file with one spectrum per line, compressed with gzip if the file name ends in .gz";
 	}
 
 }
@@ -0,0 +1,299 @@
+package peakaboo.datasource.model.components.scandata;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+
+import cyclops.ISpectrum;
+import cyclops.ReadOnlySpectrum;
+import cyclops.Spectrum;
+import peakaboo.common.PeakabooLog;
+import peakaboo.datasource.model.components.scandata.loaderqueue.LoaderQueue;
+import peakaboo.datasource.model.components.scandata.loaderqueue.ObservedLoaderQueue;
+
+/**
+ * MappedScanData stores fixed-width spectra as raw floats in a memory-mapped
+ * temporary file. Unlike {@link SimpleScanData}, reading a scan doesn't have
+ * to decompress or deserialize anything, and the spectra don't occupy any
+ * heap space, which makes random access to very large datasets cheap.
+ * <br/><br/>
+ * A single mapping can't be larger than 2GB, so the file is mapped in
+ * windows of up to 1GB, each holding a whole number of spectra. Windows are
+ * sized for the number of scans expected, so small data sets don't map more
+ * than they need. Spectra may be written from multiple threads at once, as
+ * long as no two threads write the same index.
+ *
+ * @author NAS
+ *
+ */
+public class MappedScanData implements ObservableScanData {
+
+	private static final long WINDOW_BYTES = 1L << 30;
+
+	//the fewest scans a window holds, so that a low estimate doesn't create lots of tiny mappings
+	private static final int MIN_WINDOW_SCANS = 1024;
+
+	private int channels;
+	private int scansPerWindow;
+	private Path file;
+	private FileChannel channel;
+	private List<MappedByteBuffer> windows;
+
+	//which scans have been written, unwritten scans are returned as null
+	private BitSet present;
+	private int scanCount;
+
+	private float maxEnergy;
+	private float minEnergy = 0;
+	private String name;
+
+	//Listeners are told about spectra as they are submitted to a LoaderQueue
+	private List<BiConsumer<Integer, ReadOnlySpectrum>> listeners = new CopyOnWriteArrayList<>();
+	//The number of spectra submitted to LoaderQueues so far, used to find the index of appended spectra
+	private int submitted = 0;
+
+	/**
+	 * @param name the name of the data set
+	 * @param channels the number of channels in every spectrum
+	 * @param expectedScans roughly how many spectra will be stored, or 0 if unknown
+	 */
+	public MappedScanData(String name, int channels, int expectedScans) throws IOException {
+		this(name, channels, expectedScans, WINDOW_BYTES);
+	}
+
+	MappedScanData(String name, int channels, int expectedScans, long windowBytes) throws IOException {
+		if (channels <= 0) {
+			throw new IllegalArgumentException("Channel count must be greater than 0");
+		}
+		this.name = name;
+		this.channels = channels;
+		long maxScans = Math.max(1, windowBytes / scanBytes());
+		this.scansPerWindow = (int) Math.min(maxScans, Math.max(expectedScans, MIN_WINDOW_SCANS));
+		this.windows = new ArrayList<>();
+		this.present = new BitSet();
+
+		file = Files.createTempFile("Peakaboo", ".scans");
+		file.toFile().deleteOnExit();
+		channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+	}
+
+	private long scanBytes() {
+		return (long)channels * Float.BYTES;
+	}
+
+	/**
+	 * Returns a FloatBuffer positioned at the start of the given scan. The
+	 * buffer is a new view of the mapping, so callers don't interfere with
+	 * each other's positions.
+	 */
+	private FloatBuffer buffer(int index) {
+		int windowIndex = index / scansPerWindow;
+		MappedByteBuffer window = window(windowIndex);
+		FloatBuffer buffer = window.duplicate().order(ByteOrder.nativeOrder()).asFloatBuffer();
+		//through Buffer, since FloatBuffer.position(int) doesn't exist before Java 9
+		((Buffer) buffer).position((index % scansPerWindow) * channels);
+		return buffer;
+	}
+
+	private synchronized MappedByteBuffer window(int windowIndex) {
+		if (channel == null) {
+			throw new IllegalStateException("Scan data has been closed");
+		}
+		try {
+			while (windows.size() <= windowIndex) {
+				long start = windows.size() * scansPerWindow * scanBytes();
+				//mapping past the end of the file grows it
+				windows.add(channel.map(MapMode.READ_WRITE, start, scansPerWindow * scanBytes()));
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Could not map scan data file", e);
+		}
+		return windows.get(windowIndex);
+	}
+
+
+	@Override
+	public ReadOnlySpectrum get(int index) throws IndexOutOfBoundsException {
+		if (index < 0 || index >= scanCount()) {
+			throw new IndexOutOfBoundsException("Index " + index + " out of bounds for " + scanCount() + " scans");
+		}
+		if (!isPresent(index)) {
+			return null;
+		}
+		float[] values = new float[channels];
+		buffer(index).get(values);
+		return new ISpectrum(values);
+	}
+
+	/**
+	 * Reads the scan at the given index into the given {@link Spectrum},
+	 * avoiding the allocation made by {@link #get(int)}.
+	 * @return false if no scan has been stored at this index, true otherwise
+	 */
+	public boolean getInto(int index, Spectrum target) throws IndexOutOfBoundsException {
+		if (index < 0 || index >= scanCount()) {
+			throw new IndexOutOfBoundsException("Index " + index + " out of bounds for " + scanCount() + " scans");
+		}
+		if (!isPresent(index)) {
+			return false;
+		}
+		buffer(index).get(target.backingArray(), 0, channels);
+		return true;
+	}
+
+	public synchronized void add(Spectrum spectrum) {
+		set(scanCount, spectrum);
+	}
+
+	/**
+	 * Convenience method for adding a {@link Spectrum}
+	 * @param spectrum a float array to add
+	 */
+	public synchronized void add(float[] spectrum) {
+		set(scanCount, spectrum);
+	}
+
+	public void set(int index, Spectrum spectrum) {
+		set(index, spectrum.backingArray());
+	}
+
+	/**
+	 * Convenience method for setting a {@link Spectrum}
+	 * @param index index to set at
+	 * @param spectrum a float array to set as
+	 */
+	public void set(int index, float[] spectrum) {
+		if (spectrum.length != channels) {
+			throw new IllegalArgumentException("Expected " + channels + " channels, got " + spectrum.length);
+		}
+		if (index < 0) {
+			throw new IndexOutOfBoundsException("Index " + index + " is negative");
+		}
+		buffer(index).put(spectrum);
+		markPresent(index);
+	}
+
+	private synchronized boolean isPresent(int index) {
+		return present.get(index);
+	}
+
+	private synchronized void markPresent(int index) {
+		present.set(index);
+		scanCount = Math.max(scanCount, index+1);
+	}
+
+	@Override
+	public synchronized int scanCount() {
+		return scanCount;
+	}
+
+	public int channelsPerScan() {
+		return channels;
+	}
+
+	@Override
+	public String scanName(int index) {
+		return "Scan #" + (index+1);
+	}
+
+	@Override
+	public float maxEnergy() {
+		return maxEnergy;
+	}
+
+	public void setMaxEnergy(float max) {
+		maxEnergy = max;
+	}
+
+	@Override
+	public float minEnergy() {
+		return minEnergy;
+	}
+
+	public void setMinEnergy(float min) {
+		minEnergy = min;
+	}
+
+	@Override
+	public String datasetName() {
+		return name;
+	}
+
+	/**
+	 * Creates a {@link LoaderQueue} for this MappedScanData. Since storing a
+	 * spectrum is just a copy into the mapping, spectra are written directly on
+	 * the submitting thread rather than being queued.
+	 */
+	public LoaderQueue createLoaderQueue() {
+		return new ObservedLoaderQueue(this, new LoaderQueue() {
+
+			@Override
+			public void submit(Spectrum s) {
+				add(s);
+			}
+
+			@Override
+			public void submit(int index, Spectrum s) {
+				set(index, s);
+			}
+
+			@Override
+			public void finish() {}
+		});
+	}
+
+	@Override
+	public void addSubmitListener(BiConsumer<Integer, ReadOnlySpectrum> listener) {
+		listeners.add(listener);
+	}
+
+	@Override
+	public void removeSubmitListener(BiConsumer<Integer, ReadOnlySpectrum> listener) {
+		listeners.remove(listener);
+	}
+
+	@Override
+	public synchronized void submitted(int index, ReadOnlySpectrum spectrum) {
+		if (index == -1) {
+			index = submitted++;
+		} else {
+			submitted = Math.max(submitted, index+1);
+		}
+		for (BiConsumer<Integer, ReadOnlySpectrum> listener : listeners) {
+			listener.accept(index, spectrum);
+		}
+	}
+
+	/**
+	 * Releases the mapping and deletes the backing file. This MappedScanData
+	 * can't be used afterwards.
+	 */
+	public synchronized void close() {
+		if (channel == null) return;
+		windows.clear();
+		try {
+			channel.close();
+			channel = null;
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			//some platforms won't delete a file until its mappings are garbage
+			//collected, so it's left to be deleted on exit
+			PeakabooLog.get().log(Level.INFO, "Could not delete scan data file yet", e);
+		}
+	}
+
+
+}
@@ -0,0 +1,31 @@
+package peakaboo.datasource.model.components.scandata;
+
+import java.util.function.BiConsumer;
+
+import cyclops.ReadOnlySpectrum;
+import peakaboo.datasource.model.components.scandata.loaderqueue.LoaderQueue;
+
+/**
+ * A {@link ScanData} which can tell listeners about spectra as they are
+ * submitted to one of its {@link LoaderQueue}s, before they are stored.
+ */
+public interface ObservableScanData extends ScanData {
+
+	/**
+	 * Adds a listener which will be given each spectrum, along with the index it
+	 * will be stored at, when it is submitted to one of this ScanData's
+	 * {@link LoaderQueue}s. This lets spectra be processed while the data is still
+	 * loading, without reading them back out of storage. Listeners are called on
+	 * the submitting thread, and must not modify the spectrum.
+	 */
+	void addSubmitListener(BiConsumer<Integer, ReadOnlySpectrum> listener);
+
+	void removeSubmitListener(BiConsumer<Integer, ReadOnlySpectrum> listener);
+
+	/**
+	 * Called by {@link LoaderQueue}s when a spectrum is submitted. An index of -1
+	 * indicates that the spectrum will be appended.
+	 */
+	void submitted(int index, ReadOnlySpectrum spectrum);
+
+}
@@ -1,18 +1,23 @@
 package peakaboo.datasource.model.components.scandata;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+
 import cyclops.ISpectrum;
 import cyclops.ReadOnlySpectrum;
 import cyclops.Spectrum;
 import net.sciencestudio.scratch.list.ScratchList;
 import net.sciencestudio.scratch.single.Compressed;
 import peakaboo.common.PeakabooConfiguration;
-import peakaboo.common.PeakabooConfiguration.MemorySize;
 import peakaboo.datasource.model.PeakabooLists;
 import peakaboo.datasource.model.components.scandata.loaderqueue.CompressedLoaderQueue;
 import peakaboo.datasource.model.components.scandata.loaderqueue.LoaderQueue;
+import peakaboo.datasource.model.components.scandata.loaderqueue.ObservedLoaderQueue;
+import peakaboo.datasource.model.components.scandata.loaderqueue.ParallelLoaderQueue;
 import peakaboo.datasource.model.components.scandata.loaderqueue.SimpleLoaderQueue;
 
-public class SimpleScanData implements ScanData {
+public class SimpleScanData implements ObservableScanData {
 
 	
 	private ScratchList<Spectrum> spectra;
@@ -20,6 +25,14 @@ public class SimpleScanData implements ScanData {
 	private float minEnergy = 0;
 	private String name;
 	
+	//Listeners are told about spectra as they are submitted to a LoaderQueue
+	private List<BiConsumer<Integer, ReadOnlySpectrum>> listeners = new CopyOnWriteArrayList<>();
+	//The number of spectra submitted to LoaderQueues so far, used to find the index of appended spectra
+	private int submitted = 0;
+	
+	//The number of threads LoaderQueues created on a thread may use, if limited
+	private static final ThreadLocal<Integer> loaderThreads = new ThreadLocal<>();
+	
 	public SimpleScanData(String name) {
 		this.name = name;
 		this.spectra = PeakabooLists.create();
@@ -98,22 +111,91 @@ public class SimpleScanData implements ScanData {
 	}
 	
 	public LoaderQueue createLoaderQueue(int capacity) {
+		return new ObservedLoaderQueue(this, createUnobservedLoaderQueue(capacity));
+	}
+	
+	private LoaderQueue createUnobservedLoaderQueue(int capacity) {
+		
+		/*
+		 * With threads to spare, ParallelLoaderQueue compresses batches of spectra on a 
+		 * pool of threads. Its depth is limited to the number of uncompressed spectra 
+		 * which comfortably fit in the heap, using the same limits as below.
+		 */
+		int threads = getLoaderThreads();
+		if (threads > 1) {
+			int depth = Math.max(1, Math.min(capacity, maxUncompressedSpectra()));
+			return new ParallelLoaderQueue(this, depth, threads - 1);
+		}
+		
 		/*
 		 * CompressedLoaderQueue will move compression up to before the point the Spectrum
 		 * is stored in the queue. This saves order of 10s of MBs, but slows down the 
 		 * DataSource thread, since it now handles the compression.
 		 */
-		if (
-				(PeakabooConfiguration.memorySize == MemorySize.TINY && capacity > 100) || //0.8 - 1.6 MB
-				(PeakabooConfiguration.memorySize == MemorySize.SMALL && capacity > 200) || //1.6 - 3.2 MB
-				(PeakabooConfiguration.memorySize == MemorySize.MEDIUM && capacity > 1000) || //8 - 16 MB
-				(PeakabooConfiguration.memorySize == MemorySize.LARGE && capacity > 20000) //160 - 320 MB
-			) {
+		if (capacity > maxUncompressedSpectra()) {
 			return new CompressedLoaderQueue(this, capacity);
 		} else {
 			return new SimpleLoaderQueue(this, capacity);			
 		}
 	}
+	
+	/**
+	 * Limits the number of threads used by {@link LoaderQueue}s created on the 
+	 * calling thread, including the thread reading the data. This lets several 
+	 * data sets be loaded at once without each one using every core. Passing 0 
+	 * removes the limit.
+	 */
+	public static void setLoaderThreads(int threads) {
+		if (threads <= 0) {
+			loaderThreads.remove();
+		} else {
+			loaderThreads.set(threads);
+		}
+	}
+	
+	/**
+	 * The number of threads {@link LoaderQueue}s created on the calling thread 
+	 * may use, including the thread reading the data
+	 */
+	public static int getLoaderThreads() {
+		Integer threads = loaderThreads.get();
+		return threads == null ? Runtime.getRuntime().availableProcessors() : threads;
+	}
+	
+	@Override
+	public void addSubmitListener(BiConsumer<Integer, ReadOnlySpectrum> listener) {
+		listeners.add(listener);
+	}
+	
+	@Override
+	public void removeSubmitListener(BiConsumer<Integer, ReadOnlySpectrum> listener) {
+		listeners.remove(listener);
+	}
+	
+	@Override
+	public synchronized void submitted(int index, ReadOnlySpectrum spectrum) {
+		if (index == -1) {
+			index = submitted++;
+		} else {
+			submitted = Math.max(submitted, index+1);
+		}
+		for (BiConsumer<Integer, ReadOnlySpectrum> listener : listeners) {
+			listener.accept(index, spectrum);
+		}
+	}
+	
+	/**
+	 * The number of uncompressed spectra which can wait in a {@link LoaderQueue}
+	 * for the current {@link PeakabooConfiguration#memorySize}
+	 */
+	private static int maxUncompressedSpectra() {
+		switch (PeakabooConfiguration.memorySize) {
+		case TINY: return 100; //0.8 - 1.6 MB
+		case SMALL: return 200; //1.6 - 3.2 MB
+		case MEDIUM: return 1000; //8 - 16 MB
+		case LARGE: default: return 20000; //160 - 320 MB
+		}
+	}
 
 
 }
@@ -0,0 +1,41 @@
+package peakaboo.datasource.model.components.scandata.loaderqueue;
+
+import cyclops.Spectrum;
+import peakaboo.datasource.model.components.scandata.ObservableScanData;
+
+/**
+ * ObservedLoaderQueue tells an {@link ObservableScanData} about each spectrum
+ * submitted to it, so that the ObservableScanData's submit listeners can see the
+ * spectra while they are still loading, before passing them on to another
+ * {@link LoaderQueue} to be stored.
+ * @author NAS
+ *
+ */
+public class ObservedLoaderQueue implements LoaderQueue {
+
+	private ObservableScanData data;
+	private LoaderQueue queue;
+
+	public ObservedLoaderQueue(ObservableScanData data, LoaderQueue queue) {
+		this.data = data;
+		this.queue = queue;
+	}
+
+	@Override
+	public synchronized void submit(Spectrum s) throws InterruptedException {
+		data.submitted(-1, s);
+		queue.submit(s);
+	}
+
+	@Override
+	public synchronized void submit(int index, Spectrum s) throws InterruptedException {
+		data.submitted(index, s);
+		queue.submit(index, s);
+	}
+
+	@Override
+	public void finish() throws InterruptedException {
+		queue.finish();
+	}
+
+}
@@ -0,0 +1,229 @@
+package peakaboo.datasource.model.components.scandata.loaderqueue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import cyclops.Spectrum;
+import net.sciencestudio.scratch.ScratchEncoder;
+import net.sciencestudio.scratch.single.Compressed;
+import peakaboo.common.PeakabooConfiguration;
+import peakaboo.common.PeakabooLog;
+import peakaboo.datasource.model.components.scandata.SimpleScanData;
+
+/**
+ * ParallelLoaderQueue collects submitted spectra into batches and compresses
+ * each batch on a pool of worker threads. A single consumer thread then stores
+ * the compressed batches in the order they were submitted, so that appended
+ * spectra keep their order and repeated sets of the same index are applied in
+ * the same order as with {@link SimpleLoaderQueue}.
+ * <br/><br/>
+ * If a batch can't be compressed or stored, or the consumer thread is 
+ * interrupted, the spectra loaded so far are incomplete, so the failure is 
+ * rethrown from the next call to {@link #submit(int, Spectrum)} or 
+ * {@link #finish()} to fail the load. This includes a submit which is 
+ * waiting for room in the queue when the consumer thread stops.
+ * @author NAS
+ *
+ */
+public class ParallelLoaderQueue implements LoaderQueue {
+
+	private static final int MAX_BATCH_SIZE = 64;
+
+	class SpectrumIndex {
+		public Spectrum spectrum;
+		public Compressed<Spectrum> compressed;
+		public int index;
+	}
+
+	private LinkedBlockingQueue<CompletableFuture<List<SpectrumIndex>>> queue;
+	private List<SpectrumIndex> batch;
+	private int batchSize;
+	private ExecutorService pool;
+	private Thread thread;
+	private ScratchEncoder<Spectrum> encoder;
+	private volatile Throwable failure;
+	//set once the consumer thread stops taking batches from the queue
+	private volatile boolean stopped = false;
+
+	public ParallelLoaderQueue(SimpleScanData data) {
+		this(data, 1000, Math.max(1, SimpleScanData.getLoaderThreads() - 1));
+	}
+
+	/**
+	 * @param data the {@link SimpleScanData} to store spectra in
+	 * @param depth the approximate number of spectra which may be waiting in the queue
+	 * @param parallelism the number of threads to compress spectra with
+	 */
+	public ParallelLoaderQueue(SimpleScanData data, int depth, int parallelism) {
+		this.encoder = PeakabooConfiguration.spectrumEncoder;
+
+		//keep enough batches in flight to give every worker something to do
+		batchSize = Math.max(1, Math.min(MAX_BATCH_SIZE, depth / (parallelism * 2)));
+		batch = new ArrayList<>(batchSize);
+		queue = new LinkedBlockingQueue<>(Math.max(1, depth / batchSize));
+
+		pool = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "LoaderQueue Compression");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
+		thread = new Thread(() -> {
+			try {
+				while(true) {
+					try {
+						List<SpectrumIndex> structs = queue.take().get();
+						if (structs == null) {
+							return;
+						}
+						//after a failure, keep draining the queue so that submitters don't block
+						if (failure != null) {
+							continue;
+						}
+						for (SpectrumIndex struct : structs) {
+							store(data, struct);
+						}
+					} catch (InterruptedException e) {
+						fail(e);
+						Thread.currentThread().interrupt();
+						return;
+					} catch (ExecutionException e) {
+						fail(e.getCause());
+					} catch (RuntimeException e) {
+						fail(e);
+					}
+				}
+			} finally {
+				//nothing will take from the queue any more, so release any 
+				//waiting batches and stop submitters from waiting for room
+				stopped = true;
+				queue.clear();
+			}
+		});
+		thread.start();
+
+	}
+
+	private void fail(Throwable cause) {
+		PeakabooLog.get().log(Level.SEVERE, "Exception while processing LoaderQueue Spectrum entries", cause);
+		if (failure == null) {
+			failure = cause;
+		}
+	}
+
+	/**
+	 * Throws the first failure to compress or store a batch, if there was one
+	 */
+	private void checkFailure() {
+		if (failure != null) {
+			throw new CompletionException("Failed to store loaded spectra", failure);
+		}
+	}
+
+	private void store(SimpleScanData data, SpectrumIndex struct) {
+		if (struct.compressed != null) {
+			if (struct.index == -1) {
+				data.add(struct.compressed);
+			} else {
+				data.set(struct.index, struct.compressed);
+			}
+		} else {
+			if (struct.index == -1) {
+				data.add(struct.spectrum);
+			} else {
+				data.set(struct.index, struct.spectrum);
+			}
+		}
+	}
+
+	private List<SpectrumIndex> compress(List<SpectrumIndex> structs) {
+		for (SpectrumIndex struct : structs) {
+			try {
+				struct.compressed = Compressed.create(struct.spectrum, this.encoder);
+				struct.spectrum = null;
+			} catch (RuntimeException e) {
+				//leave the spectrum uncompressed, the ScanData will compress it itself
+				PeakabooLog.get().log(Level.WARNING, "Failed to compress LoaderQueue Spectrum entry", e);
+			}
+		}
+		return structs;
+	}
+
+	private void dispatch() throws InterruptedException {
+		if (batch.isEmpty()) {
+			return;
+		}
+		List<SpectrumIndex> structs = batch;
+		batch = new ArrayList<>(batchSize);
+		if (!enqueue(CompletableFuture.supplyAsync(() -> compress(structs), pool))) {
+			close();
+			checkFailure();
+		}
+	}
+
+	/**
+	 * Waits for room in the queue and adds the given batch to it, unless the 
+	 * consumer thread stops first, in which case nothing would ever make room.
+	 * @return true if the batch was added to the queue
+	 */
+	private boolean enqueue(CompletableFuture<List<SpectrumIndex>> structs) throws InterruptedException {
+		while (!queue.offer(structs, 100, TimeUnit.MILLISECONDS)) {
+			if (stopped) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void submit(Spectrum s) throws InterruptedException {
+		submit(-1, s);
+	}
+
+	@Override
+	public synchronized void submit(int index, Spectrum s) throws InterruptedException {
+		if (failure != null) {
+			//the load is going to fail, so stop the consumer thread and the pool now
+			close();
+			checkFailure();
+		}
+		SpectrumIndex struct = new SpectrumIndex();
+		struct.index = index;
+		struct.spectrum = s;
+		batch.add(struct);
+		if (batch.size() >= batchSize) {
+			dispatch();
+		}
+	}
+
+	@Override
+	public synchronized void finish() throws InterruptedException {
+		if (failure == null) {
+			dispatch();
+		}
+		close();
+		thread.join();
+		checkFailure();
+	}
+
+	private void close() throws InterruptedException {
+		if (pool.isShutdown()) {
+			return;
+		}
+		enqueue(CompletableFuture.completedFuture(null));
+		pool.shutdown();
+	}
+
+}
@@ -6,12 +6,11 @@ import java.util.Optional;
 
 import cyclops.Bounds;
 import cyclops.Coord;
-import cyclops.GridPerspective;
 import cyclops.Range;
 import cyclops.ReadOnlySpectrum;
 import cyclops.SISize;
-import cyclops.Spectrum;
 import net.sciencestudio.autodialog.model.Group;
+import peakaboo.dataset.analysis.Analysis;
 import peakaboo.datasource.model.DataSource;
 import peakaboo.datasource.model.components.datasize.DataSize;
 import peakaboo.datasource.model.components.fileformat.FileFormat;
@@ -25,20 +24,40 @@ public class CroppedDataSource implements SubsetDataSource, DataSize, PhysicalSi
 {
 
 	private DataSource					originalDataSource;
+	private Analysis					originalAnalysis;
 	
 	private int							sizeX, sizeY;
 	private Range						rangeX, rangeY;
 	
+	//index translation is done with these directly rather than with 
+	//GridPerspectives, since it happens for every scan we read
+	private int							startX, startY, width, height;
+	
 	public CroppedDataSource(DataSource ds, int sizeX, int sizeY, Coord<Integer> cstart, Coord<Integer> cend)
+	{
+		this(ds, null, sizeX, sizeY, cstart, cend);
+	}
+	
+	/**
+	 * @param analysis the {@link Analysis} of the original DataSource, which the 
+	 * subset's analysis can be derived from, or null if there isn't one
+	 */
+	public CroppedDataSource(DataSource ds, Analysis analysis, int sizeX, int sizeY, Coord<Integer> cstart, Coord<Integer> cend)
 	{
 		
 		originalDataSource = ds;
+		originalAnalysis = analysis;
 		
 		this.sizeX = sizeX;
 		this.sizeY = sizeY;
 		
 		this.rangeX = new Range(cstart.x, cend.x);
 		this.rangeY = new Range(cstart.y, cend.y);
+		
+		this.startX = rangeX.getStart();
+		this.startY = rangeY.getStart();
+		this.width = rangeX.size();
+		this.height = rangeY.size();
 				
 	}
 	
@@ -64,69 +83,47 @@ public class CroppedDataSource implements SubsetDataSource, DataSize, PhysicalSi
 
 	public ReadOnlySpectrum get(int index)
 	{
-		
-		
-		GridPerspective<Spectrum> grid = new GridPerspective<Spectrum>(rangeX.size(), rangeY.size(), null);
-		GridPerspective<Spectrum> origgrid = new GridPerspective<Spectrum>(sizeX, sizeY, null);
-		
-		int x = grid.getXYFromIndex(index).first;
-		int y = grid.getXYFromIndex(index).second;
-		
-		x += rangeX.getStart();
-		y += rangeY.getStart();
-				
-		int realIndex = origgrid.getIndexFromXY(x, y);
-				
-		return originalDataSource.getScanData().get(realIndex);
+		return originalDataSource.getScanData().get(getOriginalIndex(index));
 	}
 
 
 	@Override
 	public Coord<Integer> getDataCoordinatesAtIndex(int index)
 	{
-		GridPerspective<Spectrum> grid = new GridPerspective<Spectrum>(rangeX.size(), rangeY.size(), null);
-		int x = grid.getXYFromIndex(index).first;
-		int y = grid.getXYFromIndex(index).second;
-		return new Coord<Integer>(x, y);
+		return new Coord<Integer>(index % width, index / width);
 	}
 	
 	
 
 	@Override
 	public int getOriginalIndex(int index) {
-		
-		
-		GridPerspective<Spectrum> grid = new GridPerspective<Spectrum>(rangeX.size(), rangeY.size(), null);
-		GridPerspective<Spectrum> origgrid = new GridPerspective<Spectrum>(sizeX, sizeY, null);
-		
-		int x = grid.getXYFromIndex(index).first;
-		int y = grid.getXYFromIndex(index).second;
-		
-		x += rangeX.getStart();
-		y += rangeY.getStart();
-		
-		return origgrid.getIndexFromXY(x, y);
+		int x = index % width + startX;
+		int y = index / width + startY;
+		return y * sizeX + x;
 	}
 	
 	
 	@Override
 	public int getUpdatedIndex(int originalIndex) {
-		GridPerspective<Spectrum> grid = new GridPerspective<Spectrum>(rangeX.size(), rangeY.size(), null);
-		GridPerspective<Spectrum> origgrid = new GridPerspective<Spectrum>(sizeX, sizeY, null);
+		if (originalIndex < 0) return -1;
 		
-		int x = origgrid.getXYFromIndex(originalIndex).first;
-		int y = origgrid.getXYFromIndex(originalIndex).second;
+		int x = originalIndex % sizeX - startX;
+		int y = originalIndex / sizeX - startY;
 		
-		x -= rangeX.getStart();
-		y -= rangeY.getStart();
-		
-		return grid.getIndexFromXY(x, y);
+		if (x < 0 || x >= width || y < 0 || y >= height) return -1;
+		return y * width + x;
+	}
+	
+	
+	@Override
+	public Optional<Analysis> getOriginalAnalysis() {
+		return Optional.ofNullable(originalAnalysis);
 	}
 	
 	
 	public int scanCount()
 	{
-		return rangeX.size() * rangeY.size();
+		return width * height;
 	}
 
 
@@ -137,7 +134,7 @@ public class CroppedDataSource implements SubsetDataSource, DataSize, PhysicalSi
 
 	public Coord<Integer> getDataDimensions()
 	{
-		return new Coord<Integer>(rangeX.size(), rangeY.size());
+		return new Coord<Integer>(width, height);
 	}
 
 
@@ -151,13 +148,12 @@ public class CroppedDataSource implements SubsetDataSource, DataSize, PhysicalSi
 	public Coord<Bounds<Number>> getPhysicalDimensions()
 	{		
 		
-		GridPerspective<Spectrum> grid = new GridPerspective<Spectrum>(rangeX.size(), rangeY.size(), null);
 		Coord<Number> bottomLeft, bottomRight, topLeft;
 		
 		bottomLeft 	= getPhysicalCoordinatesAtIndex(0);
-		topLeft 	= getPhysicalCoordinatesAtIndex(grid.getIndexFromXY( 0, 				rangeY.size()-1	));
-		bottomRight = getPhysicalCoordinatesAtIndex(grid.getIndexFromXY( rangeX.size()-1, 	0				));
-		//topRight	= getRealCoordinatesAtIndex(grid.getIndexFromXY( rangeX.size()-1, 	rangeY.size()-1	));
+		topLeft 	= getPhysicalCoordinatesAtIndex((height-1) * width);
+		bottomRight = getPhysicalCoordinatesAtIndex(width-1);
+		//topRight	= getRealCoordinatesAtIndex(height * width - 1);
 				
 		Bounds<Number> bx = new Bounds<Number>(bottomLeft.x, bottomRight.x);
 		Bounds<Number> by = new Bounds<Number>(bottomLeft.y, topLeft.y);
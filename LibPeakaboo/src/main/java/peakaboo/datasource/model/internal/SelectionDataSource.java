@@ -6,6 +6,7 @@ import java.util.Optional;
 
 import cyclops.ReadOnlySpectrum;
 import net.sciencestudio.autodialog.model.Group;
+import peakaboo.dataset.analysis.Analysis;
 import peakaboo.datasource.model.DataSource;
 import peakaboo.datasource.model.components.datasize.DataSize;
 import peakaboo.datasource.model.components.fileformat.FileFormat;
@@ -13,6 +14,7 @@ import peakaboo.datasource.model.components.interaction.Interaction;
 import peakaboo.datasource.model.components.metadata.Metadata;
 import peakaboo.datasource.model.components.physicalsize.PhysicalSize;
 import peakaboo.datasource.model.components.scandata.ScanData;
+import peakaboo.mapping.selection.Selection;
 
 /**
  * Represents a random selection of data points from another DataSource
@@ -22,10 +24,26 @@ import peakaboo.datasource.model.components.scandata.ScanData;
 public class SelectionDataSource implements SubsetDataSource, ScanData {
 
 	private DataSource source;
-	private List<Integer> selectedIndexes;
+	private Analysis analysis;
+	private Selection selectedIndexes;
 	
-	public SelectionDataSource(DataSource source, List<Integer> selectedIndexes) {
+	/**
+	 * @param source the DataSource to select scans from
+	 * @param selectedIndexes the indexes of the selected scans, which appear in ascending order
+	 */
+	public SelectionDataSource(DataSource source, Selection selectedIndexes) {
+		this(source, null, selectedIndexes);
+	}
+	
+	/**
+	 * @param source the DataSource to select scans from
+	 * @param analysis the {@link Analysis} of the source, which the subset's 
+	 * analysis can be derived from, or null if there isn't one
+	 * @param selectedIndexes the indexes of the selected scans, which appear in ascending order
+	 */
+	public SelectionDataSource(DataSource source, Analysis analysis, Selection selectedIndexes) {
 		this.source = source;
+		this.analysis = analysis;
 		this.selectedIndexes = selectedIndexes;
 	}
 	
@@ -113,7 +131,12 @@ public class SelectionDataSource implements SubsetDataSource, ScanData {
 
 	@Override
 	public int getUpdatedIndex(int originalIndex) {
-		return selectedIndexes.indexOf(originalIndex);
+		return selectedIndexes.positionOf(originalIndex);
+	}
+	
+	@Override
+	public Optional<Analysis> getOriginalAnalysis() {
+		return Optional.ofNullable(analysis);
 	}
 
 	@Override
@@ -1,5 +1,8 @@
 package peakaboo.datasource.model.internal;
 
+import java.util.Optional;
+
+import peakaboo.dataset.analysis.Analysis;
 import peakaboo.datasource.model.DataSource;
 
 
@@ -22,4 +25,12 @@ public interface SubsetDataSource extends DataSource {
 	 * @return updated index, or -1 if the index does not appear in the subset data source
 	 */
 	int getUpdatedIndex(int originalIndex);
+	
+	
+	/**
+	 * Returns the {@link Analysis} of the original data source, if one is known. 
+	 * The subset's channel count, missing scans and maximum intensity are taken 
+	 * from it, so that the subset can be opened without reading its spectra.
+	 */
+	Optional<Analysis> getOriginalAnalysis();
 }
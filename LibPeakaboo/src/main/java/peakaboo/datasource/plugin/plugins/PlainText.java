@@ -1,20 +1,31 @@
 package peakaboo.datasource.plugin.plugins;
 
-import java.nio.file.Files;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.Arrays;
-import java.util.Iterator;
+import java.util.Deque;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.logging.Level;
 
-import cyclops.ISpectrum;
 import cyclops.Spectrum;
 import net.sciencestudio.autodialog.model.Group;
+import peakaboo.common.PeakabooConfiguration;
+import peakaboo.common.PeakabooLog;
 import peakaboo.datasource.model.components.datasize.DataSize;
 import peakaboo.datasource.model.components.fileformat.FileFormat;
 import peakaboo.datasource.model.components.fileformat.SimpleFileFormat;
 import peakaboo.datasource.model.components.metadata.Metadata;
 import peakaboo.datasource.model.components.physicalsize.PhysicalSize;
+import peakaboo.datasource.model.components.scandata.MappedScanData;
 import peakaboo.datasource.model.components.scandata.ScanData;
 import peakaboo.datasource.model.components.scandata.SimpleScanData;
 import peakaboo.datasource.model.components.scandata.loaderqueue.LoaderQueue;
@@ -24,10 +35,14 @@ import peakaboo.datasource.plugin.AbstractDataSource;
 public class PlainText extends AbstractDataSource
 {
 
+	//the number of bytes of lines to parse at once
+	private static final long BLOCK_SIZE = 8 << 20;
+
 	int 	size = 0;
 	int		scanSize = -1;
 
-	private SimpleScanData scandata;
+	private ScanData scandata;
+	private LoaderQueue queue;
 	
 	public PlainText()
 	{
@@ -78,37 +93,123 @@ public class PlainText extends AbstractDataSource
 		
 		Path file = files.get(0);
 		
-		int fileSize = (int) Files.size(file);
-		int lineEstimate = -1;
+		//blocks of lines are parsed in parallel, but are submitted in order
+		int maxPending = Math.max(2, ForkJoinPool.getCommonPoolParallelism() * 2);
+		Deque<ForkJoinTask<List<Spectrum>>> pending = new ArrayDeque<>();
+		boolean estimated = false;
 		
-		scandata = new SimpleScanData(file.getFileName().toString());
-		//LoaderQueue will push compression off onto the queue thread
-		LoaderQueue queue = scandata.createLoaderQueue(10);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+		{
+			long fileSize = channel.size();
+			long position = 0;
+			
+			while (position < fileSize && !getInteraction().checkReadAborted())
+			{
+				MappedByteBuffer block = mapBlock(channel, position, fileSize);
+				int length = block.limit();
+				position += length;
+				pending.add(ForkJoinTask.adapt(() -> new PlainTextParser().parseLines(block, 0, length)).fork());
+				
+				if (!estimated) {
+					//estimate the scan count from how many scans the first block held
+					List<Spectrum> first = pending.peek().join();
+					if (!first.isEmpty()) {
+						int estimate = (int) Math.min(Integer.MAX_VALUE, fileSize * first.size() / position);
+						createScanData(file, fileSize, first.get(0).size(), estimate);
+						getInteraction().notifyScanCount(estimate);
+						estimated = true;
+					}
+				}
+				
+				while (pending.size() >= maxPending) 
+				{
+					submit(pending.poll().join(), file, fileSize);
+				}
+			}
+			
+			while (!pending.isEmpty() && !getInteraction().checkReadAborted()) 
+			{
+				submit(pending.poll().join(), file, fileSize);
+			}
+		} 
+		finally 
+		{
+			for (ForkJoinTask<?> task : pending) {
+				task.cancel(false);
+			}
+		}
 		
+		if (queue != null) {
+			queue.finish();
+		} else {
+			scandata = new SimpleScanData(file.getFileName().toString());
+		}
 		
-		Iterator<String> lines = Files.lines(file).iterator();
 
-		while (lines.hasNext())
+	}
+	
+	/**
+	 * Maps the next block of lines in the file, ending at a line ending or at the end of the file.
+	 */
+	private MappedByteBuffer mapBlock(FileChannel channel, long position, long fileSize) throws IOException 
+	{
+		long length = BLOCK_SIZE;
+		while (true) 
 		{
-			String line = lines.next();
-			if (lineEstimate == -1) {
-				lineEstimate = fileSize / line.length();
-				getInteraction().notifyScanCount(lineEstimate);
+			long remaining = fileSize - position;
+			if (remaining <= length) {
+				return channel.map(MapMode.READ_ONLY, position, remaining);
 			}
 			
-			if (line == null || getInteraction().checkReadAborted()) break;
-			
-			if (line.trim().equals("") || line.trim().startsWith("#")) continue;
-						
-			//split on all non-digit characters
-			String[] entries = line.trim().split("[, \\t]+");
-			Spectrum scan = parseLine(entries);
-//			Spectrum scan = new ISpectrum(Arrays.asList(line.trim().split("[, \\t]+")).stream().map(s -> {
-//				try { return Float.parseFloat(s); } 
-//				catch (Exception e) { return 0f; }
-//			}).collect(toList()));
-			
+			MappedByteBuffer block = channel.map(MapMode.READ_ONLY, position, length);
+			for (int i = (int) length - 1; i >= 0; i--) 
+			{
+				if (PlainTextParser.isLineEnd(block.get(i))) {
+					//through Buffer, since ByteBuffer.limit(int) doesn't exist before Java 9
+					((Buffer) block).limit(i + 1);
+					return block;
+				}
+			}
 			
+			//a single line longer than the block, try again with a larger one
+			if (length == Integer.MAX_VALUE) throw new IOException("Line too long");
+			length = Math.min(Integer.MAX_VALUE, length * 2);
+		}
+	}
+
+	/**
+	 * Creates the {@link ScanData} to store scans in once the number of channels 
+	 * is known. Large files are stored in a {@link MappedScanData}, so that 
+	 * reading a scan back doesn't have to decode it.
+	 */
+	private void createScanData(Path file, long fileSize, int channels, int estimate) 
+	{
+		if (queue != null) return;
+		String name = file.getFileName().toString();
+		
+		if (PeakabooConfiguration.diskstore && fileSize >= PeakabooConfiguration.mappedstoreSize && channels > 0) 
+		{
+			try {
+				MappedScanData mapped = new MappedScanData(name, channels, estimate);
+				scandata = mapped;
+				queue = mapped.createLoaderQueue();
+				return;
+			} catch (IOException e) {
+				PeakabooLog.get().log(Level.WARNING, "Could not create memory-mapped scan data, falling back to compressed storage", e);
+			}
+		}
+		
+		SimpleScanData simple = new SimpleScanData(name);
+		scandata = simple;
+		//LoaderQueue will push compression off onto the queue thread
+		queue = simple.createLoaderQueue(10);
+	}
+
+	private void submit(List<Spectrum> scans, Path file, long fileSize) throws Exception 
+	{
+		for (Spectrum scan : scans) 
+		{
+			createScanData(file, fileSize, scan.size(), 0);
 			if (size > 0 && scan.size() != scanSize) 
 			{
 				throw new Exception("Spectra sizes are not equal");
@@ -118,31 +219,10 @@ public class PlainText extends AbstractDataSource
 				scanSize = scan.size();
 			}
 			
-			
-			//scandata.add(scan);
 			queue.submit(scan);
 			size++;
-			
-			getInteraction().notifyScanRead(1);
-			
-		}
-		
-		queue.finish();
-		
-
-	}
-
-	private Spectrum parseLine(String[] entries) {
-		Spectrum scan = new ISpectrum(entries.length);
-		for (String entry : entries) {
-			try {
-				scan.add(Float.parseFloat(entry));
-			} catch (Exception e) {
-				//some kind of error
-				scan.add(0f);
-			}
 		}
-		return scan;
+		getInteraction().notifyScanRead(scans.size());
 	}
 	
 
@@ -0,0 +1,225 @@
+package peakaboo.datasource.plugin.plugins;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import cyclops.ISpectrum;
+import cyclops.Spectrum;
+
+/**
+ * Parses the lines of a {@link PlainText} file directly from bytes, without
+ * creating a String for each line or number. A line is trimmed of whitespace
+ * and split on runs of spaces, commas, and tabs. Blank lines and lines starting
+ * with a '#' are skipped. Entries which aren't numbers are read as 0, the same
+ * as {@link Float#parseFloat(String)} failing on them.
+ * <br/><br/>
+ * A PlainTextParser reuses a buffer between lines, so each thread should use
+ * its own.
+ *
+ * @author NAS
+ *
+ */
+public class PlainTextParser {
+
+	//powers of ten which can be represented exactly as a double
+	private static final double[] POWERS = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+		1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	//the largest mantissa which can be represented exactly as a double
+	private static final long MAX_MANTISSA = 1L << 53;
+
+	private float[] entries = new float[1024];
+
+
+	/**
+	 * Returns true if the given byte ends a line
+	 */
+	public static boolean isLineEnd(byte b) {
+		return b == '\n' || b == '\r';
+	}
+
+	private static boolean isSeparator(byte b) {
+		return b == ' ' || b == ',' || b == '\t';
+	}
+
+	//matches String.trim
+	private static boolean isWhitespace(byte b) {
+		return b >= 0 && b <= ' ';
+	}
+
+
+	/**
+	 * Parses all of the lines in the given range of the buffer into spectra, in
+	 * order. The range is expected to end on a line ending or at the end of the
+	 * file.
+	 */
+	public List<Spectrum> parseLines(ByteBuffer buffer, int start, int end) {
+		List<Spectrum> scans = new ArrayList<>();
+		int lineStart = start;
+		for (int i = start; i <= end; i++) {
+			if (i == end || isLineEnd(buffer.get(i))) {
+				Spectrum scan = parseLine(buffer, lineStart, i);
+				if (scan != null) {
+					scans.add(scan);
+				}
+				lineStart = i + 1;
+			}
+		}
+		return scans;
+	}
+
+	/**
+	 * Parses a single line (without its line ending) into a spectrum, or
+	 * returns null if the line is blank or a comment.
+	 */
+	public Spectrum parseLine(ByteBuffer buffer, int start, int end) {
+		while (start < end && isWhitespace(buffer.get(start))) start++;
+		while (end > start && isWhitespace(buffer.get(end - 1))) end--;
+		if (start == end || buffer.get(start) == '#') return null;
+
+		int count = 0;
+
+		//a leading comma splits off an empty entry, which isn't a number
+		boolean leading = isSeparator(buffer.get(start));
+		if (leading) {
+			entries[count++] = 0f;
+		}
+
+		int i = start;
+		while (i < end) {
+			while (i < end && isSeparator(buffer.get(i))) i++;
+			if (i == end) break;
+			int tokenStart = i;
+			while (i < end && !isSeparator(buffer.get(i))) i++;
+
+			if (count == entries.length) {
+				entries = Arrays.copyOf(entries, entries.length * 2);
+			}
+			entries[count++] = parseFloat(buffer, tokenStart, i);
+		}
+
+		//a line of only separators splits into nothing but empty entries, which
+		//String.split drops, leaving an empty scan
+		if (leading && count == 1) {
+			count = 0;
+		}
+
+		Spectrum scan = new ISpectrum(count);
+		System.arraycopy(entries, 0, scan.backingArray(), 0, count);
+		return scan;
+	}
+
+
+	/**
+	 * Parses a number from the given range of the buffer, returning 0 if it
+	 * isn't a number. Plain decimal numbers with an optional exponent are parsed
+	 * directly. Anything else, such as numbers with too many digits to be
+	 * parsed exactly this way, is handed to {@link Float#parseFloat(String)}.
+	 */
+	public static float parseFloat(ByteBuffer buffer, int start, int end) {
+		int i = start;
+		boolean negative = false;
+		if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+			negative = buffer.get(i) == '-';
+			i++;
+		}
+
+		long mantissa = 0;
+		int exponent = 0;
+		int digits = 0;
+		boolean overflow = false;
+
+		//integer part
+		while (i < end && isDigit(buffer.get(i))) {
+			if (mantissa < MAX_MANTISSA / 10) {
+				mantissa = mantissa * 10 + (buffer.get(i) - '0');
+			} else {
+				overflow = true;
+			}
+			digits++;
+			i++;
+		}
+
+		//fractional part
+		if (i < end && buffer.get(i) == '.') {
+			i++;
+			while (i < end && isDigit(buffer.get(i))) {
+				if (mantissa < MAX_MANTISSA / 10) {
+					mantissa = mantissa * 10 + (buffer.get(i) - '0');
+					exponent--;
+				} else {
+					overflow = true;
+				}
+				digits++;
+				i++;
+			}
+		}
+		if (digits == 0) return parseSlow(buffer, start, end);
+
+		//exponent
+		if (i < end && (buffer.get(i) == 'e' || buffer.get(i) == 'E')) {
+			i++;
+			boolean negativeExponent = false;
+			if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+				negativeExponent = buffer.get(i) == '-';
+				i++;
+			}
+			int exponentStart = i;
+			int value = 0;
+			while (i < end && isDigit(buffer.get(i)) && value < 10000) {
+				value = value * 10 + (buffer.get(i) - '0');
+				i++;
+			}
+			if (i == exponentStart) return parseSlow(buffer, start, end);
+			exponent += negativeExponent ? -value : value;
+		}
+
+		//trailing characters, or digits which didn't fit in the mantissa
+		if (i != end || overflow) return parseSlow(buffer, start, end);
+
+		//with an exact mantissa and power of ten, one multiplication or division
+		//gives the correctly rounded double
+		double value;
+		if (mantissa == 0) {
+			value = 0;
+		} else if (exponent >= 0 && exponent < POWERS.length) {
+			value = mantissa * POWERS[exponent];
+		} else if (exponent < 0 && -exponent < POWERS.length) {
+			value = mantissa / POWERS[-exponent];
+		} else {
+			return parseSlow(buffer, start, end);
+		}
+
+		//rounding to a double and then to a float can differ from rounding
+		//straight to a float only when the double lands halfway between floats
+		float result = (float) value;
+		if (value != result) {
+			double midpoint = ((double) result + Math.nextAfter(result, value)) / 2;
+			if (value == midpoint) return parseSlow(buffer, start, end);
+		}
+		return negative ? -result : result;
+	}
+
+	private static boolean isDigit(byte b) {
+		return b >= '0' && b <= '9';
+	}
+
+	private static float parseSlow(ByteBuffer buffer, int start, int end) {
+		byte[] bytes = new byte[end - start];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(start + i);
+		}
+		try {
+			return Float.parseFloat(new String(bytes, StandardCharsets.UTF_8));
+		} catch (Exception e) {
+			//some kind of error
+			return 0f;
+		}
+	}
+
+}
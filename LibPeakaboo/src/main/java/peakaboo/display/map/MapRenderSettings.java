@@ -1,12 +1,10 @@
 package peakaboo.display.map;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import cyclops.Coord;
 import cyclops.SISize;
 import peakaboo.calibration.CalibrationProfile;
 import peakaboo.display.map.modes.MapDisplayMode;
+import peakaboo.mapping.selection.Selection;
 
 public class MapRenderSettings {
 
@@ -42,7 +40,7 @@ public class MapRenderSettings {
 	
 	public boolean screenOrientation = false;
 	
-	public List<Integer> selectedPoints = new ArrayList<>();
+	public Selection selectedPoints = Selection.NONE;
 	
 	public CalibrationProfile calibrationProfile = new CalibrationProfile();
 
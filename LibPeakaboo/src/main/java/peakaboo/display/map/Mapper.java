@@ -256,7 +256,7 @@ public class Mapper {
 		
 		
 		//Selection Painter
-		MapPainter selection = new SelectionMaskPainter(new PaletteColour(0xffffffff), settings.selectedPoints, settings.dataWidth, settings.dataHeight);
+		MapPainter selection = new SelectionMaskPainter(new PaletteColour(0xffffffff), settings.selectedPoints.asList(), settings.dataWidth, settings.dataHeight);
 		mapPainters.add(selection);
 			
 		
@@ -408,7 +408,7 @@ public class Mapper {
 		
 		
 		//Selection Painter
-		MapPainter selection = new SelectionMaskPainter(new PaletteColour(0xffffffff), settings.selectedPoints, settings.dataWidth, settings.dataHeight);
+		MapPainter selection = new SelectionMaskPainter(new PaletteColour(0xffffffff), settings.selectedPoints.asList(), settings.dataWidth, settings.dataHeight);
 		mapPainters.add(selection);
 		
 		
@@ -566,7 +566,7 @@ public class Mapper {
 		
 		
 		//Selection Painter
-		MapPainter selection = new SelectionMaskPainter(new PaletteColour(0xffffffff), settings.selectedPoints, settings.dataWidth, settings.dataHeight);
+		MapPainter selection = new SelectionMaskPainter(new PaletteColour(0xffffffff), settings.selectedPoints.asList(), settings.dataWidth, settings.dataHeight);
 		
 
 		
@@ -0,0 +1,210 @@
+package peakaboo.filter.kernels;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A Fast Fourier Transform for real-valued data whose length is a power of
+ * two, working on primitive arrays. A RealFFT is a plan for one data length:
+ * it holds the bit-reversal permutation and twiddle factors for that length,
+ * so they are only calculated once. Plans are immutable and shared, see
+ * {@link #forSize(int)}.
+ * <br/><br/>
+ * Since the transform of real data is conjugate-symmetric, only the first
+ * n/2+1 frequencies are stored. The data is transformed as a complex signal
+ * of half the length, with even channels as the real parts and odd channels
+ * as the imaginary parts, and then untangled.
+ *
+ * @author NAS
+ *
+ */
+public class RealFFT {
+
+	private static final Map<Integer, RealFFT> plans = new ConcurrentHashMap<>();
+
+	private final int size;
+	//size of the complex transform
+	private final int half;
+
+	private final int[] reverse;
+	//twiddle factors for the half-length complex transform
+	private final double[] cos, sin;
+	//twiddle factors for untangling the real transform
+	private final double[] splitCos, splitSin;
+
+
+	private RealFFT(int size) {
+		this.size = size;
+		this.half = size / 2;
+
+		int bits = Integer.numberOfTrailingZeros(half);
+		reverse = new int[half];
+		for (int i = 0; i < half; i++) {
+			reverse[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+		}
+
+		cos = new double[Math.max(1, half / 2)];
+		sin = new double[cos.length];
+		for (int i = 0; i < cos.length; i++) {
+			cos[i] = Math.cos(2 * Math.PI * i / half);
+			sin[i] = Math.sin(2 * Math.PI * i / half);
+		}
+
+		splitCos = new double[half];
+		splitSin = new double[half];
+		for (int i = 0; i < half; i++) {
+			splitCos[i] = Math.cos(2 * Math.PI * i / size);
+			splitSin[i] = Math.sin(2 * Math.PI * i / size);
+		}
+	}
+
+	/**
+	 * Returns the plan for data of the given length, creating it if needed.
+	 * @throws IllegalArgumentException if the size is not a power of two of at least 2
+	 */
+	public static RealFFT forSize(int size) {
+		if (!supports(size)) {
+			throw new IllegalArgumentException("FFT size must be a power of two of at least 2, not " + size);
+		}
+		return plans.computeIfAbsent(size, RealFFT::new);
+	}
+
+	/**
+	 * Returns true if a plan can be made for data of the given length
+	 */
+	public static boolean supports(int size) {
+		return size >= 2 && Integer.bitCount(size) == 1;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of frequencies in the transform, n/2+1
+	 */
+	public int frequencies() {
+		return half + 1;
+	}
+
+
+	/**
+	 * Transforms the given real data into the frequency domain. The real and
+	 * imaginary parts of frequencies 0 to n/2 are written to re and im, which
+	 * must be at least {@link #frequencies()} long.
+	 */
+	public void forward(double[] data, double[] re, double[] im) {
+		for (int i = 0; i < half; i++) {
+			re[i] = data[2*i];
+			im[i] = data[2*i+1];
+		}
+		transform(re, im, false);
+
+		//untangle the transforms of the even and odd channels
+		double z0r = re[0], z0i = im[0];
+		re[0] = z0r + z0i;
+		im[0] = 0;
+		re[half] = z0r - z0i;
+		im[half] = 0;
+
+		for (int k = 1; k <= half/2; k++) {
+			int j = half - k;
+			double zkr = re[k], zki = im[k], zjr = re[j], zji = im[j];
+
+			//even part (Z[k] + conj(Z[j]))/2, odd part (Z[k] - conj(Z[j]))/2i
+			double er = (zkr + zjr) / 2, ei = (zki - zji) / 2;
+			double or = (zki + zji) / 2, oi = -(zkr - zjr) / 2;
+
+			double wr = splitCos[k], wi = -splitSin[k];
+			re[k] = er + (or*wr - oi*wi);
+			im[k] = ei + (or*wi + oi*wr);
+
+			if (j != k) {
+				//the even and odd parts at j are the conjugates of those at k
+				wr = splitCos[j];
+				wi = -splitSin[j];
+				re[j] = er + (or*wr + oi*wi);
+				im[j] = -ei + (or*wi - oi*wr);
+			}
+		}
+	}
+
+	/**
+	 * Transforms frequencies 0 to n/2, as produced by
+	 * {@link #forward(double[], double[], double[])}, back into real data.
+	 * The contents of re and im are overwritten.
+	 */
+	public void inverse(double[] re, double[] im, double[] data) {
+
+		//retangle the transform into that of the even and odd channels
+		double xr = re[0], xi = im[0], yr = re[half], yi = -im[half];
+		double er = (xr + yr) / 2, ei = (xi + yi) / 2;
+		double or = (xr - yr) / 2, oi = (xi - yi) / 2;
+		re[0] = er - oi;
+		im[0] = ei + or;
+
+		for (int k = 1; k <= half/2; k++) {
+			int j = half - k;
+			double xkr = re[k], xki = im[k], xjr = re[j], xji = im[j];
+
+			//even part (X[k] + conj(X[j]))/2
+			er = (xkr + xjr) / 2;
+			ei = (xki - xji) / 2;
+			//odd part (X[k] - conj(X[j])) * conj(W^k) / 2
+			double ar = xkr - xjr, ai = xki + xji;
+			double wr = splitCos[k], wi = splitSin[k];
+			or = (ar*wr - ai*wi) / 2;
+			oi = (ar*wi + ai*wr) / 2;
+			re[k] = er - oi;
+			im[k] = ei + or;
+
+			if (j != k) {
+				//even part is the conjugate of the one at k, odd part uses -conj(a)
+				wr = splitCos[j];
+				wi = splitSin[j];
+				or = (-ar*wr - ai*wi) / 2;
+				oi = (-ar*wi + ai*wr) / 2;
+				re[j] = er - oi;
+				im[j] = -ei + or;
+			}
+		}
+
+		transform(re, im, true);
+		for (int i = 0; i < half; i++) {
+			data[2*i] = re[i] / half;
+			data[2*i+1] = im[i] / half;
+		}
+	}
+
+
+	//in-place iterative radix-2 complex transform of the first half elements
+	private void transform(double[] re, double[] im, boolean inverse) {
+		for (int i = 0; i < half; i++) {
+			int j = reverse[i];
+			if (j > i) {
+				double t = re[i]; re[i] = re[j]; re[j] = t;
+				t = im[i]; im[i] = im[j]; im[j] = t;
+			}
+		}
+
+		for (int length = 2; length <= half; length <<= 1) {
+			int span = length / 2;
+			int step = half / length;
+			for (int start = 0; start < half; start += length) {
+				for (int k = 0; k < span; k++) {
+					double wr = cos[k*step];
+					double wi = inverse ? sin[k*step] : -sin[k*step];
+					int a = start + k;
+					int b = a + span;
+					double tr = re[b]*wr - im[b]*wi;
+					double ti = re[b]*wi + im[b]*wr;
+					re[b] = re[a] - tr;
+					im[b] = im[a] - ti;
+					re[a] += tr;
+					im[a] += ti;
+				}
+			}
+		}
+	}
+
+}
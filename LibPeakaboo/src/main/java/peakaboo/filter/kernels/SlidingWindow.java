@@ -0,0 +1,91 @@
+package peakaboo.filter.kernels;
+
+/**
+ * Kernels for filters which compute something over a window of channels
+ * around every channel. Rather than visiting every channel in every window,
+ * which costs O(n*w) for n channels and a window of w channels, window sums
+ * are taken from prefix sums and cost O(n) regardless of the window size. The
+ * weighted average kernel is meant for short windows, and only avoids
+ * recalculating the total weight.
+ * <br/><br/>
+ * Prefix sums are kept in double precision, so a window sum is all but the
+ * exact sum rounded once to a float. A float sum taken one channel at a time rounds
+ * after every channel, so the two can differ by up to about w float epsilons
+ * of the sum.
+ *
+ * @author NAS
+ *
+ */
+public class SlidingWindow {
+
+	private SlidingWindow() {}
+
+	/**
+	 * Calculates the prefix sums of the given data, such that
+	 * sums[i] is the sum of data[0 .. i-1]. The sums array must be at least
+	 * one element longer than the data.
+	 * @return the sums array
+	 */
+	public static double[] prefixSums(float[] data, double[] sums) {
+		sums[0] = 0;
+		for (int i = 0; i < data.length; i++) {
+			sums[i+1] = sums[i] + data[i];
+		}
+		return sums;
+	}
+
+	/**
+	 * Calculates the prefix sums of the given data in a new array.
+	 * @see #prefixSums(float[], double[])
+	 */
+	public static double[] prefixSums(float[] data) {
+		return prefixSums(data, new double[data.length+1]);
+	}
+
+	/**
+	 * Returns the sum of the values from start (inclusive) to stop (exclusive)
+	 * given prefix sums from {@link #prefixSums(float[], double[])}.
+	 */
+	public static float sum(double[] sums, int start, int stop) {
+		if (stop <= start) return 0f;
+		return (float) (sums[stop] - sums[start]);
+	}
+
+
+	/**
+	 * Applies a weighted window to the data, writing the weighted average of
+	 * each channel's window to the target. The weights array is 2*reach+1
+	 * long. Near the ends of the data, where the window is truncated, the
+	 * first weights are applied to the first channels in the window, and the
+	 * average uses only the weights which were applied.
+	 */
+	public static float[] weightedAverage(float[] data, float[] weights, float[] target) {
+		int size = data.length;
+		int reach = weights.length / 2;
+
+		//the total weight is the same for every window which isn't truncated
+		float fullWeight = 0;
+		for (float weight : weights) {
+			fullWeight += weight;
+		}
+
+		for (int i = 0; i < size; i++) {
+			int start = Math.max(0, i - reach);
+			int stop = Math.min(size-1, i + reach);
+			boolean truncated = stop - start + 1 < weights.length;
+
+			float totalWeight = 0;
+			float sum = 0;
+			int pos = 0;
+			for (int p = start; p <= stop; p++) {
+				if (truncated) totalWeight += weights[pos];
+				sum += data[p] * weights[pos];
+				pos++;
+			}
+
+			target[i] = sum / (truncated ? totalWeight : fullWeight);
+		}
+		return target;
+	}
+
+}
@@ -0,0 +1,136 @@
+package peakaboo.filter.model;
+
+import cyclops.ISpectrum;
+import cyclops.ReadOnlySpectrum;
+import cyclops.Spectrum;
+
+/**
+ * An immutable transformation of the form <tt>value * scale + offset</tt>
+ * applied independently to each channel of a spectrum. Consecutive Affine
+ * transformations can be combined into a single one with
+ * {@link #then(Affine)}, which lets a {@link FilterPlan} apply a whole run of
+ * {@link AffineFilter}s in one pass over the data. Calculations are done in
+ * double precision, so a single addition, subtraction or multiplication gives
+ * the same result as the equivalent float operation.
+ *
+ * @author NAS
+ *
+ */
+public final class Affine {
+
+	public static final Affine IDENTITY = new Affine(1d, 0d);
+	public static final Affine ZERO = new Affine(0d, 0d);
+
+	private final double scale, offset;
+
+	private Affine(double scale, double offset) {
+		this.scale = scale;
+		this.offset = offset;
+	}
+
+	public static Affine add(float amount) {
+		return new Affine(1d, amount);
+	}
+
+	public static Affine subtract(float amount) {
+		return new Affine(1d, -(double)amount);
+	}
+
+	public static Affine multiply(float amount) {
+		return new Affine(amount, 0d);
+	}
+
+	public static Affine divide(float amount) {
+		return new Affine(1d / amount, 0d);
+	}
+
+	public double getScale() {
+		return scale;
+	}
+
+	public double getOffset() {
+		return offset;
+	}
+
+	public boolean isIdentity() {
+		return scale == 1d && offset == 0d;
+	}
+
+	/**
+	 * Returns an Affine which has the same effect as applying this one followed
+	 * by the given one
+	 */
+	public Affine then(Affine next) {
+		if (this.isIdentity()) return next;
+		if (next.isIdentity()) return this;
+		//a zero scale discards the input, and Infinity/NaN along with it
+		if (next.scale == 0d) return new Affine(0d, next.offset);
+		return new Affine(scale * next.scale, offset * next.scale + next.offset);
+	}
+
+	public float apply(float value) {
+		if (scale == 0d) return (float)offset;
+		return (float)(value * scale + offset);
+	}
+
+	/**
+	 * Applies this transformation to the given data, returning the result as a
+	 * new {@link Spectrum}
+	 */
+	public Spectrum apply(ReadOnlySpectrum data) {
+		Spectrum result = new ISpectrum(data.size());
+		apply(data, result.backingArray(), false);
+		return result;
+	}
+
+	/**
+	 * Applies this transformation to the given data, writing the results to the
+	 * start of the target array, which may be the data's own backing array.
+	 *
+	 * @param fixNonFinite if true, Infinity and NaN results are replaced with 0
+	 * @return true if any Infinity or NaN results were replaced
+	 */
+	boolean apply(ReadOnlySpectrum data, float[] target, boolean fixNonFinite) {
+		int size = data.size();
+		if (scale == 0d) {
+			float value = (float)offset;
+			boolean bad = !isFinite(value);
+			if (bad && fixNonFinite) value = 0f;
+			for (int i = 0; i < size; i++) {
+				target[i] = value;
+			}
+			return bad && fixNonFinite && size > 0;
+		}
+
+		if (data instanceof Spectrum) {
+			float[] source = ((Spectrum) data).backingArray();
+			for (int i = 0; i < size; i++) {
+				target[i] = (float)(source[i] * scale + offset);
+			}
+		} else {
+			for (int i = 0; i < size; i++) {
+				target[i] = (float)(data.get(i) * scale + offset);
+			}
+		}
+
+		if (!fixNonFinite) return false;
+		boolean fixed = false;
+		for (int i = 0; i < size; i++) {
+			if (!isFinite(target[i])) {
+				target[i] = 0f;
+				fixed = true;
+			}
+		}
+		return fixed;
+	}
+
+	static boolean isFinite(float value) {
+		return !(Float.isInfinite(value) || Float.isNaN(value));
+	}
+
+	@Override
+	public String toString() {
+		return "Affine(x * " + scale + " + " + offset + ")";
+	}
+
+}
@@ -0,0 +1,31 @@
+package peakaboo.filter.model;
+
+import cyclops.ReadOnlySpectrum;
+
+/**
+ * A {@link Filter} whose effect on each channel of a spectrum can be described
+ * by an {@link Affine} transformation. A {@link FilterPlan} can combine runs of
+ * these filters and apply them in a single pass over the data instead of
+ * calling {@link Filter#filter(ReadOnlySpectrum, boolean)} on each one.
+ * 
+ * @author NAS
+ *
+ */
+public interface AffineFilter extends Filter {
+
+	/**
+	 * Returns true if the transformation this filter applies depends on the
+	 * contents of the spectrum being filtered, such as when scaling it to a
+	 * fixed maximum intensity.
+	 */
+	default boolean isDataDependent() {
+		return false;
+	}
+	
+	/**
+	 * Returns the transformation this filter applies to the given data. If this
+	 * filter is not {@link #isDataDependent()}, the data may be null.
+	 */
+	Affine getAffine(ReadOnlySpectrum data);
+	
+}
@@ -0,0 +1,270 @@
+package peakaboo.filter.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+
+import cyclops.ISpectrum;
+import cyclops.ReadOnlySpectrum;
+import cyclops.Spectrum;
+import net.sciencestudio.autodialog.model.Value;
+import peakaboo.common.PeakabooLog;
+
+/**
+ * A FilterPlan is a snapshot of the enabled filters in a {@link FilterSet},
+ * compiled into a sequence of steps which can be applied to many spectra.
+ * Runs of {@link AffineFilter}s are combined into a single {@link Affine}
+ * transformation, which is applied in one pass over the data along with the
+ * next filter's input copy or the final Infinity/NaN correction. Intermediate
+ * results are written to a pair of scratch buffers owned by the calling thread,
+ * so only the filters which can't be combined allocate new spectra.
+ * <br/><br/>
+ * Parameters of filters which are not {@link AffineFilter#isDataDependent()}
+ * are read when the plan is compiled, so a plan should be compiled again after
+ * any filter settings are changed.
+ *
+ * @author NAS
+ *
+ */
+public class FilterPlan {
+
+	private static abstract class Step {}
+
+	//An Affine transformation known when the plan was compiled
+	private static class FixedStep extends Step {
+		final Affine affine;
+		FixedStep(Affine affine) {
+			this.affine = affine;
+		}
+	}
+
+	//An Affine transformation which depends on the data it is applied to
+	private static class DependentStep extends Step {
+		final AffineFilter filter;
+		DependentStep(AffineFilter filter) {
+			this.filter = filter;
+		}
+	}
+
+	//Any other filter
+	private static class FilterStep extends Step {
+		final Filter filter;
+		FilterStep(Filter filter) {
+			this.filter = filter;
+		}
+	}
+
+	private static class Scratch {
+		ISpectrum a, b;
+		boolean inUse;
+
+		void ensureSize(int size) {
+			if (a == null || a.size() != size) {
+				a = new ISpectrum(size);
+				b = new ISpectrum(size);
+			}
+		}
+
+		boolean owns(ReadOnlySpectrum spectrum) {
+			return spectrum == a || spectrum == b;
+		}
+
+		//returns the buffer which is not the given spectrum
+		Spectrum other(ReadOnlySpectrum spectrum) {
+			return spectrum == a ? b : a;
+		}
+	}
+
+	private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+
+	private final List<Step> steps;
+	private final List<Filter> filters;
+	private final List<Object> signature;
+
+
+	/**
+	 * Compiles a plan for the given filters, skipping any which are disabled or
+	 * preview-only.
+	 */
+	public FilterPlan(List<Filter> filters) {
+		List<Filter> used = new ArrayList<>();
+		steps = new ArrayList<>();
+
+		Affine pending = Affine.IDENTITY;
+		for (Filter f : filters) {
+			if (f == null || !f.isEnabled() || f.isPreviewOnly()) continue;
+			used.add(f);
+
+			if (f instanceof AffineFilter && !((AffineFilter) f).isDataDependent()) {
+				pending = pending.then(resolve((AffineFilter) f, null));
+				continue;
+			}
+
+			if (!pending.isIdentity()) {
+				steps.add(new FixedStep(pending));
+				pending = Affine.IDENTITY;
+			}
+			if (f instanceof AffineFilter) {
+				steps.add(new DependentStep((AffineFilter) f));
+			} else {
+				steps.add(new FilterStep(f));
+			}
+		}
+		if (!pending.isIdentity()) {
+			steps.add(new FixedStep(pending));
+		}
+
+		this.filters = Collections.unmodifiableList(used);
+		this.signature = Collections.unmodifiableList(describe(used));
+	}
+
+
+	/**
+	 * Returns the filters this plan applies, in order
+	 */
+	public List<Filter> getFilters() {
+		return filters;
+	}
+
+
+	/**
+	 * Returns a description of the filters in this plan and their settings when
+	 * it was compiled. Two plans with equal signatures apply the same filters
+	 * with the same settings, and so give the same results for the same data.
+	 */
+	public List<Object> getSignature() {
+		return signature;
+	}
+
+	private static List<Object> describe(List<? extends Filter> filters) {
+		List<Object> description = new ArrayList<>();
+		for (Filter filter : filters) {
+			description.add(filter.getClass());
+			description.add(filter.isEnabled());
+			description.add(describeValues(filter.getParameters()));
+		}
+		return description;
+	}
+
+	private static List<Object> describeValues(List<? extends Value<?>> values) {
+		List<Object> description = new ArrayList<>();
+		for (Value<?> value : values) {
+			description.add(describeValue(value.getValue()));
+		}
+		return description;
+	}
+
+	//filters and groups of parameters are mutable, so describe their contents instead
+	private static Object describeValue(Object value) {
+		if (value instanceof Filter) {
+			return describe(Collections.singletonList((Filter) value));
+		}
+		if (value instanceof List) {
+			List<Object> description = new ArrayList<>();
+			for (Object item : (List<?>) value) {
+				description.add(item instanceof Value ? describeValue(((Value<?>) item).getValue()) : describeValue(item));
+			}
+			return description;
+		}
+		return value;
+	}
+
+
+	public ReadOnlySpectrum apply(ReadOnlySpectrum data) {
+		return apply(data, false);
+	}
+
+	/**
+	 * Applies this plan's filters to the given data, replacing any Infinity or
+	 * NaN values in the result with 0. The given data is not modified, and the
+	 * result never shares storage with this plan's scratch buffers.
+	 */
+	public ReadOnlySpectrum apply(ReadOnlySpectrum data, boolean filtersShouldCache) {
+
+		Scratch scratch = SCRATCH.get();
+		//a filter may apply a plan of its own on this thread
+		if (scratch.inUse) {
+			scratch = new Scratch();
+		}
+		scratch.inUse = true;
+
+		try {
+			scratch.ensureSize(data.size());
+
+			ReadOnlySpectrum current = data;
+			Affine pending = Affine.IDENTITY;
+			for (Step step : steps) {
+				if (step instanceof FixedStep) {
+					pending = pending.then(((FixedStep) step).affine);
+				} else if (step instanceof DependentStep) {
+					current = flush(current, pending, scratch);
+					pending = resolve(((DependentStep) step).filter, current);
+				} else {
+					current = flush(current, pending, scratch);
+					pending = Affine.IDENTITY;
+					current = ((FilterStep) step).filter.filter(current, filtersShouldCache);
+				}
+			}
+
+			return finish(current, pending, scratch);
+		} finally {
+			scratch.inUse = false;
+		}
+
+	}
+
+	//Applies the pending transformation to the data in one of the scratch buffers
+	private ReadOnlySpectrum flush(ReadOnlySpectrum current, Affine pending, Scratch scratch) {
+		if (pending.isIdentity()) return current;
+		//filters are free to return spectra of a different size
+		if (current.size() != scratch.a.size()) {
+			scratch.ensureSize(current.size());
+		}
+		Spectrum target = scratch.other(current);
+		pending.apply(current, target.backingArray(), false);
+		return target;
+	}
+
+	//Applies the pending transformation and replaces Inf/NaN with 0
+	private ReadOnlySpectrum finish(ReadOnlySpectrum current, Affine pending, Scratch scratch) {
+		boolean fixed;
+		if (!pending.isIdentity() || scratch.owns(current)) {
+			Spectrum result = new ISpectrum(current.size());
+			fixed = pending.apply(current, result.backingArray(), true);
+			current = result;
+		} else {
+			//only incur the copy penalty if needed
+			Spectrum corrected = null;
+			for (int i = 0; i < current.size(); i++) {
+				if (!Affine.isFinite(current.get(i))) {
+					if (corrected == null) {
+						corrected = new ISpectrum(current);
+					}
+					corrected.set(i, 0);
+				}
+			}
+			fixed = corrected != null;
+			if (fixed) current = corrected;
+		}
+
+		if (fixed) {
+			PeakabooLog.get().log(Level.WARNING, "Filtered data contained NaN or Infinity");
+		}
+		return current;
+	}
+
+	//Behaves like AbstractFilter.filter, leaving the data unchanged if the filter fails
+	private static Affine resolve(AffineFilter filter, ReadOnlySpectrum data) {
+		try {
+			Affine affine = filter.getAffine(data);
+			if (affine != null) return affine;
+			return Affine.IDENTITY;
+		} catch (Throwable e) {
+			PeakabooLog.get().log(Level.SEVERE, "Error applying filter " + filter.getClass().getSimpleName(), e);
+			return Affine.IDENTITY;
+		}
+	}
+
+}
@@ -136,17 +136,15 @@ public class FilterSet implements Iterable<Filter>
 	
 	public ReadOnlySpectrum applyFiltersUnsynchronized(ReadOnlySpectrum data, boolean filtersShouldCache)
 	{
-
-		for (Filter f : filters) {
-			if (f != null && f.isEnabled() && !f.isPreviewOnly()) {
-				data = f.filter(data, filtersShouldCache);
-			}
-		}
-		
-		//Replace Inf/NaN with 0
-		data = correctNonFinite(data);
-
-		return data;
+		return new FilterPlan(filters).apply(data, filtersShouldCache);
+	}
+	
+	/**
+	 * Compiles the filters currently in this set into a {@link FilterPlan}, which
+	 * can be reused to filter many spectra as long as the filters don't change.
+	 */
+	public synchronized FilterPlan compile() {
+		return new FilterPlan(filters);
 	}
 	
 	//Scan the Spectrum for Infinity and NaN values, and replace them with 0 if found
@@ -0,0 +1,227 @@
+package peakaboo.filter.model;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import cyclops.ReadOnlySpectrum;
+import cyclops.Spectrum;
+import net.sciencestudio.scratch.ScratchEncoder;
+import peakaboo.common.PeakabooConfiguration;
+import peakaboo.common.PeakabooLog;
+import peakaboo.datasource.model.components.scandata.ScanData;
+
+/**
+ * FilteredScanCache holds recently filtered scans from a {@link ScanData}, so
+ * that showing a scan again in the plot, or mapping the data set again after
+ * only the fittings have changed, doesn't have to apply the filters again.
+ * Scans are keyed by their index and by the {@link FilterPlan#getSignature()}
+ * of the plan which filtered them, so a change to any filter setting misses
+ * the cache rather than returning stale data. Filtered scans are stored
+ * compressed with the {@link PeakabooConfiguration#spectrumEncoder}. Only
+ * scans from the most recently used ScanData are kept.
+ * <br/><br/>
+ * Once the cache is full, all of the scans filtered by other plans are
+ * evicted to make room, least recently used plan first, but scans filtered by
+ * the same plan are never evicted for each other. Once there is no room left
+ * for a plan, its scans are no longer compressed or added at all. Mapping a
+ * data set larger than the budget therefore keeps the first scans which fit,
+ * and mapping it again finds those, where a least-recently-used cache would
+ * have evicted each scan before it was needed again.
+ *
+ * @author NAS
+ *
+ */
+public class FilteredScanCache {
+
+	/**
+	 * The filtered scans for one {@link FilterPlan#getSignature()}
+	 */
+	private static class Group {
+		private final Map<Integer, byte[]> scans = new HashMap<>();
+		//set once there is no room left for this plan's scans
+		private volatile boolean full = false;
+	}
+
+	private final long budget;
+	private final ScratchEncoder<Spectrum> encoder;
+
+	//in access order, so that scans from the least recently used plans are evicted first
+	private final Map<List<Object>, Group> groups = new LinkedHashMap<>(16, 0.75f, true);
+	private long used = 0;
+	private int size = 0;
+	private ScanData scans;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Creates a new FilteredScanCache with a memory budget suited to the
+	 * current {@link PeakabooConfiguration#memorySize}
+	 */
+	public FilteredScanCache() {
+		this(defaultBudget());
+	}
+
+	/**
+	 * @param budget the number of bytes of compressed scans to keep
+	 */
+	public FilteredScanCache(long budget) {
+		this.budget = budget;
+		this.encoder = PeakabooConfiguration.spectrumEncoder;
+	}
+
+	private static long defaultBudget() {
+		switch (PeakabooConfiguration.memorySize) {
+		case TINY: return 4L << 20;
+		case SMALL: return 16L << 20;
+		case MEDIUM: return 64L << 20;
+		case LARGE: default: return 256L << 20;
+		}
+	}
+
+
+	/**
+	 * Returns the scan at the given index filtered with the given
+	 * {@link FilterPlan}, either from the cache or by filtering and caching it.
+	 * Returns null if there is no scan at that index.
+	 */
+	public ReadOnlySpectrum get(ScanData scans, int index, FilterPlan plan) {
+		return get(scans, index, plan, false);
+	}
+
+	/**
+	 * Returns the scan at the given index filtered with the given
+	 * {@link FilterPlan}, either from the cache or by filtering and caching it.
+	 * Returns null if there is no scan at that index.
+	 */
+	public ReadOnlySpectrum get(ScanData scans, int index, FilterPlan plan, boolean filtersShouldCache) {
+
+		//with no filters, filtering is cheaper than decompressing
+		if (plan.getFilters().isEmpty()) {
+			ReadOnlySpectrum raw = scans.get(index);
+			if (raw == null) return null;
+			return plan.apply(raw, filtersShouldCache);
+		}
+
+		//look the scan up before reading it, so that a hit only decodes the cached copy
+		List<Object> signature = plan.getSignature();
+		Group group;
+		byte[] stored;
+		synchronized (this) {
+			if (this.scans != scans) {
+				clear();
+				this.scans = scans;
+			}
+			group = groups.computeIfAbsent(signature, s -> new Group());
+			stored = group.scans.get(index);
+		}
+		if (stored != null) {
+			try {
+				Spectrum cached = encoder.decode(stored);
+				hits.incrementAndGet();
+				return cached;
+			} catch (RuntimeException e) {
+				PeakabooLog.get().log(Level.WARNING, "Failed to read cached filtered scan", e);
+			}
+		}
+
+		//missing scans are never cached, so they're only found on a miss
+		ReadOnlySpectrum raw = scans.get(index);
+		if (raw == null) return null;
+
+		//filter outside of the lock so that other threads aren't held up
+		misses.incrementAndGet();
+		ReadOnlySpectrum filtered = plan.apply(raw, filtersShouldCache);
+		if (!(filtered instanceof Spectrum)) return filtered;
+
+		//there's no room for this plan's scans, so don't bother compressing them
+		if (group.full) return filtered;
+
+		byte[] encoded;
+		try {
+			encoded = encoder.encode((Spectrum) filtered);
+		} catch (RuntimeException e) {
+			PeakabooLog.get().log(Level.WARNING, "Failed to cache filtered scan", e);
+			return filtered;
+		}
+
+		synchronized (this) {
+			if (this.scans == scans && groups.get(signature) == group && makeRoom(group, encoded.length)) {
+				byte[] replaced = group.scans.put(index, encoded);
+				if (replaced != null) {
+					used -= replaced.length;
+					size--;
+				}
+				used += encoded.length;
+				size++;
+			}
+		}
+		return filtered;
+	}
+
+	/**
+	 * Evicts the scans filtered by other plans, least recently used first,
+	 * until there is room for the given number of bytes. Returns false, and
+	 * marks the group as full, if there still isn't enough room.
+	 */
+	private boolean makeRoom(Group group, long bytes) {
+		Iterator<Group> eldest = groups.values().iterator();
+		while (used + bytes > budget && eldest.hasNext()) {
+			Group other = eldest.next();
+			if (other == group) continue;
+			for (byte[] stored : other.scans.values()) {
+				used -= stored.length;
+			}
+			size -= other.scans.size();
+			eldest.remove();
+		}
+		if (used + bytes > budget) {
+			group.full = true;
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Removes all filtered scans from this cache
+	 */
+	public synchronized void clear() {
+		groups.clear();
+		used = 0;
+		size = 0;
+	}
+
+	/**
+	 * Returns the number of filtered scans in this cache
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of bytes used by the compressed scans in this cache
+	 */
+	public synchronized long getUsed() {
+		return used;
+	}
+
+	/**
+	 * Returns the number of times a filtered scan was found in this cache
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns the number of times a scan had to be filtered
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+}
@@ -1,18 +1,18 @@
 package peakaboo.filter.plugins.advanced;
 
-import cyclops.ISpectrum;
 import cyclops.ReadOnlySpectrum;
-import cyclops.SpectrumCalculations;
 import net.sciencestudio.autodialog.model.Parameter;
 import net.sciencestudio.autodialog.model.SelectionParameter;
 import net.sciencestudio.autodialog.model.style.editors.IntegerStyle;
 import net.sciencestudio.autodialog.model.style.editors.ListStyle;
 import net.sciencestudio.autodialog.model.style.editors.RealStyle;
 import peakaboo.filter.model.AbstractSimpleFilter;
+import peakaboo.filter.model.Affine;
+import peakaboo.filter.model.AffineFilter;
 import peakaboo.filter.model.FilterType;
 
 
-public class SpectrumNormalizationFilter extends AbstractSimpleFilter
+public class SpectrumNormalizationFilter extends AbstractSimpleFilter implements AffineFilter
 {
 	
 	private Parameter<Integer> pStartChannel;
@@ -54,6 +54,18 @@ public class SpectrumNormalizationFilter extends AbstractSimpleFilter
 
 	@Override
 	protected ReadOnlySpectrum filterApplyTo(ReadOnlySpectrum data)
+	{
+		return getAffine(data).apply(data);
+	}
+	
+	@Override
+	public boolean isDataDependent()
+	{
+		return true;
+	}
+	
+	@Override
+	public Affine getAffine(ReadOnlySpectrum data)
 	{
 
 		String mode = pMode.getValue();
@@ -64,8 +76,8 @@ public class SpectrumNormalizationFilter extends AbstractSimpleFilter
 		float value=0f;
 		switch (mode) {
 		case MODE_RANGE:
-			if (startChannel >= data.size()) return data;
-			if (endChannel <= 0) return data;
+			if (startChannel >= data.size()) return Affine.IDENTITY;
+			if (endChannel <= 0) return Affine.IDENTITY;
 			int range = (endChannel - startChannel) + 1;
 			value = data.subSpectrum(startChannel, endChannel).sum() / range;
 			break;
@@ -78,10 +90,8 @@ public class SpectrumNormalizationFilter extends AbstractSimpleFilter
 		}
 
 		float ratio = value / height;
-		if (ratio == 0f) return new ISpectrum(data.size());
-		return SpectrumCalculations.divideBy(data, ratio);
-		
-		
+		if (ratio == 0f) return Affine.ZERO;
+		return Affine.divide(ratio);
 		
 	}
 
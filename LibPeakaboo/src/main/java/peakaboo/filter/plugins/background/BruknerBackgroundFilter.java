@@ -8,6 +8,7 @@ import cyclops.Spectrum;
 import cyclops.SpectrumCalculations;
 import net.sciencestudio.autodialog.model.Parameter;
 import net.sciencestudio.autodialog.model.style.editors.IntegerStyle;
+import peakaboo.filter.kernels.SlidingWindow;
 import peakaboo.filter.model.AbstractBackgroundFilter;
 
 /**
@@ -100,6 +101,11 @@ public final class BruknerBackgroundFilter extends AbstractBackgroundFilter
 	 * Calculates the background using the Brukner technique. Brukner technique works by taking 
 	 * min(data, moving_average(data)) repeatedly. This prevents strong signal from
 	 * bleeding into nearby areas, while reducing the strong signal at the same time.
+	 * <br/><br/>
+	 * The moving averages are taken from {@link SlidingWindow} prefix sums rather
+	 * than by adding up each window in float, so each iteration's averages can 
+	 * differ from a channel-by-channel float sum by float rounding, at most about 
+	 * (2 * windowSize + 1) float epsilons of the average.
 	 * 
 	 * @param data the {@link Spectrum} data to calculate the background from
 	 * @param windowSize the window size for the moving average 
@@ -124,11 +130,12 @@ public final class BruknerBackgroundFilter extends AbstractBackgroundFilter
 		}
 		
 		Spectrum result2 = new ISpectrum(result.size());
+		double[] sums = new double[result.size()+1];
 
 		int i = 0;
 		while (repetitions > 0)
 		{
-			removeBackgroundBruknerIteration(result, result2, windowSize);
+			removeBackgroundBruknerIteration(result, result2, windowSize, sums);
 			
 			i++;
 			if (i > repetitions)
@@ -137,7 +144,7 @@ public final class BruknerBackgroundFilter extends AbstractBackgroundFilter
 				break;
 			}
 
-			removeBackgroundBruknerIteration(result2, result, windowSize);
+			removeBackgroundBruknerIteration(result2, result, windowSize, sums);
 			
 			i++;
 			if (i > repetitions) break;
@@ -153,17 +160,22 @@ public final class BruknerBackgroundFilter extends AbstractBackgroundFilter
 	 * @param source the data to look at
 	 * @param target the {@link Spectrum} to write the new values out to
 	 * @param windowSize the window size for the moving average
+	 * @param sums a buffer one longer than the source to keep running sums in
 	 */
-	private static void removeBackgroundBruknerIteration(final Spectrum source, final Spectrum target, final int windowSize)
+	private static void removeBackgroundBruknerIteration(final Spectrum source, final Spectrum target, final int windowSize, double[] sums)
 	{
 
-		for (int i = 0; i < source.size(); i++)
+		float[] in = source.backingArray();
+		float[] out = target.backingArray();
+		SlidingWindow.prefixSums(in, sums);
+		
+		for (int i = 0; i < in.length; i++)
 		{
 			int start, stop;
 			start = Math.max(i - windowSize, 0);
-			stop = Math.min(i + windowSize+1, source.size() - 1);
-			float average = SpectrumCalculations.sumValuesInList(source, start, stop) / (windowSize * 2 + 1);
-			target.set(i, Math.min(average, source.get(i)));
+			stop = Math.min(i + windowSize+1, in.length - 1);
+			float average = SlidingWindow.sum(sums, start, stop) / (windowSize * 2 + 1);
+			out[i] = Math.min(average, in[i]);
 			
 		}
 		
@@ -61,14 +61,18 @@ public class SquareSnipBackgroundFilter extends AbstractBackgroundFilter {
 			
 			source = buffer1;
 			target = buffer2;
-			for (int i = 0; i < source.size(); i++) {
+			//each channel only looks at the two channels a window away, so this 
+			//is already linear, working on the arrays directly keeps it cheap
+			float[] in = source.backingArray();
+			float[] out = target.backingArray();
+			for (int i = 0; i < in.length; i++) {
 				int lChannel = Math.max(0, i - window);
-				int rChannel = Math.min(source.size()-1, i + window);
-				float mean = (source.get(lChannel) + source.get(rChannel)) / 2f;
-				if (mean < source.get(i)) { 
-					target.set(i, mean);
+				int rChannel = Math.min(in.length-1, i + window);
+				float mean = (in[lChannel] + in[rChannel]) / 2f;
+				if (mean < in[i]) { 
+					out[i] = mean;
 				} else {
-					target.set(i, source.get(i));
+					out[i] = in[i];
 				}
 			}
 			//flip buffers 1 and 2 around so that we're constantly copying the data back and forth
@@ -1,15 +1,16 @@
 package peakaboo.filter.plugins.mathematical;
 
 import cyclops.ReadOnlySpectrum;
-import cyclops.SpectrumCalculations;
 import net.sciencestudio.autodialog.model.Parameter;
 import net.sciencestudio.autodialog.model.style.editors.RealStyle;
 import peakaboo.filter.model.AbstractSimpleFilter;
+import peakaboo.filter.model.Affine;
+import peakaboo.filter.model.AffineFilter;
 import peakaboo.filter.model.FilterType;
 
 
 
-public class AdditionMathFilter extends AbstractSimpleFilter
+public class AdditionMathFilter extends AbstractSimpleFilter implements AffineFilter
 {
 
 	private Parameter<Float> amount;
@@ -29,7 +30,13 @@ public class AdditionMathFilter extends AbstractSimpleFilter
 	@Override
 	protected ReadOnlySpectrum filterApplyTo(ReadOnlySpectrum data)
 	{
-		return SpectrumCalculations.subtractFromList(data, 0.0f-amount.getValue().floatValue());
+		return getAffine(data).apply(data);
+	}
+	
+	@Override
+	public Affine getAffine(ReadOnlySpectrum data)
+	{
+		return Affine.add(amount.getValue().floatValue());
 	}
 
 
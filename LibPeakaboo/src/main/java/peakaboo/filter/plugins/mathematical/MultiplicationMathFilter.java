@@ -3,14 +3,15 @@ package peakaboo.filter.plugins.mathematical;
 
 
 import cyclops.ReadOnlySpectrum;
-import cyclops.SpectrumCalculations;
 import net.sciencestudio.autodialog.model.Parameter;
 import net.sciencestudio.autodialog.model.style.editors.RealStyle;
 import peakaboo.filter.model.AbstractSimpleFilter;
+import peakaboo.filter.model.Affine;
+import peakaboo.filter.model.AffineFilter;
 import peakaboo.filter.model.FilterType;
 
 
-public class MultiplicationMathFilter extends AbstractSimpleFilter
+public class MultiplicationMathFilter extends AbstractSimpleFilter implements AffineFilter
 {
 
 	private Parameter<Float> amount;
@@ -31,7 +32,13 @@ public class MultiplicationMathFilter extends AbstractSimpleFilter
 	@Override
 	protected ReadOnlySpectrum filterApplyTo(ReadOnlySpectrum data)
 	{
-		return SpectrumCalculations.multiplyBy(data, amount.getValue().floatValue());
+		return getAffine(data).apply(data);
+	}
+	
+	@Override
+	public Affine getAffine(ReadOnlySpectrum data)
+	{
+		return Affine.multiply(amount.getValue().floatValue());
 	}
 
 
@@ -2,14 +2,15 @@ package peakaboo.filter.plugins.mathematical;
 
 
 import cyclops.ReadOnlySpectrum;
-import cyclops.SpectrumCalculations;
 import net.sciencestudio.autodialog.model.Parameter;
 import net.sciencestudio.autodialog.model.style.editors.RealStyle;
 import peakaboo.filter.model.AbstractSimpleFilter;
+import peakaboo.filter.model.Affine;
+import peakaboo.filter.model.AffineFilter;
 import peakaboo.filter.model.FilterType;
 
 
-public class SubtractionMathFilter extends AbstractSimpleFilter
+public class SubtractionMathFilter extends AbstractSimpleFilter implements AffineFilter
 {
 
 	private Parameter<Float> amount;
@@ -29,7 +30,13 @@ public class SubtractionMathFilter extends AbstractSimpleFilter
 	@Override
 	protected ReadOnlySpectrum filterApplyTo(ReadOnlySpectrum data)
 	{
-		return SpectrumCalculations.subtractFromList(data, amount.getValue().floatValue());
+		return getAffine(data).apply(data);
+	}
+	
+	@Override
+	public Affine getAffine(ReadOnlySpectrum data)
+	{
+		return Affine.subtract(amount.getValue().floatValue());
 	}
 
 
@@ -14,6 +14,7 @@ import net.sciencestudio.autodialog.model.SelectionParameter;
 import net.sciencestudio.autodialog.model.classinfo.EnumClassInfo;
 import net.sciencestudio.autodialog.model.style.editors.DropDownStyle;
 import net.sciencestudio.autodialog.model.style.editors.RealStyle;
+import peakaboo.filter.kernels.RealFFT;
 import peakaboo.filter.model.AbstractSimpleFilter;
 import peakaboo.filter.model.FilterType;
 
@@ -31,6 +32,9 @@ public final class FourierNoiseFilter extends AbstractSimpleFilter
 	private Parameter<Float> startWavelength;
 	private Parameter<Float> endWavelength;
 	private SelectionParameter<FFT.FilterStyle> rolloff;
+	
+	//roll-off mask for the most recent spectrum size and parameters
+	private volatile FFT.Mask mask;
 
 
 	public FourierNoiseFilter()
@@ -110,14 +114,13 @@ public final class FourierNoiseFilter extends AbstractSimpleFilter
 	protected ReadOnlySpectrum filterApplyTo(ReadOnlySpectrum data)
 	{
 		
-		data = FFT.LowPassFilter(
-			data,
-			rolloff.getValue(),
-			startWavelength.getValue(),
-			endWavelength.getValue()
-		);
-
-		return data;
+		FFT.Mask mask = this.mask;
+		if (mask == null || !mask.matches(data.size(), rolloff.getValue(), startWavelength.getValue(), endWavelength.getValue())) {
+			mask = new FFT.Mask(data.size(), rolloff.getValue(), startWavelength.getValue(), endWavelength.getValue());
+			this.mask = mask;
+		}
+		
+		return FFT.LowPassFilter(data, mask);
 	}
 
 	@Override
@@ -227,6 +230,46 @@ class FFT {
 	public static Spectrum LowPassFilter(ReadOnlySpectrum data, FilterStyle style, float startWavelength,
 			float endWavelength)
 	{
+		if (RealFFT.supports(data.size())) {
+			return LowPassFilter(data, new Mask(data.size(), style, startWavelength, endWavelength));
+		}
+		return LowPassFilterJSci(data, style, startWavelength, endWavelength);
+	}
+	
+	/**
+	 * Performs a Fast Fourier Transformation using the given roll-off {@link Mask}. 
+	 * When the data's length is a power of two, this uses a cached {@link RealFFT} 
+	 * plan and per-thread buffers, so that the only allocation is the result.
+	 */
+	public static Spectrum LowPassFilter(ReadOnlySpectrum data, Mask mask)
+	{
+		if (!RealFFT.supports(data.size())) {
+			return LowPassFilterJSci(data, mask.style, mask.startWavelength, mask.endWavelength);
+		}
+		
+		RealFFT fft = RealFFT.forSize(data.size());
+		Buffers buffers = BUFFERS.get().ensure(fft);
+		
+		for (int i = 0; i < data.size(); i++) {
+			buffers.data[i] = data.get(i);
+		}
+		fft.forward(buffers.data, buffers.re, buffers.im);
+		for (int i = 0; i < fft.frequencies(); i++) {
+			buffers.re[i] *= mask.gains[i];
+			buffers.im[i] *= mask.gains[i];
+		}
+		fft.inverse(buffers.re, buffers.im, buffers.data);
+		
+		Spectrum result = new ISpectrum(data.size());
+		for (int i = 0; i < data.size(); i++) {
+			result.set(  i, Math.max(0f, (float)buffers.data[i])  );
+		}
+		return result;
+	}
+	
+	private static Spectrum LowPassFilterJSci(ReadOnlySpectrum data, FilterStyle style, float startWavelength,
+			float endWavelength)
+	{
 
 		int startcutoff, endcutoff;
 
@@ -253,14 +296,8 @@ class FFT {
 		
 		
 		
-		int halfsize = (data.size() / 2);
-
-		//wavelength of 4 has frequency of data.size() / 4
-		int startFrequency = Math.round(data.size() / startWavelength);
-		int endFrequency = Math.round(data.size() / endWavelength);
-		
-		startcutoff = Math.max(0, halfsize - startFrequency);
-		endcutoff = Math.max(0, halfsize - endFrequency);
+		startcutoff = startCutoff(data.size(), startWavelength);
+		endcutoff = startCutoff(data.size(), endWavelength);
 				
 		return doFFTFilter(data, style, startcutoff, endcutoff);
 		// return getFFTBandstopFilter(data, cutoff, 0);
@@ -268,14 +305,69 @@ class FFT {
 	}
 
 
-	private static Spectrum doFFTFilter(ReadOnlySpectrum data, FilterStyle style, int start, int stop)
-	{
-
-		// FFT
-		Complex[] transformedData = DataToFFT(data);
-
+	//distance from the centre of the transform at which to begin filtering for the given wavelength
+	private static int startCutoff(int size, float wavelength) {
+		int halfsize = (size / 2);
+		//wavelength of 4 has frequency of data.size() / 4
+		int frequency = Math.round(size / wavelength);
+		return Math.max(0, halfsize - frequency);
+	}
+	
+	
+	/**
+	 * The roll-off applied to each frequency of a transform by one of the 
+	 * {@link FilterStyle}s, for a given data length and set of wavelengths. 
+	 * Gains are stored for frequencies 0 to n/2, since the roll-off is 
+	 * symmetric about the centre of the transform.
+	 */
+	static class Mask {
+		
+		private final int size;
+		private final FilterStyle style;
+		private final float startWavelength, endWavelength;
+		private final double[] gains;
+		
+		Mask(int size, FilterStyle style, float startWavelength, float endWavelength) {
+			this.size = size;
+			this.style = style;
+			this.startWavelength = startWavelength;
+			this.endWavelength = endWavelength;
+			
+			//apply the style to a transform of ones to find the gain at each frequency
+			Complex[] ones = new Complex[size];
+			Arrays.fill(ones, new Complex(1.0, 0.0));
+			applyStyle(ones, style, startCutoff(size, startWavelength), startCutoff(size, endWavelength));
+			gains = new double[size/2+1];
+			for (int i = 0; i < gains.length; i++) {
+				gains[i] = ones[i].real();
+			}
+		}
+		
+		boolean matches(int size, FilterStyle style, float startWavelength, float endWavelength) {
+			return this.size == size && this.style == style && this.startWavelength == startWavelength && this.endWavelength == endWavelength;
+		}
+		
+	}
+	
+	
+	//working space for each thread, reused between spectra of the same size
+	private static class Buffers {
+		double[] data = new double[0], re, im;
+		
+		Buffers ensure(RealFFT fft) {
+			if (data.length != fft.size()) {
+				data = new double[fft.size()];
+				re = new double[fft.frequencies()];
+				im = new double[fft.frequencies()];
+			}
+			return this;
+		}
+	}
+	
+	private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+	
 
-		// Do something with the transformed data
+	private static void applyStyle(Complex[] transformedData, FilterStyle style, int start, int stop) {
 		if (style == FilterStyle.LINEAR) {
 			FFTLinearStyle(transformedData, start, stop);
 		} else if (style == FilterStyle.SINE) {
@@ -283,6 +375,18 @@ class FFT {
 		} else {
 			FFTCutoffStyle(transformedData, start);
 		}
+	}
+	
+	
+	private static Spectrum doFFTFilter(ReadOnlySpectrum data, FilterStyle style, int start, int stop)
+	{
+
+		// FFT
+		Complex[] transformedData = DataToFFT(data);
+
+
+		// Do something with the transformed data
+		applyStyle(transformedData, style, start, stop);
 
 
 		// FFT Inverse Transform
@@ -72,6 +72,9 @@ public class LowStatisticsNoiseFilter extends AbstractSimpleFilter {
 	}
 	
 	
+	//windows are at most 10 channels to a side, so they're summed directly, in 
+	//order, rather than from prefix sums. The thresholds above are sensitive to 
+	//how the sums round
 	private float sumWindow(int start, int stop, ReadOnlySpectrum data) {
 		float sum = 0;
 		for (int i = start; i <= stop; i++) {
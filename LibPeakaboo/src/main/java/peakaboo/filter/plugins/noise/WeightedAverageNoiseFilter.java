@@ -5,6 +5,7 @@ import cyclops.ReadOnlySpectrum;
 import cyclops.Spectrum;
 import net.sciencestudio.autodialog.model.Parameter;
 import net.sciencestudio.autodialog.model.style.editors.IntegerStyle;
+import peakaboo.filter.kernels.SlidingWindow;
 import peakaboo.filter.model.AbstractSimpleFilter;
 import peakaboo.filter.model.FilterType;
 
@@ -121,31 +122,9 @@ public class WeightedAverageNoiseFilter extends AbstractSimpleFilter {
 		}
 		weights[windowSpan] = (float) Math.pow(2, windowSpan);
 			
-				
-		Spectrum smoothed = new ISpectrum(data.size());
 		
-		int start, stop;
-		float totalWeight;
-		int pos;
-		float sum;
-		for (int i = 0; i < data.size(); i++) {
-
-			// exact same as in last loop
-			start = Math.max(0,  i - windowSpan);
-			stop = Math.min(data.size()-1, i + windowSpan);
-			
-			totalWeight = 0;
-			pos = 0;
-			sum = 0;
-			for (int p = start; p <= stop; p++) {
-				totalWeight += weights[pos];
-				sum += (data.get(p) * weights[pos]);
-				pos++;
-			}
-
-			smoothed.set(i, sum / totalWeight);
-
-		}
+		Spectrum smoothed = new ISpectrum(data.size());
+		SlidingWindow.weightedAverage(new ISpectrum(data).backingArray(), weights, smoothed.backingArray());
 
 
 		return smoothed;
@@ -1,17 +1,25 @@
 package peakaboo.mapping;
 
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Level;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import cyclops.Range;
 import cyclops.ReadOnlySpectrum;
-import peakaboo.curvefit.curve.fitting.FittingResult;
-import peakaboo.curvefit.curve.fitting.FittingResultSet;
+import peakaboo.common.PeakabooLog;
+import peakaboo.curvefit.curve.fitting.FittingScales;
 import peakaboo.curvefit.curve.fitting.FittingSet;
+import peakaboo.curvefit.curve.fitting.FittingWorkspace;
 import peakaboo.curvefit.curve.fitting.fitter.CurveFitter;
 import peakaboo.curvefit.curve.fitting.solver.FittingSolver;
 import peakaboo.curvefit.peak.transition.ITransitionSeries;
 import peakaboo.dataset.DataSet;
+import peakaboo.datasource.model.components.scandata.ScanData;
+import peakaboo.filter.model.FilterPlan;
 import peakaboo.filter.model.FilterSet;
+import peakaboo.filter.model.FilteredScanCache;
 import peakaboo.mapping.results.MapResultSet;
 import plural.streams.StreamExecutor;
 
@@ -24,6 +32,12 @@ import plural.streams.StreamExecutor;
 public class Mapping
 {
 
+	//Aim for several chunks per core so that work-stealing can even out
+	//scans which take longer to fit than others
+	private static final int CHUNKS_PER_CORE = 16;
+	private static final int MIN_CHUNK_SIZE = 16;
+	private static final int MAX_CHUNK_SIZE = 1024;
+
 	/**
 	 * Generates a map based on the given inputs. Returns a {@link StreamExecutor} which can execute this task asynchronously and return the result
 	 * @param dataset the {@link DataSet} providing access to data
@@ -33,41 +47,164 @@ public class Mapping
 	 * @return a {@link StreamExecutor} which will return a {@link MapResultSet}
 	 */
 	public static StreamExecutor<MapResultSet> mapTask(
-			DataSet dataset, 
-			FilterSet filters, 
-			FittingSet fittings, 
-			CurveFitter fitter, 
+			DataSet dataset,
+			FilterSet filters,
+			FittingSet fittings,
+			CurveFitter fitter,
 			FittingSolver solver
 		) {
-		
-		List<ITransitionSeries> transitionSeries = fittings.getVisibleTransitionSeries();
-		MapResultSet maps = new MapResultSet(transitionSeries, dataset.getScanData().scanCount());
-		
-		//Math.max(1, dataset.getScanData().scanCount())
+		return mapTask(dataset, filters, null, fittings, fitter, solver);
+	}
+	
+	/**
+	 * Generates a map based on the given inputs. Returns a {@link StreamExecutor} which can execute this task asynchronously and return the result.
+	 * Filtered scans are taken from and added to the given {@link FilteredScanCache}, so that mapping again after 
+	 * only the fittings have changed doesn't have to apply the filters again.
+	 * @param dataset the {@link DataSet} providing access to data
+	 * @param filters the {@link FilterSet} containing all filters needing to be applied to this data
+	 * @param filteredScans the cache of filtered scans to use, or null to always apply the filters
+	 * @param fittings the {@link FittingSet} containing all fittings needing to be turned into maps
+	 * @return a {@link StreamExecutor} which will return a {@link MapResultSet}
+	 */
+	public static StreamExecutor<MapResultSet> mapTask(
+			DataSet dataset,
+			FilterSet filters,
+			FilteredScanCache filteredScans,
+			FittingSet fittings,
+			CurveFitter fitter,
+			FittingSolver solver
+		) {
+
+		int scanCount = dataset.getScanData().scanCount();
+		int chunkCount = (scanCount + chunkSize(scanCount) - 1) / chunkSize(scanCount);
+
 		StreamExecutor<MapResultSet> streamer = new StreamExecutor<>("Applying Filters & Fittings", 1);
-		streamer.setTask(new Range(0, dataset.getScanData().scanCount()-1), stream -> {
-			stream.forEach(index -> {
-				
-				ReadOnlySpectrum data = dataset.getScanData().get(index);
-				if (data == null) return;
-				
-				data = filters.applyFiltersUnsynchronized(data);
-				
-				FittingResultSet frs = solver.solve(data, fittings, fitter);
-				
-				for (FittingResult result : frs.getFits()) {
-					maps.putIntensityInMapAtPoint(result.getFit().sum(), result.getTransitionSeries(), index);
-				}
-				
-			});
-			System.gc();
-			return maps;
-		}); 
-		
+		streamer.setTask(new Range(0, chunkCount-1), stream -> {
+			return mapChunks(stream.parallel(), dataset, filters, filteredScans, fittings, fitter, solver);
+		});
+
 		return streamer;
+
+	}
+	
+	/**
+	 * Generates a map based on the given inputs on the calling thread, blocking until it is done. The scans 
+	 * are still filtered and fitted in parallel, using the {@link ForkJoinPool} the caller is running in, if 
+	 * any, so that callers can limit the number of threads used by running this in a pool of their own.
+	 * @param dataset the {@link DataSet} providing access to data
+	 * @param filters the {@link FilterSet} containing all filters needing to be applied to this data
+	 * @param filteredScans the cache of filtered scans to use, or null to always apply the filters
+	 * @param fittings the {@link FittingSet} containing all fittings needing to be turned into maps
+	 * @return a {@link MapResultSet} containing the maps
+	 */
+	public static MapResultSet map(
+			DataSet dataset,
+			FilterSet filters,
+			FilteredScanCache filteredScans,
+			FittingSet fittings,
+			CurveFitter fitter,
+			FittingSolver solver
+		) {
+		
+		int scanCount = dataset.getScanData().scanCount();
+		int chunkCount = (scanCount + chunkSize(scanCount) - 1) / chunkSize(scanCount);
+		return mapChunks(IntStream.range(0, chunkCount).boxed().parallel(), dataset, filters, filteredScans, fittings, fitter, solver);
 		
 	}
 	
+	private static MapResultSet mapChunks(
+			Stream<Integer> chunks,
+			DataSet dataset,
+			FilterSet filters,
+			FilteredScanCache filteredScans,
+			FittingSet fittings,
+			CurveFitter fitter,
+			FittingSolver solver
+		) {
+		
+		List<ITransitionSeries> transitionSeries = fittings.getVisibleTransitionSeries();
+		int scanCount = dataset.getScanData().scanCount();
+		MapResultSet maps = new MapResultSet(transitionSeries, scanCount);
+
+		//The scan range is broken up into chunks which are processed in parallel.
+		//Each chunk keeps its own results and writes them to the maps in one go
+		//when it is done, so that workers don't contend over the map data. Every
+		//scan is still filtered and fitted independently of every other scan, so
+		//the results are identical to processing the scans one at a time.
+		int chunkSize = chunkSize(scanCount);
+
+		//make sure the curves are generated before the workers ask for them
+		fittings.getCurves();
+		FilterPlan plan = filters.compile();
+
+		long t1 = System.currentTimeMillis();
+		chunks.forEach(chunk -> {
+			int start = chunk * chunkSize;
+			int end = Math.min(start + chunkSize, scanCount);
+			mapChunk(dataset.getScanData(), plan, filteredScans, fittings, fitter, solver, maps, start, end);
+		});
+		long t2 = System.currentTimeMillis();
+
+		float seconds = Math.max(t2 - t1, 1) / 1000f;
+		PeakabooLog.get().log(Level.INFO, "Mapped " + scanCount + " spectra in " + seconds + " seconds (" + (int)(scanCount / seconds) + " spectra/s)");
+
+		return maps;
+		
+	}
+
+	/**
+	 * Filters and fits the scans in the range [start, end), storing the fitted
+	 * intensities locally before copying them into the given {@link MapResultSet}.
+	 * A single {@link FittingWorkspace} is reused for every scan in the chunk.
+	 */
+	private static void mapChunk(
+			ScanData scans,
+			FilterPlan filters,
+			FilteredScanCache filteredScans,
+			FittingSet fittings,
+			CurveFitter fitter,
+			FittingSolver solver,
+			MapResultSet maps,
+			int start,
+			int end
+		) {
+
+		float[][] intensities = new float[maps.mapCount()][end - start];
+		FittingWorkspace workspace = new FittingWorkspace();
+
+		for (int index = start; index < end; index++) {
+
+			ReadOnlySpectrum data;
+			if (filteredScans != null) {
+				data = filteredScans.get(scans, index, filters);
+			} else {
+				data = scans.get(index);
+				if (data != null) data = filters.apply(data);
+			}
+			if (data == null) continue;
+
+			FittingScales scales = solver.solve(data, fittings, fitter, workspace);
+
+			for (int i = 0; i < scales.size(); i++) {
+				int mapIndex = maps.indexOf(scales.getTransitionSeries(i));
+				if (mapIndex == -1) continue;
+				intensities[mapIndex][index - start] = scales.getSum(i);
+			}
+
+		}
+
+		for (int mapIndex = 0; mapIndex < intensities.length; mapIndex++) {
+			maps.putIntensitiesInMap(intensities[mapIndex], mapIndex, start);
+		}
+
+	}
+
+	private static int chunkSize(int scanCount) {
+		int cores = Runtime.getRuntime().availableProcessors();
+		int size = scanCount / (cores * CHUNKS_PER_CORE);
+		return Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, size));
+	}
+
+
 
-	
 }
@@ -0,0 +1,289 @@
+package peakaboo.mapping;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import cyclops.ReadOnlySpectrum;
+import eventful.EventfulType;
+import peakaboo.common.PeakabooLog;
+import peakaboo.curvefit.curve.fitting.FittingParameters;
+import peakaboo.curvefit.curve.fitting.FittingScales;
+import peakaboo.curvefit.curve.fitting.FittingSet;
+import peakaboo.curvefit.curve.fitting.FittingWorkspace;
+import peakaboo.curvefit.curve.fitting.fitter.CurveFitter;
+import peakaboo.curvefit.curve.fitting.solver.FittingSolver;
+import peakaboo.curvefit.peak.transition.ITransitionSeries;
+import peakaboo.datasource.model.components.scandata.ScanData;
+import peakaboo.filter.model.FilterPlan;
+import peakaboo.filter.model.FilterSet;
+import peakaboo.mapping.results.MapResultSet;
+
+/**
+ * StreamingMapper builds maps incrementally as spectra become available, for
+ * example while a data set is still loading. Each spectrum given to
+ * {@link #accept(int, ReadOnlySpectrum)} is filtered and fitted on a pool of
+ * worker threads, the same way {@link Mapping#mapTask} would. Listeners are
+ * given a new {@link MapResultSet} containing all of the scans mapped so far,
+ * no more often than the refresh interval allows. Listeners are called from
+ * the mapper's worker threads unless a listener {@link Executor} is given.
+ *
+ * @author NAS
+ *
+ */
+public class StreamingMapper extends EventfulType<MapResultSet> {
+
+	private FilterPlan filters;
+	//a copy, so that recalibrating for a newly loaded data set doesn't change the fittings part way through
+	private FittingSet fittings;
+	private CurveFitter fitter;
+	private FittingSolver solver;
+
+	private List<ITransitionSeries> transitionSeries;
+	private float[][] intensities;
+	private BitSet mapped;
+	private int size;
+	private int mapSize;
+
+	//the order each scan was accepted in, so that a late result for a scan
+	//which was accepted again can't overwrite the newer result
+	private AtomicLong sequence = new AtomicLong();
+	private long[] versions;
+
+	private ExecutorService pool;
+	private Semaphore pending;
+	private int maxPending;
+	private ThreadLocal<FittingWorkspace> workspaces = ThreadLocal.withInitial(FittingWorkspace::new);
+
+	private MapResultSet result;
+
+	private long refreshInterval;
+	private long lastRefresh;
+	private Executor listenerExecutor = Runnable::run;
+
+	/**
+	 * @param refreshInterval the minimum time in milliseconds between updates to listeners
+	 */
+	public StreamingMapper(FilterSet filters, FittingSet fittings, CurveFitter fitter, FittingSolver solver, long refreshInterval) {
+		this.filters = filters.compile();
+		this.fittings = new FittingSet(fittings);
+		this.fitter = fitter;
+		this.solver = solver;
+		this.refreshInterval = refreshInterval;
+
+		transitionSeries = this.fittings.getVisibleTransitionSeries();
+		intensities = new float[transitionSeries.size()][0];
+		mapped = new BitSet();
+		versions = new long[0];
+		size = 0;
+
+		int cores = Runtime.getRuntime().availableProcessors();
+		pool = Executors.newFixedThreadPool(cores, r -> {
+			Thread t = new Thread(r, "Streaming Mapper");
+			t.setDaemon(true);
+			return t;
+		});
+		//bound the number of spectra waiting to be mapped, so that a fast data
+		//source is slowed down rather than running out of memory
+		maxPending = cores * 16;
+		pending = new Semaphore(maxPending);
+
+		//make sure the curves are generated before the workers ask for them
+		this.fittings.getCurves();
+	}
+
+	/**
+	 * Reports if mapping with the given settings would give the same maps as
+	 * this StreamingMapper. A StreamingMapper is created before a data set is
+	 * loaded, so its energy calibration and channel count may not match the
+	 * data set's, which are only known once loading has finished.
+	 */
+	public boolean matches(FilterSet filters, FittingSet fittings, CurveFitter fitter, FittingSolver solver) {
+		FittingParameters ours = this.fittings.getFittingParameters();
+		FittingParameters theirs = fittings.getFittingParameters();
+		return fitter == this.fitter 
+				&& solver == this.solver
+				&& ours.getCalibration().equals(theirs.getCalibration())
+				&& ours.getFWHMBase() == theirs.getFWHMBase()
+				&& ours.getEscapeType() == theirs.getEscapeType()
+				&& ours.getFittingFunction() == theirs.getFittingFunction()
+				&& transitionSeries.equals(fittings.getVisibleTransitionSeries())
+				&& this.filters.getSignature().equals(filters.compile().getSignature());
+	}
+
+	/**
+	 * Sets the {@link Executor} listeners are notified on, such as one which
+	 * runs them on the UI thread. By default, listeners are called directly
+	 * from the thread which mapped the scans.
+	 */
+	public void setListenerExecutor(Executor listenerExecutor) {
+		this.listenerExecutor = listenerExecutor;
+	}
+
+	/**
+	 * Queues the given spectrum to be mapped at the given index. This method
+	 * blocks if too many spectra are already waiting to be mapped.
+	 */
+	public void accept(int index, ReadOnlySpectrum spectrum) {
+		if (spectrum == null) return;
+		//the curves can't be fitted to a spectrum of a different size, and maps 
+		//made with them won't be used anyway, since they won't match the data set
+		if (spectrum.size() != fittings.getFittingParameters().getCalibration().getDataWidth()) return;
+		long version = sequence.incrementAndGet();
+		try {
+			pending.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		pool.execute(() -> {
+			try {
+				map(index, spectrum, version);
+			} catch (RuntimeException e) {
+				PeakabooLog.get().log(Level.WARNING, "Failed to map scan " + index, e);
+			} finally {
+				pending.release();
+			}
+			refresh();
+		});
+	}
+
+	private void map(int index, ReadOnlySpectrum spectrum, long version) {
+		ReadOnlySpectrum filtered = filters.apply(spectrum);
+		FittingScales scales = solver.solve(filtered, fittings, fitter, workspaces.get());
+
+		float[] values = new float[transitionSeries.size()];
+		for (int i = 0; i < scales.size(); i++) {
+			int mapIndex = transitionSeries.indexOf(scales.getTransitionSeries(i));
+			if (mapIndex == -1) continue;
+			values[mapIndex] = scales.getSum(i);
+		}
+		store(index, values, version);
+	}
+
+	private synchronized void store(int index, float[] values, long version) {
+		ensureSize(index+1);
+		if (versions[index] > version) {
+			return;
+		}
+		versions[index] = version;
+		for (int i = 0; i < values.length; i++) {
+			intensities[i][index] = values[i];
+		}
+		mapped.set(index);
+	}
+
+	private void ensureSize(int newSize) {
+		if (newSize <= size) return;
+		if (newSize > versions.length) {
+			int capacity = Math.max(newSize, versions.length * 2);
+			versions = Arrays.copyOf(versions, capacity);
+			for (int i = 0; i < intensities.length; i++) {
+				intensities[i] = Arrays.copyOf(intensities[i], capacity);
+			}
+		}
+		size = newSize;
+	}
+
+	/**
+	 * Returns the number of scans mapped so far
+	 */
+	public synchronized int mappedCount() {
+		return mapped.cardinality();
+	}
+
+	/**
+	 * Sets the number of scans the finished maps are expected to have, once it
+	 * is known. The maps sent to listeners are padded out to this size, so that
+	 * they can be shown at the data set's dimensions while it is loading.
+	 */
+	public synchronized void setMapSize(int mapSize) {
+		this.mapSize = mapSize;
+	}
+
+	/**
+	 * Returns a new {@link MapResultSet} containing the maps for all of the scans
+	 * mapped so far. Scans which have not been mapped yet have an intensity of zero.
+	 */
+	public synchronized MapResultSet getMaps() {
+		return buildMaps(Math.max(size, mapSize));
+	}
+
+	private synchronized MapResultSet buildMaps(int mapSize) {
+		MapResultSet maps = new MapResultSet(transitionSeries, mapSize);
+		for (int i = 0; i < intensities.length; i++) {
+			maps.putIntensitiesInMap(Arrays.copyOf(intensities[i], mapSize), i, 0);
+		}
+		return maps;
+	}
+
+	private void refresh() {
+		synchronized (this) {
+			long now = System.currentTimeMillis();
+			if (now - lastRefresh < refreshInterval) {
+				return;
+			}
+			lastRefresh = now;
+		}
+		MapResultSet maps = getMaps();
+		listenerExecutor.execute(() -> updateListeners(maps));
+	}
+
+	/**
+	 * Waits for all queued spectra to be mapped, then maps any scans in the
+	 * given {@link ScanData} which were never given to this StreamingMapper.
+	 * Listeners are sent the final maps, which are also returned. This
+	 * StreamingMapper can't accept any more spectra afterwards.
+	 */
+	public MapResultSet finish(ScanData scans) throws InterruptedException {
+		int scanCount;
+		try {
+			pending.acquire(maxPending);
+			pending.release(maxPending);
+
+			scanCount = scans.scanCount();
+			for (int index = 0; index < scanCount; index++) {
+				boolean done;
+				synchronized (this) {
+					done = mapped.get(index);
+				}
+				if (!done) {
+					accept(index, scans.get(index));
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+		pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+
+		MapResultSet maps = buildMaps(scanCount);
+		synchronized (this) {
+			result = maps;
+		}
+		listenerExecutor.execute(() -> updateListeners(maps));
+		return maps;
+	}
+
+	/**
+	 * Returns the finished maps, if {@link #finish(ScanData)} has completed
+	 */
+	public synchronized Optional<MapResultSet> getResult() {
+		return Optional.ofNullable(result);
+	}
+
+	/**
+	 * Stops mapping without waiting for queued spectra to finish
+	 */
+	public void abort() {
+		pool.shutdownNow();
+	}
+
+}
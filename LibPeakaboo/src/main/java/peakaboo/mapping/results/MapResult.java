@@ -65,5 +65,11 @@ public class MapResult implements Cloneable
 	void setData(int index, float intensity) {
 		data.set(index, intensity);
 	}
+	
+	void setData(int index, float[] intensities) {
+		for (int i = 0; i < intensities.length; i++) {
+			data.set(index + i, intensities[i]);
+		}
+	}
 
 }
@@ -123,6 +123,21 @@ public class MapResultSet implements Cloneable
 		return null;
 	}
 	
+	/**
+	 * 
+	 * Gets the index of the {@link MapResult} related to the given {@link ITransitionSeries}
+	 * 
+	 * @param ts the {@link ITransitionSeries} to look up the {@link MapResult} with
+	 * @return the index of the {@link MapResult} for the given {@link ITransitionSeries}, or -1 if there is none
+	 */
+	public int indexOf(ITransitionSeries ts)
+	{
+		for (int i = 0; i < maps.size(); i++) {
+			if (maps.get(i).transitionSeries == ts) return i;
+		}
+		return -1;
+	}
+	
 
 	/**
 	 * Generates a list of all of the TransitionSeries included in this MapResultSet
@@ -154,6 +169,21 @@ public class MapResultSet implements Cloneable
 
 	}
 
+	/**
+	 * 
+	 * Places a block of values starting at a given index for the {@link MapResult}
+	 * at the given map index. This allows a worker to store the results for a
+	 * contiguous range of points in one call.
+	 * 
+	 * @param intensities the intensity values to place in the {@link MapResult} data
+	 * @param mapIndex    the index of the desired {@link MapResult}
+	 * @param index       the index in the map data at which to place the first value
+	 */
+	public void putIntensitiesInMap(float[] intensities, int mapIndex, int index)
+	{
+		maps.get(mapIndex).setData(index, intensities);
+	}
+
 	/**
 	 * 
 	 * Composites the data in all {@link MapResult} into a single map. 
@@ -0,0 +1,221 @@
+package peakaboo.mapping.selection;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * An immutable set of selected indexes into a map, stored as a {@link BitSet}
+ * so that large selections stay compact, and so that combining and growing
+ * them works on whole runs of points at a time. Indexes are always visited in
+ * ascending order.
+ *
+ * @author NAS
+ *
+ */
+public class Selection {
+
+	public static final Selection NONE = new Selection(new BitSet());
+
+	private final BitSet points;
+	private final int size;
+	private int[] indexes;
+
+	private Selection(BitSet points) {
+		this.points = points;
+		this.size = points.cardinality();
+	}
+
+	/**
+	 * Creates a Selection containing the given indexes
+	 */
+	public static Selection of(Collection<Integer> indexes) {
+		BitSet points = new BitSet();
+		for (int index : indexes) {
+			points.set(index);
+		}
+		return new Selection(points);
+	}
+
+	/**
+	 * Creates a Selection containing the indexes set in the given BitSet
+	 */
+	public static Selection of(BitSet points) {
+		return new Selection((BitSet) points.clone());
+	}
+
+	/**
+	 * Creates a Selection of the rectangle with the given corners (inclusive) on
+	 * a map of the given width
+	 */
+	public static Selection rectangle(int width, int x1, int y1, int x2, int y2) {
+		BitSet points = new BitSet();
+		int xstart = Math.min(x1, x2), xend = Math.max(x1, x2);
+		int ystart = Math.min(y1, y2), yend = Math.max(y1, y2);
+		for (int y = ystart; y <= yend; y++) {
+			points.set(y * width + xstart, y * width + xend + 1);
+		}
+		return new Selection(points);
+	}
+
+
+	public boolean contains(int index) {
+		return index >= 0 && points.get(index);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+
+	/**
+	 * Returns a Selection of the points in either this or the other Selection
+	 */
+	public Selection union(Selection other) {
+		BitSet result = (BitSet) points.clone();
+		result.or(other.points);
+		return new Selection(result);
+	}
+
+	/**
+	 * Returns a Selection of the points in this Selection but not in the other
+	 */
+	public Selection difference(Selection other) {
+		BitSet result = (BitSet) points.clone();
+		result.andNot(other.points);
+		return new Selection(result);
+	}
+
+	/**
+	 * Returns a Selection which also includes the points directly above, below,
+	 * left, and right of every point in this one, on a map of the given size.
+	 */
+	public Selection dilate(int width, int height) {
+		int limit = width * height;
+		BitSet result = (BitSet) points.clone();
+		if (limit < result.length()) {
+			result.clear(limit, result.length());
+		}
+
+		//grow each run of selected points, one row at a time
+		int start = points.nextSetBit(0);
+		while (start >= 0 && start < limit) {
+			int end = Math.min(points.nextClearBit(start), limit);
+			int rowStart = start - start % width;
+			int rowEnd = Math.min(end, rowStart + width);
+
+			result.set(Math.max(start - 1, rowStart), Math.min(rowEnd + 1, rowStart + width));
+			if (start >= width) {
+				result.set(start - width, rowEnd - width);
+			}
+			if (rowEnd + width <= limit) {
+				result.set(start + width, rowEnd + width);
+			}
+
+			start = rowEnd < end ? rowEnd : points.nextSetBit(end);
+		}
+		return new Selection(result);
+	}
+
+
+	/**
+	 * Returns the selected indexes in ascending order
+	 */
+	public IntStream stream() {
+		return points.stream();
+	}
+
+	/**
+	 * Returns a copy of the selected indexes in ascending order
+	 */
+	public int[] toArray() {
+		return indexes().clone();
+	}
+
+	/**
+	 * Returns a read-only list of the selected indexes in ascending order, for
+	 * code which needs a List
+	 */
+	public List<Integer> asList() {
+		int[] indexes = indexes();
+		return new AbstractList<Integer>() {
+
+			@Override
+			public Integer get(int index) {
+				return indexes[index];
+			}
+
+			@Override
+			public int size() {
+				return indexes.length;
+			}
+
+			//look indexes up in the BitSet, rather than searching the list
+			@Override
+			public boolean contains(Object o) {
+				return o instanceof Integer && Selection.this.contains((Integer) o);
+			}
+
+			@Override
+			public int indexOf(Object o) {
+				return o instanceof Integer ? positionOf((Integer) o) : -1;
+			}
+
+			@Override
+			public int lastIndexOf(Object o) {
+				return indexOf(o);
+			}
+		};
+	}
+
+	/**
+	 * Returns the position of the given index in this Selection's ascending
+	 * order, or -1 if it isn't selected
+	 */
+	public int positionOf(int index) {
+		if (!contains(index)) return -1;
+		return Arrays.binarySearch(indexes(), index);
+	}
+
+	/**
+	 * Returns the index at the given position in this Selection's ascending order
+	 */
+	public int get(int position) {
+		return indexes()[position];
+	}
+
+	/**
+	 * Returns a copy of the selected indexes as a BitSet
+	 */
+	public BitSet toBitSet() {
+		return (BitSet) points.clone();
+	}
+
+	private synchronized int[] indexes() {
+		if (indexes == null) {
+			indexes = points.stream().toArray();
+		}
+		return indexes;
+	}
+
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) return true;
+		if (!(obj instanceof Selection)) return false;
+		return points.equals(((Selection) obj).points);
+	}
+
+	@Override
+	public int hashCode() {
+		return points.hashCode();
+	}
+
+}
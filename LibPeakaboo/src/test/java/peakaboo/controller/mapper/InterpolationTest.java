@@ -0,0 +1,150 @@
+package peakaboo.controller.mapper;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import cyclops.GridPerspective;
+import cyclops.ISpectrum;
+import cyclops.Pair;
+import cyclops.Spectrum;
+
+public class InterpolationTest {
+
+	private static final int WIDTH = 20;
+	private static final int HEIGHT = 15;
+
+	private Spectrum data(Random random) {
+		Spectrum data = new ISpectrum(WIDTH * HEIGHT);
+		for (int i = 0; i < data.size(); i++) {
+			data.set(i, random.nextFloat() * 100f);
+		}
+		return data;
+	}
+
+	@Test
+	public void randomMask() {
+		GridPerspective<Float> grid = new GridPerspective<Float>(WIDTH, HEIGHT, 0f);
+		Random random = new Random(1);
+		for (float density : new float[] {0.05f, 0.4f, 0.9f}) {
+			Spectrum data = data(random);
+			BitSet mask = new BitSet();
+			List<Integer> badPoints = new ArrayList<>();
+			for (int i = 0; i < data.size(); i++) {
+				if (random.nextFloat() < density) {
+					mask.set(i);
+					badPoints.add(i);
+				}
+			}
+			//the old algorithm never finishes without any good points
+			mask.clear(0);
+			badPoints.remove(Integer.valueOf(0));
+
+			Spectrum expected = new ISpectrum(data);
+			reference(grid, expected, badPoints);
+
+			Spectrum actual = new ISpectrum(data);
+			Interpolation.interpolateBadPoints(grid, actual, mask);
+
+			assertSpectrum(expected, actual);
+			//the mask is not modified
+			Assert.assertEquals(badPoints.size(), mask.cardinality());
+		}
+	}
+
+	@Test
+	public void noGoodPoints() {
+		GridPerspective<Float> grid = new GridPerspective<Float>(WIDTH, HEIGHT, 0f);
+		Spectrum data = data(new Random(2));
+		BitSet mask = new BitSet();
+		mask.set(0, data.size());
+
+		Interpolation.interpolateBadPoints(grid, data, mask);
+		for (int i = 0; i < data.size(); i++) {
+			Assert.assertEquals(0f, data.get(i), 0f);
+		}
+	}
+
+	@Test
+	public void outOfRange() {
+		GridPerspective<Float> grid = new GridPerspective<Float>(WIDTH, HEIGHT, 0f);
+		Spectrum data = data(new Random(3));
+		List<Integer> badPoints = new ArrayList<>();
+		badPoints.add(WIDTH + 1);
+
+		Spectrum expected = new ISpectrum(data);
+		reference(grid, expected, badPoints);
+
+		//indices past the end of the grid are ignored
+		BitSet mask = new BitSet();
+		mask.set(WIDTH + 1);
+		mask.set(WIDTH * HEIGHT);
+		mask.set(WIDTH * HEIGHT + 50);
+		Spectrum actual = new ISpectrum(data);
+		Interpolation.interpolateBadPoints(grid, actual, mask);
+		assertSpectrum(expected, actual);
+
+		//including when they're the only ones
+		mask.clear(WIDTH + 1);
+		actual = new ISpectrum(data);
+		Interpolation.interpolateBadPoints(grid, actual, mask);
+		assertSpectrum(data, actual);
+	}
+
+	private void assertSpectrum(Spectrum expected, Spectrum actual) {
+		Assert.assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			Assert.assertEquals(expected.get(i), actual.get(i), 0f);
+		}
+	}
+
+
+	/*
+	 * The original pass-by-pass algorithm. Each pass sets every bad point with
+	 * a good neighbour to the average of its good neighbours, and repeats with
+	 * the points which had none.
+	 */
+	private static void reference(GridPerspective<Float> grid, Spectrum list, List<Integer> badPoints) {
+		List<Integer> newBadPoints = new ArrayList<>();
+		boolean repeat = false;
+
+		for (int i : badPoints) {
+			Pair<Integer, Integer> coords = grid.getXYFromIndex(i);
+			float newval = referencePoint(grid, list, badPoints, coords.first, coords.second);
+			if (newval == -1) {
+				repeat = true;
+				newBadPoints.add(i);
+			}
+			list.set(i, newval);
+		}
+
+		if (repeat) reference(grid, list, newBadPoints);
+	}
+
+	private static float referencePoint(GridPerspective<Float> grid, Spectrum list, List<Integer> badPoints, int x, int y) {
+		float total = 0;
+		int count = 0;
+
+		if (x >= 1 && !badPoints.contains(grid.getIndexFromXY(x-1, y)))
+			{ total += grid.get(list, x-1, y); count += 1; }
+
+		if (y >= 1 && !badPoints.contains(grid.getIndexFromXY(x, y-1)))
+			{ total += grid.get(list, x, y-1); count += 1; }
+
+		if (x <= grid.width - 2 && !badPoints.contains(grid.getIndexFromXY(x+1, y)))
+			{ total += grid.get(list, x+1, y); count += 1; }
+
+		if (y <= grid.height- 2 && !badPoints.contains(grid.getIndexFromXY(x, y+1)))
+			{ total += grid.get(list, x, y+1); count += 1; }
+
+		if (count > 0)
+			return total / count;
+		else
+			return -1;
+	}
+
+}
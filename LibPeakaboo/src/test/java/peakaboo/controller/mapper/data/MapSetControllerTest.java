@@ -0,0 +1,64 @@
+package peakaboo.controller.mapper.data;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import cyclops.Coord;
+
+public class MapSetControllerTest {
+
+	//a smooth map made of a few gaussian blobs on a sloped background, with some noise
+	private static float[] map(int width, int height) {
+		Random random = new Random(width * 31 + height);
+		double[][] blobs = new double[6][4];
+		for (double[] blob : blobs) {
+			blob[0] = random.nextDouble() * width;
+			blob[1] = random.nextDouble() * height;
+			blob[2] = 2 + random.nextDouble() * width / 6;
+			blob[3] = 50 + random.nextDouble() * 100;
+		}
+
+		float[] map = new float[width * height];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				double value = 10 + 20.0 * y / height;
+				for (double[] blob : blobs) {
+					double dx = x - blob[0], dy = y - blob[1];
+					value += blob[3] * Math.exp(-(dx*dx + dy*dy) / (2 * blob[2] * blob[2]));
+				}
+				map[y * width + x] = (float) (value + random.nextGaussian());
+			}
+		}
+		return map;
+	}
+
+	@Test
+	public void prunedMatchesExhaustive() {
+		int[][] sizes = {{60, 40}, {37, 53}, {120, 25}, {45, 45}, {80, 30}, {25, 90}};
+		for (int[] size : sizes) {
+			float[] map = map(size[0], size[1]);
+			List<Integer> all = MapSetController.candidateWidths(map, Long.MAX_VALUE);
+			List<Integer> pruned = MapSetController.candidateWidths(map, 16L * map.length);
+			Assert.assertTrue(pruned.size() < all.size());
+
+			Coord<Integer> expected = MapSetController.bestDimensions(map, all.stream());
+			Coord<Integer> actual = MapSetController.bestDimensions(map, pruned.stream());
+			Assert.assertEquals(size[0] + "x" + size[1], size[0], (int) expected.x);
+			Assert.assertEquals(size[0] + "x" + size[1], expected.x, actual.x);
+			Assert.assertEquals(size[0] + "x" + size[1], expected.y, actual.y);
+		}
+	}
+
+	@Test
+	public void smallMapsScoreEveryWidth() {
+		float[] map = map(100, 100);
+		List<Integer> widths = MapSetController.candidateWidths(map, MapSetController.MAX_WORK);
+		int min = Math.max((int) Math.sqrt(map.length) / 15, 2);
+		int max = map.length / min;
+		Assert.assertEquals(max - min + 1, widths.size());
+	}
+
+}
@@ -0,0 +1,144 @@
+package peakaboo.controller.plotter.fitting;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import cyclops.ISpectrum;
+import cyclops.ReadOnlySpectrum;
+import cyclops.Spectrum;
+import cyclops.SpectrumCalculations;
+import peakaboo.controller.plotter.fitting.AutoEnergyCalibration.CalibrationGrid;
+import peakaboo.controller.plotter.fitting.AutoEnergyCalibration.SignalMatch;
+import peakaboo.curvefit.curve.fitting.Curve;
+import peakaboo.curvefit.curve.fitting.CurveCache;
+import peakaboo.curvefit.curve.fitting.EnergyCalibration;
+import peakaboo.curvefit.curve.fitting.FittingSet;
+import peakaboo.curvefit.curve.fitting.fitter.CurveFitter;
+import peakaboo.curvefit.curve.fitting.fitter.UnderCurveFitter;
+import peakaboo.curvefit.curve.fitting.solver.FittingSolver;
+import peakaboo.curvefit.curve.fitting.solver.GreedyFittingSolver;
+import peakaboo.curvefit.peak.search.scoring.FastSignalMatchScorer;
+import peakaboo.curvefit.peak.table.Element;
+import peakaboo.curvefit.peak.table.PeakTable;
+import peakaboo.curvefit.peak.transition.ITransitionSeries;
+import peakaboo.curvefit.peak.transition.TransitionShell;
+
+public class AutoEnergyCalibrationTest {
+
+	private static final int DATA_WIDTH = 2048;
+
+	private FittingSet fittings(EnergyCalibration calibration) {
+		FittingSet fittings = new FittingSet();
+		fittings.setCurveCaching(false);
+		fittings.getFittingParameters().setCalibration(calibration);
+		fittings.addTransitionSeries(PeakTable.SYSTEM.get(Element.Fe, TransitionShell.K));
+		fittings.addTransitionSeries(PeakTable.SYSTEM.get(Element.Cu, TransitionShell.K));
+		fittings.addTransitionSeries(PeakTable.SYSTEM.get(Element.Zn, TransitionShell.K));
+		return fittings;
+	}
+
+	//a spectrum of Fe, Cu and Zn measured with a 0-20.48keV calibration
+	private Spectrum synthesize() {
+		FittingSet fittings = fittings(new EnergyCalibration(0, 20.48f, DATA_WIDTH));
+		Spectrum data = new ISpectrum(DATA_WIDTH);
+		float[] scales = {1000f, 400f, 150f};
+		for (int i = 0; i < scales.length; i++) {
+			Curve curve = fittings.getVisibleCurves().get(i);
+			SpectrumCalculations.addLists_inplace(data, curve.scale(scales[i]));
+		}
+		return data;
+	}
+
+	/**
+	 * The rough search must find exactly the calibrations that scoring every
+	 * calibration in the grid with a {@link FastSignalMatchScorer} would
+	 */
+	@Test
+	public void roughSearch() {
+		Spectrum spectrum = synthesize();
+		List<ITransitionSeries> tsList = fittings(new EnergyCalibration(0, 20.48f, DATA_WIDTH)).getVisibleTransitionSeries();
+
+		CalibrationGrid grid = new CalibrationGrid(DATA_WIDTH);
+		SignalMatch match = new SignalMatch(spectrum, tsList, DATA_WIDTH);
+		List<EnergyCalibration> found = AutoEnergyCalibration.roughSearch(IntStream.range(0, grid.blockCount()).boxed(), grid, match);
+
+		//score every valid calibration in the grid
+		List<float[]> scores = new ArrayList<>();
+		float best = 0;
+		for (int maxIndex = 0; maxIndex < grid.maxima.length; maxIndex++) {
+			for (int minIndex = 0; minIndex < grid.minima.length; minIndex++) {
+				if (!grid.isValid(maxIndex, minIndex)) continue;
+				float score = scoreFitFast(spectrum, tsList, grid.get(maxIndex, minIndex));
+				scores.add(new float[] {score, maxIndex, minIndex});
+				best = Math.max(best, score);
+			}
+		}
+		float threshold = best * 0.5f;
+		scores.removeIf(s -> s[0] < threshold);
+		scores.sort((s1, s2) -> {
+			int order = Float.compare(s2[0], s1[0]);
+			if (order != 0) return order;
+			order = Float.compare(s2[1], s1[1]);
+			if (order != 0) return order;
+			return Float.compare(s2[2], s1[2]);
+		});
+		List<EnergyCalibration> expected = new ArrayList<>();
+		for (float[] score : scores) {
+			expected.add(grid.get((int) score[1], (int) score[2]));
+		}
+
+		Assert.assertFalse(expected.isEmpty());
+		Assert.assertEquals(expected, found);
+	}
+
+	/**
+	 * The pattern search must do at least as well as trying every calibration
+	 * within the window in 0.01keV steps, without filling the shared curve cache
+	 */
+	@Test
+	public void fineTune() {
+		Spectrum spectrum = synthesize();
+		List<ITransitionSeries> tsList = fittings(new EnergyCalibration(0, 20.48f, DATA_WIDTH)).getVisibleTransitionSeries();
+		FittingSolver solver = new GreedyFittingSolver();
+		CurveFitter fitter = new UnderCurveFitter();
+		float window = 0.1f;
+
+		EnergyCalibration start = new EnergyCalibration(0.05f, 20.55f, DATA_WIDTH);
+		float startScore = scoreFitGood(spectrum, start, solver, fitter);
+
+		CurveCache.clear();
+		EnergyCalibration tuned = AutoEnergyCalibration.fineTune(start, startScore, spectrum, tsList, solver, fitter, window);
+		Assert.assertEquals(0, CurveCache.size());
+
+		float exhaustive = 0f;
+		for (float min = start.getMinEnergy() - window; min <= start.getMinEnergy() + window; min += 0.01f) {
+			for (float max = start.getMaxEnergy() - window; max <= start.getMaxEnergy() + window; max += 0.01f) {
+				if (max <= min) continue;
+				exhaustive = Math.max(exhaustive, scoreFitGood(spectrum, new EnergyCalibration(min, max, DATA_WIDTH), solver, fitter));
+			}
+		}
+
+		float score = scoreFitGood(spectrum, tuned, solver, fitter);
+		Assert.assertTrue(score > startScore);
+		Assert.assertTrue("Fine tuned score " + score + " is worse than exhaustive score " + exhaustive, score >= exhaustive * 0.99f);
+	}
+
+	private float scoreFitFast(ReadOnlySpectrum spectrum, List<ITransitionSeries> tsList, EnergyCalibration calibration) {
+		float score = 0;
+		FastSignalMatchScorer scorer = new FastSignalMatchScorer(spectrum, calibration);
+		for (ITransitionSeries ts : tsList) {
+			score += Math.sqrt(scorer.score(ts));
+		}
+		return score;
+	}
+
+	private float scoreFitGood(ReadOnlySpectrum spectrum, EnergyCalibration calibration, FittingSolver solver, CurveFitter fitter) {
+		FittingSet fittings = fittings(calibration);
+		return AutoEnergyCalibration.scoreFitGood(solver.solve(spectrum, fittings, fitter), spectrum);
+	}
+
+}
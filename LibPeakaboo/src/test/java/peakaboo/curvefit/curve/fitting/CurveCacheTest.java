@@ -0,0 +1,75 @@
+package peakaboo.curvefit.curve.fitting;
+
+import java.util.function.Consumer;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import peakaboo.curvefit.peak.escape.EscapePeakType;
+import peakaboo.curvefit.peak.fitting.functions.GaussianFittingFunction;
+import peakaboo.curvefit.peak.table.Element;
+import peakaboo.curvefit.peak.table.PeakTable;
+import peakaboo.curvefit.peak.transition.ITransitionSeries;
+import peakaboo.curvefit.peak.transition.TransitionShell;
+
+public class CurveCacheTest {
+
+	private final ITransitionSeries ts = PeakTable.SYSTEM.get(Element.Fe, TransitionShell.K);
+
+	@Before
+	public void setup() {
+		CurveCache.clear();
+	}
+
+	private FittingParameters parameters() {
+		FittingParameters parameters = new FittingSet().getFittingParameters().copy();
+		parameters.setCalibration(0, 20.48f, 2048);
+		return parameters;
+	}
+
+	@Test
+	public void shared() {
+		Curve first = new Curve(ts, parameters());
+		Curve second = new Curve(ts, parameters());
+
+		//identical parameters share one shape
+		Assert.assertSame(first.normalizedCurve, second.normalizedCurve);
+		Assert.assertEquals(1, CurveCache.getMisses());
+		Assert.assertEquals(1, CurveCache.getHits());
+		Assert.assertEquals(1, CurveCache.size());
+	}
+
+	@Test
+	public void keys() {
+		Curve reference = new Curve(ts, parameters());
+
+		assertMiss(reference, p -> p.setCalibration(0, 20.48f, 4096));
+		assertMiss(reference, p -> p.setCalibration(0, 10.24f, 2048));
+		assertMiss(reference, p -> p.setCalibration(0.01f, 20.48f, 2048));
+		assertMiss(reference, p -> p.setFWMHBase(p.getFWHMBase() * 2));
+		assertMiss(reference, p -> p.setEscapeType(EscapePeakType.SILICON));
+		assertMiss(reference, p -> p.setFittingFunction(GaussianFittingFunction.class));
+
+		//while the same parameters after all of those changes still hit
+		long misses = CurveCache.getMisses();
+		Curve same = new Curve(ts, parameters());
+		Assert.assertEquals(misses, CurveCache.getMisses());
+		Assert.assertSame(reference.normalizedCurve, same.normalizedCurve);
+	}
+
+	/**
+	 * Asserts that a curve built with parameters changed by the given modifier
+	 * is generated rather than taken from the cache
+	 */
+	private void assertMiss(Curve reference, Consumer<FittingParameters> modifier) {
+		FittingParameters parameters = parameters();
+		modifier.accept(parameters);
+
+		long misses = CurveCache.getMisses();
+		Curve curve = new Curve(ts, parameters);
+		Assert.assertEquals(misses + 1, CurveCache.getMisses());
+		Assert.assertNotSame(reference.normalizedCurve, curve.normalizedCurve);
+	}
+
+}
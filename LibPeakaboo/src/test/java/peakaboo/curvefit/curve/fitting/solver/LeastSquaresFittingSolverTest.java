@@ -0,0 +1,111 @@
+package peakaboo.curvefit.curve.fitting.solver;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import cyclops.ISpectrum;
+import cyclops.ReadOnlySpectrum;
+import cyclops.Spectrum;
+import cyclops.SpectrumCalculations;
+import peakaboo.curvefit.curve.fitting.Curve;
+import peakaboo.curvefit.curve.fitting.FittingResultSet;
+import peakaboo.curvefit.curve.fitting.FittingScales;
+import peakaboo.curvefit.curve.fitting.FittingSet;
+import peakaboo.curvefit.curve.fitting.FittingWorkspace;
+import peakaboo.curvefit.curve.fitting.fitter.UnderCurveFitter;
+import peakaboo.curvefit.peak.table.Element;
+import peakaboo.curvefit.peak.table.PeakTable;
+import peakaboo.curvefit.peak.transition.TransitionShell;
+
+public class LeastSquaresFittingSolverTest {
+
+	private FittingSet fittings() {
+		FittingSet fittings = new FittingSet();
+		fittings.getFittingParameters().setCalibration(0, 20.48f, 2048);
+		fittings.addTransitionSeries(PeakTable.SYSTEM.get(Element.Fe, TransitionShell.K));
+		fittings.addTransitionSeries(PeakTable.SYSTEM.get(Element.Cu, TransitionShell.K));
+		fittings.addTransitionSeries(PeakTable.SYSTEM.get(Element.Zn, TransitionShell.K));
+		return fittings;
+	}
+	
+	private Spectrum synthesize(FittingSet fittings, float... scales) {
+		Spectrum data = new ISpectrum(2048);
+		for (int i = 0; i < scales.length; i++) {
+			Curve curve = fittings.getVisibleCurves().get(i);
+			SpectrumCalculations.addLists_inplace(data, curve.scale(scales[i]));
+		}
+		return data;
+	}
+	
+	private float sumOfSquares(ReadOnlySpectrum residual) {
+		float sum = 0;
+		for (int i = 0; i < residual.size(); i++) {
+			sum += residual.get(i) * residual.get(i);
+		}
+		return sum;
+	}
+	
+	@Test
+	public void recoversScales() {
+		FittingSet fittings = fittings();
+		Spectrum data = synthesize(fittings, 1000f, 500f, 250f);
+		
+		FittingScales scales = new LeastSquaresFittingSolver().solve(data, fittings, new UnderCurveFitter(), new FittingWorkspace());
+		Assert.assertEquals(1000f, scales.getScale(0), 1f);
+		Assert.assertEquals(500f, scales.getScale(1), 0.5f);
+		Assert.assertEquals(250f, scales.getScale(2), 0.25f);
+	}
+	
+	@Test
+	public void nonNegative() {
+		FittingSet fittings = fittings();
+		Spectrum data = synthesize(fittings, 1000f, 0f, 0f);
+		//take away some signal where the Cu curve would be, pushing an unconstrained fit negative
+		for (int i = 795; i < 815; i++) {
+			data.set(i, 0f);
+		}
+		
+		FittingWorkspace workspace = new FittingWorkspace();
+		FittingScales scales = new LeastSquaresFittingSolver().solve(data, fittings, new UnderCurveFitter(), workspace);
+		for (int i = 0; i < scales.size(); i++) {
+			Assert.assertTrue(scales.getScale(i) >= 0f);
+		}
+		Assert.assertNotNull(workspace.getPreviousSolution());
+	}
+	
+	@Test
+	public void comparedToOptimizing() {
+		FittingSet fittings = fittings();
+		Spectrum data = synthesize(fittings, 1000f, 500f, 250f);
+		
+		FittingResultSet leastSquares = new LeastSquaresFittingSolver().solve(data, fittings, new UnderCurveFitter());
+		FittingResultSet optimizing = new OptimizingFittingSolver().solve(data, fittings, new UnderCurveFitter());
+		
+		//The least-squares fit should leave no more unexplained signal than the optimizing solver
+		Assert.assertTrue(sumOfSquares(leastSquares.getResidual()) <= sumOfSquares(optimizing.getResidual()) + 1f);
+		Assert.assertEquals(optimizing.getTotalFit().sum(), leastSquares.getTotalFit().sum(), optimizing.getTotalFit().sum() * 0.05f);
+	}
+	
+	@Test
+	public void sharedBetweenFittingSets() {
+		FittingSet first = fittings();
+		FittingSet second = new FittingSet();
+		second.getFittingParameters().setCalibration(0, 20.48f, 2048);
+		second.addTransitionSeries(PeakTable.SYSTEM.get(Element.Cu, TransitionShell.K));
+		
+		LeastSquaresFittingSolver solver = new LeastSquaresFittingSolver();
+		Spectrum firstData = synthesize(first, 1000f, 500f, 250f);
+		Spectrum secondData = synthesize(second, 300f);
+		
+		//alternating between FittingSets must fit each one against its own curves
+		for (int i = 0; i < 3; i++) {
+			FittingScales firstScales = solver.solve(firstData, first, new UnderCurveFitter(), new FittingWorkspace());
+			FittingScales secondScales = solver.solve(secondData, second, new UnderCurveFitter(), new FittingWorkspace());
+			Assert.assertEquals(3, firstScales.size());
+			Assert.assertEquals(1000f, firstScales.getScale(0), 1f);
+			Assert.assertEquals(1, secondScales.size());
+			Assert.assertEquals(300f, secondScales.getScale(0), 0.3f);
+		}
+	}
+	
+}
@@ -0,0 +1,82 @@
+package peakaboo.curvefit.curve.fitting.solver;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import cyclops.ISpectrum;
+import cyclops.Spectrum;
+import cyclops.SpectrumCalculations;
+import peakaboo.curvefit.curve.fitting.Curve;
+import peakaboo.curvefit.curve.fitting.FittingScales;
+import peakaboo.curvefit.curve.fitting.FittingSet;
+import peakaboo.curvefit.curve.fitting.FittingWorkspace;
+import peakaboo.curvefit.curve.fitting.fitter.CurveFitter;
+import peakaboo.curvefit.curve.fitting.fitter.UnderCurveFitter;
+import peakaboo.curvefit.peak.table.Element;
+import peakaboo.curvefit.peak.table.PeakTable;
+import peakaboo.curvefit.peak.transition.TransitionShell;
+
+public class OptimizingFittingSolverTest {
+
+	private FittingSet fittings() {
+		FittingSet fittings = new FittingSet();
+		fittings.getFittingParameters().setCalibration(0, 20.48f, 2048);
+		fittings.addTransitionSeries(PeakTable.SYSTEM.get(Element.Zn, TransitionShell.K));
+		fittings.addTransitionSeries(PeakTable.SYSTEM.get(Element.Fe, TransitionShell.K));
+		fittings.addTransitionSeries(PeakTable.SYSTEM.get(Element.Cu, TransitionShell.K));
+		return fittings;
+	}
+
+	private Spectrum synthesize(FittingSet fittings, float... scales) {
+		Spectrum data = new ISpectrum(2048);
+		for (int i = 0; i < scales.length; i++) {
+			Curve curve = fittings.getVisibleCurves().get(i);
+			SpectrumCalculations.addLists_inplace(data, curve.scale(scales[i]));
+		}
+		return data;
+	}
+
+	/**
+	 * Fitting many spectra with one workspace reuses what was derived from the
+	 * curves, and gives the same results as fitting each with a new workspace
+	 */
+	@Test
+	public void reusedWorkspace() {
+		FittingSet fittings = fittings();
+		OptimizingFittingSolver solver = new OptimizingFittingSolver();
+		CurveFitter fitter = new UnderCurveFitter();
+		FittingWorkspace workspace = new FittingWorkspace();
+
+		Spectrum first = synthesize(fittings, 100f, 50f, 20f);
+		Spectrum second = synthesize(fittings, 10f, 300f, 60f);
+
+		FittingScales firstScales = solver.solve(first, fittings, fitter, workspace);
+		Object state = workspace.getCurveState(fittings.getVisibleCurves());
+		Assert.assertNotNull(state);
+		FittingScales secondScales = solver.solve(second, fittings, fitter, workspace);
+		Assert.assertSame(state, workspace.getCurveState(fittings.getVisibleCurves()));
+
+		assertScales(solver.solve(first, fittings, fitter, new FittingWorkspace()), firstScales);
+		assertScales(solver.solve(second, fittings, fitter, new FittingWorkspace()), secondScales);
+
+		//results fitted against the same curves share their parameters
+		Assert.assertSame(firstScales.getParameters(), secondScales.getParameters());
+
+		//changing the curves discards the workspace's state
+		fittings.getFittingParameters().setFWMHBase(fittings.getFittingParameters().getFWHMBase() * 1.1f);
+		Assert.assertNull(workspace.getCurveState(fittings.getVisibleCurves()));
+		FittingScales changed = solver.solve(first, fittings, fitter, workspace);
+		Assert.assertNotSame(firstScales.getParameters(), changed.getParameters());
+		assertScales(solver.solve(first, fittings, fitter, new FittingWorkspace()), changed);
+	}
+
+	private void assertScales(FittingScales expected, FittingScales actual) {
+		Assert.assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			Assert.assertEquals(expected.getTransitionSeries(i), actual.getTransitionSeries(i));
+			Assert.assertEquals(expected.getScale(i), actual.getScale(i), 0f);
+			Assert.assertEquals(expected.getSum(i), actual.getSum(i), 0f);
+		}
+	}
+
+}
@@ -0,0 +1,56 @@
+package peakaboo.curvefit.peak.table;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import peakaboo.curvefit.curve.fitting.FittingParameters;
+import peakaboo.curvefit.curve.fitting.FittingSet;
+import peakaboo.curvefit.peak.escape.EscapePeakType;
+import peakaboo.curvefit.peak.transition.ITransitionSeries;
+import peakaboo.curvefit.peak.transition.Transition;
+import peakaboo.curvefit.peak.transition.TransitionShell;
+
+public class TransitionIndexTest {
+
+	@Test
+	public void test() {
+		
+		FittingParameters parameters = new FittingSet().getFittingParameters();
+		parameters.setEscapeType(EscapePeakType.SILICON);
+		
+		List<ITransitionSeries> tss = new ArrayList<>(PeakTable.SYSTEM.getAll());
+		ITransitionSeries fe = PeakTable.SYSTEM.get(Element.Fe, TransitionShell.K);
+		tss.add(fe.summation(fe));
+		TransitionIndex index = new TransitionIndex(tss, parameters);
+		
+		//Fe K-alpha is at 6.4 keV
+		Assert.assertTrue(index.near(6.4f).contains(fe));
+		
+		//compare against checking every line
+		for (float energy = 0.5f; energy < 30f; energy += 0.37f) {
+			List<ITransitionSeries> expected = new ArrayList<>();
+			for (ITransitionSeries ts : tss) {
+				List<Transition> lines = ts.getAllTransitions();
+				lines.addAll(ts.escape(parameters.getEscapeType()));
+				for (Transition t : lines) {
+					if (Math.abs(t.energyValue - energy) <= parameters.getFWHM(t)) {
+						expected.add(ts);
+						break;
+					}
+				}
+			}
+			Assert.assertEquals(expected, index.near(energy));
+		}
+		
+		//the shared index is rebuilt when the parameters change
+		TransitionIndex shared = parameters.getTransitionIndex();
+		Assert.assertSame(shared, parameters.getTransitionIndex());
+		parameters.setFWMHBase(0.1f);
+		Assert.assertNotSame(shared, parameters.getTransitionIndex());
+		
+	}
+	
+}
@@ -0,0 +1,101 @@
+package peakaboo.dataset.analysis;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import cyclops.Coord;
+import cyclops.ISpectrum;
+import cyclops.ReadOnlySpectrum;
+import cyclops.Spectrum;
+import peakaboo.datasource.model.components.scandata.ScanData;
+import peakaboo.datasource.model.internal.CroppedDataSource;
+import peakaboo.datasource.model.internal.EmptyDataSource;
+
+public class DataSourceAnalysisTest {
+
+	//a 10x5 map which counts how many times a scan is read, and has no scan at index 13
+	private static class CountingScanData implements ScanData {
+		int reads = 0;
+
+		@Override
+		public ReadOnlySpectrum get(int index) {
+			reads++;
+			if (index == 13) return null;
+			return new ISpectrum(new float[] {index, index % 7, 50 - index, 1});
+		}
+
+		@Override
+		public int scanCount() {
+			return 50;
+		}
+
+		@Override
+		public String scanName(int index) {
+			return "Scan #" + (index+1);
+		}
+
+		@Override
+		public float maxEnergy() {
+			return 0;
+		}
+
+		@Override
+		public float minEnergy() {
+			return 0;
+		}
+
+		@Override
+		public String datasetName() {
+			return "Test";
+		}
+	}
+
+	@Test
+	public void subset() {
+		CountingScanData scans = new CountingScanData();
+		EmptyDataSource source = new EmptyDataSource() {
+			@Override
+			public ScanData getScanData() {
+				return scans;
+			}
+		};
+
+		DataSourceAnalysis parent = new DataSourceAnalysis(null, source);
+		for (int i = 0; i < scans.scanCount(); i++) {
+			parent.process(i, scans.get(i));
+		}
+
+		CroppedDataSource crop = new CroppedDataSource(source, parent, 10, 5, new Coord<>(2, 1), new Coord<>(6, 3));
+		DataSourceAnalysis expected = new DataSourceAnalysis(null, crop);
+		for (int i = 0; i < crop.scanCount(); i++) {
+			expected.process(i, crop.get(i));
+		}
+
+		//a subset's analysis is derived without reading any spectra
+		scans.reads = 0;
+		DataSourceAnalysis derived = parent.subset(crop);
+		Assert.assertEquals(0, scans.reads);
+		Assert.assertEquals(expected.channelsPerScan(), derived.channelsPerScan());
+		Assert.assertEquals(expected.maximumIntensity(), derived.maximumIntensity(), 0f);
+		Assert.assertEquals(expected.firstNonNullScanIndex(), derived.firstNonNullScanIndex());
+		Assert.assertEquals(expected.lastNonNullScanIndex(), derived.lastNonNullScanIndex());
+		for (int i = 0; i < crop.scanCount(); i++) {
+			Assert.assertEquals(expected.hasScan(i), derived.hasScan(i));
+		}
+		Assert.assertFalse(derived.hasScan(crop.getUpdatedIndex(13)));
+		Assert.assertEquals(0, scans.reads);
+
+		//the average and maximum plots are calculated when they're first asked for
+		assertSpectrum(expected.averagePlot(), derived.averagePlot());
+		Assert.assertTrue(scans.reads > 0);
+		assertSpectrum(expected.maximumPlot(), derived.maximumPlot());
+	}
+
+	private static void assertSpectrum(Spectrum expected, Spectrum actual) {
+		Assert.assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			Assert.assertEquals(expected.get(i), actual.get(i), 0f);
+		}
+	}
+
+}
@@ -0,0 +1,115 @@
+package peakaboo.datasink.plugin.plugins;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import cyclops.ReadOnlySpectrum;
+import peakaboo.datasource.model.DataSource;
+import peakaboo.datasource.model.components.scandata.ScanData;
+import peakaboo.datasource.model.components.scandata.SimpleScanData;
+import peakaboo.datasource.model.internal.EmptyDataSource;
+
+public class CSVTest {
+
+	//values which Float.toString writes in different ways
+	private static final float[] SPECIAL = {
+		0f, -0f, 1f, -1f, 9999999f, -9999999f, 1e7f, -1e7f, 1.5e9f, 16777217f,
+		0.1f, -2.5f, 1e-5f, 123.456f, Float.MIN_VALUE, Float.MAX_VALUE,
+		Float.NaN, Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY
+	};
+
+	private DataSource source() {
+		Random random = new Random(1);
+		SimpleScanData scans = new SimpleScanData("Test");
+		//enough spectra for many chunks to be formatted at once
+		for (int i = 0; i < 500; i++) {
+			float[] spectrum = new float[100];
+			for (int j = 0; j < spectrum.length; j++) {
+				if (j < SPECIAL.length) {
+					spectrum[j] = SPECIAL[(i + j) % SPECIAL.length];
+				} else if (j % 2 == 0) {
+					spectrum[j] = random.nextInt(100000);
+				} else {
+					spectrum[j] = random.nextFloat() * 1000f;
+				}
+			}
+			scans.add(spectrum);
+		}
+		return new EmptyDataSource() {
+			@Override
+			public ScanData getScanData() {
+				return scans;
+			}
+		};
+	}
+
+	@Test
+	public void plain() throws IOException {
+		DataSource source = source();
+		Path file = Files.createTempFile("peakaboo", ".csv");
+		try {
+			new CSV().write(source, file);
+			Assert.assertTrue(Arrays.equals(reference(source), Files.readAllBytes(file)));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void gzip() throws IOException {
+		DataSource source = source();
+		Path file = Files.createTempFile("peakaboo", ".csv.gz");
+		try {
+			new CSV().write(source, file);
+			ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+			try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+				byte[] buffer = new byte[8192];
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					decompressed.write(buffer, 0, read);
+				}
+			}
+			Assert.assertTrue(Arrays.equals(reference(source), decompressed.toByteArray()));
+			Assert.assertTrue(Files.size(file) < decompressed.size());
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void empty() throws IOException {
+		Path file = Files.createTempFile("peakaboo", ".csv");
+		try {
+			new CSV().write(new EmptyDataSource(), file);
+			Assert.assertEquals(0, Files.size(file));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	//the original writer, which boxed every value and joined them with a collector
+	private static byte[] reference(DataSource source) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		Writer writer = new OutputStreamWriter(bytes);
+		for (ReadOnlySpectrum s : source.getScanData()) {
+			String spectrum = s.stream().map(f -> Float.toString(f)).collect(Collectors.joining(", "));
+			writer.write(spectrum);
+			writer.write("\n");
+		}
+		writer.close();
+		return bytes.toByteArray();
+	}
+
+}
@@ -0,0 +1,34 @@
+package peakaboo.datasource;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import cyclops.Coord;
+import peakaboo.datasource.model.internal.CroppedDataSource;
+
+public class CroppedDataSourceTests {
+
+	@Test
+	public void indexes() {
+
+		//a crop starting at (2, 1) of a 10x5 map
+		CroppedDataSource crop = new CroppedDataSource(null, 10, 5, new Coord<>(2, 1), new Coord<>(4, 3));
+		int width = crop.getDataDimensions().x;
+
+		Assert.assertEquals(12, crop.getOriginalIndex(0));
+		Assert.assertEquals(22, crop.getOriginalIndex(width));
+		Assert.assertEquals(new Coord<>(1, 1), crop.getDataCoordinatesAtIndex(width + 1));
+
+		for (int i = 0; i < crop.scanCount(); i++) {
+			Assert.assertEquals(i, crop.getUpdatedIndex(crop.getOriginalIndex(i)));
+		}
+
+		//points outside of the crop aren't in it, even when they wrap onto another row
+		Assert.assertEquals(-1, crop.getUpdatedIndex(0));
+		Assert.assertEquals(-1, crop.getUpdatedIndex(11));
+		Assert.assertEquals(-1, crop.getUpdatedIndex(10 + 2 + width));
+		Assert.assertEquals(-1, crop.getUpdatedIndex(49));
+
+	}
+
+}
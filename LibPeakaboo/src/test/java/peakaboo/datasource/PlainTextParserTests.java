@@ -0,0 +1,75 @@
+package peakaboo.datasource;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import cyclops.Spectrum;
+import peakaboo.datasource.plugin.plugins.PlainTextParser;
+
+public class PlainTextParserTests {
+
+	@Test
+	public void numbers() {
+
+		String[] tokens = {"0", "-0", "1.", ".5", "+3", "1e5", "1E-5", "0.1", "16777217", "3.4028236e38", "1.4e-45",
+				"123456789012345678901234", "1e400", "1f", "NaN", "-Infinity", ".", "-", "1e", "abc"};
+		for (String token : tokens) {
+			Assert.assertEquals(token, expected(token), parse(token), 0f);
+		}
+
+		Random random = new Random(1);
+		for (int i = 0; i < 100000; i++) {
+			String token = i % 2 == 0
+					? Float.toString(Float.intBitsToFloat(random.nextInt()))
+					: Double.toString(random.nextDouble() * Math.pow(10, random.nextInt(40) - 20));
+			Assert.assertEquals(token, Float.floatToIntBits(expected(token)), Float.floatToIntBits(parse(token)));
+		}
+
+	}
+
+	@Test
+	public void lines() {
+
+		byte[] text = "# comment\n1 2,3\t4\r\n\r\n  ,5,, 6 ,\n\n x 1e3\r7 8 9 10".getBytes(StandardCharsets.UTF_8);
+		List<Spectrum> scans = new PlainTextParser().parseLines(ByteBuffer.wrap(text), 0, text.length);
+
+		Assert.assertEquals(4, scans.size());
+		Assert.assertArrayEquals(new float[] {1, 2, 3, 4}, scans.get(0).backingArray(), 0f);
+		Assert.assertArrayEquals(new float[] {0, 5, 6}, scans.get(1).backingArray(), 0f);
+		Assert.assertArrayEquals(new float[] {0, 1000}, scans.get(2).backingArray(), 0f);
+		Assert.assertArrayEquals(new float[] {7, 8, 9, 10}, scans.get(3).backingArray(), 0f);
+
+	}
+
+	@Test
+	public void separatorsOnly() {
+
+		//lines of only separators are empty scans, as with String.split
+		byte[] text = ",\n , ,\n".getBytes(StandardCharsets.UTF_8);
+		List<Spectrum> scans = new PlainTextParser().parseLines(ByteBuffer.wrap(text), 0, text.length);
+
+		Assert.assertEquals(2, scans.size());
+		Assert.assertEquals(0, scans.get(0).size());
+		Assert.assertEquals(0, scans.get(1).size());
+
+	}
+
+	private static float parse(String token) {
+		byte[] bytes = token.getBytes(StandardCharsets.UTF_8);
+		return PlainTextParser.parseFloat(ByteBuffer.wrap(bytes), 0, bytes.length);
+	}
+
+	private static float expected(String token) {
+		try {
+			return Float.parseFloat(token);
+		} catch (NumberFormatException e) {
+			return 0f;
+		}
+	}
+
+}
@@ -0,0 +1,57 @@
+package peakaboo.datasource;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import peakaboo.common.PeakabooConfiguration;
+import peakaboo.datasource.model.components.scandata.MappedScanData;
+import peakaboo.datasource.model.components.scandata.ScanData;
+import peakaboo.datasource.model.components.scandata.SimpleScanData;
+import peakaboo.datasource.plugin.plugins.PlainText;
+
+public class PlainTextTests {
+
+	@Test
+	public void storage() throws Exception {
+
+		Path file = Files.createTempFile("peakaboo", ".txt");
+		long mappedstoreSize = PeakabooConfiguration.mappedstoreSize;
+		try {
+			Files.write(file, "1 2 3\n4 5 6\n7 8 9\n".getBytes(StandardCharsets.UTF_8));
+
+			//small files are compressed
+			ScanData small = read(file);
+			Assert.assertTrue(small instanceof SimpleScanData);
+
+			//files over the limit are memory-mapped
+			PeakabooConfiguration.mappedstoreSize = 0;
+			ScanData large = read(file);
+			Assert.assertTrue(large instanceof MappedScanData);
+
+			Assert.assertEquals(3, large.scanCount());
+			for (int i = 0; i < 3; i++) {
+				Assert.assertEquals(small.get(i).size(), large.get(i).size());
+				for (int j = 0; j < small.get(i).size(); j++) {
+					Assert.assertEquals(small.get(i).get(j), large.get(i).get(j), 0f);
+				}
+			}
+			((MappedScanData) large).close();
+		} finally {
+			PeakabooConfiguration.mappedstoreSize = mappedstoreSize;
+			Files.delete(file);
+		}
+
+	}
+
+	private static ScanData read(Path file) throws Exception {
+		PlainText source = new PlainText();
+		source.read(Collections.singletonList(file));
+		return source.getScanData();
+	}
+
+}
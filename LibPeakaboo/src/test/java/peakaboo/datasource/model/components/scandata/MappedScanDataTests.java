@@ -0,0 +1,100 @@
+package peakaboo.datasource.model.components.scandata;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import cyclops.ISpectrum;
+import cyclops.ReadOnlySpectrum;
+import cyclops.Spectrum;
+import peakaboo.datasource.model.components.scandata.loaderqueue.LoaderQueue;
+
+public class MappedScanDataTests {
+
+	@Test
+	public void main() throws IOException {
+
+		MappedScanData data = new MappedScanData("Test", 4, 0);
+		data.add(new float[] {1, 2, 3, 4});
+		data.set(3, new float[] {5, 6, 7, 8});
+
+		Assert.assertEquals(4, data.scanCount());
+		Assert.assertEquals(3f, data.get(0).get(2), 0f);
+		Assert.assertEquals(8f, data.get(3).get(3), 0f);
+
+		//scans which were never written are null
+		Assert.assertNull(data.get(1));
+
+		Spectrum target = new ISpectrum(4);
+		Assert.assertTrue(data.getInto(3, target));
+		Assert.assertEquals(5f, target.get(0), 0f);
+		Assert.assertFalse(data.getInto(2, target));
+
+		//appending continues after the last written scan
+		data.add(new float[] {9, 10, 11, 12});
+		ReadOnlySpectrum last = data.get(4);
+		Assert.assertEquals(12f, last.get(3), 0f);
+
+		data.close();
+
+	}
+
+	@Test
+	public void windows() throws IOException {
+
+		//3 scans of 16 channels per window, so that scans are spread over many mappings
+		MappedScanData data = new MappedScanData("Test", 16, 0, 3 * 16 * Float.BYTES);
+		IntStream.range(0, 50).parallel().forEach(i -> data.set(i, scan(i)));
+
+		Assert.assertEquals(50, data.scanCount());
+		for (int i = 0; i < 50; i++) {
+			assertScan(scan(i), data.get(i));
+		}
+
+		data.close();
+
+	}
+
+	@Test
+	public void loaderQueue() throws IOException, InterruptedException {
+
+		MappedScanData data = new MappedScanData("Test", 16, 10);
+		List<Integer> seen = new ArrayList<>();
+		data.addSubmitListener((index, spectrum) -> seen.add(index));
+
+		LoaderQueue queue = data.createLoaderQueue();
+		queue.submit(scan(0));
+		queue.submit(scan(1));
+		queue.submit(5, scan(5));
+		queue.submit(scan(6));
+		queue.finish();
+
+		Assert.assertEquals(7, data.scanCount());
+		Assert.assertArrayEquals(new Integer[] {0, 1, 5, 6}, seen.toArray());
+		assertScan(scan(6), data.get(6));
+		Assert.assertNull(data.get(2));
+
+		data.close();
+
+	}
+
+	private static void assertScan(float[] expected, ReadOnlySpectrum actual) {
+		Assert.assertEquals(expected.length, actual.size());
+		for (int i = 0; i < expected.length; i++) {
+			Assert.assertEquals(expected[i], actual.get(i), 0f);
+		}
+	}
+
+	private static float[] scan(int index) {
+		float[] values = new float[16];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = index * 100 + i;
+		}
+		return values;
+	}
+
+}
@@ -0,0 +1,139 @@
+package peakaboo.datasource.model.components.scandata.loaderqueue;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import cyclops.ISpectrum;
+import cyclops.Spectrum;
+import net.sciencestudio.scratch.single.Compressed;
+import peakaboo.datasource.model.components.scandata.SimpleScanData;
+
+public class ParallelLoaderQueueTests {
+
+	@Test
+	public void order() throws InterruptedException {
+
+		SimpleScanData data = new SimpleScanData("Test");
+		ParallelLoaderQueue queue = new ParallelLoaderQueue(data, 16, 4);
+		for (int i = 0; i < 500; i++) {
+			queue.submit(scan(i));
+		}
+		//repeated sets of one index are applied in the order they were submitted
+		for (int i = 0; i < 50; i++) {
+			queue.submit(10, scan(1000 + i));
+		}
+		queue.finish();
+
+		Assert.assertEquals(500, data.scanCount());
+		for (int i = 0; i < 500; i++) {
+			float expected = i == 10 ? 1049 : i;
+			Assert.assertEquals(expected, data.get(i).get(0), 0f);
+		}
+
+	}
+
+	@Test
+	public void storeFailure() throws InterruptedException {
+
+		//fails to store the fourth spectrum
+		SimpleScanData data = new SimpleScanData("Test") {
+			@Override
+			public void add(Compressed<Spectrum> compressed) {
+				if (scanCount() == 3) throw new IllegalStateException();
+				super.add(compressed);
+			}
+
+			@Override
+			public void add(Spectrum spectrum) {
+				if (scanCount() == 3) throw new IllegalStateException();
+				super.add(spectrum);
+			}
+		};
+		ParallelLoaderQueue queue = new ParallelLoaderQueue(data, 16, 2);
+		try {
+			for (int i = 0; i < 100; i++) {
+				queue.submit(scan(i));
+			}
+			queue.finish();
+			Assert.fail("The failure to store a spectrum was not reported");
+		} catch (CompletionException e) {
+			Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+
+	}
+
+	@Test
+	public void consumerInterrupted() throws InterruptedException {
+
+		CountDownLatch storing = new CountDownLatch(1);
+		AtomicReference<Thread> consumer = new AtomicReference<>();
+
+		//blocks the consumer thread in its first store until it is interrupted
+		SimpleScanData data = new SimpleScanData("Test") {
+			@Override
+			public void add(Compressed<Spectrum> compressed) {
+				block();
+				super.add(compressed);
+			}
+
+			@Override
+			public void add(Spectrum spectrum) {
+				block();
+				super.add(spectrum);
+			}
+
+			private void block() {
+				if (consumer.compareAndSet(null, Thread.currentThread())) {
+					storing.countDown();
+					try {
+						new CountDownLatch(1).await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}
+		};
+
+		//one spectrum per batch and room for two batches in the queue
+		ParallelLoaderQueue queue = new ParallelLoaderQueue(data, 2, 1);
+		AtomicReference<Throwable> submitFailure = new AtomicReference<>();
+		Thread submitter = new Thread(() -> {
+			try {
+				for (int i = 0; i < 20; i++) {
+					queue.submit(scan(i));
+				}
+			} catch (Throwable e) {
+				submitFailure.set(e);
+			}
+		});
+		submitter.start();
+
+		Assert.assertTrue(storing.await(5, TimeUnit.SECONDS));
+		consumer.get().interrupt();
+
+		//the submitter, waiting on the full queue, is released with the failure
+		submitter.join(5000);
+		Assert.assertFalse(submitter.isAlive());
+		Assert.assertTrue(submitFailure.get() instanceof CompletionException);
+
+		try {
+			queue.finish();
+			Assert.fail("The interrupted consumer was not reported");
+		} catch (CompletionException e) {
+			Assert.assertTrue(e.getCause() instanceof InterruptedException);
+		}
+
+	}
+
+	private static Spectrum scan(int value) {
+		Spectrum scan = new ISpectrum(16);
+		scan.set(0, value);
+		return scan;
+	}
+
+}
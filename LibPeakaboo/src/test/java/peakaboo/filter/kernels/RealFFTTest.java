@@ -0,0 +1,47 @@
+package peakaboo.filter.kernels;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RealFFTTest {
+
+	@Test
+	public void test() {
+		
+		for (int size : new int[] {2, 4, 8, 64, 2048}) {
+			
+			Random random = new Random(size);
+			double[] data = new double[size];
+			for (int i = 0; i < size; i++) {
+				data[i] = random.nextDouble() * 100.0;
+			}
+			
+			RealFFT fft = RealFFT.forSize(size);
+			double[] re = new double[fft.frequencies()];
+			double[] im = new double[fft.frequencies()];
+			fft.forward(data, re, im);
+			
+			//compare against a direct DFT
+			for (int k = 0; k < fft.frequencies(); k++) {
+				double expectedRe = 0, expectedIm = 0;
+				for (int n = 0; n < size; n++) {
+					double angle = -2 * Math.PI * k * n / size;
+					expectedRe += data[n] * Math.cos(angle);
+					expectedIm += data[n] * Math.sin(angle);
+				}
+				Assert.assertEquals(expectedRe, re[k], 1e-6 * size * 100);
+				Assert.assertEquals(expectedIm, im[k], 1e-6 * size * 100);
+			}
+			
+			//and transform back again
+			double[] result = new double[size];
+			fft.inverse(re, im, result);
+			Assert.assertArrayEquals(data, result, 1e-9 * size * 100);
+			
+		}
+		
+	}
+	
+}
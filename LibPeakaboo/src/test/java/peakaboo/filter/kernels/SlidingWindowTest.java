@@ -0,0 +1,34 @@
+package peakaboo.filter.kernels;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SlidingWindowTest {
+
+	private float[] data() {
+		Random random = new Random(1);
+		float[] data = new float[500];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = random.nextFloat() * 100f;
+		}
+		return data;
+	}
+	
+	@Test
+	public void sums() {
+		float[] data = data();
+		double[] sums = SlidingWindow.prefixSums(data);
+		for (int start = 0; start < data.length; start += 7) {
+			for (int stop = start; stop <= data.length; stop += 13) {
+				float expected = 0;
+				for (int i = start; i < stop; i++) {
+					expected += data[i];
+				}
+				Assert.assertEquals(expected, SlidingWindow.sum(sums, start, stop), 0.01f);
+			}
+		}
+	}
+	
+}
@@ -0,0 +1,140 @@
+package peakaboo.filter.model;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import cyclops.ISpectrum;
+import cyclops.ReadOnlySpectrum;
+import peakaboo.datasource.model.components.scandata.ScanData;
+import peakaboo.filter.plugins.mathematical.AdditionMathFilter;
+import peakaboo.filter.plugins.mathematical.MultiplicationMathFilter;
+
+public class FilteredScanCacheTest {
+
+	//counts how many times a scan is read, and has no scan at index 2
+	private static class CountingScanData implements ScanData {
+		int reads = 0;
+
+		@Override
+		public ReadOnlySpectrum get(int index) throws IndexOutOfBoundsException {
+			reads++;
+			if (index == 2) return null;
+			return new ISpectrum(new float[] {1, 2, 3, 4});
+		}
+
+		@Override
+		public int scanCount() {
+			return 8;
+		}
+
+		@Override
+		public String scanName(int index) {
+			return "Scan #" + (index+1);
+		}
+
+		@Override
+		public float maxEnergy() {
+			return 0;
+		}
+
+		@Override
+		public float minEnergy() {
+			return 0;
+		}
+
+		@Override
+		public String datasetName() {
+			return "Test";
+		}
+	}
+	
+	private FilterPlan multiply() {
+		Filter filter = new MultiplicationMathFilter();
+		filter.initialize();
+		return new FilterPlan(Collections.singletonList(filter));
+	}
+	
+	private FilterPlan multiplyAndAdd() {
+		Filter multiply = new MultiplicationMathFilter();
+		multiply.initialize();
+		Filter add = new AdditionMathFilter();
+		add.initialize();
+		return new FilterPlan(Arrays.asList(multiply, add));
+	}
+	
+	@Test
+	public void hitsAndMisses() {
+		CountingScanData scans = new CountingScanData();
+		FilteredScanCache cache = new FilteredScanCache(1 << 20);
+		FilterPlan plan = multiply();
+		
+		Assert.assertEquals(3f, cache.get(scans, 0, plan).get(2), 0f);
+		Assert.assertEquals(1, cache.getMisses());
+		Assert.assertEquals(0, cache.getHits());
+		Assert.assertEquals(1, scans.reads);
+		
+		//a hit doesn't read the unfiltered scan
+		Assert.assertEquals(3f, cache.get(scans, 0, plan).get(2), 0f);
+		Assert.assertEquals(1, cache.getHits());
+		Assert.assertEquals(1, scans.reads);
+		
+		//missing scans are returned as null, and aren't cached
+		Assert.assertNull(cache.get(scans, 2, plan));
+		Assert.assertEquals(1, cache.size());
+	}
+	
+	@Test
+	public void planChanged() {
+		CountingScanData scans = new CountingScanData();
+		FilteredScanCache cache = new FilteredScanCache(1 << 20);
+		
+		cache.get(scans, 0, multiply());
+		//a plan with a different signature misses the cache
+		cache.get(scans, 0, multiplyAndAdd());
+		Assert.assertEquals(2, cache.getMisses());
+		Assert.assertEquals(0, cache.getHits());
+		Assert.assertEquals(2, scans.reads);
+		
+		//an equal plan compiled again hits the cache
+		cache.get(scans, 0, multiply());
+		Assert.assertEquals(1, cache.getHits());
+		
+		//a different ScanData invalidates the whole cache
+		cache.get(new CountingScanData(), 0, multiply());
+		Assert.assertEquals(3, cache.getMisses());
+		Assert.assertEquals(1, cache.size());
+	}
+	
+	@Test
+	public void full() {
+		CountingScanData scans = new CountingScanData();
+		FilterPlan plan = multiply();
+		
+		//find out how large one cached scan is, and make room for two and a half
+		FilteredScanCache sizing = new FilteredScanCache(1 << 20);
+		sizing.get(scans, 0, plan);
+		long scanBytes = sizing.getUsed();
+		FilteredScanCache cache = new FilteredScanCache(scanBytes * 5 / 2);
+		
+		//once full, the first scans are kept rather than evicted for later ones
+		for (int i = 3; i < 8; i++) {
+			cache.get(scans, i, plan);
+		}
+		Assert.assertEquals(2, cache.size());
+		for (int i = 3; i < 8; i++) {
+			cache.get(scans, i, plan);
+		}
+		Assert.assertEquals(2, cache.getHits());
+		Assert.assertEquals(8, cache.getMisses());
+		
+		//another plan evicts the scans from the old one to make room
+		cache.get(scans, 3, multiplyAndAdd());
+		Assert.assertEquals(1, cache.size());
+		cache.get(scans, 3, plan);
+		Assert.assertEquals(2, cache.getHits());
+	}
+	
+}
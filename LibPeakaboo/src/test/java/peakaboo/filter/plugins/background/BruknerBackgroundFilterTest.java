@@ -0,0 +1,86 @@
+package peakaboo.filter.plugins.background;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import cyclops.ISpectrum;
+import cyclops.Spectrum;
+
+public class BruknerBackgroundFilterTest {
+
+	private Spectrum data() {
+		Random random = new Random(1);
+		Spectrum data = new ISpectrum(2048);
+		for (int i = 0; i < data.size(); i++) {
+			//a noisy background with a few strong peaks
+			float value = 50f + random.nextFloat() * 20f;
+			if (i % 300 < 10) value += 5000f * random.nextFloat();
+			data.set(i, value);
+		}
+		return data;
+	}
+
+	/**
+	 * The background calculated from prefix sums stays within float rounding of
+	 * the background calculated by summing every window one channel at a time
+	 */
+	@Test
+	public void rounding() {
+		Spectrum data = data();
+		for (int windowSize : new int[] {1, 10, 100, 400}) {
+			for (int repetitions : new int[] {1, 2, 10}) {
+				Spectrum expected = reference(data, windowSize, repetitions);
+				Spectrum actual = BruknerBackgroundFilter.calcBackgroundBrukner(data, windowSize, repetitions);
+				Assert.assertEquals(expected.size(), actual.size());
+				float tolerance = expected.max() * 1e-4f;
+				for (int i = 0; i < expected.size(); i++) {
+					Assert.assertEquals(expected.get(i), actual.get(i), tolerance);
+				}
+			}
+		}
+	}
+
+	//the Brukner background, summing each window in float one channel at a time
+	private Spectrum reference(Spectrum data, int windowSize, int repetitions) {
+		float Iavg = data.sum() / data.size();
+		float Imin = data.min();
+		float diff = Iavg - Imin;
+		float cutoff = Iavg + 2 * diff;
+
+		Spectrum result = new ISpectrum(data);
+		for (int i = 0; i < result.size(); i++) {
+			if (result.get(i) > cutoff) result.set(i, cutoff);
+		}
+
+		Spectrum result2 = new ISpectrum(result.size());
+		int i = 0;
+		while (repetitions > 0) {
+			iteration(result, result2, windowSize);
+			i++;
+			if (i > repetitions) {
+				result = result2;
+				break;
+			}
+			iteration(result2, result, windowSize);
+			i++;
+			if (i > repetitions) break;
+		}
+		return result;
+	}
+
+	private void iteration(Spectrum source, Spectrum target, int windowSize) {
+		for (int i = 0; i < source.size(); i++) {
+			int start = Math.max(i - windowSize, 0);
+			int stop = Math.min(i + windowSize+1, source.size() - 1);
+			float sum = 0;
+			for (int j = start; j < stop; j++) {
+				sum += source.get(j);
+			}
+			float average = sum / (windowSize * 2 + 1);
+			target.set(i, Math.min(average, source.get(i)));
+		}
+	}
+
+}
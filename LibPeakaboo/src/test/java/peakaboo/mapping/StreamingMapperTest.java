@@ -0,0 +1,89 @@
+package peakaboo.mapping;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import cyclops.ISpectrum;
+import cyclops.ReadOnlySpectrum;
+import peakaboo.curvefit.curve.fitting.FittingSet;
+import peakaboo.curvefit.curve.fitting.fitter.CurveFitter;
+import peakaboo.curvefit.curve.fitting.fitter.UnderCurveFitter;
+import peakaboo.curvefit.curve.fitting.solver.FittingSolver;
+import peakaboo.curvefit.curve.fitting.solver.GreedyFittingSolver;
+import peakaboo.curvefit.peak.table.Element;
+import peakaboo.curvefit.peak.table.PeakTable;
+import peakaboo.curvefit.peak.transition.TransitionShell;
+import peakaboo.datasource.model.components.scandata.ScanData;
+import peakaboo.filter.model.FilterSet;
+import peakaboo.mapping.results.MapResultSet;
+
+public class StreamingMapperTest {
+
+	private static ScanData scans(int count, int channels) {
+		return new ScanData() {
+
+			@Override
+			public ReadOnlySpectrum get(int index) {
+				ISpectrum scan = new ISpectrum(channels);
+				scan.set(channels / 3, 100f);
+				return scan;
+			}
+
+			@Override
+			public int scanCount() {
+				return count;
+			}
+
+			@Override
+			public String scanName(int index) {
+				return "Scan #" + (index+1);
+			}
+
+			@Override
+			public float maxEnergy() {
+				return 20.48f;
+			}
+
+			@Override
+			public float minEnergy() {
+				return 0;
+			}
+
+			@Override
+			public String datasetName() {
+				return "Test";
+			}
+		};
+	}
+
+	@Test
+	public void recalibrated() throws InterruptedException {
+		FilterSet filters = new FilterSet();
+		FittingSet fittings = new FittingSet();
+		fittings.getFittingParameters().setCalibration(0, 20.48f, 2048);
+		fittings.addTransitionSeries(PeakTable.SYSTEM.get(Element.Fe, TransitionShell.K));
+		CurveFitter fitter = new UnderCurveFitter();
+		FittingSolver solver = new GreedyFittingSolver();
+
+		StreamingMapper mapper = new StreamingMapper(filters, fittings, fitter, solver, 0);
+		Assert.assertTrue(mapper.matches(filters, fittings, fitter, solver));
+
+		//loading a data set with a different channel count recalibrates the fittings
+		fittings.getFittingParameters().setCalibration(0, 20.48f, 4096);
+		Assert.assertFalse(mapper.matches(filters, fittings, fitter, solver));
+
+		//the mapper keeps fitting with the calibration it started with
+		MapResultSet maps = mapper.finish(scans(5, 2048));
+		Assert.assertEquals(5, maps.size());
+		Assert.assertEquals(5, mapper.mappedCount());
+		Assert.assertTrue(mapper.getResult().isPresent());
+
+		//and skips spectra its curves can't be fitted to
+		StreamingMapper other = new StreamingMapper(filters, fittings, fitter, solver, 0);
+		other.finish(scans(5, 2048));
+		Assert.assertEquals(0, other.mappedCount());
+		Assert.assertTrue(other.matches(filters, fittings, fitter, solver));
+		Assert.assertFalse(other.matches(filters, fittings, fitter, new GreedyFittingSolver()));
+	}
+
+}
@@ -0,0 +1,65 @@
+package peakaboo.mapping.selection;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SelectionTest {
+
+	@Test
+	public void dilate() {
+
+		Random random = new Random(1);
+		for (int test = 0; test < 1000; test++) {
+			int width = 1 + random.nextInt(12);
+			int height = 1 + random.nextInt(12);
+			double density = random.nextDouble();
+
+			Set<Integer> points = new HashSet<>();
+			for (int i = 0; i < width * height; i++) {
+				if (random.nextDouble() < density) points.add(i);
+			}
+
+			//compare against growing each point on its own
+			Set<Integer> expected = new HashSet<>(points);
+			for (int point : points) {
+				int x = point % width, y = point / width;
+				if (x > 0) expected.add(point - 1);
+				if (x < width - 1) expected.add(point + 1);
+				if (y > 0) expected.add(point - width);
+				if (y < height - 1) expected.add(point + width);
+			}
+
+			Selection dilated = Selection.of(points).dilate(width, height);
+			Assert.assertEquals(expected, new HashSet<>(dilated.asList()));
+		}
+
+	}
+
+	@Test
+	public void operations() {
+
+		Selection box = Selection.rectangle(10, 5, 2, 1, 4);
+		Assert.assertEquals(15, box.size());
+		Assert.assertEquals(21, box.get(0));
+		Assert.assertEquals(1, box.positionOf(22));
+		Assert.assertEquals(-1, box.positionOf(20));
+
+		Selection row = Selection.rectangle(10, 0, 2, 9, 2);
+		Assert.assertEquals(20, box.union(row).size());
+		Assert.assertEquals(10, box.difference(row).size());
+		Assert.assertFalse(box.difference(row).contains(23));
+
+		//the list view answers lookups from the Selection
+		Assert.assertTrue(box.asList().contains(22));
+		Assert.assertFalse(box.asList().contains(20));
+		Assert.assertFalse(box.asList().contains("22"));
+		Assert.assertEquals(1, box.asList().indexOf(22));
+		Assert.assertEquals(-1, box.asList().indexOf(-1));
+
+	}
+
+}
@@ -332,7 +332,7 @@ public class MapperPanel extends TabbedLayerPanel {
 			Mapper mapper = new Mapper();
 			MapRenderData data = new MapRenderData();
 			data.compositeData = controller.getSettings().getMapFittings().getCompositeMapData(Optional.of(ts));
-			data.maxIntensity = controller.getSettings().getMapFittings().sumAllTransitionSeriesMaps().max();
+			data.maxIntensity = controller.getSettings().getMapFittings().getMaxIntensity();
 			
 			//image
 			String ext = "";
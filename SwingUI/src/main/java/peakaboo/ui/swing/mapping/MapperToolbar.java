@@ -5,7 +5,6 @@ import static java.util.stream.Collectors.toList;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.Insets;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -27,6 +26,7 @@ import peakaboo.controller.mapper.settings.PointsSelection;
 import peakaboo.controller.settings.SavedSession;
 import peakaboo.curvefit.peak.transition.ITransitionSeries;
 import peakaboo.datasource.model.internal.SubsetDataSource;
+import peakaboo.mapping.selection.Selection;
 import peakaboo.ui.swing.Peakaboo;
 import peakaboo.ui.swing.calibration.concentration.ConcentrationView;
 import peakaboo.ui.swing.plotting.PlotPanel;
@@ -73,16 +73,16 @@ class MapperToolbar extends JToolBar {
 			
 			showConcentrations.addActionListener(e -> {
 				
-				List<Integer> indexes = new ArrayList<>();
-				
 				AreaSelection areaSelection = controller.getSettings().getAreaSelection();
 				PointsSelection pointsSelection = controller.getSettings().getPointsSelection();
 				
+				Selection selection = Selection.NONE;
 				if (areaSelection.hasSelection()) {
-					indexes.addAll(areaSelection.getPoints());
+					selection = areaSelection.getPoints();
 				} else if (pointsSelection.hasSelection()) {
-					indexes.addAll(pointsSelection.getPoints());
+					selection = pointsSelection.getPoints();
 				}
+				int[] indexes = selection.toArray();
 				
 				List<ITransitionSeries> tss = controller.mapsController.getMapResultSet().stream().map(r -> r.transitionSeries).collect(toList());
 				Function<ITransitionSeries, Float> intensityFunction = ts -> {
@@ -92,7 +92,7 @@ class MapperToolbar extends JToolBar {
 					for (int index : indexes) {
 						sum += data.get(index);
 					}
-					return sum /= indexes.size();
+					return sum /= indexes.length;
 				};
 				Concentrations ppm = Concentrations.calculate(tss, controller.getSettings().getMapFittings().getCalibrationProfile(), intensityFunction);
 				
@@ -126,7 +126,7 @@ class MapperToolbar extends JToolBar {
 			//TODO: Is there a better way to do this?
 			settings.data.discards = settings.data.discards.stream()
 					.map(index -> sds.getUpdatedIndex(index))
-					.filter(index -> index > 0)
+					.filter(index -> index >= 0)
 					.collect(Collectors.toList()
 				);
 		
@@ -22,6 +22,7 @@ import peakaboo.curvefit.curve.fitting.fitter.OptimizingCurveFitter;
 import peakaboo.curvefit.curve.fitting.fitter.UnderCurveFitter;
 import peakaboo.curvefit.curve.fitting.solver.FittingSolver;
 import peakaboo.curvefit.curve.fitting.solver.GreedyFittingSolver;
+import peakaboo.curvefit.curve.fitting.solver.LeastSquaresFittingSolver;
 import peakaboo.curvefit.curve.fitting.solver.MultisamplingOptimizingFittingSolver;
 import peakaboo.curvefit.curve.fitting.solver.OptimizingFittingSolver;
 import peakaboo.curvefit.peak.escape.EscapePeak;
@@ -137,7 +138,8 @@ public class AdvancedOptionsPanel extends HeaderLayer {
 				f -> controller.fitting().setFittingSolver(f), 
 				new GreedyFittingSolver(),
 				new OptimizingFittingSolver(),
-				new MultisamplingOptimizingFittingSolver()
+				new MultisamplingOptimizingFittingSolver(),
+				new LeastSquaresFittingSolver()
 			);
 		build(panel, solversBox, "Multi-Curve Solver", "The strategy used to determine how overlapping element emission curves coexist.", true);
 		
@@ -651,6 +651,12 @@ public class PlotPanel extends TabbedLayerPanel
 
 		if (!controller.data().hasDataSet()) return;
 
+		//maps made while the data set was loading can be shown right away, if nothing has changed since
+		Optional<MapResultSet> streamed = controller.getStreamedMaps();
+		if (streamed.isPresent()) {
+			showMaps(streamed.get());
+			return;
+		}
 
 		StreamExecutor<MapResultSet> mapTask = controller.getMapTask();
 		if (mapTask == null) return;
@@ -674,39 +680,7 @@ public class PlotPanel extends TabbedLayerPanel
 			if (!mapTask.getResult().isPresent()) { return; }
 			
 			
-			MapperFrame mapperWindow;
-			MapResultSet results = mapTask.getResult().get();
-			MapSetController mapData = new MapSetController();
-			
-
-			Coord<Integer> dataDimensions = null;
-			Coord<Bounds<Number>> physicalDimensions = null;
-			SISize physicalUnit = null;
-			
-			Optional<PhysicalSize> physical = controller.data().getDataSet().getPhysicalSize();
-			if (physical.isPresent()) {
-				physicalDimensions = physical.get().getPhysicalDimensions();
-				physicalUnit = physical.get().getPhysicalUnit();
-			}
-			
-			if (controller.data().getDataSet().hasGenuineDataSize()) {
-				dataDimensions = controller.data().getDataSet().getDataSize().getDataDimensions();
-			}
-			
-			mapData.setMapData(
-					results,
-					controller.data().getDataSet().getScanData().datasetName(),
-					controller.data().getDiscards().list(),
-					dataDimensions,
-					physicalDimensions,
-					physicalUnit,
-					controller.calibration().getCalibrationProfile()
-				);
-			
-			
-			mapperWindow = new MapperFrame(getTabbedInterface(), mapData, null, controller);
-
-			mapperWindow.setVisible(true);
+			showMaps(mapTask.getResult().get());
 
 		});
 		
@@ -716,6 +690,47 @@ public class PlotPanel extends TabbedLayerPanel
 
 
 	}
+	
+	private void showMaps(MapResultSet results) {
+		MapSetController mapData = new MapSetController();
+		setMapData(mapData, results);
+		
+		MapperFrame mapperWindow = new MapperFrame(getTabbedInterface(), mapData, null, controller);
+		mapperWindow.setVisible(true);
+	}
+
+
+	/**
+	 * Sets the given maps, along with the current data set's dimensions and 
+	 * other details, as the data for the given {@link MapSetController}
+	 */
+	private void setMapData(MapSetController mapData, MapResultSet results) {
+		
+		Coord<Integer> dataDimensions = null;
+		Coord<Bounds<Number>> physicalDimensions = null;
+		SISize physicalUnit = null;
+		
+		Optional<PhysicalSize> physical = controller.data().getDataSet().getPhysicalSize();
+		if (physical.isPresent()) {
+			physicalDimensions = physical.get().getPhysicalDimensions();
+			physicalUnit = physical.get().getPhysicalUnit();
+		}
+		
+		if (controller.data().getDataSet().hasGenuineDataSize()) {
+			dataDimensions = controller.data().getDataSet().getDataSize().getDataDimensions();
+		}
+		
+		mapData.setMapData(
+				results,
+				controller.data().getDataSet().getScanData().datasetName(),
+				controller.data().getDiscards().list(),
+				dataDimensions,
+				physicalDimensions,
+				physicalUnit,
+				controller.calibration().getCalibrationProfile()
+			);
+		
+	}
 
 
 	public void actionSaveSession()
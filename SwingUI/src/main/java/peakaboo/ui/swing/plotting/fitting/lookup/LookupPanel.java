@@ -8,7 +8,9 @@ import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import javax.swing.JPanel;
@@ -125,7 +127,7 @@ public class LookupPanel extends ClearPanel implements Changeable
 		
 	}
 	
-	private boolean match(Element e) {
+	private boolean match(Element e, Set<Element> nearEnergy) {
 			
 		if (PeakTable.SYSTEM.getForElement(e).size() == 0) return false;
 		
@@ -136,12 +138,31 @@ public class LookupPanel extends ClearPanel implements Changeable
 		if ((e.name().toLowerCase()).contains(query)) return true;
 		if ((e.toString().toLowerCase()).contains(query)) return true;
 		if ((e.atomicNumber()+"").toLowerCase().contains(query)) return true;
+		if (nearEnergy.contains(e)) return true;
 		return false;
 		
 	}
 
 	private void filter() {
-		filtered = Arrays.asList(Element.values()).stream().filter(this::match).collect(Collectors.toList());
+		Set<Element> nearEnergy = elementsNearEnergy();
+		filtered = Arrays.asList(Element.values()).stream().filter(e -> match(e, nearEnergy)).collect(Collectors.toList());
+	}
+	
+	//if the query looks like an energy in keV (eg 6.4), find the elements with a line within one FWHM of it
+	private Set<Element> elementsNearEnergy() {
+		if (!query.contains(".")) {
+			return Collections.emptySet();
+		}
+		float energy;
+		try {
+			energy = Float.parseFloat(query);
+		} catch (NumberFormatException e) {
+			return Collections.emptySet();
+		}
+		return controller.getFittingSelections().getFittingParameters().getTransitionIndex().near(energy)
+				.stream()
+				.map(ITransitionSeries::getElement)
+				.collect(Collectors.toSet());
 	}
 
 	public void changed()
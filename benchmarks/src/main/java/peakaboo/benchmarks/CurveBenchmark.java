@@ -0,0 +1,105 @@
+package peakaboo.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import peakaboo.curvefit.curve.fitting.Curve;
+import peakaboo.curvefit.curve.fitting.CurveCache;
+import peakaboo.curvefit.curve.fitting.FittingParameters;
+import peakaboo.curvefit.curve.fitting.FittingSet;
+import peakaboo.curvefit.peak.fitting.FittingFunction;
+import peakaboo.curvefit.peak.fitting.functions.ConvolvingVoigtFittingFunction;
+import peakaboo.curvefit.peak.fitting.functions.GaussianFittingFunction;
+import peakaboo.curvefit.peak.fitting.functions.IdaFittingFunction;
+import peakaboo.curvefit.peak.fitting.functions.LorentzFittingFunction;
+import peakaboo.curvefit.peak.fitting.functions.PseudoVoigtFittingFunction;
+import peakaboo.curvefit.peak.table.Element;
+import peakaboo.curvefit.peak.table.PeakTable;
+import peakaboo.curvefit.peak.transition.ITransitionSeries;
+import peakaboo.curvefit.peak.transition.TransitionShell;
+
+/**
+ * Measures the cost of building a {@link Curve} with each
+ * {@link FittingFunction}, both for a single K series and for regenerating
+ * all of the curves in a {@link FittingSet}. The cold benchmarks clear the
+ * {@link CurveCache} first, so that every shape is generated, while the
+ * cached benchmarks measure curves whose shapes are already in the cache.
+ * <br/><br/>
+ * MixedFittingFunction is not included, since it only exists as a
+ * combination of two other functions.
+ *
+ * @author NAS
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CurveBenchmark {
+
+	@Param({"Gaussian", "Lorentz", "PseudoVoigt", "ConvolvingVoigt", "Ida"})
+	public String function;
+
+	private FittingParameters parameters;
+	private ITransitionSeries ts;
+	private FittingSet fittings;
+
+	@Setup
+	public void setup() {
+		fittings = SyntheticData.fittings();
+		fittings.getFittingParameters().setFittingFunction(functionClass(function));
+		parameters = fittings.getFittingParameters();
+		ts = PeakTable.SYSTEM.get(Element.Fe, TransitionShell.K);
+		CurveCache.clear();
+	}
+
+	@Benchmark
+	public Curve single() {
+		CurveCache.clear();
+		return new Curve(ts, parameters);
+	}
+
+	@Benchmark
+	public Curve singleCached() {
+		return new Curve(ts, parameters);
+	}
+
+	@Benchmark
+	public Object fittingSet() {
+		CurveCache.clear();
+		//changing the fwhm invalidates the curves in the same way the UI does
+		parameters.setFWMHBase(parameters.getFWHMBase());
+		return fittings.getCurves();
+	}
+
+	@Benchmark
+	public Object fittingSetCached() {
+		parameters.setFWMHBase(parameters.getFWHMBase());
+		return fittings.getCurves();
+	}
+
+	static Class<? extends FittingFunction> functionClass(String name) {
+		switch (name) {
+		case "Gaussian": return GaussianFittingFunction.class;
+		case "Lorentz": return LorentzFittingFunction.class;
+		case "PseudoVoigt": return PseudoVoigtFittingFunction.class;
+		case "ConvolvingVoigt": return ConvolvingVoigtFittingFunction.class;
+		case "Ida": return IdaFittingFunction.class;
+		default: throw new IllegalArgumentException("Unknown fitting function " + name);
+		}
+	}
+
+}
@@ -0,0 +1,76 @@
+package peakaboo.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cyclops.ReadOnlySpectrum;
+import cyclops.Spectrum;
+import peakaboo.filter.model.Filter;
+
+/**
+ * Measures each of the built-in filters under
+ * <code>peakaboo.filter.plugins</code> with its default parameters on a noisy
+ * synthetic spectrum.
+ * <br/><br/>
+ * SubFilter is not included, since it only wraps one of the other filters
+ * and requires the plugin manager to be loaded.
+ *
+ * @author NAS
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterBenchmark {
+
+	@Param({
+		"advanced.IdentityFilter",
+		"advanced.SpectrumNormalizationFilter",
+		"background.BruknerBackgroundFilter",
+		"background.LinearTrimBackgroundFilter",
+		"background.PolynomialBackgroundFilter",
+		"background.SquareSnipBackgroundFilter",
+		"mathematical.AdditionMathFilter",
+		"mathematical.DerivativeMathFilter",
+		"mathematical.IntegralMathFilter",
+		"mathematical.MultiplicationMathFilter",
+		"mathematical.SubtractionMathFilter",
+		"noise.FourierNoiseFilter",
+		"noise.LowStatisticsNoiseFilter",
+		"noise.SavitskyGolayNoiseFilter",
+		"noise.SpringNoiseFilter",
+		"noise.WaveletNoiseFilter",
+		"noise.WeightedAverageNoiseFilter"
+	})
+	public String filter;
+
+	private Filter instance;
+	private Spectrum data;
+
+	@Setup
+	public void setup() throws ReflectiveOperationException {
+		instance = (Filter) Class.forName("peakaboo.filter.plugins." + filter).newInstance();
+		instance.initialize();
+		data = SyntheticData.noisySpectrum(SyntheticData.SEED);
+	}
+
+	@Benchmark
+	public ReadOnlySpectrum filter() {
+		return instance.filter(data, false);
+	}
+
+}
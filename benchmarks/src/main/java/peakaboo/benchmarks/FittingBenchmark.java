@@ -0,0 +1,127 @@
+package peakaboo.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cyclops.Spectrum;
+import peakaboo.curvefit.curve.fitting.FittingResultSet;
+import peakaboo.curvefit.curve.fitting.FittingScales;
+import peakaboo.curvefit.curve.fitting.FittingSet;
+import peakaboo.curvefit.curve.fitting.FittingWorkspace;
+import peakaboo.curvefit.curve.fitting.fitter.CurveFitter;
+import peakaboo.curvefit.curve.fitting.fitter.LeastSquaresCurveFitter;
+import peakaboo.curvefit.curve.fitting.fitter.OptimizingCurveFitter;
+import peakaboo.curvefit.curve.fitting.fitter.UnderCurveFitter;
+import peakaboo.curvefit.curve.fitting.solver.FittingSolver;
+import peakaboo.curvefit.curve.fitting.solver.GreedyFittingSolver;
+import peakaboo.curvefit.curve.fitting.solver.LeastSquaresFittingSolver;
+import peakaboo.curvefit.curve.fitting.solver.MultisamplingOptimizingFittingSolver;
+import peakaboo.curvefit.curve.fitting.solver.OptimizingFittingSolver;
+
+/**
+ * Measures each {@link FittingSolver} with each {@link CurveFitter} on a
+ * noisy synthetic spectrum. The <code>scales</code> benchmark is the per-pixel
+ * cost seen by mapping, while <code>resultSet</code> includes building the
+ * full {@link FittingResultSet} as the plot does.
+ * <br/><br/>
+ * Run {@link #main(String[])} to print how far each pair's scales are from
+ * the true scales of the synthetic spectrum.
+ *
+ * @author NAS
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FittingBenchmark {
+
+	@Param({"Greedy", "Optimizing", "MultisamplingOptimizing", "LeastSquares"})
+	public String solver;
+
+	@Param({"UnderCurve", "Optimizing", "LeastSquares"})
+	public String fitter;
+
+	private FittingSolver fittingSolver;
+	private CurveFitter curveFitter;
+	private FittingSet fittings;
+	private FittingWorkspace workspace;
+	private Spectrum data;
+
+	@Setup
+	public void setup() {
+		fittingSolver = solver(solver);
+		curveFitter = fitter(fitter);
+		fittings = SyntheticData.fittings();
+		fittings.getCurves();
+		workspace = new FittingWorkspace();
+		data = SyntheticData.noisySpectrum(SyntheticData.SEED);
+	}
+
+	@Benchmark
+	public FittingScales scales() {
+		return fittingSolver.solve(data, fittings, curveFitter, workspace);
+	}
+
+	@Benchmark
+	public FittingResultSet resultSet() {
+		return fittingSolver.solve(data, fittings, curveFitter);
+	}
+
+	static FittingSolver solver(String name) {
+		switch (name) {
+		case "Greedy": return new GreedyFittingSolver();
+		case "Optimizing": return new OptimizingFittingSolver();
+		case "MultisamplingOptimizing": return new MultisamplingOptimizingFittingSolver();
+		case "LeastSquares": return new LeastSquaresFittingSolver();
+		default: throw new IllegalArgumentException("Unknown fitting solver " + name);
+		}
+	}
+
+	static CurveFitter fitter(String name) {
+		switch (name) {
+		case "UnderCurve": return new UnderCurveFitter();
+		case "Optimizing": return new OptimizingCurveFitter();
+		case "LeastSquares": return new LeastSquaresCurveFitter();
+		default: throw new IllegalArgumentException("Unknown curve fitter " + name);
+		}
+	}
+
+	/**
+	 * Prints the mean relative error of the scales found by each solver and
+	 * fitter pair against the true scales of the noise-free synthetic spectrum
+	 */
+	public static void main(String[] args) throws NoSuchFieldException {
+		String[] solvers = FittingBenchmark.class.getField("solver").getAnnotation(Param.class).value();
+		String[] fitters = FittingBenchmark.class.getField("fitter").getAnnotation(Param.class).value();
+		FittingSet fittings = SyntheticData.fittings();
+		float[] truth = SyntheticData.scales();
+		Spectrum data = SyntheticData.spectrum();
+
+		for (String s : solvers) {
+			for (String f : fitters) {
+				FittingScales scales = solver(s).solve(data, fittings, fitter(f), new FittingWorkspace());
+				float error = 0;
+				for (int i = 0; i < scales.size(); i++) {
+					error += Math.abs(scales.getScale(i) - truth[i]) / truth[i];
+				}
+				error /= scales.size();
+				System.out.println(String.format("%-24s %-14s %8.3f%%", s, f, error * 100));
+			}
+		}
+	}
+
+}
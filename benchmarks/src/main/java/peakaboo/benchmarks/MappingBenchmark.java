@@ -0,0 +1,74 @@
+package peakaboo.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import peakaboo.curvefit.curve.fitting.FittingSet;
+import peakaboo.curvefit.curve.fitting.fitter.UnderCurveFitter;
+import peakaboo.curvefit.curve.fitting.solver.FittingSolver;
+import peakaboo.dataset.DataSet;
+import peakaboo.filter.model.FilterSet;
+import peakaboo.filter.plugins.background.BruknerBackgroundFilter;
+import peakaboo.filter.plugins.noise.WeightedAverageNoiseFilter;
+import peakaboo.mapping.Mapping;
+import peakaboo.mapping.results.MapResultSet;
+
+/**
+ * Measures {@link Mapping#mapTask} over synthetic maps of different sizes,
+ * with a typical background and noise filter chain.
+ *
+ * @author NAS
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MappingBenchmark {
+
+	@Param({"1024", "16384"})
+	public int scans;
+
+	@Param({"Greedy", "Optimizing", "LeastSquares"})
+	public String solver;
+
+	private DataSet dataset;
+	private FilterSet filters;
+	private FittingSet fittings;
+	private FittingSolver fittingSolver;
+
+	@Setup
+	public void setup() {
+		dataset = new SyntheticDataSet(scans);
+
+		filters = new FilterSet();
+		BruknerBackgroundFilter background = new BruknerBackgroundFilter();
+		background.initialize();
+		filters.add(background);
+		WeightedAverageNoiseFilter noise = new WeightedAverageNoiseFilter();
+		noise.initialize();
+		filters.add(noise);
+
+		fittings = SyntheticData.fittings();
+		fittingSolver = FittingBenchmark.solver(solver);
+	}
+
+	@Benchmark
+	public MapResultSet map() throws InterruptedException {
+		return Tasks.await(Mapping.mapTask(dataset, filters, fittings, new UnderCurveFitter(), fittingSolver));
+	}
+
+}
@@ -0,0 +1,74 @@
+package peakaboo.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cyclops.ReadOnlySpectrum;
+import cyclops.Spectrum;
+import peakaboo.common.PeakabooConfiguration;
+import peakaboo.datasource.model.components.scandata.SimpleScanData;
+
+/**
+ * Measures storing and retrieving spectra in a {@link SimpleScanData}, which
+ * compresses each spectrum and optionally keeps it on disk.
+ *
+ * @author NAS
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScanDataBenchmark {
+
+	private static final int SCANS = 4096;
+
+	@Param({"true", "false"})
+	public boolean diskstore;
+
+	private SimpleScanData scandata;
+	private Spectrum spectrum;
+	private int index;
+
+	@Setup(Level.Iteration)
+	public void setup() {
+		PeakabooConfiguration.diskstore = diskstore;
+		scandata = SyntheticData.scanData(SCANS);
+		spectrum = SyntheticData.noisySpectrum(SyntheticData.SEED);
+		index = 0;
+	}
+
+	@Benchmark
+	public void add() {
+		scandata.add(spectrum);
+	}
+
+	@Benchmark
+	public void set() {
+		scandata.set(index, spectrum);
+		index = (index + 1) % SCANS;
+	}
+
+	@Benchmark
+	public ReadOnlySpectrum get() {
+		ReadOnlySpectrum scan = scandata.get(index);
+		//stride through the scans so that consecutive reads don't share a disk page
+		index = (index + 997) % SCANS;
+		return scan;
+	}
+
+}
@@ -0,0 +1,71 @@
+package peakaboo.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cyclops.Spectrum;
+import peakaboo.controller.plotter.PlotController;
+import peakaboo.controller.plotter.fitting.AutoEnergyCalibration;
+import peakaboo.controller.plotter.fitting.FittingController;
+import peakaboo.curvefit.curve.fitting.EnergyCalibration;
+import peakaboo.curvefit.curve.fitting.FittingSet;
+import peakaboo.curvefit.curve.fitting.fitter.UnderCurveFitter;
+import peakaboo.curvefit.curve.fitting.solver.GreedyFittingSolver;
+import peakaboo.curvefit.peak.search.PeakProposal;
+import peakaboo.curvefit.peak.search.searcher.DerivativePeakSearcher;
+import peakaboo.curvefit.peak.transition.ITransitionSeries;
+
+/**
+ * Measures the two automatic searches: peak identification with
+ * {@link PeakProposal#search} and energy calibration detection with
+ * {@link AutoEnergyCalibration#propose}. Both run on the same noisy
+ * synthetic spectrum.
+ *
+ * @author NAS
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class SearchBenchmark {
+
+	private Spectrum data;
+	private List<ITransitionSeries> tss;
+	private FittingController controller;
+
+	@Setup
+	public void setup() throws IOException {
+		data = SyntheticData.noisySpectrum(SyntheticData.SEED);
+		tss = SyntheticData.transitionSeries();
+		controller = new PlotController(Files.createTempDirectory("peakaboo-benchmarks").toFile()).fitting();
+	}
+
+	@Benchmark
+	public List<ITransitionSeries> peakProposal() throws InterruptedException {
+		FittingSet fittings = new FittingSet();
+		fittings.getFittingParameters().setCalibration(SyntheticData.MIN_ENERGY, SyntheticData.MAX_ENERGY, SyntheticData.CHANNELS);
+		return Tasks.await(PeakProposal.search(data, new DerivativePeakSearcher(), fittings, new UnderCurveFitter(), new GreedyFittingSolver()));
+	}
+
+	@Benchmark
+	public EnergyCalibration autoEnergyCalibration() throws InterruptedException {
+		return Tasks.await(AutoEnergyCalibration.propose(data, tss, controller, SyntheticData.CHANNELS));
+	}
+
+}
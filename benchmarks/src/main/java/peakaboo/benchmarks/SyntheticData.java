@@ -0,0 +1,141 @@
+package peakaboo.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import cyclops.ISpectrum;
+import cyclops.Spectrum;
+import peakaboo.curvefit.curve.fitting.Curve;
+import peakaboo.curvefit.curve.fitting.FittingSet;
+import peakaboo.curvefit.peak.table.Element;
+import peakaboo.curvefit.peak.table.PeakTable;
+import peakaboo.curvefit.peak.transition.ITransitionSeries;
+import peakaboo.curvefit.peak.transition.TransitionShell;
+import peakaboo.datasource.model.components.scandata.SimpleScanData;
+
+/**
+ * Generates deterministic synthetic XRF spectra from {@link PeakTable#SYSTEM}
+ * so that benchmark runs on different machines and revisions fit, filter and
+ * map exactly the same data.
+ *
+ * @author NAS
+ *
+ */
+public class SyntheticData {
+
+	public static final int CHANNELS = 2048;
+	public static final float MIN_ENERGY = 0f;
+	public static final float MAX_ENERGY = 20.48f;
+	public static final long SEED = 0x5eedL;
+
+	//The elements present in the synthetic sample, and their relative concentrations
+	private static final Element[] ELEMENTS = {
+			Element.Ca, Element.Ti, Element.Fe, Element.Cu, Element.Zn, Element.As, Element.Sr, Element.Pb
+		};
+	private static final TransitionShell[] SHELLS = {
+			TransitionShell.K, TransitionShell.K, TransitionShell.K, TransitionShell.K, TransitionShell.K, TransitionShell.K, TransitionShell.K, TransitionShell.L
+		};
+	private static final float[] SCALES = {
+			400f, 150f, 2000f, 800f, 600f, 120f, 300f, 250f
+		};
+
+
+	/**
+	 * Returns the {@link ITransitionSeries} present in the synthetic sample
+	 */
+	public static List<ITransitionSeries> transitionSeries() {
+		List<ITransitionSeries> tss = new ArrayList<>();
+		for (int i = 0; i < ELEMENTS.length; i++) {
+			tss.add(PeakTable.SYSTEM.get(ELEMENTS[i], SHELLS[i]));
+		}
+		return tss;
+	}
+
+	/**
+	 * Returns the true scale of each of the {@link #transitionSeries()} in the
+	 * noise-free synthetic spectrum
+	 */
+	public static float[] scales() {
+		return SCALES.clone();
+	}
+
+	/**
+	 * Returns a new {@link FittingSet} calibrated for the synthetic spectra,
+	 * containing all of the {@link #transitionSeries()}
+	 */
+	public static FittingSet fittings() {
+		FittingSet fittings = new FittingSet();
+		fittings.getFittingParameters().setCalibration(MIN_ENERGY, MAX_ENERGY, CHANNELS);
+		for (ITransitionSeries ts : transitionSeries()) {
+			fittings.addTransitionSeries(ts);
+		}
+		return fittings;
+	}
+
+	/**
+	 * Returns a noise-free spectrum made of the {@link #transitionSeries()} at
+	 * their {@link #scales()} over a smooth background
+	 */
+	public static Spectrum spectrum() {
+		return spectrum(fittings(), SCALES, null);
+	}
+
+	/**
+	 * Returns a spectrum made of the {@link #transitionSeries()} at their
+	 * {@link #scales()} over a smooth background, with counting noise drawn
+	 * from the given seed
+	 */
+	public static Spectrum noisySpectrum(long seed) {
+		return spectrum(fittings(), SCALES, new Random(seed));
+	}
+
+	/**
+	 * Returns a {@link SimpleScanData} containing a map of the given number of
+	 * scans. The concentration of each element varies smoothly across the map
+	 * and every scan has its own counting noise.
+	 */
+	public static SimpleScanData scanData(int scanCount) {
+		FittingSet fittings = fittings();
+		Random random = new Random(SEED);
+		SimpleScanData scandata = new SimpleScanData("Synthetic");
+		scandata.setMinEnergy(MIN_ENERGY);
+		scandata.setMaxEnergy(MAX_ENERGY);
+		float[] scales = new float[SCALES.length];
+		for (int scan = 0; scan < scanCount; scan++) {
+			for (int i = 0; i < scales.length; i++) {
+				double phase = (double) scan / scanCount * Math.PI * (i+1);
+				scales[i] = (float) (SCALES[i] * (0.6 + 0.4 * Math.sin(phase)));
+			}
+			scandata.add(spectrum(fittings, scales, random));
+		}
+		return scandata;
+	}
+
+
+	private static Spectrum spectrum(FittingSet fittings, float[] scales, Random noise) {
+		Spectrum spectrum = new ISpectrum(CHANNELS);
+
+		//broad, slowly decaying scatter background
+		for (int i = 0; i < CHANNELS; i++) {
+			spectrum.set(i, (float) (20.0 * Math.exp(-i / 600.0) + 2.0));
+		}
+
+		List<Curve> curves = fittings.getVisibleCurves();
+		for (int i = 0; i < curves.size(); i++) {
+			curves.get(i).scaleOnto(scales[i], spectrum);
+		}
+
+		if (noise != null) {
+			//gaussian approximation of counting noise
+			for (int i = 0; i < CHANNELS; i++) {
+				float value = spectrum.get(i);
+				value += (float) (noise.nextGaussian() * Math.sqrt(value));
+				spectrum.set(i, Math.max(0f, value));
+			}
+		}
+
+		return spectrum;
+	}
+
+}
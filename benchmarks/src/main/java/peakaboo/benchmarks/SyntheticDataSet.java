@@ -0,0 +1,75 @@
+package peakaboo.benchmarks;
+
+import java.util.Optional;
+
+import peakaboo.dataset.DataSet;
+import peakaboo.dataset.analysis.Analysis;
+import peakaboo.dataset.analysis.DummyAnalysis;
+import peakaboo.datasource.model.DataSource;
+import peakaboo.datasource.model.components.datasize.DataSize;
+import peakaboo.datasource.model.components.metadata.Metadata;
+import peakaboo.datasource.model.components.physicalsize.PhysicalSize;
+import peakaboo.datasource.model.components.scandata.ScanData;
+
+/**
+ * A minimal {@link DataSet} wrapping the {@link ScanData} generated by
+ * {@link SyntheticData}, for benchmarking tasks like mapping which only need
+ * access to the scans.
+ *
+ * @author NAS
+ *
+ */
+public class SyntheticDataSet implements DataSet {
+
+	private ScanData scandata;
+
+	public SyntheticDataSet(int scanCount) {
+		this.scandata = SyntheticData.scanData(scanCount);
+	}
+
+	@Override
+	public Analysis getAnalysis() {
+		return new DummyAnalysis();
+	}
+
+	@Override
+	public ScanData getScanData() {
+		return scandata;
+	}
+
+	@Override
+	public boolean hasGenuineScanData() {
+		return true;
+	}
+
+	@Override
+	public Optional<Metadata> getMetadata() {
+		return Optional.empty();
+	}
+
+	@Override
+	public DataSource getDataSource() {
+		return null;
+	}
+
+	@Override
+	public Optional<PhysicalSize> getPhysicalSize() {
+		return Optional.empty();
+	}
+
+	@Override
+	public DataSize getDataSize() {
+		return null;
+	}
+
+	@Override
+	public boolean hasGenuineDataSize() {
+		return false;
+	}
+
+	@Override
+	public void discard() {
+		scandata = null;
+	}
+
+}
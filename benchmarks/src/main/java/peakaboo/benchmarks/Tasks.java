@@ -0,0 +1,104 @@
+package peakaboo.benchmarks;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import plural.executor.ExecutorSet;
+import plural.streams.StreamExecutor;
+import plural.streams.StreamExecutor.Event;
+import plural.streams.StreamExecutorSet;
+
+/**
+ * Runs Peakaboo's asynchronous tasks to completion on the calling thread, so
+ * that they can be timed by JMH.
+ * <br/><br/>
+ * If a task is aborted, a {@link CancellationException} is thrown. If an
+ * exception escapes one of the task's threads, it is rethrown wrapped in a
+ * {@link CompletionException}, rather than leaving the caller waiting for a
+ * task which will never finish.
+ *
+ * @author NAS
+ *
+ */
+class Tasks {
+
+	static <T> T await(StreamExecutor<T> executor) throws InterruptedException {
+		Waiter waiter = new Waiter();
+		AtomicBoolean aborted = new AtomicBoolean(false);
+		executor.addListener(event -> {
+			if (event == Event.ABORTED) aborted.set(true);
+			if (event != Event.PROGRESS) waiter.wake();
+		});
+		waiter.await(executor::start, aborted::get);
+		return executor.getResult().orElse(null);
+	}
+
+	static <T> T await(StreamExecutorSet<T> executors) throws InterruptedException {
+		Waiter waiter = new Waiter();
+		AtomicBoolean aborted = new AtomicBoolean(false);
+		executors.last().addListener(event -> {
+			if (event == Event.ABORTED) aborted.set(true);
+			if (event != Event.PROGRESS) waiter.wake();
+		});
+		waiter.await(executors::start, aborted::get);
+		return executors.last().getResult().orElse(null);
+	}
+
+	static <T> T await(ExecutorSet<T> executor) throws InterruptedException {
+		Waiter waiter = new Waiter();
+		executor.addListener(() -> {
+			if (executor.getCompleted() || executor.isAborted()) waiter.wake();
+		});
+		waiter.await(executor::startWorking, executor::isAborted);
+		return executor.getResult();
+	}
+
+
+	/**
+	 * Starts a task from a thread in its own {@link ThreadGroup}. Threads the
+	 * task starts join the same group, so an exception which escapes any of
+	 * them is reported to the group, which wakes the waiting caller.
+	 */
+	private static class Waiter {
+
+		private final CountDownLatch latch = new CountDownLatch(1);
+		private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+		private final ThreadGroup group = new ThreadGroup("Benchmark Task") {
+			@Override
+			public void uncaughtException(Thread thread, Throwable e) {
+				failure.compareAndSet(null, e);
+				wake();
+			}
+		};
+
+		void wake() {
+			latch.countDown();
+		}
+
+		void await(Runnable start, BooleanSupplier aborted) throws InterruptedException {
+			Thread starter = new Thread(group, start, "Benchmark Task Starter");
+			starter.start();
+			starter.join();
+
+			//aborting doesn't always notify listeners, so check now and then
+			while (!latch.await(100, TimeUnit.MILLISECONDS)) {
+				if (aborted.getAsBoolean() || failure.get() != null) break;
+			}
+
+			if (failure.get() != null) {
+				throw new CompletionException("Benchmark task failed", failure.get());
+			}
+			if (aborted.getAsBoolean()) {
+				throw new CancellationException("Benchmark task was aborted");
+			}
+		}
+
+	}
+
+}